@@ -0,0 +1,98 @@
+package icecube.daq.performance.diagnostic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reporting cost of a buffered meter for each
+ * Metered.Factory.ConcurrencyModel.
+ *
+ * The threaded benchmarks share one meter between the benchmark
+ * threads. SPSC meters are not correct with more than one thread per
+ * side and are measured only for reference.
+ *
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar MeterConcurrencyBenchmark
+ *    java -jar target/benchmarks.jar MeterConcurrencyBenchmark.threads4 -p model=MPMC,STRIPED
+ * </PRE>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeterConcurrencyBenchmark
+{
+
+    @Param({"SPSC", "MPMC", "STRIPED"})
+    public Metered.Factory.ConcurrencyModel model;
+
+    private Metered.UTCBuffered meter;
+    private Metered.Latency latency;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        meter = Metered.Factory.utcBufferMeter(model);
+        latency = Metered.Factory.latencyMeter(model);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1()
+    {
+        meter.reportIn(1, 4096, 123456789L);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void threads2()
+    {
+        meter.reportIn(1, 4096, 123456789L);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads4()
+    {
+        meter.reportIn(1, 4096, 123456789L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void latency1()
+    {
+        latency.reportLatency(1500);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void latency4()
+    {
+        latency.reportLatency(1500);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Metered.Sample sample()
+    {
+        return meter.getSample();
+    }
+
+}
@@ -0,0 +1,97 @@
+package icecube.daq.performance.diagnostic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of rendering trace fields with String.format and
+ * SimpleDateFormat against FieldAppender and CachedTimestamp.
+ *
+ * A line is a timestamp followed by the fields of a fully populated
+ * meter (MeterContent.Style.ALL) and a cpu utilization.
+ *
+ * Run with the gc profiler to compare allocation:
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar TraceFormattingBenchmark -prof gc
+ * </PRE>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceFormattingBenchmark
+{
+
+    private final StringBuilder sb = new StringBuilder(1024);
+
+    private final DateFormat dateFormat =
+            new SimpleDateFormat(CachedTimestamp.PATTERN);
+    private final CachedTimestamp timestamp = new CachedTimestamp();
+
+    private final long[] values = new long[16];
+    private final String[] formats = new String[16];
+    private final int[] widths = new int[16];
+    private float cpu;
+    private long millis;
+
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = (i % 3 == 0) ? 1476129018000L * i : 1000 * i + 7;
+            widths[i] = (i == 10 || i == 11) ? 24 : 12;
+            formats[i] = "%-" + widths[i] + "d";
+        }
+        cpu = 37.3f;
+        millis = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public int format()
+    {
+        sb.setLength(0);
+        sb.append(String.format("%-25s",
+                dateFormat.format(new Date(millis++))));
+        for (int i = 0; i < values.length; i++)
+        {
+            sb.append(String.format(formats[i], values[i]++));
+        }
+        sb.append(String.format("%-8.1f", cpu));
+        return sb.length();
+    }
+
+    @Benchmark
+    public int append()
+    {
+        sb.setLength(0);
+        final int start = sb.length();
+        timestamp.append(sb, millis++);
+        FieldAppender.pad(sb, start, 25);
+        for (int i = 0; i < values.length; i++)
+        {
+            FieldAppender.appendLong(sb, values[i]++, widths[i]);
+        }
+        FieldAppender.appendDouble(sb, cpu, 8, 1);
+        return sb.length();
+    }
+
+}
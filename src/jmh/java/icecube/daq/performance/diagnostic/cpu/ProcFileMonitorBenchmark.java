@@ -0,0 +1,144 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cost of a CPUMonitor sample of this process with every
+ * thread tracked, by thread count.
+ *
+ * The legacy benchmark reproduces the previous sampling, which read each
+ * file with Files.readAllLines and split the lines into String fields.
+ *
+ * Run with the gc profiler to compare allocation:
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar ProcFileMonitorBenchmark -prof gc
+ * </PRE>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcFileMonitorBenchmark
+{
+
+    @Param({"50", "500", "5000"})
+    public int threads;
+
+    private final CountDownLatch stop = new CountDownLatch(1);
+    private final List<Integer> tids = new ArrayList<>();
+
+    private Path taskDir;
+    private CPUMonitor monitor;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        for (int i = 0; i < threads; i++)
+        {
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    stop.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }, "idle-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int pid = ThreadUtil.myPID();
+        taskDir = Paths.get("/proc", Integer.toString(pid), "task");
+        try(Stream<Path> tasks = Files.list(taskDir))
+        {
+            tasks.forEach(task -> tids.add(
+                    Integer.parseInt(task.getFileName().toString())));
+        }
+
+        monitor = CPUMonitor.create(pid);
+        for (Integer tid : tids)
+        {
+            monitor.addTid(tid);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        stop.countDown();
+    }
+
+    @Benchmark
+    public CPUMonitor.Utilization sample()
+    {
+        return monitor.sample();
+    }
+
+    @Benchmark
+    public Map<Integer, String[]> legacy(final Blackhole bh)
+            throws IOException
+    {
+        Map<String, String[]> cpu = new HashMap<>(16);
+        for (String line : Files.readAllLines(Paths.get("/proc/stat")))
+        {
+            String[] fields = line.split("\\s+");
+            cpu.put(fields[0], fields);
+        }
+        bh.consume(cpu);
+
+        Map<Integer, String[]> stats = new HashMap<>(tids.size());
+        stats.put(0, split(Files.readAllLines(
+                taskDir.getParent().resolve("stat")).get(0)));
+        for (Integer tid : tids)
+        {
+            stats.put(tid, split(Files.readAllLines(
+                    taskDir.resolve(tid + "/stat")).get(0)));
+        }
+        return stats;
+    }
+
+    private static String[] split(final String line)
+    {
+        int p1 = line.lastIndexOf('(');
+        int p2 = line.lastIndexOf(')');
+        String[] ret = new String[44];
+        ret[0] = line.substring(0, p1 - 1);
+        ret[1] = line.substring(p1, p2 + 1);
+        String[] split = line.substring(p2 + 2).split("\\s+");
+        System.arraycopy(split, 0, ret, 2, 42);
+        return ret;
+    }
+
+}
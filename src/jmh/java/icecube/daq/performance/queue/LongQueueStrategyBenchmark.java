@@ -0,0 +1,195 @@
+package icecube.daq.performance.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the saturated throughput of the primitive LongQueueStrategy
+ * rings against the boxed Relaxed path for a stream of UTC-like values.
+ *
+ * Producers are background threads that enqueue an increasing value as
+ * fast as the strategy allows, so the boxed path allocates for every
+ * element. The benchmark thread is the consumer. Run with "-prof gc"
+ * to compare the allocation rates.
+ *
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar LongQueueStrategyBenchmark -prof gc
+ *    java -jar target/benchmarks.jar LongQueueStrategyBenchmark.SPSC -p spec=NonBlockingYield/SpscLongQueue
+ * </PRE>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(1)
+public abstract class LongQueueStrategyBenchmark
+{
+
+    @Param("1024")
+    public int capacity;
+
+    private LongQueueStrategy primitive;
+    private QueueStrategy<Long> boxed;
+    private Thread[] producers;
+
+    /** The strategy specification, see QueueStrategies. */
+    abstract String spec();
+
+    /** The number of background producer threads. */
+    abstract int producerCount();
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        if(QueueStrategies.isLong(spec()))
+        {
+            primitive = QueueStrategies.createLong(spec(), capacity);
+        }
+        else
+        {
+            boxed = QueueStrategies.create(spec(), capacity);
+        }
+
+        producers = new Thread[producerCount()];
+        for (int i = 0; i < producers.length; i++)
+        {
+            producers[i] = new Thread("producer-" + i)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // start past the Long cache
+                        long utc = 1L << 32;
+                        if(primitive != null)
+                        {
+                            while(!isInterrupted())
+                            {
+                                primitive.enqueue(utc++);
+                            }
+                        }
+                        else
+                        {
+                            while(!isInterrupted())
+                            {
+                                boxed.enqueue(utc++);
+                            }
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // done
+                    }
+                }
+            };
+            producers[i].setDaemon(true);
+            producers[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException
+    {
+        for (Thread producer : producers)
+        {
+            producer.interrupt();
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+    }
+
+    @Benchmark
+    public long dequeue() throws InterruptedException
+    {
+        if(primitive != null)
+        {
+            return primitive.dequeue();
+        }
+        else
+        {
+            return boxed.dequeue();
+        }
+    }
+
+
+    /**
+     * One producer, one consumer.
+     */
+    @State(Scope.Benchmark)
+    public static class SPSC extends LongQueueStrategyBenchmark
+    {
+        @Param({
+                "NonBlockingSpin/SpscLongQueue",
+                "NonBlockingYield/SpscLongQueue",
+                "NonBlockingPollBackoff/SpscLongQueue",
+                "RelaxedSpin/SpscArrayQueue",
+                "RelaxedYield/SpscArrayQueue",
+                "RelaxedPollBackoff/SpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int producerCount()
+        {
+            return 1;
+        }
+    }
+
+
+    /**
+     * Three producers, one consumer.
+     */
+    @State(Scope.Benchmark)
+    public static class MPSC extends LongQueueStrategyBenchmark
+    {
+        @Param({
+                "NonBlockingSpin/MpscLongQueue",
+                "NonBlockingYield/MpscLongQueue",
+                "NonBlockingPollBackoff/MpscLongQueue",
+                "RelaxedSpin/MpscArrayQueue",
+                "RelaxedYield/MpscArrayQueue",
+                "RelaxedPollBackoff/MpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int producerCount()
+        {
+            return 3;
+        }
+    }
+
+}
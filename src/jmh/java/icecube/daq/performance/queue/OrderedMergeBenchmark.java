@@ -0,0 +1,159 @@
+package icecube.daq.performance.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of removing an element from an OrderedMerge by the
+ * number of inputs, against a java.util.PriorityQueue heap of input
+ * heads as a baseline.
+ *
+ * Inputs are synthetic sources that generate increasing keys without
+ * queueing, isolating the cost of the merge itself.
+ *
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar OrderedMergeBenchmark
+ *    java -jar target/benchmarks.jar OrderedMergeBenchmark.merge -p inputs=128
+ * </PRE>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderedMergeBenchmark
+{
+
+    @Param({"8", "128", "1024"})
+    public int inputs;
+
+    private OrderedMerge<Element> merge;
+
+    private PriorityQueue<Element> heap;
+    private Source[] heapSources;
+
+
+    @Setup(Level.Trial)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp() throws InterruptedException
+    {
+        QueueStrategy<Element>[] sources = new QueueStrategy[inputs];
+        for (int i = 0; i < inputs; i++)
+        {
+            sources[i] = new Source(i);
+        }
+        merge = new OrderedMerge<>(sources, e -> e.utc,
+                new QueueStrategy.Spin());
+
+        heapSources = new Source[inputs];
+        heap = new PriorityQueue<>(inputs,
+                (a, b) -> Long.compare(a.utc, b.utc));
+        for (int i = 0; i < inputs; i++)
+        {
+            heapSources[i] = new Source(i);
+            heap.add(heapSources[i].dequeue());
+        }
+    }
+
+    @Benchmark
+    public long merge() throws InterruptedException
+    {
+        return merge.dequeue().utc;
+    }
+
+    @Benchmark
+    public long heap() throws InterruptedException
+    {
+        Element next = heap.poll();
+        heap.add(heapSources[next.source].dequeue());
+        return next.utc;
+    }
+
+
+    /**
+     * An element of a synthetic stream.
+     */
+    private static class Element
+    {
+        final int source;
+        long utc;
+
+        Element(final int source)
+        {
+            this.source = source;
+        }
+    }
+
+    /**
+     * An inexhaustible source of increasing keys.
+     *
+     * Alternates between two elements, the merge holds at most one
+     * element of each source so an element is never reused while held.
+     */
+    private static class Source implements QueueStrategy<Element>
+    {
+        private final Random random;
+        private final Element[] elements;
+        private long utc;
+        private int next;
+
+        Source(final int source)
+        {
+            this.random = new Random(source);
+            this.elements = new Element[]{new Element(source),
+                    new Element(source)};
+        }
+
+        @Override
+        public void enqueue(final Element element)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element dequeue()
+        {
+            utc += random.nextInt(1000);
+            Element element = elements[next];
+            next ^= 1;
+            element.utc = utc;
+            return element;
+        }
+
+        @Override
+        public boolean offer(final Element element, final long timeout,
+                             final TimeUnit unit)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element poll(final long timeout, final TimeUnit unit)
+        {
+            return dequeue();
+        }
+
+        @Override
+        public int size()
+        {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package icecube.daq.performance.queue;
+
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpmcArrayQueue;
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.queues.SpscArrayQueue;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Builds QueueStrategy instances from the textual benchmark parameters.
+ *
+ * A specification has the form "[strategy]/[queue]" where strategy is the
+ * simple name of a QueueStrategy subclass and queue is the simple name of
+ * the backing queue class, e.g. "RelaxedYield/SpscArrayQueue".
+ *
+ * LongQueueStrategy specifications use the same form with the simple
+ * name of a LongQueueStrategy subclass and LongQueue implementation,
+ * e.g. "NonBlockingYield/SpscLongQueue".
+ *
+ * Benchmarks enumerate only the specifications that are valid for
+ * their topology, a strategy/queue pair that is not supported fails
+ * the trial setup.
+ */
+class QueueStrategies
+{
+
+    /** Sleep interval used by the Poll strategies. */
+    static final int POLL_MILLIS = 1;
+
+    /** Maximum sleep used by the Backoff strategies. */
+    static final int MAX_BACKOFF_MILLIS = 10;
+
+
+    static <T> QueueStrategy<T> create(final String spec, final int capacity)
+    {
+        String[] parts = spec.split("/");
+        if(parts.length != 2)
+        {
+            throw new IllegalArgumentException("Bad spec: " + spec);
+        }
+        final String strategy = parts[0];
+        final String queue = parts[1];
+
+        switch (strategy)
+        {
+            case "Blocking":
+                return new QueueStrategy.Blocking<T>(
+                        blockingQueue(queue, capacity));
+            case "NonBlockingSpin":
+                return new QueueStrategy.NonBlockingSpin<T>(
+                        queue(queue, capacity));
+            case "NonBlockingYield":
+                return new QueueStrategy.NonBlockingYield<T>(
+                        queue(queue, capacity));
+            case "NonBlockingPoll":
+                return new QueueStrategy.NonBlockingPoll<T>(
+                        queue(queue, capacity), POLL_MILLIS);
+            case "NonBlockingPollBackoff":
+                return new QueueStrategy.NonBlockingPollBackoff<T>(
+                        queue(queue, capacity), POLL_MILLIS,
+                        MAX_BACKOFF_MILLIS);
+            case "NonBlockingPhased":
+                return new QueueStrategy.NonBlockingPhased<T>(
+                        queue(queue, capacity));
+            case "RelaxedSpin":
+                return new QueueStrategy.RelaxedSpin<T>(
+                        messagePassingQueue(queue, capacity));
+            case "RelaxedYield":
+                return new QueueStrategy.RelaxedYield<T>(
+                        messagePassingQueue(queue, capacity));
+            case "RelaxedPoll":
+                return new QueueStrategy.RelaxedPoll<T>(
+                        messagePassingQueue(queue, capacity), POLL_MILLIS);
+            case "RelaxedPollBackoff":
+                return new QueueStrategy.RelaxedPollBackoff<T>(
+                        messagePassingQueue(queue, capacity), POLL_MILLIS,
+                        MAX_BACKOFF_MILLIS);
+            case "RelaxedPhased":
+                return new QueueStrategy.RelaxedPhased<T>(
+                        messagePassingQueue(queue, capacity));
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " +
+                        strategy);
+        }
+    }
+
+    static LongQueueStrategy createLong(final String spec, final int capacity)
+    {
+        String[] parts = spec.split("/");
+        if(parts.length != 2)
+        {
+            throw new IllegalArgumentException("Bad spec: " + spec);
+        }
+        final String strategy = parts[0];
+        final String queue = parts[1];
+
+        switch (strategy)
+        {
+            case "NonBlockingSpin":
+                return new LongQueueStrategy.NonBlockingSpin(
+                        longQueue(queue, capacity));
+            case "NonBlockingYield":
+                return new LongQueueStrategy.NonBlockingYield(
+                        longQueue(queue, capacity));
+            case "NonBlockingPoll":
+                return new LongQueueStrategy.NonBlockingPoll(
+                        longQueue(queue, capacity), POLL_MILLIS);
+            case "NonBlockingPollBackoff":
+                return new LongQueueStrategy.NonBlockingPollBackoff(
+                        longQueue(queue, capacity), POLL_MILLIS,
+                        MAX_BACKOFF_MILLIS);
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " +
+                        strategy);
+        }
+    }
+
+    /**
+     * @return true if the specification names a LongQueue.
+     */
+    static boolean isLong(final String spec)
+    {
+        return spec.endsWith("LongQueue");
+    }
+
+    private static LongQueueStrategy.LongQueue longQueue(final String name,
+                                                         final int capacity)
+    {
+        switch (name)
+        {
+            case "SpscLongQueue":
+                return new LongQueueStrategy.SpscLongQueue(capacity);
+            case "MpscLongQueue":
+                return new LongQueueStrategy.MpscLongQueue(capacity);
+            default:
+                throw new IllegalArgumentException("Not a LongQueue: " +
+                        name);
+        }
+    }
+
+    private static <T> BlockingQueue<T> blockingQueue(final String name,
+                                                      final int capacity)
+    {
+        switch (name)
+        {
+            case "ArrayBlockingQueue":
+                return new ArrayBlockingQueue<T>(capacity);
+            case "LinkedBlockingQueue":
+                return new LinkedBlockingQueue<T>(capacity);
+            default:
+                throw new IllegalArgumentException("Not a BlockingQueue: " +
+                        name);
+        }
+    }
+
+    private static <T> MessagePassingQueue<T> messagePassingQueue(
+            final String name, final int capacity)
+    {
+        switch (name)
+        {
+            case "SpscArrayQueue":
+                return new SpscArrayQueue<T>(capacity);
+            case "MpscArrayQueue":
+                return new MpscArrayQueue<T>(capacity);
+            case "MpmcArrayQueue":
+                return new MpmcArrayQueue<T>(capacity);
+            default:
+                throw new IllegalArgumentException(
+                        "Not a MessagePassingQueue: " + name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Queue<T> queue(final String name, final int capacity)
+    {
+        if(name.endsWith("BlockingQueue"))
+        {
+            return blockingQueue(name, capacity);
+        }
+        else
+        {
+            // jctools array queues implement java.util.Queue
+            return (Queue<T>) messagePassingQueue(name, capacity);
+        }
+    }
+
+}
@@ -0,0 +1,317 @@
+package icecube.daq.performance.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hand-off latency of each QueueStrategy implementation
+ * by topology.
+ *
+ * Each benchmark thread sends a token through a shared "ping" strategy
+ * to background echo threads which return it through a per-sender
+ * "pong" strategy of the same type. The sampled time is a full round
+ * trip, JMH reports the percentiles of the distribution.
+ *
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar QueueStrategyLatencyBenchmark
+ *    java -jar target/benchmarks.jar QueueStrategyLatencyBenchmark.MPSC -p spec=RelaxedYield/MpscArrayQueue
+ * </PRE>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class QueueStrategyLatencyBenchmark
+{
+
+    /** Identifies the sender of a ping. */
+    static final class Token
+    {
+        final int sender;
+
+        Token(final int sender)
+        {
+            this.sender = sender;
+        }
+    }
+
+    /** Binds a benchmark thread to its token and pong strategy. */
+    @State(Scope.Thread)
+    public static class Sender
+    {
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp(final ThreadParams threadParams)
+        {
+            index = threadParams.getThreadIndex();
+        }
+    }
+
+
+    @Param("1024")
+    public int capacity;
+
+    private QueueStrategy<Token> ping;
+    private QueueStrategy<Token>[] pongs;
+    private Token[] tokens;
+    private Thread[] echoes;
+
+    /** The strategy specification, see QueueStrategies. */
+    abstract String spec();
+
+    /** The number of benchmark threads, must match @Threads. */
+    abstract int senderCount();
+
+    /** The number of background echo threads. */
+    abstract int echoCount();
+
+
+    @Setup(Level.Trial)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setUp()
+    {
+        ping = QueueStrategies.create(spec(), capacity);
+        pongs = new QueueStrategy[senderCount()];
+        tokens = new Token[senderCount()];
+        for (int i = 0; i < pongs.length; i++)
+        {
+            pongs[i] = QueueStrategies.create(spec(), capacity);
+            tokens[i] = new Token(i);
+        }
+
+        echoes = new Thread[echoCount()];
+        for (int i = 0; i < echoes.length; i++)
+        {
+            echoes[i] = new Thread("echo-" + i)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(!isInterrupted())
+                        {
+                            Token token = ping.dequeue();
+                            pongs[token.sender].enqueue(token);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // done
+                    }
+                }
+            };
+            echoes[i].setDaemon(true);
+            echoes[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException
+    {
+        for (Thread echo : echoes)
+        {
+            echo.interrupt();
+        }
+        for (Thread echo : echoes)
+        {
+            echo.join();
+        }
+    }
+
+    @Benchmark
+    public Token roundTrip(final Sender sender) throws InterruptedException
+    {
+        ping.enqueue(tokens[sender.index]);
+        return pongs[sender.index].dequeue();
+    }
+
+
+    /**
+     * One sender, one echo.
+     */
+    @State(Scope.Benchmark)
+    @Threads(1)
+    public static class SPSC extends QueueStrategyLatencyBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/SpscArrayQueue",
+                "NonBlockingSpin/MpscArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/SpscArrayQueue",
+                "NonBlockingYield/MpscArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/SpscArrayQueue",
+                "NonBlockingPoll/MpscArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/SpscArrayQueue",
+                "NonBlockingPollBackoff/MpscArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/SpscArrayQueue",
+                "NonBlockingPhased/MpscArrayQueue",
+                "RelaxedSpin/SpscArrayQueue",
+                "RelaxedSpin/MpscArrayQueue",
+                "RelaxedYield/SpscArrayQueue",
+                "RelaxedYield/MpscArrayQueue",
+                "RelaxedPoll/SpscArrayQueue",
+                "RelaxedPoll/MpscArrayQueue",
+                "RelaxedPollBackoff/SpscArrayQueue",
+                "RelaxedPollBackoff/MpscArrayQueue",
+                "RelaxedPhased/SpscArrayQueue",
+                "RelaxedPhased/MpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int senderCount()
+        {
+            return 1;
+        }
+
+        @Override
+        int echoCount()
+        {
+            return 1;
+        }
+    }
+
+
+    /**
+     * Three senders, one echo.
+     */
+    @State(Scope.Benchmark)
+    @Threads(3)
+    public static class MPSC extends QueueStrategyLatencyBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/MpscArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/MpscArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/MpscArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/MpscArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/MpscArrayQueue",
+                "RelaxedSpin/MpscArrayQueue",
+                "RelaxedYield/MpscArrayQueue",
+                "RelaxedPoll/MpscArrayQueue",
+                "RelaxedPollBackoff/MpscArrayQueue",
+                "RelaxedPhased/MpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int senderCount()
+        {
+            return 3;
+        }
+
+        @Override
+        int echoCount()
+        {
+            return 1;
+        }
+    }
+
+
+    /**
+     * Two senders, two echoes.
+     */
+    @State(Scope.Benchmark)
+    @Threads(2)
+    public static class MPMC extends QueueStrategyLatencyBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/MpmcArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/MpmcArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/MpmcArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/MpmcArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/MpmcArrayQueue",
+                "RelaxedSpin/MpmcArrayQueue",
+                "RelaxedYield/MpmcArrayQueue",
+                "RelaxedPoll/MpmcArrayQueue",
+                "RelaxedPollBackoff/MpmcArrayQueue",
+                "RelaxedPhased/MpmcArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int senderCount()
+        {
+            return 2;
+        }
+
+        @Override
+        int echoCount()
+        {
+            return 2;
+        }
+    }
+
+}
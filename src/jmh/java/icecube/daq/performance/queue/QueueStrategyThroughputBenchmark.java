@@ -0,0 +1,260 @@
+package icecube.daq.performance.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the saturated throughput of each QueueStrategy implementation
+ * by topology.
+ *
+ * Producers are background threads that enqueue as fast as the strategy
+ * allows for the duration of the trial, the benchmark threads are the
+ * consumers. Throughput is reported as dequeues per microsecond summed
+ * over the consumers.
+ *
+ * <PRE>
+ *    mvn -P benchmark package
+ *    java -jar target/benchmarks.jar QueueStrategyThroughputBenchmark
+ *    java -jar target/benchmarks.jar QueueStrategyThroughputBenchmark.SPSC -p spec=RelaxedSpin/SpscArrayQueue
+ * </PRE>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class QueueStrategyThroughputBenchmark
+{
+
+    private static final Integer ELEMENT = 42;
+
+    @Param("1024")
+    public int capacity;
+
+    private QueueStrategy<Integer> strategy;
+    private Thread[] producers;
+
+    /** The strategy specification, see QueueStrategies. */
+    abstract String spec();
+
+    /** The number of background producer threads. */
+    abstract int producerCount();
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        strategy = QueueStrategies.create(spec(), capacity);
+
+        producers = new Thread[producerCount()];
+        for (int i = 0; i < producers.length; i++)
+        {
+            producers[i] = new Thread("producer-" + i)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(!isInterrupted())
+                        {
+                            strategy.enqueue(ELEMENT);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // done
+                    }
+                }
+            };
+            producers[i].setDaemon(true);
+            producers[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException
+    {
+        for (Thread producer : producers)
+        {
+            producer.interrupt();
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+    }
+
+    @Benchmark
+    public Integer dequeue() throws InterruptedException
+    {
+        return strategy.dequeue();
+    }
+
+
+    /**
+     * One producer, one consumer.
+     */
+    @State(Scope.Benchmark)
+    @Threads(1)
+    public static class SPSC extends QueueStrategyThroughputBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/SpscArrayQueue",
+                "NonBlockingSpin/MpscArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/SpscArrayQueue",
+                "NonBlockingYield/MpscArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/SpscArrayQueue",
+                "NonBlockingPoll/MpscArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/SpscArrayQueue",
+                "NonBlockingPollBackoff/MpscArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/SpscArrayQueue",
+                "NonBlockingPhased/MpscArrayQueue",
+                "RelaxedSpin/SpscArrayQueue",
+                "RelaxedSpin/MpscArrayQueue",
+                "RelaxedYield/SpscArrayQueue",
+                "RelaxedYield/MpscArrayQueue",
+                "RelaxedPoll/SpscArrayQueue",
+                "RelaxedPoll/MpscArrayQueue",
+                "RelaxedPollBackoff/SpscArrayQueue",
+                "RelaxedPollBackoff/MpscArrayQueue",
+                "RelaxedPhased/SpscArrayQueue",
+                "RelaxedPhased/MpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int producerCount()
+        {
+            return 1;
+        }
+    }
+
+
+    /**
+     * Three producers, one consumer.
+     */
+    @State(Scope.Benchmark)
+    @Threads(1)
+    public static class MPSC extends QueueStrategyThroughputBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/MpscArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/MpscArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/MpscArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/MpscArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/MpscArrayQueue",
+                "RelaxedSpin/MpscArrayQueue",
+                "RelaxedYield/MpscArrayQueue",
+                "RelaxedPoll/MpscArrayQueue",
+                "RelaxedPollBackoff/MpscArrayQueue",
+                "RelaxedPhased/MpscArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int producerCount()
+        {
+            return 3;
+        }
+    }
+
+
+    /**
+     * Two producers, two consumers.
+     */
+    @State(Scope.Benchmark)
+    @Threads(2)
+    public static class MPMC extends QueueStrategyThroughputBenchmark
+    {
+        @Param({
+                "Blocking/ArrayBlockingQueue",
+                "Blocking/LinkedBlockingQueue",
+                "NonBlockingSpin/ArrayBlockingQueue",
+                "NonBlockingSpin/LinkedBlockingQueue",
+                "NonBlockingSpin/MpmcArrayQueue",
+                "NonBlockingYield/ArrayBlockingQueue",
+                "NonBlockingYield/LinkedBlockingQueue",
+                "NonBlockingYield/MpmcArrayQueue",
+                "NonBlockingPoll/ArrayBlockingQueue",
+                "NonBlockingPoll/LinkedBlockingQueue",
+                "NonBlockingPoll/MpmcArrayQueue",
+                "NonBlockingPollBackoff/ArrayBlockingQueue",
+                "NonBlockingPollBackoff/LinkedBlockingQueue",
+                "NonBlockingPollBackoff/MpmcArrayQueue",
+                "NonBlockingPhased/ArrayBlockingQueue",
+                "NonBlockingPhased/LinkedBlockingQueue",
+                "NonBlockingPhased/MpmcArrayQueue",
+                "RelaxedSpin/MpmcArrayQueue",
+                "RelaxedYield/MpmcArrayQueue",
+                "RelaxedPoll/MpmcArrayQueue",
+                "RelaxedPollBackoff/MpmcArrayQueue",
+                "RelaxedPhased/MpmcArrayQueue"
+        })
+        public String spec;
+
+        @Override
+        String spec()
+        {
+            return spec;
+        }
+
+        @Override
+        int producerCount()
+        {
+            return 2;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package icecube.daq.performance.diagnostic;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Renders timestamps as "YYYY-MM-dd HH:mm:ss.S" into a StringBuilder.
+ *
+ * The date and time to the second is formatted by a SimpleDateFormat
+ * once per second and cached, the milliseconds are appended directly.
+ * A trace with a period of a second or more formats each timestamp once
+ * rather than once per content instance and line.
+ *
+ * Note: Not thread safe.
+ */
+public class CachedTimestamp
+{
+
+    /** The pattern of the cached seconds. */
+    public static final String SECONDS_PATTERN = "YYYY-MM-dd HH:mm:ss";
+
+    /** The equivalent SimpleDateFormat pattern of a rendering. */
+    public static final String PATTERN = SECONDS_PATTERN + ".S";
+
+    private final DateFormat secondsFormat =
+            new SimpleDateFormat(SECONDS_PATTERN);
+    private final Date date = new Date();
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedText;
+
+
+    /**
+     * Append a timestamp.
+     *
+     * @param millis The time in epoch milliseconds.
+     */
+    public void append(final StringBuilder sb, final long millis)
+    {
+        final long second = Math.floorDiv(millis, 1000);
+        if(second != cachedSecond)
+        {
+            date.setTime(second * 1000);
+            cachedText = secondsFormat.format(date);
+            cachedSecond = second;
+        }
+        sb.append(cachedText).append('.').append(millis - second * 1000);
+    }
+
+}
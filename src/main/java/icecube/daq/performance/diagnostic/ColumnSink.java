@@ -0,0 +1,41 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * Receives the content of a trace line as typed columns.
+ *
+ * Each column carries the format of its text representation so that
+ * the text trace line can be reproduced from the column values.
+ * Content must produce the same sequence of column types, formats and
+ * literals on every line.
+ */
+public interface ColumnSink
+{
+
+    /**
+     * A constant part of the line, e.g. a separator.
+     */
+    public void literal(String text);
+
+    /**
+     * @param format The format of the value, e.g. "%-12d".
+     */
+    public void longValue(String format, long value);
+
+    /**
+     * @param format The format of the value, e.g. "%-8.1f".
+     */
+    public void doubleValue(String format, double value);
+
+    /**
+     * @param datePattern The SimpleDateFormat pattern of the time.
+     * @param format The format of the formatted time, e.g. "%-25s".
+     * @param millis The time in epoch milliseconds.
+     */
+    public void timeValue(String datePattern, String format, long millis);
+
+    /**
+     * Untyped, variable content.
+     */
+    public void text(CharSequence text);
+
+}
@@ -0,0 +1,192 @@
+package icecube.daq.performance.diagnostic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static icecube.daq.performance.diagnostic.ColumnarTraceWriter.*;
+
+/**
+ * Converts a trace written by ColumnarTraceWriter to the text layout
+ * of DiagnosticTrace.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   java icecube.daq.performance.diagnostic.ColumnarTraceReader trace.bin
+ * </PRE>
+ *
+ * A truncated final record, e.g. from a trace that was still being
+ * written, is ignored.
+ */
+public class ColumnarTraceReader
+{
+
+    private final DataInputStream in;
+
+    private byte[] kinds;
+    private String[] formats;
+    private DateFormat[] dateFormats;
+    private long[] previous;
+
+
+    public ColumnarTraceReader(final InputStream in) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if(this.in.readInt() != MAGIC)
+        {
+            throw new IOException("Not a columnar trace");
+        }
+        short version = this.in.readShort();
+        if(version != VERSION)
+        {
+            throw new IOException("Unsupported trace version: " + version);
+        }
+    }
+
+    /**
+     * Convert the trace, writing one text line per header or row.
+     */
+    public void convert(final PrintStream out) throws IOException
+    {
+        StringBuilder sb = new StringBuilder(1024);
+        while(readLine(sb))
+        {
+            out.println(sb);
+        }
+    }
+
+    /**
+     * Read the next line of the trace.
+     *
+     * @param sb Receives the text of the line.
+     * @return false at the end of the trace.
+     */
+    public boolean readLine(final StringBuilder sb) throws IOException
+    {
+        sb.setLength(0);
+        try
+        {
+            while(true)
+            {
+                int record = in.read();
+                switch (record)
+                {
+                    case -1:
+                        return false;
+                    case HEADER:
+                        sb.append(in.readUTF());
+                        return true;
+                    case SCHEMA:
+                        readSchema();
+                        break;
+                    case ROW:
+                        byte[] row = new byte[in.readInt()];
+                        in.readFully(row);
+                        readRow(new DataInputStream(
+                                new ByteArrayInputStream(row)), sb);
+                        return true;
+                    default:
+                        throw new IOException("Unknown record type: " +
+                                record);
+                }
+            }
+        }
+        catch (EOFException e)
+        {
+            sb.setLength(0);
+            return false;
+        }
+    }
+
+    private void readSchema() throws IOException
+    {
+        int count = in.readInt();
+        kinds = new byte[count];
+        formats = new String[count];
+        dateFormats = new DateFormat[count];
+        previous = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            kinds[i] = in.readByte();
+            formats[i] = in.readUTF();
+            if(kinds[i] == TIME)
+            {
+                dateFormats[i] = new SimpleDateFormat(in.readUTF());
+            }
+        }
+    }
+
+    private void readRow(final DataInputStream row, final StringBuilder sb)
+            throws IOException
+    {
+        if(kinds == null)
+        {
+            throw new IOException("Row precedes schema");
+        }
+        for (int i = 0; i < kinds.length; i++)
+        {
+            switch (kinds[i])
+            {
+                case LITERAL:
+                    sb.append(formats[i]);
+                    break;
+                case LONG:
+                    previous[i] += readDelta(row);
+                    sb.append(String.format(formats[i], previous[i]));
+                    break;
+                case DOUBLE:
+                    sb.append(String.format(formats[i], row.readDouble()));
+                    break;
+                case TIME:
+                    previous[i] += readDelta(row);
+                    sb.append(String.format(formats[i],
+                            dateFormats[i].format(new Date(previous[i]))));
+                    break;
+                case TEXT:
+                    sb.append(row.readUTF());
+                    break;
+                default:
+                    throw new IOException("Unknown column type: " + kinds[i]);
+            }
+        }
+    }
+
+    private static long readDelta(final DataInputStream row)
+            throws IOException
+    {
+        long zz = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = row.readUnsignedByte();
+            zz |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while((b & 0x80) != 0);
+        return (zz >>> 1) ^ -(zz & 1);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 1)
+        {
+            System.err.println("Usage: ColumnarTraceReader <trace-file>");
+            System.exit(1);
+        }
+        try(InputStream in = new FileInputStream(args[0]))
+        {
+            new ColumnarTraceReader(in).convert(System.out);
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package icecube.daq.performance.diagnostic;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes trace lines in a compact binary, columnar format.
+ *
+ * The layout of the trace line is captured from the first line as a
+ * schema of typed columns, each carrying its text format. Subsequent
+ * lines are written as column values only, with long and time columns
+ * delta-encoded against the previous line as zig-zag variable length
+ * integers. A typical meter column costs one or two bytes per line.
+ *
+ * ColumnarTraceReader converts a trace back to the text layout.
+ *
+ * <PRE>
+ * Format:
+ *
+ *   int      MAGIC
+ *   short    VERSION
+ *   record*
+ *
+ *   HEADER:  byte 1, UTF header-text
+ *   SCHEMA:  byte 2, int column-count,
+ *            (byte kind, UTF format [, UTF date-pattern])*
+ *   ROW:     byte 3, int length, value*
+ *
+ *   LITERAL columns have no value, the format holds the text.
+ *   LONG and TIME values are zig-zag varint deltas, DOUBLE values
+ *   are 8 bytes and TEXT values are UTF.
+ * </PRE>
+ */
+public class ColumnarTraceWriter implements ColumnSink, Closeable
+{
+
+    static final int MAGIC = 0x49435452; // "ICTR"
+    static final short VERSION = 1;
+
+    static final byte HEADER = 1;
+    static final byte SCHEMA = 2;
+    static final byte ROW = 3;
+
+    static final byte LITERAL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte TIME = 3;
+    static final byte TEXT = 4;
+
+    private final DataOutputStream out;
+
+    // the column layout, defined by the first row
+    private final List<Column> schema = new ArrayList<>();
+    private boolean defined;
+
+    // the values of the previous row, for delta encoding
+    private long[] previous = new long[16];
+
+    // the row being written, committed to the schema and previous
+    // values only once the row is complete
+    private final List<Column> pendingSchema = new ArrayList<>();
+    private long[] current = new long[16];
+    private final ByteArrayOutputStream rowBytes =
+            new ByteArrayOutputStream(256);
+    private final DataOutputStream row = new DataOutputStream(rowBytes);
+    private int column;
+    private int valueColumn;
+
+
+    public ColumnarTraceWriter(final OutputStream out) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+    }
+
+    /**
+     * Write a header line.
+     */
+    public void header(final CharSequence header) throws IOException
+    {
+        out.writeByte(HEADER);
+        out.writeUTF(header.toString());
+        out.flush();
+    }
+
+    /**
+     * Write a line of content.
+     *
+     * A line that fails, by an exception from the content or a layout
+     * change, is discarded without affecting subsequent lines.
+     *
+     * @throws IllegalStateException The content produced a layout that
+     *                               differs from the schema.
+     */
+    public void row(final Content content) throws IOException
+    {
+        rowBytes.reset();
+        pendingSchema.clear();
+        column = 0;
+        valueColumn = 0;
+
+        content.content(this);
+
+        if(defined && column != schema.size())
+        {
+            throw new IllegalStateException("Trace layout changed, expected "
+                    + schema.size() + " columns, got " + column);
+        }
+
+        if(!defined)
+        {
+            writeSchema(pendingSchema);
+        }
+        out.writeByte(ROW);
+        out.writeInt(rowBytes.size());
+        rowBytes.writeTo(out);
+        out.flush();
+
+        // commit the row
+        if(!defined)
+        {
+            schema.addAll(pendingSchema);
+            defined = true;
+        }
+        System.arraycopy(current, 0, previous, 0, valueColumn);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    @Override
+    public void literal(final String text)
+    {
+        define(LITERAL, text, null);
+    }
+
+    @Override
+    public void longValue(final String format, final long value)
+    {
+        define(LONG, format, null);
+        writeDelta(value);
+    }
+
+    @Override
+    public void doubleValue(final String format, final double value)
+    {
+        define(DOUBLE, format, null);
+        try
+        {
+            row.writeDouble(value);
+        }
+        catch (IOException e)
+        {
+            throw new Error(e); // not possible with a byte array
+        }
+        nextValueColumn();
+    }
+
+    @Override
+    public void timeValue(final String datePattern, final String format,
+                          final long millis)
+    {
+        define(TIME, format, datePattern);
+        writeDelta(millis);
+    }
+
+    @Override
+    public void text(final CharSequence text)
+    {
+        define(TEXT, "", null);
+        try
+        {
+            row.writeUTF(text.toString());
+        }
+        catch (IOException e)
+        {
+            throw new Error(e); // not possible with a byte array
+        }
+        nextValueColumn();
+    }
+
+    private void define(final byte kind, final String format,
+                        final String datePattern)
+    {
+        if(!defined)
+        {
+            pendingSchema.add(new Column(kind, format, datePattern));
+        }
+        else
+        {
+            if(column >= schema.size() ||
+                    !schema.get(column).matches(kind, format))
+            {
+                throw new IllegalStateException("Trace layout changed at" +
+                        " column " + column);
+            }
+        }
+        column++;
+    }
+
+    private void writeDelta(final long value)
+    {
+        ensureCapacity(valueColumn + 1);
+        final long delta = value - previous[valueColumn];
+        current[valueColumn] = value;
+        nextValueColumn();
+
+        // zig-zag, then 7 bits per byte, least significant first
+        long zz = (delta << 1) ^ (delta >> 63);
+        while((zz & ~0x7FL) != 0)
+        {
+            rowBytes.write((int) ((zz & 0x7F) | 0x80));
+            zz >>>= 7;
+        }
+        rowBytes.write((int) zz);
+    }
+
+    /**
+     * Advance to the next value column, every value column has a slot
+     * in the delta state so that the state can be committed by position.
+     */
+    private void nextValueColumn()
+    {
+        valueColumn++;
+        ensureCapacity(valueColumn);
+    }
+
+    private void ensureCapacity(final int columns)
+    {
+        if(columns > previous.length)
+        {
+            int length = previous.length;
+            while(length < columns)
+            {
+                length *= 2;
+            }
+            previous = Arrays.copyOf(previous, length);
+            current = Arrays.copyOf(current, length);
+        }
+    }
+
+    private void writeSchema(final List<Column> schema) throws IOException
+    {
+        out.writeByte(SCHEMA);
+        out.writeInt(schema.size());
+        for (Column c : schema)
+        {
+            out.writeByte(c.kind);
+            out.writeUTF(c.format);
+            if(c.kind == TIME)
+            {
+                out.writeUTF(c.datePattern);
+            }
+        }
+    }
+
+
+    /**
+     * A column of the schema.
+     */
+    private static class Column
+    {
+        final byte kind;
+        final String format;
+        final String datePattern;
+
+        Column(final byte kind, final String format,
+               final String datePattern)
+        {
+            this.kind = kind;
+            this.format = format;
+            this.datePattern = datePattern;
+        }
+
+        boolean matches(final byte kind, final String format)
+        {
+            return this.kind == kind &&
+                    (this.format == format || this.format.equals(format));
+        }
+    }
+
+}
@@ -5,10 +5,7 @@ package icecube.daq.performance.diagnostic;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -39,6 +36,19 @@ public interface Content
      */
     public void content(StringBuilder sb);
 
+    /**
+     * Provide the content field(s) as typed columns.
+     *
+     * The default provides the text content as a single untyped column,
+     * content with numeric fields should provide typed columns.
+     */
+    public default void content(ColumnSink sink)
+    {
+        StringBuilder sb = new StringBuilder();
+        content(sb);
+        sink.text(sb);
+    }
+
 
     /** Conversion constants. */
     static final int BYTES_PER_MB = 1024*1024;
@@ -77,6 +87,12 @@ public interface Content
             sb.append(content);
         }
 
+        @Override
+        public void content(ColumnSink sink)
+        {
+            sink.literal(content);
+        }
+
     }
 
 
@@ -110,6 +126,12 @@ public interface Content
             sb.append(divider);
         }
 
+        @Override
+        public void content(ColumnSink sink)
+        {
+            sink.literal(divider);
+        }
+
     }
 
 
@@ -142,6 +164,15 @@ public interface Content
 
             }
         }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            for (int i = 0; i < content.length; i++)
+            {
+                content[i].content(sink);
+            }
+        }
     }
 
     /**
@@ -184,6 +215,14 @@ public interface Content
             sb.append(closeContent);
         }
 
+        @Override
+        public void content(ColumnSink sink)
+        {
+            sink.literal(openContent);
+            content.content(sink);
+            sink.literal(closeContent);
+        }
+
     }
 
 
@@ -192,8 +231,9 @@ public interface Content
      */
     public class TimeContent implements Content
     {
-        final DateFormat dateFormat =
-                new SimpleDateFormat("YYYY-MM-dd HH:mm:ss.S");
+        static final String DATE_PATTERN = CachedTimestamp.PATTERN;
+
+        final CachedTimestamp timestamp = new CachedTimestamp();
 
         final String header;
 
@@ -211,7 +251,15 @@ public interface Content
         @Override
         public void content(StringBuilder sb)
         {
-            sb.append(String.format("%-25s", dateFormat.format(new Date())));
+            final int start = sb.length();
+            timestamp.append(sb, System.currentTimeMillis());
+            FieldAppender.pad(sb, start, 25);
+        }
+
+        @Override
+        public void content(ColumnSink sink)
+        {
+            sink.timeValue(DATE_PATTERN, "%-25s", System.currentTimeMillis());
         }
 
     }
@@ -247,26 +295,23 @@ public interface Content
         @Override
         public void content(StringBuilder sb)
         {
-            final String field;
-            final String unit;
+            final int start = sb.length();
             long secondsAge = (System.nanoTime() - epoch)/1000000000;
             if(secondsAge < 60)
             {
-                field = Long.toString(secondsAge);
-                unit = "s";
+                sb.append(secondsAge).append('s');
             }
             else  if (secondsAge < 3600)
             {
-                field = String.format("%1.1f", (secondsAge/60f));
-                unit = "m";
+                FieldAppender.appendDouble(sb, (secondsAge/60f), 1, 1);
+                sb.append('m');
             }
             else
             {
-                field = String.format("%1.1f", (secondsAge/3600f));
-                unit = "h";
+                FieldAppender.appendDouble(sb, (secondsAge/3600f), 1, 1);
+                sb.append('h');
             }
-
-            sb.append(String.format("%-6s", (field + unit)));
+            FieldAppender.pad(sb, start, 6);
         }
 
     }
@@ -291,7 +336,13 @@ public interface Content
         @Override
         public void content(StringBuilder sb)
         {
-            sb.append(String.format("%-8d", getHeapUsageBytes()/ BYTES_PER_MB));
+            FieldAppender.appendLong(sb, getHeapUsageBytes()/ BYTES_PER_MB, 8);
+        }
+
+        @Override
+        public void content(ColumnSink sink)
+        {
+            sink.longValue("%-8d", getHeapUsageBytes()/ BYTES_PER_MB);
         }
 
         private static long getHeapUsageBytes() {
@@ -326,9 +377,28 @@ public interface Content
             List<long[]> gcCountAndTimes = getGCCountAndTimes();
             long[] young = gcCountAndTimes.get(0);
             long[] old = gcCountAndTimes.get(1);
-            sb.append(String.format("%-6d %-6d %-6d %-6d",
-                    young[0], young[1]/ MILLIS_PER_SECOND,
-                    old[0], old[1]/ MILLIS_PER_SECOND));
+            FieldAppender.appendLong(sb, young[0], 6);
+            sb.append(' ');
+            FieldAppender.appendLong(sb, young[1]/ MILLIS_PER_SECOND, 6);
+            sb.append(' ');
+            FieldAppender.appendLong(sb, old[0], 6);
+            sb.append(' ');
+            FieldAppender.appendLong(sb, old[1]/ MILLIS_PER_SECOND, 6);
+        }
+
+        @Override
+        public void content(ColumnSink sink)
+        {
+            List<long[]> gcCountAndTimes = getGCCountAndTimes();
+            long[] young = gcCountAndTimes.get(0);
+            long[] old = gcCountAndTimes.get(1);
+            sink.longValue("%-6d", young[0]);
+            sink.literal(" ");
+            sink.longValue("%-6d", young[1]/ MILLIS_PER_SECOND);
+            sink.literal(" ");
+            sink.longValue("%-6d", old[0]);
+            sink.literal(" ");
+            sink.longValue("%-6d", old[1]/ MILLIS_PER_SECOND);
         }
 
         private static List<long[]> getGCCountAndTimes() {
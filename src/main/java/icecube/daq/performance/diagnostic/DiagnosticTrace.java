@@ -4,8 +4,6 @@ package icecube.daq.performance.diagnostic;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import icecube.daq.performance.diagnostic.Content.*;
 import icecube.daq.performance.diagnostic.Content.GCContent;
@@ -30,6 +28,15 @@ import icecube.daq.performance.diagnostic.Content.HeapMemoryContent;
  *   //...
  *   trace.stop();
  *
+ * Binary Usage:
+ *
+ *   ColumnarTraceWriter writer =
+ *           new ColumnarTraceWriter(new FileOutputStream("trace.bin"));
+ *   DiagnosticTrace trace = new DiagnosticTrace(1000, 30, writer);
+ *   //...
+ *   trace.stop();
+ *   writer.close();
+ *
  * Examples:
  *
  *
@@ -85,12 +92,18 @@ public class DiagnosticTrace
     /* Period (in lines) of header emit. */
     private final int headerPeriod;
 
-    /* Timer firing the trace. */
-    private Timer timer;
+    /* Scheduled task firing the trace. */
+    private TraceScheduler.Task task;
+
+    /* Lateness of trace lines, in nanoseconds. */
+    private final Metered.Latency jitter = Metered.Factory.latencyMeter();
 
     /* Destination of trace lines. */
     private final PrintStream out;
 
+    /* Destination of binary trace lines, replaces the text output. */
+    private final ColumnarTraceWriter columnar;
+
 
     private static final int DEFAULT_PERIOD = 10000;
     private static final int DEFAULT_HEADER_PERIOD = Integer.MAX_VALUE;
@@ -122,10 +135,27 @@ public class DiagnosticTrace
     }
 
     public DiagnosticTrace(int period, int headerPeriod, PrintStream out)
+    {
+        this(period, headerPeriod, out, null);
+    }
+
+    /**
+     * Create a trace that writes typed columns in binary format, numeric
+     * content is recorded as values rather than formatted text.
+     */
+    public DiagnosticTrace(int period, int headerPeriod,
+                           ColumnarTraceWriter out)
+    {
+        this(period, headerPeriod, System.err, out);
+    }
+
+    private DiagnosticTrace(int period, int headerPeriod, PrintStream out,
+                            ColumnarTraceWriter columnar)
     {
         this.period = period;
         this.headerPeriod = headerPeriod;
         this.out = out;
+        this.columnar = columnar;
 
         contentHolder.addContent(new CommentContent("#"));
     }
@@ -157,17 +187,77 @@ public class DiagnosticTrace
         addContent(new GroupedContent(name, new MeterContent(meter, fields)));
     }
 
+    /**
+     * Add the registered meters under a name prefix, in name order.
+     */
+    public void addMeters(MeterRegistry registry, String prefix,
+                          MeterContent.Style... style)
+    {
+        for (String name : registry.names(prefix))
+        {
+            Metered meter = registry.get(name);
+            if(meter != null)
+            {
+                addMeter(name, meter, style);
+            }
+        }
+    }
+
+    public void addLatencyMeter(String name, Metered.Latency meter,
+                                LatencyContent.Unit unit)
+    {
+        addContent(new GroupedContent(name, new LatencyContent(meter, unit)));
+    }
+
+    public void addLatencyMeter(String name, Metered.Latency meter,
+                                LatencyContent.Unit unit,
+                                LatencyContent.LatencyField... fields)
+    {
+        addContent(new GroupedContent(name,
+                new LatencyContent(meter, unit, fields)));
+    }
+
+    /**
+     * Add the lag behind wall time of the output side of a stage.
+     */
+    public void addLagMeter(String name, UTCLagMeter meter)
+    {
+        addLagMeter(name, meter, UTCLagMeter.Side.OUT);
+    }
+
+    public void addLagMeter(String name, UTCLagMeter meter,
+                            UTCLagMeter.Side side)
+    {
+        addContent(new GroupedContent(name, new UTCLagContent(meter, side)));
+    }
+
+    public void addLagMeter(String name, UTCLagMeter meter,
+                            UTCLagMeter.Side side,
+                            UTCLagContent.LagField... fields)
+    {
+        addContent(new GroupedContent(name,
+                new UTCLagContent(meter, side, fields)));
+    }
 
+
+    /**
+     * Start the trace on the shared trace scheduler.
+     */
     public void start()
+    {
+        start(TraceScheduler.shared());
+    }
+
+    public void start(TraceScheduler scheduler)
     {
         synchronized (this)
         {
-            if (timer != null)
+            if (task != null)
             {
                 throw new Error("Already started");
             }
 
-            TimerTask task = new TimerTask()
+            Runnable tick = new Runnable()
             {
                 final StringBuilder sb = new StringBuilder(1024);
                 int lineCount;
@@ -180,16 +270,29 @@ public class DiagnosticTrace
                         {
                             sb.delete(0, sb.length());
                             contentHolder.header(sb);
-                            out.println(sb.toString());
+                            if(columnar != null)
+                            {
+                                columnar.header(sb);
+                            }
+                            else
+                            {
+                                out.println(sb.toString());
+                            }
                             lineCount=1;
                         }
 
-                        sb.delete(0, sb.length());
-
                         contentHolder.beforeContent();
-                        contentHolder.content(sb);
 
-                        out.println(sb.toString());
+                        if(columnar != null)
+                        {
+                            columnar.row(contentHolder);
+                        }
+                        else
+                        {
+                            sb.delete(0, sb.length());
+                            contentHolder.content(sb);
+                            out.println(sb.toString());
+                        }
                     }
                     catch (Throwable th)
                     {
@@ -200,16 +303,46 @@ public class DiagnosticTrace
                 }
             };
 
-            timer = new Timer();
-            timer.schedule(task, 0, period);
+            task = scheduler.schedule(tick, period, jitter);
 
         }
 
     }
 
+    /**
+     * Stop the trace, a stopped trace may be started again. Stopping a
+     * trace that is not running has no effect.
+     */
     public void stop()
     {
-        timer.cancel();
+        synchronized (this)
+        {
+            if (task != null)
+            {
+                task.cancel();
+                task = null;
+            }
+        }
+    }
+
+    /**
+     * @return The lateness of trace lines against their schedule, in
+     *         nanoseconds.
+     */
+    public Metered.Latency getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Add the lateness of trace lines against their schedule.
+     */
+    public void addJitterContent()
+    {
+        addLatencyMeter("jitter", jitter, LatencyContent.Unit.NANOS,
+                LatencyContent.LatencyField.P50,
+                LatencyContent.LatencyField.P99,
+                LatencyContent.LatencyField.MAX);
     }
 
     public void addTimeContent()
@@ -283,6 +416,15 @@ public class DiagnosticTrace
             }
         }
 
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            for (Content content : contents)
+            {
+                content.content(sink);
+            }
+        }
+
     }
 
 
@@ -0,0 +1,189 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * Garbage-free fixed-width field formatting into a StringBuilder.
+ *
+ * Replaces String.format() on the trace path, which allocates a
+ * Formatter, its parsed format and the result String per field.
+ *
+ * <PRE>
+ *    appendLong(sb, v, 12)           equivalent to  "%-12d"
+ *    appendLongRight(sb, v, 12)      equivalent to  "%12d"
+ *    appendDouble(sb, v, 8, 1)       equivalent to  "%-8.1f"
+ *    appendDoubleRight(sb, v, 8, 1)  equivalent to  "%8.1f"
+ * </PRE>
+ *
+ * Doubles are rounded half-up on their binary value, which matches
+ * String.format() for values that are not within an ulp of a rounding
+ * boundary, including all values converted from float at precision 1.
+ * Output is locale independent.
+ */
+public final class FieldAppender
+{
+
+    private static final long[] POWERS_OF_TEN =
+            {
+                    1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L,
+                    10000000L, 100000000L, 1000000000L
+            };
+
+    /** Doubles at or above this magnitude are appended by StringBuilder. */
+    private static final double MAX_SCALED = 1e17;
+
+
+    private FieldAppender()
+    {
+    }
+
+    /**
+     * Append a value left justified in a field.
+     */
+    public static void appendLong(final StringBuilder sb, final long value,
+                                  final int width)
+    {
+        final int start = sb.length();
+        sb.append(value);
+        pad(sb, start, width);
+    }
+
+    /**
+     * Append a value right justified in a field.
+     */
+    public static void appendLongRight(final StringBuilder sb,
+                                       final long value, final int width)
+    {
+        spaces(sb, width - length(value));
+        sb.append(value);
+    }
+
+    /**
+     * Append a value left justified in a field.
+     *
+     * @param precision Digits after the decimal point, at most 9.
+     */
+    public static void appendDouble(final StringBuilder sb,
+                                    final double value, final int width,
+                                    final int precision)
+    {
+        final int start = sb.length();
+        appendDouble(sb, value, precision);
+        pad(sb, start, width);
+    }
+
+    /**
+     * Append a value right justified in a field.
+     *
+     * @param precision Digits after the decimal point, at most 9.
+     */
+    public static void appendDoubleRight(final StringBuilder sb,
+                                         final double value, final int width,
+                                         final int precision)
+    {
+        final int start = sb.length();
+        appendDouble(sb, value, precision);
+        final int length = sb.length() - start;
+        for (int i = length; i < width; i++)
+        {
+            sb.insert(start, ' ');
+        }
+    }
+
+    /**
+     * Append a value left justified in a field.
+     */
+    public static void appendString(final StringBuilder sb,
+                                    final CharSequence value,
+                                    final int width)
+    {
+        final int start = sb.length();
+        sb.append(value);
+        pad(sb, start, width);
+    }
+
+    /**
+     * Pad a field with spaces.
+     *
+     * @param start The position of the field in the buffer.
+     * @param width The width of the field.
+     */
+    public static void pad(final StringBuilder sb, final int start,
+                           final int width)
+    {
+        spaces(sb, start + width - sb.length());
+    }
+
+    /**
+     * @return The number of characters of the decimal representation
+     *         of a value.
+     */
+    public static int length(final long value)
+    {
+        if(value == Long.MIN_VALUE)
+        {
+            return 20;
+        }
+        int length = (value < 0) ? 2 : 1;
+        long remainder = Math.abs(value);
+        while(remainder >= 10)
+        {
+            remainder /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    private static void appendDouble(final StringBuilder sb,
+                                     final double value,
+                                     final int precision)
+    {
+        if(precision < 0 || precision >= POWERS_OF_TEN.length)
+        {
+            throw new IllegalArgumentException("Unsupported precision: " +
+                    precision);
+        }
+        if(Double.isNaN(value))
+        {
+            sb.append("NaN");
+            return;
+        }
+        if(Double.isInfinite(value))
+        {
+            sb.append(value > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+
+        final long scale = POWERS_OF_TEN[precision];
+        final double magnitude = Math.abs(value);
+        if(magnitude * scale >= MAX_SCALED)
+        {
+            // beyond exact long arithmetic, rare enough to allocate
+            sb.append(String.format("%." + precision + "f", value));
+            return;
+        }
+
+        final long scaled = (long) Math.floor(magnitude * scale + 0.5);
+        if(value < 0 || (value == 0 && 1 / value < 0))
+        {
+            sb.append('-');
+        }
+        sb.append(scaled / scale);
+        if(precision > 0)
+        {
+            sb.append('.');
+            final long fraction = scaled % scale;
+            for (int i = precision - 1; i >= 0; i--)
+            {
+                sb.append((char) ('0' + (fraction / POWERS_OF_TEN[i]) % 10));
+            }
+        }
+    }
+
+    private static void spaces(final StringBuilder sb, final int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            sb.append(' ');
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * Samples a meter periodically, providing the change in counter
+ * quantities and the rates since the previous sample.
+ *
+ * Each reader of a meter owns an IntervalSampler, the meter itself is
+ * not modified by sampling so independent readers (trace, JMX, file
+ * export) do not interfere with each other. Sampling into a caller-owned
+ * Interval is allocation-free.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   IntervalSampler sampler = new IntervalSampler(meter);
+ *   IntervalSampler.Interval interval = new IntervalSampler.Interval();
+ *   while(running)
+ *   {
+ *       sleep(period);
+ *       sampler.sample(interval);
+ *       export(interval.current.msgIn, interval.msgInRate());
+ *   }
+ * </PRE>
+ *
+ * Note: An IntervalSampler is not thread safe, it should be confined
+ *       to a single reader.
+ */
+public class IntervalSampler
+{
+
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    private final Metered meter;
+
+    private final Metered.MutableSample last = new Metered.MutableSample();
+    private long lastNanos;
+
+
+    public IntervalSampler(final Metered meter)
+    {
+        this.meter = meter;
+        reset();
+    }
+
+    /**
+     * Begin a new interval at the current meter quantities.
+     */
+    public void reset()
+    {
+        meter.getSample(last);
+        lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Sample the meter, ending the current interval and beginning
+     * the next.
+     *
+     * @param dest Receives the current quantities and the change
+     *             since the previous sample.
+     */
+    public void sample(final Interval dest)
+    {
+        meter.getSample(dest.current);
+        final long now = System.nanoTime();
+
+        final Metered.MutableSample current = dest.current;
+        dest.delta.set(current.msgIn - last.msgIn,
+                current.bytesIn - last.bytesIn,
+                current.msgOut - last.msgOut,
+                current.bytesOut - last.bytesOut,
+                current.utcIn - last.utcIn,
+                current.utcOut - last.utcOut);
+        dest.nanos = now - lastNanos;
+
+        last.set(current);
+        lastNanos = now;
+    }
+
+
+    /**
+     * The quantities of a sampling interval.
+     */
+    public static class Interval
+    {
+        /** The cumulative quantities at the end of the interval. */
+        public final Metered.MutableSample current =
+                new Metered.MutableSample();
+
+        /** The change of the quantities over the interval. */
+        public final Metered.MutableSample delta =
+                new Metered.MutableSample();
+
+        /** The duration of the interval. */
+        public long nanos;
+
+        public double seconds()
+        {
+            return nanos / NANOS_PER_SECOND;
+        }
+
+        public double msgInRate()
+        {
+            return perSecond(delta.msgIn);
+        }
+
+        public double msgOutRate()
+        {
+            return perSecond(delta.msgOut);
+        }
+
+        public double bytesInRate()
+        {
+            return perSecond(delta.bytesIn);
+        }
+
+        public double bytesOutRate()
+        {
+            return perSecond(delta.bytesOut);
+        }
+
+        public double utcInRate()
+        {
+            return perSecond(delta.utcIn);
+        }
+
+        public double utcOutRate()
+        {
+            return perSecond(delta.utcOut);
+        }
+
+        private double perSecond(final long value)
+        {
+            return (nanos > 0) ? value * NANOS_PER_SECOND / nanos : 0;
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * LatencyContent provides trace content derived from a Metered.Latency
+ * instance.
+ *
+ * Percentiles are calculated from the latencies reported during each
+ * trace period rather than over the life of the meter. Values are
+ * displayed in nanoseconds.
+ *
+ * Example
+ * <PRE>
+ *    #stage  [ latn        meanns      p50ns       p99ns       p999ns      maxns       ]
+ *            [ 1021844     812         703         2431        10751       65023       ]
+ *            [ 998304      799         703         2367        9983        49151       ]
+ * </PRE>
+ */
+public class LatencyContent implements Content
+{
+
+    /**
+     * The unit of the reported latencies.
+     */
+    public static enum Unit
+    {
+        NANOS(1),
+        UTC(10);   // tenths of nanoseconds
+
+        final long perNano;
+
+        Unit(final long perNano)
+        {
+            this.perNano = perNano;
+        }
+    }
+
+    /** The default fields. */
+    public static final LatencyField[] DEFAULT_FIELDS =
+            {
+                    LatencyField.COUNT,
+                    LatencyField.MEAN,
+                    LatencyField.P50,
+                    LatencyField.P99,
+                    LatencyField.P999,
+                    LatencyField.MAX
+            };
+
+
+    final Metered.Latency meter;
+    final LatencyField[] fields;
+    final String header;
+
+    final Interval interval;
+    long[] lastCounts;
+    long[] counts;
+    final IntervalSampler sampler;
+    final IntervalSampler.Interval sample = new IntervalSampler.Interval();
+
+
+    public LatencyContent(final Metered.Latency meter, final Unit unit)
+    {
+        this(meter, unit, DEFAULT_FIELDS);
+    }
+
+    public LatencyContent(final Metered.Latency meter, final Unit unit,
+                          final LatencyField... fields)
+    {
+        this.meter = meter;
+        this.fields = fields;
+        this.interval = new Interval(unit);
+        this.lastCounts = new long[LatencyHistogram.BUCKET_COUNT];
+        this.counts = new long[LatencyHistogram.BUCKET_COUNT];
+
+        meter.getCounts(lastCounts);
+        this.sampler = new IntervalSampler(meter);
+
+        StringBuilder hb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++)
+        {
+            hb.append(fields[i].header());
+        }
+        this.header = hb.toString();
+    }
+
+    @Override
+    public void header(final StringBuilder sb)
+    {
+        sb.append(header);
+    }
+
+    @Override
+    public void content(final StringBuilder sb)
+    {
+        update();
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sb, interval);
+        }
+    }
+
+    @Override
+    public void content(final ColumnSink sink)
+    {
+        update();
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sink, interval);
+        }
+    }
+
+    private void update()
+    {
+        sampler.sample(sample);
+        meter.getCounts(counts);
+
+        // convert the cumulative counts to counts for the period
+        long total = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            long current = counts[i];
+            counts[i] = current - lastCounts[i];
+            lastCounts[i] = current;
+            total += counts[i];
+        }
+        interval.counts = counts;
+        interval.total = total;
+        interval.sum = sample.delta.bytesIn;
+    }
+
+
+    /**
+     * The latencies of a single trace period.
+     */
+    static class Interval
+    {
+        final Unit unit;
+        long[] counts;
+        long total;
+        long sum;
+
+        Interval(final Unit unit)
+        {
+            this.unit = unit;
+        }
+
+        long percentileNanos(final double percentile)
+        {
+            return LatencyHistogram.percentile(counts, total, percentile)
+                    / unit.perNano;
+        }
+    }
+
+
+    public static enum LatencyField
+    {
+        COUNT(String.format("%-12s", "latn"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.total;
+                    }
+                },
+        MEAN(String.format("%-12s", "meanns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return (interval.total > 0) ?
+                                interval.sum / interval.total /
+                                        interval.unit.perNano : 0;
+                    }
+                },
+        P50(String.format("%-12s", "p50ns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.percentileNanos(50);
+                    }
+                },
+        P90(String.format("%-12s", "p90ns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.percentileNanos(90);
+                    }
+                },
+        P99(String.format("%-12s", "p99ns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.percentileNanos(99);
+                    }
+                },
+        P999(String.format("%-12s", "p999ns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.percentileNanos(99.9);
+                    }
+                },
+        MAX(String.format("%-12s", "maxns"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return LatencyHistogram.max(interval.counts) /
+                                interval.unit.perNano;
+                    }
+                };
+
+        static final String FORMAT = "%-12d";
+        static final int WIDTH = 12;
+
+        final String header;
+
+        LatencyField(final String header)
+        {
+            this.header = header;
+        }
+
+        public String header() { return header; }
+
+        void content(final StringBuilder sb, final Interval interval)
+        {
+            FieldAppender.appendLong(sb, value(interval), WIDTH);
+        }
+
+        void content(final ColumnSink sink, final Interval interval)
+        {
+            sink.longValue(FORMAT, value(interval));
+        }
+
+        abstract long value(final Interval interval);
+    }
+
+}
@@ -0,0 +1,122 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * Bucket arithmetic of the log-linear histogram backing latency meters.
+ *
+ * Values below 2^SUB_BUCKET_BITS are counted exactly. Larger values are
+ * counted in 2^(SUB_BUCKET_BITS-1) linear sub-buckets per power of two,
+ * bounding the relative error of a recorded value to 2^-(SUB_BUCKET_BITS-1)
+ * over the full range of positive longs in a fixed number of buckets.
+ *
+ * <PRE>
+ *    SUB_BUCKET_BITS = 7:  3712 buckets, relative error < 1.6%
+ * </PRE>
+ */
+public final class LatencyHistogram
+{
+
+    /** Sets the precision of the histogram. */
+    public static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    /** The number of buckets covering [0, Long.MAX_VALUE]. */
+    public static final int BUCKET_COUNT =
+            bucketIndex(Long.MAX_VALUE) + 1;
+
+
+    private LatencyHistogram()
+    {
+    }
+
+    /**
+     * @param value A value, negative values are counted as zero.
+     * @return The index of the bucket counting the value.
+     */
+    public static int bucketIndex(final long value)
+    {
+        if(value < SUB_BUCKET_COUNT)
+        {
+            return (value < 0) ? 0 : (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value)
+                - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index A bucket index.
+     * @return The smallest value counted by the bucket.
+     */
+    public static long lowestValue(final int index)
+    {
+        if(index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF - 1;
+        final long mantissa = index - shift * SUB_BUCKET_HALF;
+        return mantissa << shift;
+    }
+
+    /**
+     * @param index A bucket index.
+     * @return The largest value counted by the bucket.
+     */
+    public static long highestValue(final int index)
+    {
+        if(index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF - 1;
+        return lowestValue(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * Calculate a percentile of a set of bucket counts.
+     *
+     * @param counts The bucket counts.
+     * @param total The sum of the bucket counts.
+     * @param percentile The percentile, in the range [0, 100].
+     * @return The highest value of the bucket holding the percentile,
+     *         zero if there are no counts.
+     */
+    public static long percentile(final long[] counts, final long total,
+                                  final double percentile)
+    {
+        if(total <= 0)
+        {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            cumulative += counts[i];
+            if(cumulative >= rank)
+            {
+                return highestValue(i);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+
+    /**
+     * @return The highest value of the highest non-empty bucket, zero
+     *         if there are no counts.
+     */
+    public static long max(final long[] counts)
+    {
+        for (int i = counts.length - 1; i >= 0; i--)
+        {
+            if(counts[i] != 0)
+            {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+}
@@ -99,6 +99,59 @@ public class MeterContent implements Content
                     }
                 },
 
+        /* Smoothed message rates over 1, 10 and 60 second windows. */
+        MSG_RATE_AVERAGES
+                {
+                    @Override
+                    MeterField[] fields()
+                    {
+                        return new MeterField[]
+                                {
+                                        MeterField.MSPS_IN_1S,
+                                        MeterField.MSPS_IN_10S,
+                                        MeterField.MSPS_IN_60S,
+                                        MeterField.MSPS_OUT_1S,
+                                        MeterField.MSPS_OUT_10S,
+                                        MeterField.MSPS_OUT_60S
+                                };
+                    }
+                },
+        /* Smoothed data rates over 1, 10 and 60 second windows. */
+        DATA_RATE_AVERAGES
+                {
+                    @Override
+                    MeterField[] fields()
+                    {
+                        return new MeterField[]
+                                {
+                                        MeterField.MBPS_IN_1S,
+                                        MeterField.MBPS_IN_10S,
+                                        MeterField.MBPS_IN_60S,
+                                        MeterField.MBPS_OUT_1S,
+                                        MeterField.MBPS_OUT_10S,
+                                        MeterField.MBPS_OUT_60S
+                                };
+                    }
+                },
+
+        /*NOTE: Requires a UTC meter */
+        UTC_RATE_AVERAGES
+                {
+                    @Override
+                    MeterField[] fields()
+                    {
+                        return new MeterField[]
+                                {
+                                        MeterField.DATA_MILLIS_PER_SEC_IN_1S,
+                                        MeterField.DATA_MILLIS_PER_SEC_IN_10S,
+                                        MeterField.DATA_MILLIS_PER_SEC_IN_60S,
+                                        MeterField.DATA_MILLIS_PER_SEC_OUT_1S,
+                                        MeterField.DATA_MILLIS_PER_SEC_OUT_10S,
+                                        MeterField.DATA_MILLIS_PER_SEC_OUT_60S
+                                };
+                    }
+                },
+
         /*All fields including those requiring a UTC meter. */
         ALL
                 {
@@ -119,13 +172,17 @@ public class MeterContent implements Content
 
     final String header;
 
-    Metered.Sample lastSample;
+    final RateAverages averages = new RateAverages();
+
+    // the samples of the previous and current trace lines, swapped
+    // at each line
+    Metered.MutableSample lastSample = new Metered.MutableSample();
+    Metered.MutableSample sample = new Metered.MutableSample();
     long lastNano;
 
 
     static final int BYTES_PER_MB =      1024*1024;
     static final long UTC_PER_MILLIS =   10000000;
-    static final long NANOS_PER_MILLIS = 1000000000;
 
     public MeterContent(final Metered meter, Style... styles)
     {
@@ -136,7 +193,7 @@ public class MeterContent implements Content
     {
         this.meter = meter;
         this.fields = fields;
-        this.lastSample = meter.getSample();
+        meter.getSample(lastSample);
         this.lastNano = System.nanoTime();
 
         StringBuilder hb = new StringBuilder();
@@ -157,16 +214,38 @@ public class MeterContent implements Content
     @Override
     public void content(final StringBuilder sb)
     {
-        Metered.Sample sample = meter.getSample();
+        meter.getSample(sample);
         long now = System.nanoTime();
         float interval = (now - lastNano) / 1000000000f;
+        averages.update(lastSample, sample, interval);
 
         for (int i = 0; i < fields.length; i++)
         {
-            fields[i].content(sb, lastSample, sample, interval);
+            fields[i].content(sb, lastSample, sample, interval, averages);
         }
 
+        Metered.MutableSample tmp = lastSample;
         lastSample = sample;
+        sample = tmp;
+        lastNano = now;
+    }
+
+    @Override
+    public void content(final ColumnSink sink)
+    {
+        meter.getSample(sample);
+        long now = System.nanoTime();
+        float interval = (now - lastNano) / 1000000000f;
+        averages.update(lastSample, sample, interval);
+
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sink, lastSample, sample, interval, averages);
+        }
+
+        Metered.MutableSample tmp = lastSample;
+        lastSample = sample;
+        sample = tmp;
         lastNano = now;
     }
 
@@ -186,234 +265,561 @@ public class MeterContent implements Content
 
     public static enum MeterField
     {
-        MSGIN(String.format("%-12s", "msgin"))
+        MSGIN(String.format("%-12s", "msgin"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        sb.append(String.format("%-12d", current.msgIn));
+                        return current.msgIn;
                     }
                 },
-        MSPS_IN(String.format("%-12s", "mpsin"))
+        MSPS_IN(String.format("%-12s", "mpsin"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.msgIn - last.msgIn;
                         long mps =
                                 (long) (((float)delta) / secondsInterval);
-                        sb.append(String.format("%-12d", mps));
+                        return mps;
                     }
                 },
-        MSGOUT(String.format("%-12s", "msgout"))
+        MSGOUT(String.format("%-12s", "msgout"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        sb.append(String.format("%-12d", current.msgOut));
+                        return current.msgOut;
                     }
                 },
-        MSPS_OUT(String.format("%-12s", "mspsout"))
+        MSPS_OUT(String.format("%-12s", "mspsout"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.msgOut - last.msgOut;
                         long mps =
                                 (long) (((float)delta) / secondsInterval);
-                        sb.append(String.format("%-12d", mps));
+                        return mps;
                     }
                 },
-        MSGQ(String.format("%-12s", "msgq"))
+        MSGQ(String.format("%-12s", "msgq"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.msgIn - current.msgOut;
-                        sb.append(String.format("%-12d", delta));
+                        return delta;
                     }
                 },
-        MBIN(String.format("%-12s", "mbin"))
+        MBIN(String.format("%-12s", "mbin"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long mbin = current.bytesIn / BYTES_PER_MB;
-                        sb.append(String.format("%-12d", mbin));
+                        return mbin;
                     }
                 },
-        MBPS_IN(String.format("%-12s", "mbpsin"))
+        MBPS_IN(String.format("%-12s", "mbpsin"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        long delta = current.bytesOut - last.bytesOut;
+                        long delta = current.bytesIn - last.bytesIn;
                         long mbps =
                                 (long) (((float)delta / BYTES_PER_MB) /
                                         secondsInterval);
-                        sb.append(String.format("%-12d", mbps));
+                        return mbps;
                     }
                 },
-        MBOUT(String.format("%-12s", "mbout"))
+        MBOUT(String.format("%-12s", "mbout"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        long mbout = current.bytesIn / BYTES_PER_MB;
-                        sb.append(String.format("%-12d", mbout));
+                        long mbout = current.bytesOut / BYTES_PER_MB;
+                        return mbout;
                     }
                 },
-        MBPS_OUT(String.format("%-12s", "mbpsout"))
+        MBPS_OUT(String.format("%-12s", "mbpsout"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.bytesOut - last.bytesOut;
                         long mbps =
                                 (long) (((float)delta / secondsInterval) /
                                         BYTES_PER_MB);
-                        sb.append(String.format("%-12d", mbps));
+                        return mbps;
                     }
                 },
-        MBQ(String.format("%-12s", "mbq"))
+        MBQ(String.format("%-12s", "mbq"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.bytesIn - current.bytesOut;
-                        sb.append(String.format("%-12d", delta/BYTES_PER_MB));
+                        return delta/BYTES_PER_MB;
                     }
                 },
-        UTC_IN(String.format("%-24s", "utcin"))
+        UTC_IN(String.format("%-24s", "utcin"), "%-24d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        sb.append(String.format("%-24d", current.utcIn));
+                        return current.utcIn;
                     }
                 },
-        UTC_OUT(String.format("%-24s", "utcout"))
+        UTC_OUT(String.format("%-24s", "utcout"), "%-24d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
-                        sb.append(String.format("%-24d", current.utcOut));
+                        return current.utcOut;
                     }
                 },
         // UTC timespan of data in a buffered meter
-        UTC_DELAY_MILLIS(String.format("%-12s", "delms"))
+        UTC_DELAY_MILLIS(String.format("%-12s", "delms"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.utcIn - last.utcOut;
-                        sb.append(String.format("%-12d", delta/UTC_PER_MILLIS));
+                        return delta/UTC_PER_MILLIS;
                     }
                 },
         // Absolute delay between system clock and data
-        UTC_ABSOLUTE_DELAY_MILLIS(String.format("%-12s", "agems"))
+        UTC_ABSOLUTE_DELAY_MILLIS(String.format("%-12s", "agems"), "%-12d")
                 {
 
                     ICLClock utcClock = new ICLClock();
 
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long utcNow = utcClock.now();
                         long utcOut = last.utcOut;
                         long delta = utcNow - utcOut;
 
-                        sb.append(String.format("%-12d", delta/UTC_PER_MILLIS));
+                        return delta/UTC_PER_MILLIS;
                     }
-
                 },
-        DATA_MILLIS_PER_SEC_IN(String.format("%-12s", "millipsint"))
+        DATA_MILLIS_PER_SEC_IN(String.format("%-12s", "millipsint"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.utcIn - last.utcIn;
                         long mps =
-                            (long) (((float)delta/NANOS_PER_MILLIS) /
+                            (long) (((float)delta/UTC_PER_MILLIS) /
                                     secondsInterval);
-                        sb.append(String.format("%-12d", mps));
+                        return mps;
                     }
                 },
-        DATA_MILLIS_PER_SEC_OUT(String.format("%-12s", "millipsout"))
+        DATA_MILLIS_PER_SEC_OUT(String.format("%-12s", "millipsout"), "%-12d")
                 {
                     @Override
-                    public void content(final StringBuilder sb,
-                                        final Metered.Sample last,
-                                        final Metered.Sample current,
-                                        final float secondsInterval)
+                    long value(final Metered.MutableSample last,
+                               final Metered.MutableSample current,
+                               final float secondsInterval)
                     {
                         long delta = current.utcOut - last.utcOut;
                         long mps =
-                            (long) (((float)delta/NANOS_PER_MILLIS) /
+                            (long) (((float)delta/UTC_PER_MILLIS) /
                                     secondsInterval);
-                        sb.append(String.format("%-12d", mps));
+                        return mps;
                     }
-                };
+                },
+
+        /*Exponentially weighted moving averages of rates. */
+        MSPS_IN_1S(String.format("%-12s", "mpsin1s"), Rate.MSG_IN,
+                RateAverages.WINDOW_1S),
+        MSPS_IN_10S(String.format("%-12s", "mpsin10s"), Rate.MSG_IN,
+                RateAverages.WINDOW_10S),
+        MSPS_IN_60S(String.format("%-12s", "mpsin60s"), Rate.MSG_IN,
+                RateAverages.WINDOW_60S),
+        MSPS_OUT_1S(String.format("%-12s", "mpsout1s"), Rate.MSG_OUT,
+                RateAverages.WINDOW_1S),
+        MSPS_OUT_10S(String.format("%-12s", "mpsout10s"), Rate.MSG_OUT,
+                RateAverages.WINDOW_10S),
+        MSPS_OUT_60S(String.format("%-12s", "mpsout60s"), Rate.MSG_OUT,
+                RateAverages.WINDOW_60S),
+        MBPS_IN_1S(String.format("%-12s", "mbpsin1s"), Rate.BYTES_IN,
+                RateAverages.WINDOW_1S),
+        MBPS_IN_10S(String.format("%-12s", "mbpsin10s"), Rate.BYTES_IN,
+                RateAverages.WINDOW_10S),
+        MBPS_IN_60S(String.format("%-12s", "mbpsin60s"), Rate.BYTES_IN,
+                RateAverages.WINDOW_60S),
+        MBPS_OUT_1S(String.format("%-12s", "mbpsout1s"), Rate.BYTES_OUT,
+                RateAverages.WINDOW_1S),
+        MBPS_OUT_10S(String.format("%-12s", "mbpsout10s"), Rate.BYTES_OUT,
+                RateAverages.WINDOW_10S),
+        MBPS_OUT_60S(String.format("%-12s", "mbpsout60s"), Rate.BYTES_OUT,
+                RateAverages.WINDOW_60S),
+        DATA_MILLIS_PER_SEC_IN_1S(String.format("%-12s", "dmpsin1s"), Rate.UTC_IN,
+                RateAverages.WINDOW_1S),
+        DATA_MILLIS_PER_SEC_IN_10S(String.format("%-12s", "dmpsin10s"), Rate.UTC_IN,
+                RateAverages.WINDOW_10S),
+        DATA_MILLIS_PER_SEC_IN_60S(String.format("%-12s", "dmpsin60s"), Rate.UTC_IN,
+                RateAverages.WINDOW_60S),
+        DATA_MILLIS_PER_SEC_OUT_1S(String.format("%-12s", "dmpsout1s"), Rate.UTC_OUT,
+                RateAverages.WINDOW_1S),
+        DATA_MILLIS_PER_SEC_OUT_10S(String.format("%-12s", "dmpsout10s"), Rate.UTC_OUT,
+                RateAverages.WINDOW_10S),
+        DATA_MILLIS_PER_SEC_OUT_60S(String.format("%-12s", "dmpsout60s"), Rate.UTC_OUT,
+                RateAverages.WINDOW_60S);
 
         final String header;
+        final String format;
+        final int width;
+        final Rate rate;
+        final int window;
+
+        /**
+         * @param format A left justified long format, e.g. "%-12d".
+         */
+        MeterField(final String header, final String format)
+        {
+            this(header, format, null, -1);
+        }
 
-        MeterField(final String header)
+        /**
+         * A field rendering a smoothed rate.
+         *
+         * @param rate The rate.
+         * @param window The averaging window, one of RateAverages.WINDOW_*.
+         */
+        MeterField(final String header, final Rate rate, final int window)
+        {
+            this(header, "%-12d", rate, window);
+        }
+
+        private MeterField(final String header, final String format,
+                           final Rate rate, final int window)
         {
             this.header = header;
+            this.format = format;
+            this.width = Integer.parseInt(
+                    format.substring(2, format.length() - 1));
+            this.rate = rate;
+            this.window = window;
         }
 
 
         public String header() { return header; }
 
-        public abstract void content(final StringBuilder sb,
-                                     final Metered.Sample last,
-                                     final Metered.Sample current,
-                                     final float secondsInterval);
+        /**
+         * Render a field that does not require rate averages.
+         *
+         * @throws IllegalStateException The field is a rate average.
+         */
+        public void content(final StringBuilder sb,
+                            final Metered.Sample last,
+                            final Metered.Sample current,
+                            final float secondsInterval)
+        {
+            FieldAppender.appendLong(sb,
+                    value(mutable(last), mutable(current), secondsInterval),
+                    width);
+        }
+
+        /**
+         * Render a field that does not require rate averages.
+         *
+         * @throws IllegalStateException The field is a rate average.
+         */
+        public void content(final ColumnSink sink,
+                            final Metered.Sample last,
+                            final Metered.Sample current,
+                            final float secondsInterval)
+        {
+            sink.longValue(format,
+                    value(mutable(last), mutable(current), secondsInterval));
+        }
+
+        public void content(final StringBuilder sb,
+                            final Metered.Sample last,
+                            final Metered.Sample current,
+                            final float secondsInterval,
+                            final RateAverages averages)
+        {
+            content(sb, mutable(last), mutable(current), secondsInterval,
+                    averages);
+        }
+
+        public void content(final ColumnSink sink,
+                            final Metered.Sample last,
+                            final Metered.Sample current,
+                            final float secondsInterval,
+                            final RateAverages averages)
+        {
+            content(sink, mutable(last), mutable(current), secondsInterval,
+                    averages);
+        }
+
+        public void content(final StringBuilder sb,
+                            final Metered.MutableSample last,
+                            final Metered.MutableSample current,
+                            final float secondsInterval,
+                            final RateAverages averages)
+        {
+            FieldAppender.appendLong(sb,
+                    value(last, current, secondsInterval, averages), width);
+        }
+
+        public void content(final ColumnSink sink,
+                            final Metered.MutableSample last,
+                            final Metered.MutableSample current,
+                            final float secondsInterval,
+                            final RateAverages averages)
+        {
+            sink.longValue(format,
+                    value(last, current, secondsInterval, averages));
+        }
+
+        long value(final Metered.MutableSample last,
+                   final Metered.MutableSample current,
+                   final float secondsInterval,
+                   final RateAverages averages)
+        {
+            if(rate != null && averages != null)
+            {
+                return (long) (averages.get(rate, window) / rate.unit);
+            }
+            else
+            {
+                return value(last, current, secondsInterval);
+            }
+        }
+
+        long value(final Metered.MutableSample last,
+                   final Metered.MutableSample current,
+                   final float secondsInterval)
+        {
+            // implemented by all fields other than the rate averages
+            throw new IllegalStateException(name() + " requires averages");
+        }
+
+        private static Metered.MutableSample mutable(
+                final Metered.Sample sample)
+        {
+            Metered.MutableSample mutable = new Metered.MutableSample();
+            mutable.set(sample);
+            return mutable;
+        }
+    }
+
+
+    /**
+     * The counters of a sample that rates are averaged for, along
+     * with the unit each rate is rendered in.
+     */
+    public static enum Rate
+    {
+        MSG_IN(1)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.msgIn;
+                    }
+                },
+        MSG_OUT(1)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.msgOut;
+                    }
+                },
+        BYTES_IN(BYTES_PER_MB)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.bytesIn;
+                    }
+                },
+        BYTES_OUT(BYTES_PER_MB)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.bytesOut;
+                    }
+                },
+        UTC_IN(UTC_PER_MILLIS, true)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.utcIn;
+                    }
+                },
+        UTC_OUT(UTC_PER_MILLIS, true)
+                {
+                    @Override
+                    long counter(final Metered.MutableSample sample)
+                    {
+                        return sample.utcOut;
+                    }
+                };
+
+        final double unit;
+
+        // the counter is an absolute time that is zero until the
+        // first report rather than a count from zero
+        final boolean isTime;
+
+        Rate(final double unit)
+        {
+            this(unit, false);
+        }
+
+        Rate(final double unit, final boolean isTime)
+        {
+            this.unit = unit;
+            this.isTime = isTime;
+        }
+
+        /**
+         * @return True if the interval ending at a sample has a rate,
+         *         false for a time counter that was not yet reported
+         *         at the start of the interval.
+         */
+        boolean hasRate(final Metered.MutableSample last)
+        {
+            return !isTime || counter(last) != 0;
+        }
+
+        abstract long counter(final Metered.MutableSample sample);
+    }
+
+
+    /**
+     * Exponentially weighted moving averages of the per-second rates of
+     * the sample counters over 1, 10 and 60 second windows.
+     *
+     * The averages are updated incrementally from successive samples,
+     * weighting each interval rate by 1 - e^(-interval/window) so that
+     * irregular sample intervals decay the history by elapsed time
+     * rather than by sample count. The first update of each rate seeds
+     * its averages with the interval rate.
+     *
+     * A time rate is not updated until the interval starts from a
+     * reported time, the jump from zero to the first absolute time is
+     * not a rate.
+     *
+     * Note: Not thread safe.
+     */
+    public static class RateAverages
+    {
+        public static final int WINDOW_1S = 0;
+        public static final int WINDOW_10S = 1;
+        public static final int WINDOW_60S = 2;
+
+        static final float[] WINDOW_SECONDS = {1, 10, 60};
+
+        private static final Rate[] RATES = Rate.values();
+
+        private final double[][] rates =
+                new double[RATES.length][WINDOW_SECONDS.length];
+        private final double[] alpha = new double[WINDOW_SECONDS.length];
+
+        private final boolean[] seeded = new boolean[RATES.length];
+
+
+        /**
+         * Fold the rates of an interval into the averages.
+         */
+        public void update(final Metered.Sample last,
+                           final Metered.Sample current,
+                           final float secondsInterval)
+        {
+            Metered.MutableSample mutableLast = new Metered.MutableSample();
+            Metered.MutableSample mutableCurrent =
+                    new Metered.MutableSample();
+            mutableLast.set(last);
+            mutableCurrent.set(current);
+            update(mutableLast, mutableCurrent, secondsInterval);
+        }
+
+        /**
+         * Fold the rates of an interval into the averages.
+         */
+        public void update(final Metered.MutableSample last,
+                           final Metered.MutableSample current,
+                           final float secondsInterval)
+        {
+            if(secondsInterval <= 0)
+            {
+                return;
+            }
+
+            for (int w = 0; w < alpha.length; w++)
+            {
+                alpha[w] = 1 - Math.exp(-secondsInterval /
+                        WINDOW_SECONDS[w]);
+            }
+
+            for (int r = 0; r < RATES.length; r++)
+            {
+                if(!RATES[r].hasRate(last))
+                {
+                    continue;
+                }
+
+                final double rate = (RATES[r].counter(current) -
+                        RATES[r].counter(last)) / secondsInterval;
+                final double[] averages = rates[r];
+                for (int w = 0; w < averages.length; w++)
+                {
+                    averages[w] = seeded[r] ?
+                            averages[w] + alpha[w] * (rate - averages[w]) :
+                            rate;
+                }
+                seeded[r] = true;
+            }
+        }
+
+        /**
+         * @return The average rate per second in counter units.
+         */
+        public double get(final Rate rate, final int window)
+        {
+            return rates[rate.ordinal()][window];
+        }
     }
 
 
@@ -0,0 +1,298 @@
+package icecube.daq.performance.diagnostic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * A directory of meters registered under hierarchical, dotted names.
+ *
+ * Components register meters as they are created, consumers such as
+ * traces and exporters discover them by name or name prefix and read
+ * them in bulk.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   MeterRegistry.global().register("stringhub.21.sender", senderMeter);
+ *   MeterRegistry.global().register("stringhub.21.sorter", sorterMeter);
+ *
+ *   MeterRegistry.Snapshot snapshot = new MeterRegistry.Snapshot();
+ *   MeterRegistry.global().snapshot("stringhub.21", snapshot);
+ *   for (int i = 0; i < snapshot.size(); i++)
+ *   {
+ *       export(snapshot.name(i), snapshot.sample(i));
+ *   }
+ * </PRE>
+ *
+ * Names are iterated in lexical order, so the meters of a subtree
+ * are contiguous.
+ */
+public class MeterRegistry
+{
+
+    /** A name is one or more dot separated segments. */
+    private static final Pattern NAME =
+            Pattern.compile("[A-Za-z0-9_\\-]+(\\.[A-Za-z0-9_\\-]+)*");
+
+    private static final MeterRegistry GLOBAL = new MeterRegistry();
+
+    private final ConcurrentSkipListMap<String, Metered> meters =
+            new ConcurrentSkipListMap<>();
+
+
+    /**
+     * @return The process-wide registry.
+     */
+    public static MeterRegistry global()
+    {
+        return GLOBAL;
+    }
+
+    /**
+     * Register a meter.
+     *
+     * @param name The dotted name of the meter, e.g. "stringhub.21.sender".
+     * @param meter The meter.
+     * @throws IllegalArgumentException if the name is malformed or already
+     *         registered.
+     */
+    public void register(final String name, final Metered meter)
+    {
+        if(!NAME.matcher(name).matches())
+        {
+            throw new IllegalArgumentException("Malformed meter name: " +
+                    name);
+        }
+        if(meter == null)
+        {
+            throw new IllegalArgumentException("Null meter: " + name);
+        }
+        if(meters.putIfAbsent(name, meter) != null)
+        {
+            throw new IllegalArgumentException("Meter already registered: " +
+                    name);
+        }
+    }
+
+    /**
+     * @return true if a meter was registered under the name.
+     */
+    public boolean unregister(final String name)
+    {
+        return meters.remove(name) != null;
+    }
+
+    /**
+     * Unregister a meter and all meters below it in the hierarchy.
+     *
+     * @return The number of meters unregistered.
+     */
+    public int unregisterAll(final String prefix)
+    {
+        int count = 0;
+        for (String name : names(prefix))
+        {
+            if(unregister(name))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The meter registered under the name, or null.
+     */
+    public Metered get(final String name)
+    {
+        return meters.get(name);
+    }
+
+    /**
+     * @return The number of registered meters.
+     */
+    public int size()
+    {
+        return meters.size();
+    }
+
+    /**
+     * @return The names of all registered meters, in lexical order.
+     */
+    public List<String> names()
+    {
+        return new ArrayList<>(meters.keySet());
+    }
+
+    /**
+     * @param prefix A dotted name.
+     * @return The names of the meter registered under the prefix and
+     *         all meters below it in the hierarchy, in lexical order.
+     */
+    public List<String> names(final String prefix)
+    {
+        List<String> acc = new ArrayList<>();
+        if(meters.containsKey(prefix))
+        {
+            acc.add(prefix);
+        }
+        acc.addAll(children(prefix).keySet());
+        return acc;
+    }
+
+    /**
+     * Sample all registered meters.
+     *
+     * @param dest Receives the samples, reused between calls.
+     */
+    public void snapshot(final Snapshot dest)
+    {
+        dest.begin();
+        for (String name = meters.ceilingKey(""); name != null;
+             name = meters.higherKey(name))
+        {
+            add(name, dest);
+        }
+    }
+
+    /**
+     * Sample the meter registered under the prefix and all meters below
+     * it in the hierarchy.
+     *
+     * @param prefix A dotted name.
+     * @param dest Receives the samples, reused between calls.
+     */
+    public void snapshot(final String prefix, final Snapshot dest)
+    {
+        dest.begin();
+
+        // walk the keys from the prefix rather than iterating a view,
+        // which allocates. The prefix sorts before its children, and
+        // names that extend the prefix with a character above '.' sort
+        // after them.
+        final int length = prefix.length();
+        for (String name = meters.ceilingKey(prefix);
+             name != null && name.startsWith(prefix);
+             name = meters.higherKey(name))
+        {
+            if(name.length() == length || name.charAt(length) == '.')
+            {
+                add(name, dest);
+            }
+            else if(name.charAt(length) > '.')
+            {
+                break;
+            }
+        }
+    }
+
+    private void add(final String name, final Snapshot dest)
+    {
+        // null if unregistered since the key was read
+        final Metered meter = meters.get(name);
+        if(meter != null)
+        {
+            dest.add(name, meter);
+        }
+    }
+
+    private NavigableMap<String, Metered> children(final String prefix)
+    {
+        // '/' follows '.' so the range covers exactly the "prefix." names
+        return meters.subMap(prefix + ".", true, prefix + "/", false);
+    }
+
+
+    /**
+     * The samples of a set of meters read in a single pass.
+     *
+     * Meters are read back-to-back at a single timestamp. As with
+     * individual samples, counters of different meters are not
+     * synchronized with each other.
+     *
+     * Sample instances are retained between snapshots, a snapshot of an
+     * unchanged set of meters does not allocate.
+     */
+    public static class Snapshot
+    {
+        private String[] names = new String[16];
+        private Metered.MutableSample[] samples =
+                new Metered.MutableSample[16];
+        private int size;
+        private long nanos;
+
+        /**
+         * @return The number of meters sampled.
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * @return The System.nanoTime() of the snapshot.
+         */
+        public long nanos()
+        {
+            return nanos;
+        }
+
+        public String name(final int index)
+        {
+            checkIndex(index);
+            return names[index];
+        }
+
+        public Metered.MutableSample sample(final int index)
+        {
+            checkIndex(index);
+            return samples[index];
+        }
+
+        /**
+         * @return The sample of the named meter, or null if the meter
+         *         was not in the snapshot.
+         */
+        public Metered.MutableSample sample(final String name)
+        {
+            final int index = Arrays.binarySearch(names, 0, size, name);
+            return (index < 0) ? null : samples[index];
+        }
+
+        private void begin()
+        {
+            size = 0;
+            nanos = System.nanoTime();
+        }
+
+        private void add(final String name, final Metered meter)
+        {
+            if(size == names.length)
+            {
+                names = Arrays.copyOf(names, size * 2);
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            if(samples[size] == null)
+            {
+                samples[size] = new Metered.MutableSample();
+            }
+            names[size] = name;
+            meter.getSample(samples[size]);
+            size++;
+        }
+
+        private void checkIndex(final int index)
+        {
+            if(index < 0 || index >= size)
+            {
+                throw new IndexOutOfBoundsException("index: " + index +
+                        ", size: " + size);
+            }
+        }
+    }
+
+}
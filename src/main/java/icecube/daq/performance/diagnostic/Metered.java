@@ -2,6 +2,8 @@ package icecube.daq.performance.diagnostic;
 
 import sun.misc.Contended;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
@@ -60,6 +62,43 @@ public interface Metered
         }
     }
 
+    /**
+     * A reusable holder of counter quantities.
+     */
+    public class MutableSample
+    {
+        public long msgIn;
+        public long bytesIn;
+        public long msgOut;
+        public long bytesOut;
+        public long utcIn;
+        public long utcOut;
+
+        public void set(final long msgIn, final long bytesIn,
+                        final long msgOut, final long bytesOut,
+                        final long utcIn, final long utcOut)
+        {
+            this.msgIn = msgIn;
+            this.bytesIn = bytesIn;
+            this.msgOut = msgOut;
+            this.bytesOut = bytesOut;
+            this.utcIn = utcIn;
+            this.utcOut = utcOut;
+        }
+
+        public void set(final Sample sample)
+        {
+            set(sample.msgIn, sample.bytesIn, sample.msgOut,
+                    sample.bytesOut, sample.utcIn, sample.utcOut);
+        }
+
+        public void set(final MutableSample sample)
+        {
+            set(sample.msgIn, sample.bytesIn, sample.msgOut,
+                    sample.bytesOut, sample.utcIn, sample.utcOut);
+        }
+    }
+
     /**
      * Read the current counter quantities. Counters are read
      * en masse (rather than one-by-one) for consistency of
@@ -67,6 +106,17 @@ public interface Metered
      */
     public Sample getSample();
 
+    /**
+     * Read the current counter quantities into a caller-owned sample,
+     * supporting periodic readers without allocation.
+     *
+     * @param dest Receives the counter quantities.
+     */
+    public default void getSample(final MutableSample dest)
+    {
+        dest.set(getSample());
+    }
+
 
 
     /**
@@ -114,12 +164,33 @@ public interface Metered
                               final long utc);
     }
 
+    /**
+     * Defines the reporting side of a latency measurement.
+     *
+     * Latencies are counted in a LatencyHistogram, the unit of the
+     * latency (e.g. nanoseconds or UTC tenths of nanoseconds) is
+     * defined by the reporter. The sample reports the number of
+     * latencies as messages and the sum of the latencies as bytes.
+     */
+    public interface Latency extends Metered
+    {
+        public void reportLatency(final long latency);
+
+        /**
+         * Read the bucket counts of the histogram.
+         *
+         * @param counts Receives the counts, sized to
+         *               LatencyHistogram.BUCKET_COUNT.
+         */
+        public void getCounts(final long[] counts);
+    }
+
 
     /**
      * A null implementation.
      */
     public class NullMeter implements Throughput, Buffered,
-            UTCThroughput, UTCBuffered
+            UTCThroughput, UTCBuffered, Latency
     {
         Sample nullSample = new Sample(0, 0, 0, 0, 0, 0);
 
@@ -191,6 +262,17 @@ public interface Metered
                                  final long utc)
         {
         }
+
+        @Override
+        public final void reportLatency(final long latency)
+        {
+        }
+
+        @Override
+        public void getCounts(final long[] counts)
+        {
+            Arrays.fill(counts, 0);
+        }
     }
 
 
@@ -227,8 +309,12 @@ public interface Metered
             MPMC,  // multiple threads reporting input and
                    // multiple threads reporting output
 
-            SPSC   // single thread reporting input and
+            SPSC,  // single thread reporting input and
                    // single thread reporting output
+
+            STRIPED // multiple threads reporting to padded per-thread
+                    // counters, for hot paths with a fixed set of
+                    // reporting threads
         }
 
         // Factory methods are provided to narrow the scope of
@@ -257,6 +343,11 @@ public interface Metered
 
         }
 
+        public static Latency latencyMeter()
+        {
+            return latencyMeter(ConcurrencyModel.SPSC);
+        }
+
         public static Throughput throughputMeter(ConcurrencyModel concurrency)
         {
             switch (concurrency)
@@ -265,6 +356,8 @@ public interface Metered
                     return new ThroughputMeterImpl();
                 case MPMC:
                     return new ConcurrentThroughputMeterImpl();
+                case STRIPED:
+                    return new StripedThroughputMeterImpl();
                 default:
                     throw new IllegalArgumentException("unknown" + concurrency);
             }
@@ -280,6 +373,8 @@ public interface Metered
                     return new ThroughputMeterImpl();
                 case MPMC:
                     return new ConcurrentThroughputMeterImpl();
+                case STRIPED:
+                    return new StripedThroughputMeterImpl();
                 default:
                     throw new IllegalArgumentException("unknown" + concurrency);
             }
@@ -293,6 +388,8 @@ public interface Metered
                     return new BufferedMeterImpl();
                 case MPMC:
                     return new ConcurrentBufferedMeterImpl();
+                case STRIPED:
+                    return new StripedBufferedMeterImpl();
                 default:
                     throw new IllegalArgumentException("unknown" + concurrency);
             }
@@ -306,6 +403,23 @@ public interface Metered
                     return new BufferedMeterImpl();
                 case MPMC:
                     return new ConcurrentBufferedMeterImpl();
+                case STRIPED:
+                    return new StripedBufferedMeterImpl();
+                default:
+                    throw new IllegalArgumentException("unknown" + concurrency);
+            }
+        }
+
+        public static Latency latencyMeter(ConcurrencyModel concurrency)
+        {
+            switch (concurrency)
+            {
+                case SPSC:
+                    return new LatencyMeterImpl();
+                case MPMC:
+                    return new ConcurrentLatencyMeterImpl();
+                case STRIPED:
+                    return new StripedLatencyMeterImpl();
                 default:
                     throw new IllegalArgumentException("unknown" + concurrency);
             }
@@ -360,6 +474,12 @@ public interface Metered
         {
             return new Sample(msgs, bytes, msgs, bytes, utc, utc);
         }
+
+        @Override
+        public void getSample(final MutableSample dest)
+        {
+            dest.set(msgs, bytes, msgs, bytes, utc, utc);
+        }
     }
 
     /**
@@ -451,6 +571,16 @@ public interface Metered
                     utcIn, localUtcOut);
         }
 
+        @Override
+        public void getSample(final MutableSample dest)
+        {
+            long localMsgOut = msgOut;
+            long localByteOut = byteOut;
+            long localUtcOut = utcOut;
+            dest.set(msgIn, byteIn, localMsgOut, localByteOut,
+                    utcIn, localUtcOut);
+        }
+
     }
 
         /**
@@ -498,6 +628,14 @@ public interface Metered
                 long bytesIn = bytes.longValue();
                 return new Sample(msgIn, bytesIn, msgIn, bytesIn, utc, utc);
             }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long msgIn = msgs.longValue();
+                long bytesIn = bytes.longValue();
+                dest.set(msgIn, bytesIn, msgIn, bytesIn, utc, utc);
+            }
         }
 
         /**
@@ -587,6 +725,313 @@ public interface Metered
                         utcIn, localUtcOut);
             }
 
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long localMsgOut = msgOut.longValue();
+                long localBytesOut = byteOut.longValue();
+                long localUtcOut = utcOut;
+                dest.set(msgIn.longValue(), byteIn.longValue(),
+                        localMsgOut, localBytesOut,
+                        utcIn, localUtcOut);
+            }
+
+        }
+
+        /**
+         * A latency meter that supports a single reporting thread.
+         *
+         * Buckets are updated with ordered writes, so a reader observes
+         * each bucket consistently without a locked increment.
+         */
+        protected static class LatencyMeterImpl implements Latency
+        {
+            private final AtomicLongArray counts =
+                    new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+            private volatile long count;
+            private volatile long sum;
+
+            @Override
+            public void reportLatency(final long latency)
+            {
+                final int index = LatencyHistogram.bucketIndex(latency);
+                counts.lazySet(index, counts.get(index) + 1);
+                count++;
+                sum+=latency;
+            }
+
+            @Override
+            public void getCounts(final long[] dest)
+            {
+                for (int i = 0; i < dest.length; i++)
+                {
+                    dest[i] = counts.get(i);
+                }
+            }
+
+            @Override
+            public Sample getSample()
+            {
+                long localCount = count;
+                long localSum = sum;
+                return new Sample(localCount, localSum, localCount, localSum);
+            }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long localCount = count;
+                long localSum = sum;
+                dest.set(localCount, localSum, localCount, localSum, 0, 0);
+            }
+        }
+
+        /**
+         * A latency meter that supports multiple reporting threads.
+         */
+        protected static class ConcurrentLatencyMeterImpl implements Latency
+        {
+            private final AtomicLongArray counts =
+                    new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+            private LongAdder count = new LongAdder();
+            private LongAdder sum = new LongAdder();
+
+            @Override
+            public void reportLatency(final long latency)
+            {
+                counts.incrementAndGet(LatencyHistogram.bucketIndex(latency));
+                count.increment();
+                sum.add(latency);
+            }
+
+            @Override
+            public void getCounts(final long[] dest)
+            {
+                for (int i = 0; i < dest.length; i++)
+                {
+                    dest[i] = counts.get(i);
+                }
+            }
+
+            @Override
+            public Sample getSample()
+            {
+                long localCount = count.longValue();
+                long localSum = sum.longValue();
+                return new Sample(localCount, localSum, localCount, localSum);
+            }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long localCount = count.longValue();
+                long localSum = sum.longValue();
+                dest.set(localCount, localSum, localCount, localSum, 0, 0);
+            }
+        }
+
+        /**
+         * A throughput meter that supports multiple threads reporting
+         * to per-thread counters.
+         */
+        protected static class StripedThroughputMeterImpl
+                implements Throughput, UTCThroughput
+        {
+            private static final int MSGS = 0;
+            private static final int BYTES = 1;
+
+            private final StripedCounters counters = new StripedCounters(2);
+            @Contended
+            private volatile long utc;
+
+            @Override
+            public void report(final int size)
+            {
+                report(1, size);
+            }
+
+            @Override
+            public void report(final int msgCount, final int size)
+            {
+                final AtomicLongArray slot = counters.slot();
+                StripedCounters.add(slot, MSGS, msgCount);
+                StripedCounters.add(slot, BYTES, size);
+            }
+
+            @Override
+            public void report(final int size, final long utc)
+            {
+                report(1, size, utc);
+            }
+
+            @Override
+            public void report(final int msgCount, final int size,
+                               final long utc)
+            {
+                report(msgCount, size);
+                this.utc = utc;
+            }
+
+            @Override
+            public Sample getSample()
+            {
+                long msgs = counters.sum(MSGS);
+                long bytes = counters.sum(BYTES);
+                return new Sample(msgs, bytes, msgs, bytes, utc, utc);
+            }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long msgs = counters.sum(MSGS);
+                long bytes = counters.sum(BYTES);
+                dest.set(msgs, bytes, msgs, bytes, utc, utc);
+            }
+        }
+
+        /**
+         * A buffered meter that supports multiple threads reporting
+         * input and output to per-thread counters.
+         */
+        protected static class StripedBufferedMeterImpl
+                implements Buffered, UTCBuffered
+        {
+            private static final int MSG_IN = 0;
+            private static final int BYTE_IN = 1;
+            private static final int MSG_OUT = 2;
+            private static final int BYTE_OUT = 3;
+
+            private final StripedCounters counters = new StripedCounters(4);
+            @Contended("in")
+            private volatile long utcIn;
+            @Contended("out")
+            private volatile long utcOut;
+
+            @Override
+            public void reportIn(final int size)
+            {
+                reportIn(1, size);
+            }
+
+            @Override
+            public void reportIn(final int msgCount, final int size)
+            {
+                final AtomicLongArray slot = counters.slot();
+                StripedCounters.add(slot, MSG_IN, msgCount);
+                StripedCounters.add(slot, BYTE_IN, size);
+            }
+
+            @Override
+            public void reportOut(final int size)
+            {
+                reportOut(1, size);
+            }
+
+            @Override
+            public void reportOut(final int msgCount, final int size)
+            {
+                final AtomicLongArray slot = counters.slot();
+                StripedCounters.add(slot, MSG_OUT, msgCount);
+                StripedCounters.add(slot, BYTE_OUT, size);
+            }
+
+            @Override
+            public void reportIn(final int size, final long utc)
+            {
+                reportIn(1, size, utc);
+            }
+
+            @Override
+            public void reportIn(final int msgCount, final int size,
+                                 final long utc)
+            {
+                reportIn(msgCount, size);
+                utcIn = utc;
+            }
+
+            @Override
+            public void reportOut(final int size, final long utc)
+            {
+                reportOut(1, size, utc);
+            }
+
+            @Override
+            public void reportOut(final int msgCount, final int size,
+                                  final long utc)
+            {
+                reportOut(msgCount, size);
+                utcOut = utc;
+            }
+
+            @Override
+            public Sample getSample()
+            {
+                // access output first to prefer an over-count of held
+                // data over an under-count
+                long localMsgOut = counters.sum(MSG_OUT);
+                long localBytesOut = counters.sum(BYTE_OUT);
+                long localUtcOut = utcOut;
+                return new Sample(counters.sum(MSG_IN), counters.sum(BYTE_IN),
+                        localMsgOut, localBytesOut,
+                        utcIn, localUtcOut);
+            }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long localMsgOut = counters.sum(MSG_OUT);
+                long localBytesOut = counters.sum(BYTE_OUT);
+                long localUtcOut = utcOut;
+                dest.set(counters.sum(MSG_IN), counters.sum(BYTE_IN),
+                        localMsgOut, localBytesOut,
+                        utcIn, localUtcOut);
+            }
+        }
+
+        /**
+         * A latency meter that supports multiple threads reporting to
+         * per-thread histograms.
+         */
+        protected static class StripedLatencyMeterImpl implements Latency
+        {
+            private static final int COUNT = 0;
+            private static final int SUM = 1;
+            private static final int BUCKETS = 2;
+
+            private final StripedCounters counters =
+                    new StripedCounters(BUCKETS + LatencyHistogram.BUCKET_COUNT);
+
+            @Override
+            public void reportLatency(final long latency)
+            {
+                final AtomicLongArray slot = counters.slot();
+                StripedCounters.add(slot,
+                        BUCKETS + LatencyHistogram.bucketIndex(latency), 1);
+                StripedCounters.add(slot, COUNT, 1);
+                StripedCounters.add(slot, SUM, latency);
+            }
+
+            @Override
+            public void getCounts(final long[] dest)
+            {
+                counters.sum(BUCKETS, dest);
+            }
+
+            @Override
+            public Sample getSample()
+            {
+                long localCount = counters.sum(COUNT);
+                long localSum = counters.sum(SUM);
+                return new Sample(localCount, localSum, localCount, localSum);
+            }
+
+            @Override
+            public void getSample(final MutableSample dest)
+            {
+                long localCount = counters.sum(COUNT);
+                long localSum = counters.sum(SUM);
+                dest.set(localCount, localSum, localCount, localSum, 0, 0);
+            }
         }
 
 
@@ -0,0 +1,103 @@
+package icecube.daq.performance.diagnostic;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of counters striped over per-thread slots.
+ *
+ * Each reporting thread owns a slot that only it writes, so counters
+ * are updated with ordered writes rather than locked increments. Slots
+ * are padded by a cache line on each side so that the writes of one
+ * thread do not invalidate the lines of another. Readers aggregate the
+ * slots.
+ *
+ * Slots outlive their threads so that counts are not lost, the number
+ * of slots grows with the number of distinct reporting threads. This
+ * suits the fixed thread populations of the hot paths, not meters
+ * reported to by short lived threads.
+ */
+class StripedCounters
+{
+
+    /** Longs per 64 byte cache line. */
+    static final int PAD = 8;
+
+    private final int width;
+    private final ThreadLocal<AtomicLongArray> local;
+
+    private volatile AtomicLongArray[] slots = new AtomicLongArray[0];
+
+
+    /**
+     * @param width The number of counters.
+     */
+    StripedCounters(final int width)
+    {
+        this.width = width;
+        this.local = ThreadLocal.withInitial(this::register);
+    }
+
+    /**
+     * @return The slot of the calling thread.
+     */
+    AtomicLongArray slot()
+    {
+        return local.get();
+    }
+
+    /**
+     * Add to a counter of a slot owned by the calling thread.
+     */
+    static void add(final AtomicLongArray slot, final int counter,
+                    final long delta)
+    {
+        final int index = PAD + counter;
+        slot.lazySet(index, slot.get(index) + delta);
+    }
+
+    /**
+     * @return The sum of a counter over all slots.
+     */
+    long sum(final int counter)
+    {
+        final int index = PAD + counter;
+        final AtomicLongArray[] local = slots;
+        long sum = 0;
+        for (int i = 0; i < local.length; i++)
+        {
+            sum += local[i].get(index);
+        }
+        return sum;
+    }
+
+    /**
+     * Sum a range of counters over all slots.
+     *
+     * @param from The first counter.
+     * @param dest Receives the sums of counters from..from+dest.length.
+     */
+    void sum(final int from, final long[] dest)
+    {
+        Arrays.fill(dest, 0);
+        final AtomicLongArray[] local = slots;
+        for (int i = 0; i < local.length; i++)
+        {
+            final AtomicLongArray slot = local[i];
+            for (int j = 0; j < dest.length; j++)
+            {
+                dest[j] += slot.get(PAD + from + j);
+            }
+        }
+    }
+
+    private synchronized AtomicLongArray register()
+    {
+        AtomicLongArray slot = new AtomicLongArray(PAD + width + PAD);
+        AtomicLongArray[] grown = Arrays.copyOf(slots, slots.length + 1);
+        grown[slots.length] = slot;
+        slots = grown;
+        return slot;
+    }
+
+}
@@ -0,0 +1,229 @@
+package icecube.daq.performance.diagnostic;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs periodic trace ticks on a single, low priority daemon thread
+ * shared by the traces of a JVM.
+ *
+ * Ticks are scheduled at fixed times from the start of a task, so the
+ * tick phase does not drift with the duration of ticks. A tick that
+ * overruns its period does not cause a burst of late ticks, the missed
+ * ticks are skipped and counted instead.
+ *
+ * The lateness of each tick against its scheduled time is reported to
+ * a latency meter, in nanoseconds.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   TraceScheduler.Task task =
+ *           TraceScheduler.shared().schedule(tick, 1000);
+ *   ...
+ *   task.cancel();
+ * </PRE>
+ */
+public class TraceScheduler
+{
+
+    private static final Logger LOG = Logger.getLogger(TraceScheduler.class);
+
+    private static TraceScheduler shared;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+
+    /**
+     * @param name The name of the scheduler thread.
+     */
+    public TraceScheduler(final String name)
+    {
+        executor = new ScheduledThreadPoolExecutor(1, r ->
+        {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return The scheduler shared by the traces of the JVM.
+     */
+    public static synchronized TraceScheduler shared()
+    {
+        if(shared == null)
+        {
+            shared = new TraceScheduler("diagnostic-trace");
+        }
+        return shared;
+    }
+
+    /**
+     * Schedule a periodic tick, the first tick runs immediately.
+     *
+     * @param tick The tick.
+     * @param periodMillis The period of the tick.
+     * @return The scheduled task.
+     */
+    public Task schedule(final Runnable tick, final long periodMillis)
+    {
+        return schedule(tick, periodMillis, Metered.Factory.latencyMeter());
+    }
+
+    /**
+     * Schedule a periodic tick, the first tick runs immediately.
+     *
+     * @param tick The tick.
+     * @param periodMillis The period of the tick.
+     * @param jitter Receives the lateness of ticks in nanoseconds.
+     * @return The scheduled task.
+     */
+    public Task schedule(final Runnable tick, final long periodMillis,
+                         final Metered.Latency jitter)
+    {
+        if(periodMillis <= 0)
+        {
+            throw new IllegalArgumentException("Bad period: " + periodMillis);
+        }
+        Task task = new Task(tick, TimeUnit.MILLISECONDS.toNanos(periodMillis),
+                jitter);
+        task.start();
+        return task;
+    }
+
+    /**
+     * Stop the scheduler thread, cancelling all tasks.
+     *
+     * @throws IllegalStateException The scheduler is the shared scheduler,
+     *                               which lives as long as the JVM.
+     */
+    public void shutdown()
+    {
+        synchronized (TraceScheduler.class)
+        {
+            if(this == shared)
+            {
+                throw new IllegalStateException("The shared scheduler" +
+                        " can not be shut down");
+            }
+        }
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * A periodic tick.
+     */
+    public class Task implements Runnable
+    {
+        private final Runnable tick;
+        private final long periodNanos;
+
+        private final Metered.Latency jitter;
+        private volatile long skipped;
+
+        private long epochNanos;
+        private long index;
+
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> future;
+
+
+        private Task(final Runnable tick, final long periodNanos,
+                     final Metered.Latency jitter)
+        {
+            this.tick = tick;
+            this.periodNanos = periodNanos;
+            this.jitter = jitter;
+        }
+
+        private void start()
+        {
+            epochNanos = System.nanoTime();
+            future = executor.schedule(this, 0, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Stop the task, a tick in progress completes.
+         */
+        public void cancel()
+        {
+            cancelled = true;
+            ScheduledFuture<?> current = future;
+            if(current != null)
+            {
+                current.cancel(false);
+            }
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        /**
+         * @return The lateness of ticks in nanoseconds.
+         */
+        public Metered.Latency getJitter()
+        {
+            return jitter;
+        }
+
+        /**
+         * @return The number of ticks skipped due to overrun.
+         */
+        public long getSkippedTicks()
+        {
+            return skipped;
+        }
+
+        @Override
+        public void run()
+        {
+            if(cancelled)
+            {
+                return;
+            }
+
+            final long scheduled = epochNanos + index * periodNanos;
+            jitter.reportLatency(System.nanoTime() - scheduled);
+
+            try
+            {
+                tick.run();
+            }
+            catch (Throwable th)
+            {
+                LOG.error("Cancelling trace tick due to error", th);
+                cancelled = true;
+                return;
+            }
+
+            // schedule the next tick in the future, skipping
+            // any that were missed
+            final long now = System.nanoTime();
+            long next = index + 1;
+            final long firstFuture = (now - epochNanos) / periodNanos + 1;
+            if(firstFuture > next)
+            {
+                skipped += firstFuture - next;
+                next = firstFuture;
+            }
+            index = next;
+
+            if(!cancelled)
+            {
+                future = executor.schedule(this,
+                        epochNanos + next * periodNanos - now,
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+}
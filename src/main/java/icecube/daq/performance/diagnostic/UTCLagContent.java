@@ -0,0 +1,191 @@
+package icecube.daq.performance.diagnostic;
+
+/**
+ * UTCLagContent provides trace content derived from a UTCLagMeter,
+ * displaying how far a stage lags behind wall time in milliseconds.
+ *
+ * LAG is the age of the most recently reported UTC at the time of the
+ * trace line, it keeps growing when a stage stalls. MIN, MEAN and MAX
+ * summarize the lags of the reports made during the trace period, a
+ * period without reports displays the current lag.
+ *
+ * Example
+ * <PRE>
+ *    #sorter [ lagms       minlagms    meanlagms   maxlagms    ]
+ *            [ 1204        998         1101        1206        ]
+ *            [ 1311        1197        1254        1311        ]
+ * </PRE>
+ */
+public class UTCLagContent implements Content
+{
+
+    /** The default fields. */
+    public static final LagField[] DEFAULT_FIELDS =
+            {
+                    LagField.LAG,
+                    LagField.MIN,
+                    LagField.MEAN,
+                    LagField.MAX
+            };
+
+
+    final UTCLagMeter meter;
+    final UTCLagMeter.Side side;
+    final LagField[] fields;
+    final String header;
+
+    final Metered.MutableSample sample = new Metered.MutableSample();
+    final Interval interval = new Interval();
+
+
+    public UTCLagContent(final UTCLagMeter meter, final UTCLagMeter.Side side)
+    {
+        this(meter, side, DEFAULT_FIELDS);
+    }
+
+    public UTCLagContent(final UTCLagMeter meter, final UTCLagMeter.Side side,
+                         final LagField... fields)
+    {
+        this.meter = meter;
+        this.side = side;
+        this.fields = fields;
+
+        // start the first period
+        meter.sampleLag(side, interval.lag);
+
+        StringBuilder hb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++)
+        {
+            hb.append(fields[i].header());
+        }
+        this.header = hb.toString();
+    }
+
+    @Override
+    public void header(final StringBuilder sb)
+    {
+        sb.append(header);
+    }
+
+    @Override
+    public void content(final StringBuilder sb)
+    {
+        update();
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sb, interval);
+        }
+    }
+
+    @Override
+    public void content(final ColumnSink sink)
+    {
+        update();
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sink, interval);
+        }
+    }
+
+    private void update()
+    {
+        meter.getSample(sample);
+        meter.sampleLag(side, interval.lag);
+
+        long utc = (side == UTCLagMeter.Side.IN) ? sample.utcIn :
+                sample.utcOut;
+        interval.current = (utc != 0) ? meter.getClock().now() - utc : 0;
+    }
+
+
+    /**
+     * The lags of a single trace period.
+     */
+    static class Interval
+    {
+        final UTCLagMeter.LagSample lag = new UTCLagMeter.LagSample();
+        long current;
+
+        long min()
+        {
+            return (lag.count > 0) ? lag.min : current;
+        }
+
+        long mean()
+        {
+            return (lag.count > 0) ? lag.mean() : current;
+        }
+
+        long max()
+        {
+            return (lag.count > 0) ? lag.max : current;
+        }
+    }
+
+
+    public static enum LagField
+    {
+        LAG(String.format("%-12s", "lagms"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.current;
+                    }
+                },
+        MIN(String.format("%-12s", "minlagms"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.min();
+                    }
+                },
+        MEAN(String.format("%-12s", "meanlagms"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.mean();
+                    }
+                },
+        MAX(String.format("%-12s", "maxlagms"))
+                {
+                    @Override
+                    long value(final Interval interval)
+                    {
+                        return interval.max();
+                    }
+                };
+
+        static final String FORMAT = "%-12d";
+        static final int WIDTH = 12;
+
+        final String header;
+
+        LagField(final String header)
+        {
+            this.header = header;
+        }
+
+        public String header() { return header; }
+
+        void content(final StringBuilder sb, final Interval interval)
+        {
+            FieldAppender.appendLong(sb, millis(interval), WIDTH);
+        }
+
+        void content(final ColumnSink sink, final Interval interval)
+        {
+            sink.longValue(FORMAT, millis(interval));
+        }
+
+        private long millis(final Interval interval)
+        {
+            return value(interval) / MeterContent.UTC_PER_MILLIS;
+        }
+
+        abstract long value(final Interval interval);
+    }
+
+}
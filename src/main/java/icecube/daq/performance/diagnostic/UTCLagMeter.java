@@ -0,0 +1,248 @@
+package icecube.daq.performance.diagnostic;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorates a UTC meter to track how far the reported UTC times lag
+ * behind wall time as kept by an ICLClock.
+ *
+ * The lag of every UTC report is recorded and summarized as a
+ * min/mean/max over each sampling period. Buffered meters track the
+ * input and output sides separately, throughput meters have a single
+ * lag shared by both sides.
+ *
+ * Lags are in ICL units of 1/10th nanoseconds and are negative when the
+ * reported UTC is ahead of the clock.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   UTCLagMeter.BufferedMeter meter =
+ *           UTCLagMeter.wrap(Metered.Factory.utcBufferMeter());
+ *   ...
+ *   meter.reportOut(size, utc);
+ *   ...
+ *   trace.addLagMeter("sorter", meter);
+ * </PRE>
+ *
+ * Note: A report that races the end of a period may be split between
+ *       periods.
+ */
+public abstract class UTCLagMeter implements Metered
+{
+
+    /**
+     * The side of a meter.
+     */
+    public static enum Side
+    {
+        IN,
+        OUT
+    }
+
+    final ICLClock clock;
+    final Lag in;
+    final Lag out;
+
+
+    UTCLagMeter(final ICLClock clock, final Lag in, final Lag out)
+    {
+        this.clock = clock;
+        this.in = in;
+        this.out = out;
+    }
+
+    public static ThroughputMeter wrap(final UTCThroughput delegate)
+    {
+        return wrap(delegate, new ICLClock());
+    }
+
+    public static ThroughputMeter wrap(final UTCThroughput delegate,
+                                       final ICLClock clock)
+    {
+        return new ThroughputMeter(delegate, clock);
+    }
+
+    public static BufferedMeter wrap(final UTCBuffered delegate)
+    {
+        return wrap(delegate, new ICLClock());
+    }
+
+    public static BufferedMeter wrap(final UTCBuffered delegate,
+                                     final ICLClock clock)
+    {
+        return new BufferedMeter(delegate, clock);
+    }
+
+    public ICLClock getClock()
+    {
+        return clock;
+    }
+
+    /**
+     * Read the lag of a side for the period since the previous read
+     * of the side, starting a new period.
+     *
+     * @param side The side.
+     * @param dest Receives the lag of the period.
+     */
+    public void sampleLag(final Side side, final LagSample dest)
+    {
+        (side == Side.IN ? in : out).sample(dest);
+    }
+
+
+    /**
+     * The lag of a period.
+     */
+    public static class LagSample
+    {
+        public long count;
+        public long min;
+        public long max;
+        public long sum;
+
+        /**
+         * @return The mean lag, or zero for an empty period.
+         */
+        public long mean()
+        {
+            return (count > 0) ? sum / count : 0;
+        }
+    }
+
+
+    /**
+     * Accumulates lags over a period. Supports concurrent reporters.
+     */
+    static class Lag
+    {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator min =
+                new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max =
+                new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        void record(final long lag)
+        {
+            count.increment();
+            sum.add(lag);
+            min.accumulate(lag);
+            max.accumulate(lag);
+        }
+
+        void sample(final LagSample dest)
+        {
+            dest.count = count.sumThenReset();
+            dest.sum = sum.sumThenReset();
+            dest.min = min.getThenReset();
+            dest.max = max.getThenReset();
+        }
+    }
+
+
+    /**
+     * A lag tracking throughput meter.
+     */
+    public static class ThroughputMeter extends UTCLagMeter
+            implements UTCThroughput
+    {
+        private final UTCThroughput delegate;
+
+        ThroughputMeter(final UTCThroughput delegate, final ICLClock clock)
+        {
+            this(delegate, clock, new Lag());
+        }
+
+        private ThroughputMeter(final UTCThroughput delegate,
+                                final ICLClock clock, final Lag lag)
+        {
+            super(clock, lag, lag);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void report(final int size, final long utc)
+        {
+            report(1, size, utc);
+        }
+
+        @Override
+        public void report(final int msgCount, final int size, final long utc)
+        {
+            delegate.report(msgCount, size, utc);
+            out.record(clock.now() - utc);
+        }
+
+        @Override
+        public Sample getSample()
+        {
+            return delegate.getSample();
+        }
+
+        @Override
+        public void getSample(final MutableSample dest)
+        {
+            delegate.getSample(dest);
+        }
+    }
+
+
+    /**
+     * A lag tracking buffered meter.
+     */
+    public static class BufferedMeter extends UTCLagMeter
+            implements UTCBuffered
+    {
+        private final UTCBuffered delegate;
+
+        BufferedMeter(final UTCBuffered delegate, final ICLClock clock)
+        {
+            super(clock, new Lag(), new Lag());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void reportIn(final int size, final long utc)
+        {
+            reportIn(1, size, utc);
+        }
+
+        @Override
+        public void reportIn(final int msgCount, final int size,
+                             final long utc)
+        {
+            delegate.reportIn(msgCount, size, utc);
+            in.record(clock.now() - utc);
+        }
+
+        @Override
+        public void reportOut(final int size, final long utc)
+        {
+            reportOut(1, size, utc);
+        }
+
+        @Override
+        public void reportOut(final int msgCount, final int size,
+                              final long utc)
+        {
+            delegate.reportOut(msgCount, size, utc);
+            out.record(clock.now() - utc);
+        }
+
+        @Override
+        public Sample getSample()
+        {
+            return delegate.getSample();
+        }
+
+        @Override
+        public void getSample(final MutableSample dest)
+        {
+            delegate.getSample(dest);
+        }
+    }
+
+}
@@ -3,15 +3,17 @@ package icecube.daq.performance.diagnostic.cpu;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Provides CPU utilization monitoring by way of periodic
@@ -19,9 +21,13 @@ import java.util.regex.Pattern;
  *
  * Note: OS Dependent. Requires linux procfs files:
  * <PRE>
- *       /proc/stat               System cpu usage
+ *       /proc/stat               System and per-core cpu usage
  *       /proc/[pid]/stat         Process spu usage
  *       /proc/[pid]/[tid]/stat   Task/Thread cpu usage
+ *       /proc/[pid]/[tid]/schedstat
+ *       /proc/[pid]/[tid]/status Task/Thread scheduling (optional)
+ *       /sys/devices/system/node/node[n]/cpulist
+ *                                NUMA node cores (optional)
  * </PRE>
  */
 public interface CPUMonitor
@@ -42,6 +48,21 @@ public interface CPUMonitor
      */
     public void addTid(int tid);
 
+    /**
+     * Add a thread for independent cpu utilization and scheduling
+     * tracking.
+     *
+     * Scheduling tracking reads the schedstat and status files of the
+     * thread at each sample in addition to its stat file. Monitors that
+     * do not support scheduling tracking track cpu utilization only.
+     *
+     * @param tid The native thread id of a thread to track.
+     */
+    public default void addSchedulingTid(int tid)
+    {
+        addTid(tid);
+    }
+
     /**
      * Holds utilization statistics.
      */
@@ -51,25 +72,98 @@ public interface CPUMonitor
         public final Map<Integer, Float> byPID;
         public final Map<Integer, Float> byThread;
 
+        /** Utilization of each online core, by core number. */
+        public final Map<Integer, Map<Keys, Float>> byCore;
+
+        /** Utilization of each NUMA node, by node number. */
+        public final Map<Integer, Map<Keys, Float>> byNode;
+
+        /** Scheduling of threads tracked for scheduling, by tid. */
+        public final Map<Integer, Scheduling> byThreadScheduling;
+
         public Utilization(final Map<Keys, Float> cpuUtilization,
                            final Map<Integer, Float> byPID,
                            final Map<Integer, Float> byThread)
+        {
+            this(cpuUtilization, byPID, byThread, new TreeMap<>(),
+                    new TreeMap<>());
+        }
+
+        public Utilization(final Map<Keys, Float> cpuUtilization,
+                           final Map<Integer, Float> byPID,
+                           final Map<Integer, Float> byThread,
+                           final Map<Integer, Map<Keys, Float>> byCore,
+                           final Map<Integer, Map<Keys, Float>> byNode)
+        {
+            this(cpuUtilization, byPID, byThread, byCore, byNode,
+                    new HashMap<>());
+        }
+
+        public Utilization(final Map<Keys, Float> cpuUtilization,
+                           final Map<Integer, Float> byPID,
+                           final Map<Integer, Float> byThread,
+                           final Map<Integer, Map<Keys, Float>> byCore,
+                           final Map<Integer, Map<Keys, Float>> byNode,
+                           final Map<Integer, Scheduling> byThreadScheduling)
         {
             this.cpuUtilization = cpuUtilization;
             this.byPID = byPID;
             this.byThread = byThread;
+            this.byCore = byCore;
+            this.byNode = byNode;
+            this.byThreadScheduling = byThreadScheduling;
+        }
+    }
+
+    /**
+     * Holds the scheduling statistics of a thread for an interval.
+     */
+    class Scheduling
+    {
+        /** Voluntary context switches per second, e.g. blocking. */
+        public final float voluntarySwitches;
+
+        /** Nonvoluntary context switches per second, e.g. preemption. */
+        public final float nonvoluntarySwitches;
+
+        /**
+         * Time spent runnable but waiting on a run queue, in percent
+         * of the interval. NaN if the kernel does not provide schedstat.
+         */
+        public final float runQueueWait;
+
+        /** The cpu the thread last ran on. */
+        public final int lastCPU;
+
+        public Scheduling(final float voluntarySwitches,
+                          final float nonvoluntarySwitches,
+                          final float runQueueWait,
+                          final int lastCPU)
+        {
+            this.voluntarySwitches = voluntarySwitches;
+            this.nonvoluntarySwitches = nonvoluntarySwitches;
+            this.runQueueWait = runQueueWait;
+            this.lastCPU = lastCPU;
         }
     }
 
     /**
      * Define special numeric keys for indexing non-pid stats.
+     *
+     * CPU_SYSTEM includes the irq, softirq and steal time broken out
+     * by CPU_IRQ, CPU_SOFTIRQ and CPU_STEAL. CPU_IDLE includes the
+     * iowait time broken out by CPU_IOWAIT.
      */
     enum Keys
     {
         CPU_UTILIZATION(-1),
         CPU_USER(-2),
         CPU_SYSTEM(-3),
-        CPU_IDLE(-4);
+        CPU_IDLE(-4),
+        CPU_IOWAIT(-5),
+        CPU_IRQ(-6),
+        CPU_SOFTIRQ(-7),
+        CPU_STEAL(-8);
 
         final int id;
 
@@ -127,40 +221,331 @@ public interface CPUMonitor
      * Implements CPUMonitor using procfs files to sample
      * CPU usage stats.
      *
+     * The stat files are kept open and read into reused direct buffers,
+     * numeric fields are parsed directly into long arrays, so the cost
+     * of a sample is dominated by the kernel generating the files.
      */
     public class ProcFileMonitor implements CPUMonitor
     {
+        /**
+         * Task files beyond this count are opened for each sample
+         * rather than held open, bounding the file descriptors used.
+         * A task tracked for scheduling has three files, its stat,
+         * schedstat and status files.
+         */
+        static final int MAX_OPEN_TASK_FILES = 512;
+
+        // the fields of /proc/stat cpu lines and of stat files
+        // used in calculations
+        private static final int CPU_FIELDS = 8;
+        private static final int STAT_FIELDS = 15;
+
+        // the stat fields of tasks tracked for scheduling, through
+        // the processor field
+        private static final int SCHED_STAT_FIELDS = 39;
+        private static final int PROCESSOR_FIELD = 38;
+
+        private static final byte[] CPU_LINE = "cpu".getBytes();
+        private static final byte[] VOLUNTARY_LINE =
+                "voluntary_ctxt_switches:".getBytes();
+        private static final byte[] NONVOLUNTARY_LINE =
+                "nonvoluntary_ctxt_switches:".getBytes();
+
+        private static final Path NODE_DIR =
+                Paths.get("/sys/devices/system/node");
+
         private final int pid;
-        private final Map<Integer, Integer> tids;
+        private final Map<Integer, TaskStat> tids;
+
+        // the number of task files held open, and the limit
+        private int openFiles;
+        private final int maxOpenFiles;
 
         private Sample lastSample;
+        private Sample spareSample;
 
         private final Path SYSTEM_STAT_FILE = Paths.get("/proc/stat");
         private final Path PROCESS_PROC_DIR;
         private final Path PROCESS_TASK_DIR;
         private final Path PROCESS_STAT_FILE;
 
+        private final ProcFileReader systemStat;
+        private final ProcFileReader processStat;
+
+        // the NUMA node of each core, -1 for unknown
+        private final int[] nodeOfCore;
+
+        // scratch space for calculations
+        private final long[] line = new long[CPU_FIELDS + 1];
+        private final long[] delta = new long[CPU_FIELDS];
+        private final Map<Integer, long[]> nodeDeltas = new TreeMap<>();
+
         /**
-         * Holds readings from one iteration.
+         * Holds system and process readings from one iteration.
          */
         private static class Sample
         {
-            private final Map<String, String[]> cpu;
-            private final String[] process;
-            private final Map<Integer, String[]> threads;
+            private final long[] cpu = new long[CPU_FIELDS];
+            private final long[] process = new long[STAT_FIELDS];
 
-            private final long whenNano;
+            // per core readings, for cores present in the reading
+            private long[][] cores = new long[0][];
+            private boolean[] present = new boolean[0];
 
+            private long whenNano;
 
-            public Sample(final Map<String, String[]> cpu,
-                          final String[] process,
-                          final Map<Integer, String[]> threads,
-                          final long whenNano)
+            private long[] core(final int core)
             {
-                this.cpu = cpu;
-                this.process = process;
-                this.threads = threads;
-                this.whenNano = whenNano;
+                if(core >= cores.length)
+                {
+                    int length = core + 1;
+                    cores = Arrays.copyOf(cores, length);
+                    present = Arrays.copyOf(present, length);
+                }
+                if(cores[core] == null)
+                {
+                    cores[core] = new long[CPU_FIELDS];
+                }
+                present[core] = true;
+                return cores[core];
+            }
+        }
+
+        /**
+         * Holds the readings of a task from the last two iterations.
+         */
+        private static class TaskStat
+        {
+            private final ProcFileReader reader;
+            private final boolean keepOpen;
+
+            private long[] last = new long[STAT_FIELDS];
+            private long[] current = new long[STAT_FIELDS];
+            private boolean lastValid;
+            private boolean currentValid;
+            private int errors;
+
+            // present if tracked for scheduling
+            private SchedStat sched;
+
+            private TaskStat(final ProcFileReader reader,
+                             final boolean keepOpen) throws IOException
+            {
+                this.reader = reader;
+                this.keepOpen = keepOpen;
+                if(!keepOpen)
+                {
+                    reader.close();
+                }
+            }
+
+            private void read()
+            {
+                long[] tmp = last;
+                last = current;
+                current = tmp;
+                lastValid = currentValid;
+
+                try
+                {
+                    ProcFileReader.parseStat(reader.read(), current);
+                    currentValid = true;
+                    errors = 0;
+                }
+                catch (IOException e)
+                {
+                    currentValid = false;
+                    errors++;
+                    closeQuietly();
+                }
+
+                if(sched != null)
+                {
+                    sched.read(currentValid);
+                    if(!sched.keepOpen)
+                    {
+                        sched.closeQuietly();
+                    }
+                }
+
+                if(!keepOpen)
+                {
+                    closeStatQuietly();
+                }
+            }
+
+            private void trackScheduling(final Path taskDir,
+                                         final boolean keepOpen)
+                    throws IOException
+            {
+                sched = new SchedStat(taskDir, keepOpen);
+                last = new long[SCHED_STAT_FIELDS];
+                current = new long[SCHED_STAT_FIELDS];
+                lastValid = false;
+                currentValid = false;
+                if(!keepOpen)
+                {
+                    sched.closeQuietly();
+                }
+            }
+
+            /**
+             * @return The number of files held open between samples.
+             */
+            private int openFiles()
+            {
+                int files = keepOpen ? 1 : 0;
+                if(sched != null && sched.keepOpen)
+                {
+                    files += SchedStat.FILES;
+                }
+                return files;
+            }
+
+            private void closeQuietly()
+            {
+                closeStatQuietly();
+                if(sched != null)
+                {
+                    sched.closeQuietly();
+                }
+            }
+
+            private void closeStatQuietly()
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                    // ignored, the channel is released regardless
+                }
+            }
+        }
+
+        /**
+         * Holds the scheduling readings of a task from the last two
+         * iterations.
+         *
+         * Fields: run_ns wait_ns timeslices voluntary nonvoluntary
+         */
+        private static class SchedStat
+        {
+            private static final int WAIT = 1;
+            private static final int VOLUNTARY = 3;
+            private static final int NONVOLUNTARY = 4;
+
+            /** The number of files of a task tracked for scheduling. */
+            private static final int FILES = 2;
+
+            private final ProcFileReader schedstat;
+            private final ProcFileReader status;
+            private final boolean keepOpen;
+
+            private long[] last = new long[5];
+            private long[] current = new long[5];
+            private boolean lastValid;
+            private boolean currentValid;
+
+            private final long[] value = new long[1];
+
+            // schedstat requires CONFIG_SCHEDSTATS or CONFIG_SCHED_INFO
+            private boolean hasSchedstat = true;
+
+            private SchedStat(final Path taskDir, final boolean keepOpen)
+                    throws IOException
+            {
+                this.keepOpen = keepOpen;
+                ProcFileReader schedstat = null;
+                try
+                {
+                    schedstat = new ProcFileReader(
+                            taskDir.resolve("schedstat"), 128);
+                }
+                catch (IOException e)
+                {
+                    hasSchedstat = false;
+                }
+                this.schedstat = schedstat;
+                this.status = new ProcFileReader(taskDir.resolve("status"),
+                        2048);
+            }
+
+            private void read(final boolean statValid)
+            {
+                long[] tmp = last;
+                last = current;
+                current = tmp;
+                lastValid = currentValid;
+
+                if(!statValid)
+                {
+                    currentValid = false;
+                    return;
+                }
+
+                // Example:
+                // 518475 144240 2
+                //
+                // Example:
+                // ...
+                // voluntary_ctxt_switches:	150
+                // nonvoluntary_ctxt_switches:	545
+                try
+                {
+                    if(hasSchedstat)
+                    {
+                        ProcFileReader.parseLine(schedstat.read(), 0,
+                                current);
+                    }
+
+                    ByteBuffer buf = status.read();
+                    currentValid = false;
+                    if(parseValue(buf, VOLUNTARY_LINE))
+                    {
+                        current[VOLUNTARY] = value[0];
+                        if(parseValue(buf, NONVOLUNTARY_LINE))
+                        {
+                            current[NONVOLUNTARY] = value[0];
+                            currentValid = true;
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    currentValid = false;
+                    closeQuietly();
+                }
+            }
+
+            private boolean parseValue(final ByteBuffer buf,
+                                       final byte[] token)
+            {
+                int pos = ProcFileReader.findLine(buf, token);
+                return pos >= 0 &&
+                        ProcFileReader.parseLine(buf, pos, value) == 1;
+            }
+
+            private void closeQuietly()
+            {
+                closeQuietly(schedstat);
+                closeQuietly(status);
+            }
+
+            private static void closeQuietly(final ProcFileReader reader)
+            {
+                try
+                {
+                    if(reader != null)
+                    {
+                        reader.close();
+                    }
+                }
+                catch (IOException e)
+                {
+                    // ignored, the channel is released regardless
+                }
             }
         }
 
@@ -172,6 +557,16 @@ public interface CPUMonitor
          */
         public ProcFileMonitor(final int pid) throws IOException
         {
+            this(pid, MAX_OPEN_TASK_FILES);
+        }
+
+        /**
+         * @param maxOpenFiles The number of task files to hold open.
+         */
+        ProcFileMonitor(final int pid, final int maxOpenFiles)
+                throws IOException
+        {
+            this.maxOpenFiles = maxOpenFiles;
             PROCESS_PROC_DIR = Paths.get("/proc", Integer.toString(pid));
             PROCESS_TASK_DIR = PROCESS_PROC_DIR.resolve("task");
             PROCESS_STAT_FILE = PROCESS_PROC_DIR.resolve("stat");
@@ -184,7 +579,13 @@ public interface CPUMonitor
 
             this.pid = pid;
             tids = new HashMap<>();
-            lastSample = sampleProcFiles();
+            systemStat = new ProcFileReader(SYSTEM_STAT_FILE, 8192);
+            processStat = new ProcFileReader(PROCESS_STAT_FILE);
+            nodeOfCore = readNodes(NODE_DIR);
+
+            lastSample = new Sample();
+            spareSample = new Sample();
+            sampleProcFiles(lastSample);
         }
 
         /**
@@ -194,9 +595,52 @@ public interface CPUMonitor
         @Override
         public void addTid(final int tid)
         {
-            if( ! tids.keySet().contains(tid))
+            if( ! tids.containsKey(tid))
             {
-                tids.put(tid, 0);
+                try
+                {
+                    ProcFileReader reader = new ProcFileReader(
+                            PROCESS_TASK_DIR.resolve(tid + "/stat"), 512);
+                    TaskStat task = new TaskStat(reader,
+                            openFiles < maxOpenFiles);
+                    tids.put(tid, task);
+                    openFiles += task.openFiles();
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Could not monitor task " + tid, e);
+                }
+            }
+        }
+
+        /**
+         * Add a thread/task to be monitored for cpu utilization and
+         * scheduling.
+         * @param tid The task id of a thread belonging to the process.
+         */
+        @Override
+        public void addSchedulingTid(final int tid)
+        {
+            addTid(tid);
+            TaskStat task = tids.get(tid);
+            if(task != null && task.sched == null)
+            {
+                try
+                {
+                    boolean keepOpen = task.keepOpen &&
+                            openFiles + SchedStat.FILES <= maxOpenFiles;
+                    task.trackScheduling(PROCESS_TASK_DIR.resolve(
+                            Integer.toString(tid)), keepOpen);
+                    if(keepOpen)
+                    {
+                        openFiles += SchedStat.FILES;
+                    }
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Could not monitor scheduling of task " +
+                            tid, e);
+                }
             }
         }
 
@@ -205,8 +649,10 @@ public interface CPUMonitor
         {
             try
             {
-                Sample current = sampleProcFiles();
+                Sample current = spareSample;
+                sampleProcFiles(current);
                 Utilization result = calculateUtilization(lastSample, current);
+                spareSample = lastSample;
                 lastSample = current;
                 return result;
             }
@@ -222,31 +668,47 @@ public interface CPUMonitor
         {
 
             // CPU Utilization
-            Map<Keys, Float> cpuUtilization = new HashMap<>(4);
+            subtract(current.cpu, last.cpu, delta);
+            Map<Keys, Float> cpuUtilization = utilization(delta);
 
-            final CPUStat curCPUStat = calculateCPUTicks(current);
-            final CPUStat lastCPUStat = calculateCPUTicks(last);
-
-            long cpuTicks = curCPUStat.totalTicks - lastCPUStat.totalTicks;
-            long userTicks = curCPUStat.userTicks - lastCPUStat.userTicks;
-            long systemTicks = curCPUStat.systemTicks -  lastCPUStat.systemTicks;
-            long idleTicks = curCPUStat.idleTicks -  lastCPUStat.idleTicks;
+            // Core and node utilization, for cores present in both readings
+            Map<Integer, Map<Keys, Float>> byCore = new TreeMap<>();
+            for(long[] nodeDelta : nodeDeltas.values())
+            {
+                Arrays.fill(nodeDelta, 0);
+            }
+            int cores = Math.min(current.present.length, last.present.length);
+            for (int core = 0; core < cores; core++)
+            {
+                if(current.present[core] && last.present[core])
+                {
+                    subtract(current.cores[core], last.cores[core], delta);
+                    byCore.put(core, utilization(delta));
 
-            cpuUtilization.put(Keys.CPU_UTILIZATION,
-                    percent((userTicks+systemTicks), cpuTicks));
-            cpuUtilization.put(Keys.CPU_USER,
-                    percent(userTicks, cpuTicks));
-            cpuUtilization.put(Keys.CPU_SYSTEM,
-                    percent(systemTicks, cpuTicks));
-            cpuUtilization.put(Keys.CPU_IDLE,
-                    percent(idleTicks, cpuTicks));
+                    int node = nodeOf(core);
+                    if(node >= 0)
+                    {
+                        long[] nodeDelta = nodeDeltas.computeIfAbsent(node,
+                                k -> new long[CPU_FIELDS]);
+                        for (int i = 0; i < CPU_FIELDS; i++)
+                        {
+                            nodeDelta[i] += delta[i];
+                        }
+                    }
+                }
+            }
+            Map<Integer, Map<Keys, Float>> byNode = new TreeMap<>();
+            for(Map.Entry<Integer, long[]> entry : nodeDeltas.entrySet())
+            {
+                byNode.put(entry.getKey(), utilization(entry.getValue()));
+            }
 
 
             // Process percentage
             Map<Integer, Float> byProcess = new HashMap<>(1);
 
-            long processTicks =
-                    calculateProcessTicks(current) - calculateProcessTicks(last);
+            long processTicks = calculateProcessOrTaskTicks(current.process) -
+                    calculateProcessOrTaskTicks(last.process);
 
             // NOTE Calculating process utilization as the ratio of process
             // ticks to total ticks would appear correct, but it will not match
@@ -259,72 +721,99 @@ public interface CPUMonitor
 
             // Thread percentage, for threads active in both readings
             Map<Integer, Float> byThread = new HashMap<>(tids.size());
-            for(Integer tid : tids.keySet())
+            Map<Integer, Scheduling> byThreadScheduling = new HashMap<>();
+            for(Map.Entry<Integer, TaskStat> entry : tids.entrySet())
             {
-                String[] lastThreadSample = last.threads.get(tid);
-                String[] currentThreadSample = current.threads.get(tid);
-                if(lastThreadSample != null && currentThreadSample != null)
+                TaskStat task = entry.getValue();
+                if(task.lastValid && task.currentValid)
                 {
                     long threadTicks =
-                            calculateProcessOrTaskTicks(currentThreadSample) -
-                                    calculateProcessOrTaskTicks(lastThreadSample);
+                            calculateProcessOrTaskTicks(task.current) -
+                                    calculateProcessOrTaskTicks(task.last);
 
-                    byThread.put(tid, (1.0f/interval * threadTicks));
+                    byThread.put(entry.getKey(), (1.0f/interval * threadTicks));
+                }
+
+                SchedStat sched = task.sched;
+                if(sched != null && sched.lastValid && sched.currentValid)
+                {
+                    byThreadScheduling.put(entry.getKey(),
+                            scheduling(task, interval));
                 }
             }
 
-            return new Utilization(cpuUtilization, byProcess, byThread);
+            return new Utilization(cpuUtilization, byProcess, byThread,
+                    byCore, byNode, byThreadScheduling);
 
         }
 
-        private static CPUStat calculateCPUTicks(Sample sample)
+        // Example:
+        // cpu  227323 1521 154255 30470737 148963 0 2178 0 0 0
+        //
+        // Fields: user nice system idle iowait irq softirq steal
+        //
+        // Note: For reference guest stats are already
+        //       accounted for in user and nice.
+        private static Map<Keys, Float> utilization(final long[] delta)
         {
-            return calculateCPUTicks(sample.cpu.get("cpu"));
+            long user = delta[0] + delta[1];
+            long system = delta[2] + delta[5] + delta[6] + delta[7];
+            long idle = delta[3] + delta[4];
+            long total = user + system + idle;
+
+            Map<Keys, Float> utilization = new HashMap<>(16);
+            utilization.put(Keys.CPU_UTILIZATION,
+                    percent((user+system), total));
+            utilization.put(Keys.CPU_USER, percent(user, total));
+            utilization.put(Keys.CPU_SYSTEM, percent(system, total));
+            utilization.put(Keys.CPU_IDLE, percent(idle, total));
+            utilization.put(Keys.CPU_IOWAIT, percent(delta[4], total));
+            utilization.put(Keys.CPU_IRQ, percent(delta[5], total));
+            utilization.put(Keys.CPU_SOFTIRQ, percent(delta[6], total));
+            utilization.put(Keys.CPU_STEAL, percent(delta[7], total));
+            return utilization;
         }
 
-        private static class CPUStat
+        private static Scheduling scheduling(final TaskStat task,
+                                             final float interval)
         {
-            final long userTicks;
-            final long systemTicks;
-            final long idleTicks;
-            final long totalTicks;
+            final long[] current = task.sched.current;
+            final long[] last = task.sched.last;
+
+            float voluntary = (current[SchedStat.VOLUNTARY] -
+                    last[SchedStat.VOLUNTARY]) / interval;
+            float nonvoluntary = (current[SchedStat.NONVOLUNTARY] -
+                    last[SchedStat.NONVOLUNTARY]) / interval;
+            float wait = task.sched.hasSchedstat ?
+                    (current[SchedStat.WAIT] - last[SchedStat.WAIT]) /
+                            (interval * 10000000f) : Float.NaN;
+            return new Scheduling(voluntary, nonvoluntary, wait,
+                    (int) task.current[PROCESSOR_FIELD]);
+        }
 
-            private CPUStat(final long userTicks, final long systemTicks, final long idleTicks)
+        private static void subtract(final long[] current, final long[] last,
+                                     final long[] dest)
+        {
+            for (int i = 0; i < dest.length; i++)
             {
-                this.userTicks = userTicks;
-                this.systemTicks = systemTicks;
-                this.idleTicks = idleTicks;
-                this.totalTicks = userTicks+systemTicks+idleTicks;
+                dest[i] = current[i] - last[i];
             }
         }
-        private static CPUStat calculateCPUTicks(String[] statLine)
-        {
-            long user = Long.parseLong(statLine[1]);   // user
-            user += Long.parseLong(statLine[2]);       // nice
-            long system = Long.parseLong(statLine[3]); // system
-            long idle = Long.parseLong(statLine[4]);   // idle
-            idle += Long.parseLong(statLine[5]);       // iowait
-            system += Long.parseLong(statLine[6]);     // irq
-            system += Long.parseLong(statLine[7]);     // softirq
-            system += Long.parseLong(statLine[8]);     // steal
-
-            // Note: For reference guest stats are already
-            //       accounted for in user and nice.
-            //long guest = Long.parseLong(statLine[9]);           //guest
-            //long guestNice =  += Long.parseLong(statLine[10]);  //guest nice
-
-            return new CPUStat(user, system, idle);
-        }
 
-        private static long calculateProcessTicks(Sample sample)
+        private int nodeOf(final int core)
         {
-            return calculateProcessOrTaskTicks(sample.process);
+            if(nodeOfCore.length == 0)
+            {
+                // without NUMA topology all cores are on node 0
+                return 0;
+            }
+            return (core < nodeOfCore.length) ? nodeOfCore[core] : -1;
         }
 
-        private static long calculateProcessOrTaskTicks(String[] statLine)
+        private static long calculateProcessOrTaskTicks(long[] stat)
         {
-            long totalTicks = Long.parseLong(statLine[13]);   // user
-            totalTicks += Long.parseLong(statLine[14]);       // system
+            long totalTicks = stat[13];   // user
+            totalTicks += stat[14];       // system
 
             return totalTicks;
         }
@@ -332,131 +821,141 @@ public interface CPUMonitor
 
         /**
          * Read CPU, process and task stat files.
-         * @return
          */
-        private Sample sampleProcFiles() throws IOException
+        private void sampleProcFiles(final Sample sample) throws IOException
         {
             // NOTE: Read over under-samples process and task
             //       counters
-            long whenNano = System.nanoTime();
-            String[] process = samplePID();
-            Map<Integer, String[]> threads = new HashMap<>(tids.size());
-            List<Integer> toBeRemoved = new ArrayList<>();
-            for (Integer tid : tids.keySet())
+            sample.whenNano = System.nanoTime();
+            ProcFileReader.parseStat(processStat.read(), sample.process);
+
+            Iterator<TaskStat> tasks = tids.values().iterator();
+            while(tasks.hasNext())
             {
-                String[] value = sampleTID(tid.intValue());
-                if(value != null)
+                TaskStat task = tasks.next();
+                task.read();
+                if(task.errors >= 5)
                 {
-                    threads.put(tid, value);
+                    //remove tracking for this thread
+                    task.closeQuietly();
+                    openFiles -= task.openFiles();
+                    tasks.remove();
                 }
-                else
+            }
+
+            // Example:
+            // cpu  227323 1521 154255 30470737 148963 0 2178 0 0 0
+            // cpu0 119813 792 80872 15283115 9729 0 1531 0 0 0
+            // cpu1 107510 729 73382 15187622 139233 0 647 0 0 0
+            // intr 39004661 242 2 0 0 0 0 0 0 1 0 0 0 4 0 0 0 0 0 ...
+            ByteBuffer stat = systemStat.read();
+            Arrays.fill(sample.present, false);
+            boolean parsed = false;
+            int pos = 0;
+            while(pos < stat.limit())
+            {
+                if(!ProcFileReader.startsWith(stat, pos, CPU_LINE))
                 {
-                    Integer errors = tids.get(tid);
-                    if(errors < 5)
+                    if(parsed)
                     {
-                        tids.put(tid, (errors+1));
-                    }
-                    else
-                    {
-                        //remove tracking for this thread
-                        toBeRemoved.add(tid);
+                        // the cpu lines lead the file
+                        break;
                     }
+                    pos = ProcFileReader.nextLine(stat, pos);
+                    continue;
+                }
+
+                final int from = pos + CPU_LINE.length;
+                final byte b = (from < stat.limit()) ? stat.get(from) : 0;
+                if(b >= '0' && b <= '9')
+                {
+                    // per core, the core number leads the fields
+                    int count = ProcFileReader.parseLine(stat, from, line);
+                    long[] core = sample.core((int) line[0]);
+                    Arrays.fill(core, 0);
+                    System.arraycopy(line, 1, core, 0, count - 1);
                 }
+                else
+                {
+                    parsed = ProcFileReader.parseLine(stat, from,
+                            sample.cpu) >= CPU_FIELDS - 1;
+                }
+                pos = ProcFileReader.nextLine(stat, pos);
             }
-            for(Integer tid : toBeRemoved)
+            if(!parsed)
             {
-                tids.remove(tid);
+                throw new IOException("Can't parse " + SYSTEM_STAT_FILE);
             }
-
-            Map<String, String[]> cpu = sampleCPU();
-            return new Sample(cpu, process, threads, whenNano);
-        }
-
-
-
-
-
-
-        public List<String> readCPUStat() throws IOException
-        {
-            List<String> lines = Files.readAllLines(SYSTEM_STAT_FILE);
-            return lines;
-
         }
 
-        public String readPIDStat() throws IOException
+        /**
+         * Read the NUMA node of each core.
+         *
+         * @return The node of each core indexed by core number, -1 for
+         *         cores not listed, or empty if the topology is
+         *         unavailable.
+         */
+        static int[] readNodes(final Path nodeDir)
         {
-            List<String> lines = Files.readAllLines(PROCESS_STAT_FILE);
-            if(lines.size() == 1)
+            int[] nodeOfCore = new int[0];
+            if(!Files.isDirectory(nodeDir))
             {
-                return lines.get(0);
+                return nodeOfCore;
             }
-            else
-            {
-                return "";
-            }
-        }
-
-        public String readTIDStat(final int tid) throws IOException
-        {
-            Path taskStatFile =
-                    PROCESS_TASK_DIR.resolve(Integer.toString(tid) +
-                            "/stat");
-            List<String> lines = Files.readAllLines(taskStatFile);
-
-            if(lines.size() == 1)
+            try(Stream<Path> dirs = Files.list(nodeDir))
             {
-                return lines.get(0);
+                for(Object dir : dirs.toArray())
+                {
+                    String name = ((Path) dir).getFileName().toString();
+                    if(!name.matches("node\\d+"))
+                    {
+                        continue;
+                    }
+                    int node = Integer.parseInt(name.substring(4));
+                    String cpulist = new String(Files.readAllBytes(
+                            ((Path) dir).resolve("cpulist"))).trim();
+                    for(int core : parseCPUList(cpulist))
+                    {
+                        if(core >= nodeOfCore.length)
+                        {
+                            int length = nodeOfCore.length;
+                            nodeOfCore = Arrays.copyOf(nodeOfCore, core + 1);
+                            Arrays.fill(nodeOfCore, length, core + 1, -1);
+                        }
+                        nodeOfCore[core] = node;
+                    }
+                }
             }
-            else
+            catch (IOException | RuntimeException e)
             {
-                return "";
+                logger.warn("Could not read NUMA topology", e);
+                return new int[0];
             }
+            return nodeOfCore;
         }
 
-
-        private Map<String, String[]> sampleCPU() throws IOException
+        /**
+         * Parse a cpu list, e.g. "0-3,8-11".
+         */
+        static int[] parseCPUList(final String cpulist)
         {
-            // Example:
-            // cpu  227323 1521 154255 30470737 148963 0 2178 0 0 0
-            // cpu0 119813 792 80872 15283115 9729 0 1531 0 0 0
-            // cpu1 107510 729 73382 15187622 139233 0 647 0 0 0
-            // intr 39004661 242 2 0 0 0 0 0 0 1 0 0 0 4 0 0 0 0 0 431112 0 0 327 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 77669 2835950 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0
-            // ctxt 51673797
-            // btime 1476129018
-            // processes 398901
-            // procs_running 2
-            // procs_blocked 0
-            // softirq 30395348 0 14307075 31086 2940184 474854 0 1 4259055 66314 8316779
-            List<String> lines = readCPUStat();
-
-            Map<String, String[]> catagories = new HashMap<>(16);
-            for(String line : lines)
+            if(cpulist.isEmpty())
             {
-                String[] fields = line.split("\\s+");
-                catagories.put(fields[0], fields);
+                return new int[0];
             }
-
-            return catagories;
-        }
-
-
-        private String[] samplePID() throws IOException
-        {
-            // Example:
-            // 573 (java) S 1 434 434 0 -1 4202496 28930 0 0 0 358 50 0 0 20 0 60 0 8998150 9774174208 86273 18446744073709551615 4194304 4196500 140730893387312 140730893369888 265879061245 0 0 2 16800973 18446744073709551615 0 0 17 18 0 0 0 0 0
-            //58562 (proc with spaces) S 1 58528 58528 0 -1 4202496 61852 430 0 0 12028 5406 0 0 20 0 142 0 45073230 12515192832 439627 18446744073709551615 4194304 4196779 140725937365696 140725937348272 264056636157 0 0 2 16800973 18446744073709551615 0 0 17 5 0 0 0 0 0
-            String line = readPIDStat();
-            return ProcStatParser.parseProcStat(line);
-        }
-
-        private String[] sampleTID(int tid) throws IOException
-        {
-            // Example:
-            // 615 (java) S 1 434 434 0 -1 4202560 866 0 0 0 8 1 0 0 20 0 60 0 8998156 9774174208 86829 18446744073709551615 4194304 4196500 140730893387312 139848185632608 265879075422 0 4 2 16800973 18446744071579608298 0 0 -1 21 0 0 0 0 0
-            //58562 (thread with spaces) S 1 58528 58528 0 -1 4202496 61852 430 0 0 12028 5406 0 0 20 0 142 0 45073230 12515192832 439627 18446744073709551615 4194304 4196779 140725937365696 140725937348272 264056636157 0 0 2 16800973 18446744073709551615 0 0 17 5 0 0 0 0 0
-                String line = readTIDStat(tid);
-                return ProcStatParser.parseProcStat(line);
+            return Arrays.stream(cpulist.split(","))
+                    .flatMapToInt(range ->
+                    {
+                        int dash = range.indexOf('-');
+                        if(dash < 0)
+                        {
+                            return IntStream.of(Integer.parseInt(range));
+                        }
+                        return IntStream.rangeClosed(
+                                Integer.parseInt(range.substring(0, dash)),
+                                Integer.parseInt(range.substring(dash + 1)));
+                    })
+                    .toArray();
         }
 
 
@@ -465,92 +964,6 @@ public interface CPUMonitor
             return ((float)part)/total * 100.0f;
         }
 
-
-
-        // encapsulates parsing /proc/[pid]/stat and /proc/pid/tid/stat
-        // files
-        static class ProcStatParser
-        {
-            // Note: process/thread name may have spaces so they are enclosed in parens
-            //
-            // Example:
-            // 615 (java) S 1 434 434 0 -1 4202560 866 0 0 0 8 1 0 0 20 0 60 0 8998156 9774174208 86829 18446744073709551615 4194304 4196500 140730893387312 139848185632608 265879075422 0 4 2 16800973 18446744071579608298 0 0 -1 21 0 0 0 0 0
-            //58562 (thread name with spaces) S 1 58528 58528 0 -1 4202496 61852 430 0 0 12028 5406 0 0 20 0 142 0 45073230 12515192832 439627 18446744073709551615 4194304 4196779 140725937365696 140725937348272 264056636157 0 0 2 16800973 18446744073709551615 0 0 17 5 0 0 0 0 0
-
-            static String NUMBER_PAT = "[-\\d]+";
-            static String re = "^";
-            static
-            {
-                re += "(" + NUMBER_PAT + ")";
-                re += "\\s+(\\([^\\)]*\\))"; // parens delimited process/thread name
-                re += "\\s+(\\S+)";          // status
-                for(int i=0; i<41;i++)
-                {
-                    re += "\\s+("+ NUMBER_PAT +")";
-                }
-                re +=  "$";
-            }
-            static Pattern PATTERN = Pattern.compile(re);
-
-            private static String[] parseProcStat(String line) throws IOException
-            {
-//                return parseProcStatHighMemory(line);
-                return parseProcStatLowMemory(line);
-            }
-            private static String[] parseProcStatHighMemory(String line) throws IOException
-            {
-
-                Matcher matcher = PATTERN.matcher(line);
-                if(matcher.matches())
-                {
-                    String[] ret = new String[44];
-                    for(int i = 0; i<44; i++)
-                    {
-                        ret[i] = matcher.group(i+1);
-                    }
-                    return ret;
-                }
-                else
-                {
-                    throw new IOException("Can't parse [" + line +"]");
-                }
-            }
-
-            //
-            // jave regex matching with 40 groups keeps leading to out-of-memory
-            // errors ... so roll a cheaper version
-            private static String[] parseProcStatLowMemory(String line) throws IOException
-            {
-                int p1 = line.lastIndexOf('(');
-                int p2 = line.lastIndexOf(')');
-
-                if(p1 > 0 && p2 > 0)
-                {
-                    String[] ret = new String[44];
-                    ret[0] = line.substring(0, p1 - 1);
-                    ret[1] = line.substring(p1, p2+1);
-
-                    String remainder = line.substring(p2 + 2);
-                    String[] split = remainder.split("\\s+");
-
-                    System.arraycopy(split, 0, ret, 2, 42);
-
-
-                    for(int i=0; i<44; i++)
-                    {
-                        System.out.println("["+i+"] = ["+ret[i] +"]");
-                    }
-
-                    return ret;
-
-                }
-                else
-                {
-                    throw new IOException("Can't parse [" + line +"]");
-                }
-            }
-        }
-
     }
 
 }
@@ -1,9 +1,15 @@
 package icecube.daq.performance.diagnostic.cpu;
 
+import icecube.daq.performance.diagnostic.ColumnSink;
 import icecube.daq.performance.diagnostic.Content;
+import icecube.daq.performance.diagnostic.Content.GroupedContent;
+import icecube.daq.performance.diagnostic.FieldAppender;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Provides cpu utilization trace content.
@@ -54,6 +60,55 @@ public class CPUUtilizationContent implements Content.FlyWeight
         return new SystemUtilizationContent();
     }
 
+    /**
+     * @return A system cpu content broken down by kind of cpu time,
+     *         fly-weighted to this monitor.
+     */
+    public Content createSystemBreakdownContent()
+    {
+        return new BreakdownContent("", u -> u.cpuUtilization);
+    }
+
+    /**
+     * Note: Dependent on the cores online at time of call.
+     *
+     * @return A content with the cpu utilization of each core,
+     *         fly-weighted to this monitor.
+     */
+    public Content createCoreUtilizationContent()
+    {
+        return new ByIndexContent("c", latestSample.byCore.keySet(),
+                u -> u.byCore);
+    }
+
+    /**
+     * @return A core cpu content broken down by kind of cpu time,
+     *         fly-weighted to this monitor.
+     */
+    public Content createCoreBreakdownContent(final int core)
+    {
+        return new BreakdownContent("c" + core, u -> u.byCore.get(core));
+    }
+
+    /**
+     * @return A content with the cpu utilization of each NUMA node,
+     *         fly-weighted to this monitor.
+     */
+    public Content createNodeUtilizationContent()
+    {
+        return new ByIndexContent("n", latestSample.byNode.keySet(),
+                u -> u.byNode);
+    }
+
+    /**
+     * @return A NUMA node cpu content broken down by kind of cpu time,
+     *         fly-weighted to this monitor.
+     */
+    public Content createNodeBreakdownContent(final int node)
+    {
+        return new BreakdownContent("n" + node, u -> u.byNode.get(node));
+    }
+
     /**
      * @return A process cpu content fly-weighted to this monitor.
      */
@@ -69,20 +124,76 @@ public class CPUUtilizationContent implements Content.FlyWeight
                                                   final String label)
     {
         monitor.addTid(nid);
-        return new PIDUtilizationContent(nid, label);
+        return new NIDUtilizationContent(nid, label);
     }
 
     /**
-     * Note: Dependent on the threads existing at time of call.
+     * Thread groups are measured in-process from the cpu time of the
+     * Java threads matching the pattern, including threads started
+     * later. JVMs without thread cpu time support fall back to the
+     * procfs readings of the native threads existing at time of call.
      *
-     * @return A aggregate cpu content for a group of threads
-     * fly-weighted to this monitor.
+     * @return A aggregate cpu content for a group of threads.
      * @param pattern A regex to match threads in the group.
      * @throws Exception Likely an error accessing the native thread id.
      */
     public Content createThreadGroupUtilizationContent(final String pattern,
                                                   final String label)
             throws Exception
+    {
+        if(ThreadGroupMonitor.isSupported())
+        {
+            return new ThreadGroupContent(new ThreadGroupMonitor(pattern),
+                    label);
+        }
+
+        int[] nids = matchNids(pattern);
+        for (int nid : nids)
+        {
+            monitor.addTid(nid);
+        }
+        return new PIDAggregateContent(nids, label);
+    }
+
+    /**
+     * Note: Requires procfs task schedstat and status files.
+     *
+     * @return A scheduling content for a thread, fly-weighted to this
+     *         monitor.
+     */
+    public Content createThreadSchedulingContent(final int nid,
+                                                 final String label)
+    {
+        monitor.addSchedulingTid(nid);
+        return new GroupedContent(label,
+                new SchedulingContent(new int[]{nid}, true));
+    }
+
+    /**
+     * Note: Dependent on the threads existing at time of call.
+     *
+     * @return An aggregate scheduling content for a group of threads,
+     *         fly-weighted to this monitor.
+     * @param pattern A regex to match threads in the group.
+     * @throws Exception Likely an error accessing the native thread id.
+     */
+    public Content createThreadGroupSchedulingContent(final String pattern,
+                                                      final String label)
+            throws Exception
+    {
+        int[] nids = matchNids(pattern);
+        for (int nid : nids)
+        {
+            monitor.addSchedulingTid(nid);
+        }
+        return new GroupedContent(label, new SchedulingContent(nids, false));
+    }
+
+    /**
+     * @return The native ids of the threads of this process with names
+     *         matching a pattern.
+     */
+    private int[] matchNids(final String pattern) throws Exception
     {
         List<Integer> nids = new ArrayList<>();
 
@@ -91,7 +202,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
 
         for(ThreadUtil.ThreadInfo ti : all)
         {
-            if(ti.name.matches(pattern))
+            if(ti.name.matches(pattern) && ti.nid >= 0)
             {
                 if(ti.nid < Integer.MAX_VALUE)
                 {
@@ -110,12 +221,11 @@ public class CPUUtilizationContent implements Content.FlyWeight
         int idx=0;
         for (Integer nid : nids)
         {
-            monitor.addTid(nid);
             primitive[idx] = nid.intValue();
             idx++;
 
         }
-        return new PIDAggregateContent(primitive, label);
+        return primitive;
     }
 
     /**
@@ -127,6 +237,16 @@ public class CPUUtilizationContent implements Content.FlyWeight
         return (val != null) ? val.floatValue() : Float.NaN;
     }
 
+    /**
+     * provide access to the fly-weighted sample.
+     */
+    private float getSample(final Map<CPUMonitor.Keys, Float> utilization,
+                            final CPUMonitor.Keys key)
+    {
+        Float val = (utilization != null) ? utilization.get(key) : null;
+        return (val != null) ? val.floatValue() : Float.NaN;
+    }
+
     /**
      * provide access to the fly-weighted sample.
      */
@@ -179,7 +299,16 @@ public class CPUUtilizationContent implements Content.FlyWeight
             float cpuVal =
                     CPUUtilizationContent.this.getCPUSample(
                             CPUMonitor.Keys.CPU_UTILIZATION);
-            sb.append(String.format("%-8.1f", cpuVal));
+            FieldAppender.appendDouble(sb, cpuVal, 8, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            float cpuVal =
+                    CPUUtilizationContent.this.getCPUSample(
+                            CPUMonitor.Keys.CPU_UTILIZATION);
+            sink.doubleValue("%-8.1f", cpuVal);
         }
     }
 
@@ -227,8 +356,186 @@ public class CPUUtilizationContent implements Content.FlyWeight
                     CPUUtilizationContent.this.getCPUSample(
                             CPUMonitor.Keys.CPU_UTILIZATION);
 
-            sb.append(String.format("%-8.1f %-8.1f %-8.1f %-8.1f",
-                    user, system, idle, cpuVal));
+            FieldAppender.appendDouble(sb, user, 8, 1);
+            sb.append(' ');
+            FieldAppender.appendDouble(sb, system, 8, 1);
+            sb.append(' ');
+            FieldAppender.appendDouble(sb, idle, 8, 1);
+            sb.append(' ');
+            FieldAppender.appendDouble(sb, cpuVal, 8, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            sink.doubleValue("%-8.1f", CPUUtilizationContent.this.getCPUSample(
+                    CPUMonitor.Keys.CPU_USER));
+            sink.literal(" ");
+            sink.doubleValue("%-8.1f", CPUUtilizationContent.this.getCPUSample(
+                    CPUMonitor.Keys.CPU_SYSTEM));
+            sink.literal(" ");
+            sink.doubleValue("%-8.1f", CPUUtilizationContent.this.getCPUSample(
+                    CPUMonitor.Keys.CPU_IDLE));
+            sink.literal(" ");
+            sink.doubleValue("%-8.1f", CPUUtilizationContent.this.getCPUSample(
+                    CPUMonitor.Keys.CPU_UTILIZATION));
+        }
+
+    }
+
+
+    /**
+     * Provides cpu utilization broken down by kind of cpu time, for
+     * the system, a core or a NUMA node.
+     * Example
+     * <PRE>
+     *       n0usr%   n0sys%   n0iow%   n0irq%   n0sirq%  n0stl%   n0idle%  n0cpu%
+     *       29.4     6.1      0.2      0.4      1.4      0.0      62.7     37.3
+     *       56.1     31.5     0.0      0.9      3.1      0.0      8.4      91.6
+     * </PRE>
+     */
+    private class BreakdownContent implements Content
+    {
+        private final CPUMonitor.Keys[] KEYS =
+                {
+                        CPUMonitor.Keys.CPU_USER,
+                        CPUMonitor.Keys.CPU_SYSTEM,
+                        CPUMonitor.Keys.CPU_IOWAIT,
+                        CPUMonitor.Keys.CPU_IRQ,
+                        CPUMonitor.Keys.CPU_SOFTIRQ,
+                        CPUMonitor.Keys.CPU_STEAL,
+                        CPUMonitor.Keys.CPU_IDLE,
+                        CPUMonitor.Keys.CPU_UTILIZATION
+                };
+        private final String[] NAMES =
+                {"usr%", "sys%", "iow%", "irq%", "sirq%", "stl%", "idle%",
+                        "cpu%"};
+
+        private final Function<CPUMonitor.Utilization,
+                Map<CPUMonitor.Keys, Float>> selector;
+
+        final String header;
+
+        private BreakdownContent(final String prefix,
+                                 final Function<CPUMonitor.Utilization,
+                                         Map<CPUMonitor.Keys, Float>> selector)
+        {
+            this.selector = selector;
+
+            StringBuilder hb = new StringBuilder();
+            for (int i = 0; i < NAMES.length; i++)
+            {
+                if(i > 0)
+                {
+                    hb.append(' ');
+                }
+                hb.append(String.format("%-8s", prefix + NAMES[i]));
+            }
+            header = hb.toString();
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append(header);
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            Map<CPUMonitor.Keys, Float> utilization =
+                    selector.apply(latestSample);
+            for (int i = 0; i < KEYS.length; i++)
+            {
+                if(i > 0)
+                {
+                    sb.append(' ');
+                }
+                FieldAppender.appendDouble(sb,
+                        getSample(utilization, KEYS[i]), 8, 1);
+            }
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            Map<CPUMonitor.Keys, Float> utilization =
+                    selector.apply(latestSample);
+            for (int i = 0; i < KEYS.length; i++)
+            {
+                if(i > 0)
+                {
+                    sink.literal(" ");
+                }
+                sink.doubleValue("%-8.1f", getSample(utilization, KEYS[i]));
+            }
+        }
+
+    }
+
+    /**
+     * Provides the cpu utilization of each core or NUMA node.
+     * Example
+     * <PRE>
+     *       c0%     c1%     c2%     c3%
+     *       99.8    2.1     1.7     3.0
+     *       99.9    1.2     4.4     0.9
+     * </PRE>
+     */
+    private class ByIndexContent implements Content
+    {
+        private final int[] indexes;
+        private final Function<CPUMonitor.Utilization,
+                Map<Integer, Map<CPUMonitor.Keys, Float>>> selector;
+
+        final String header;
+
+        private ByIndexContent(final String prefix,
+                               final Collection<Integer> indexes,
+                               final Function<CPUMonitor.Utilization,
+                                       Map<Integer,
+                                       Map<CPUMonitor.Keys, Float>>> selector)
+        {
+            this.selector = selector;
+            this.indexes = new int[indexes.size()];
+            StringBuilder hb = new StringBuilder();
+            int i = 0;
+            for (Integer index : indexes)
+            {
+                this.indexes[i++] = index;
+                hb.append(String.format("%-8s", prefix + index + "%"));
+            }
+            header = hb.toString();
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append(header);
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            Map<Integer, Map<CPUMonitor.Keys, Float>> all =
+                    selector.apply(latestSample);
+            for (int i = 0; i < indexes.length; i++)
+            {
+                FieldAppender.appendDouble(sb, getSample(all.get(indexes[i]),
+                        CPUMonitor.Keys.CPU_UTILIZATION), 8, 1);
+            }
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            Map<Integer, Map<CPUMonitor.Keys, Float>> all =
+                    selector.apply(latestSample);
+            for (int i = 0; i < indexes.length; i++)
+            {
+                sink.doubleValue("%-8.1f", getSample(all.get(indexes[i]),
+                        CPUMonitor.Keys.CPU_UTILIZATION));
+            }
         }
 
     }
@@ -252,6 +559,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
 
         final String header;
         final String contentFmt;
+        final int width;
 
         private PIDUtilizationContent(final int pid)
         {
@@ -266,6 +574,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
             int width = Math.max(4, label.length())  + 4;
             header = String.format("%-"+width+"s", label);
             contentFmt = "%-" + width + ".1f";
+            this.width = width;
         }
 
         @Override
@@ -278,7 +587,14 @@ public class CPUUtilizationContent implements Content.FlyWeight
         public void content(final StringBuilder sb)
         {
             float pidVal = CPUUtilizationContent.this.getProcessSample(pid);
-            sb.append(String.format(contentFmt, pidVal));
+            FieldAppender.appendDouble(sb, pidVal, width, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            float pidVal = CPUUtilizationContent.this.getProcessSample(pid);
+            sink.doubleValue(contentFmt, pidVal);
         }
 
     }
@@ -301,10 +617,11 @@ public class CPUUtilizationContent implements Content.FlyWeight
 
         final String header;
         final String contentFmt;
+        final int width;
 
         private NIDUtilizationContent(final int nid)
         {
-            this(pid, Integer.toString(nid));
+            this(nid, Integer.toString(nid));
         }
         private NIDUtilizationContent(final int nid,
                                       final String label)
@@ -315,6 +632,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
             int width = Math.max(4, label.length())  + 4;
             header = String.format("%-"+width+"s", label);
             contentFmt = "%-" + width + ".1f";
+            this.width = width;
         }
 
         @Override
@@ -327,7 +645,14 @@ public class CPUUtilizationContent implements Content.FlyWeight
         public void content(final StringBuilder sb)
         {
             float pidVal = CPUUtilizationContent.this.getThreadSample(nid);
-            sb.append(String.format(contentFmt, pidVal));
+            FieldAppender.appendDouble(sb, pidVal, width, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            float pidVal = CPUUtilizationContent.this.getThreadSample(nid);
+            sink.doubleValue(contentFmt, pidVal);
         }
 
     }
@@ -351,6 +676,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
 
         final String header;
         final String contentFmt;
+        final int width;
 
         private PIDAggregateContent(final int[] pids,
                                       final String label)
@@ -361,6 +687,7 @@ public class CPUUtilizationContent implements Content.FlyWeight
             int width = Math.min(10, label.length())  + 4;
             header = String.format("%-"+width+"s", label);
             contentFmt = "%-" + width + ".1f";
+            this.width = width;
         }
 
         @Override
@@ -371,6 +698,17 @@ public class CPUUtilizationContent implements Content.FlyWeight
 
         @Override
         public void content(final StringBuilder sb)
+        {
+            FieldAppender.appendDouble(sb, aggregate(), width, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            sink.doubleValue(contentFmt, aggregate());
+        }
+
+        private float aggregate()
         {
             float acc = 0.0f;
             for (int i = 0; i < pids.length; i++)
@@ -381,7 +719,164 @@ public class CPUUtilizationContent implements Content.FlyWeight
                     acc += val;
                 }
             }
-            sb.append(String.format(contentFmt, acc));
+            return acc;
+        }
+
+    }
+
+
+    /**
+     * Provides the scheduling of a thread or the aggregate scheduling
+     * of a group of threads. Context switches are per second, run queue
+     * wait is in percent of a cpu. The cpu a thread last ran on is
+     * provided for a single thread.
+     *
+     * Example
+     * <PRE>
+     *       vcsw/s   ivcsw/s  rqwait%  lastcpu
+     *       1201.3   12.0     0.4      3
+     *       1187.9   48.5     6.2      3
+     *       1230.1   9.9      0.2      7
+     * </PRE>
+     */
+    private class SchedulingContent implements Content
+    {
+        private static final int VOLUNTARY = 0;
+        private static final int NONVOLUNTARY = 1;
+        private static final int WAIT = 2;
+
+        private final int[] nids;
+        private final boolean single;
+
+        final String header;
+
+        private SchedulingContent(final int[] nids, final boolean single)
+        {
+            this.nids = nids;
+            this.single = single;
+            if(single)
+            {
+                header = String.format("%-8s %-8s %-8s %-8s",
+                        "vcsw/s", "ivcsw/s", "rqwait%", "lastcpu");
+            }
+            else
+            {
+                header = String.format("%-8s %-8s %-8s",
+                        "vcsw/s", "ivcsw/s", "rqwait%");
+            }
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append(header);
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            FieldAppender.appendDouble(sb, aggregate(VOLUNTARY), 8, 1);
+            sb.append(' ');
+            FieldAppender.appendDouble(sb, aggregate(NONVOLUNTARY), 8, 1);
+            sb.append(' ');
+            FieldAppender.appendDouble(sb, aggregate(WAIT), 8, 1);
+            if(single)
+            {
+                sb.append(' ');
+                FieldAppender.appendLong(sb, lastCPU(), 8);
+            }
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            sink.doubleValue("%-8.1f", aggregate(VOLUNTARY));
+            sink.literal(" ");
+            sink.doubleValue("%-8.1f", aggregate(NONVOLUNTARY));
+            sink.literal(" ");
+            sink.doubleValue("%-8.1f", aggregate(WAIT));
+            if(single)
+            {
+                sink.literal(" ");
+                sink.longValue("%-8d", lastCPU());
+            }
+        }
+
+        private float aggregate(final int field)
+        {
+            float acc = Float.NaN;
+            for (int i = 0; i < nids.length; i++)
+            {
+                CPUMonitor.Scheduling sched =
+                        latestSample.byThreadScheduling.get(nids[i]);
+                if(sched != null)
+                {
+                    float val = (field == VOLUNTARY) ?
+                            sched.voluntarySwitches :
+                            (field == NONVOLUNTARY) ?
+                                    sched.nonvoluntarySwitches :
+                                    sched.runQueueWait;
+                    acc = Float.isNaN(acc) ? val : acc + val;
+                }
+            }
+            return acc;
+        }
+
+        private int lastCPU()
+        {
+            CPUMonitor.Scheduling sched =
+                    latestSample.byThreadScheduling.get(nids[0]);
+            return (sched != null) ? sched.lastCPU : -1;
+        }
+
+    }
+
+    /**
+     * Provides the cpu usage of a group of Java threads.
+     *
+     * Example
+     * <PRE>
+     *       collectors
+     *       23.4
+     *       22.1
+     *       25.7
+     * </PRE>
+     */
+    private static class ThreadGroupContent implements Content
+    {
+        private final ThreadGroupMonitor group;
+
+        final String header;
+        final String contentFmt;
+        final int width;
+
+        private ThreadGroupContent(final ThreadGroupMonitor group,
+                                   final String label)
+        {
+            this.group = group;
+
+            int width = Math.min(10, label.length())  + 4;
+            header = String.format("%-"+width+"s", label);
+            contentFmt = "%-" + width + ".1f";
+            this.width = width;
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append(header);
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            FieldAppender.appendDouble(sb, group.sample(), width, 1);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            sink.doubleValue(contentFmt, group.sample());
         }
 
     }
@@ -0,0 +1,369 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Provides process memory and I/O monitoring by way of periodic
+ * procfs readings.
+ *
+ * Resident memory includes the direct buffers, memory-mapped files and
+ * native allocations that the JVM heap usage does not.
+ *
+ * Note: OS Dependent. Requires linux procfs files:
+ * <PRE>
+ *       /proc/[pid]/stat           Page faults
+ *       /proc/[pid]/status         Resident memory by kind
+ *       /proc/[pid]/io             I/O bytes (optional)
+ *       /proc/[pid]/smaps_rollup   Proportional set size (optional)
+ * </PRE>
+ */
+public interface MemoryMonitor
+{
+
+    static Logger logger = Logger.getLogger(MemoryMonitor.class.getName());
+
+    /**
+     * Sample proc files and calculate rates for the interval.
+     *
+     * @param usage Receives the memory usage and rates.
+     */
+    public void sample(Usage usage);
+
+    /**
+     * A reusable holder of memory and I/O statistics.
+     *
+     * Sizes are in bytes, -1 if unavailable. Rates are per second since
+     * the previous sample, NaN if unavailable.
+     */
+    class Usage
+    {
+        /** Resident memory. */
+        public long rss = -1;
+
+        /** Resident anonymous memory, e.g. heap and direct buffers. */
+        public long rssAnon = -1;
+
+        /** Resident file-backed memory, e.g. mapped files. */
+        public long rssFile = -1;
+
+        /** Resident shared memory. */
+        public long rssShmem = -1;
+
+        /** Swapped out anonymous memory. */
+        public long swap = -1;
+
+        /** Proportional set size, shared pages divided among sharers. */
+        public long pss = -1;
+
+        public float minorFaults = Float.NaN;
+        public float majorFaults = Float.NaN;
+
+        /** Bytes fetched from and sent to the storage layer. */
+        public float readBytes = Float.NaN;
+        public float writeBytes = Float.NaN;
+
+        /** Bytes passed to read and write calls, including sockets. */
+        public float readChars = Float.NaN;
+        public float writeChars = Float.NaN;
+    }
+
+    /**
+     * Create a monitor for a pid.
+     * @param pid The pid of the process to monitor.
+     * @return The monitor.
+     * @throws IOException Error accessing the required procfs files.
+     */
+    static MemoryMonitor create(final int pid) throws IOException
+    {
+        return new ProcFileMonitor(pid);
+    }
+
+    /**
+     * Create a monitor for a pid, falling back to a dummy monitor
+     * if error occurs during instantiation.
+     * @param pid The pid of the process to monitor.
+     * @return The monitor.
+     */
+    static MemoryMonitor createFailsafe(final int pid)
+    {
+        try
+        {
+            return new ProcFileMonitor(pid);
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            return new MemoryMonitor()
+            {
+                @Override
+                public void sample(final Usage usage)
+                {
+                }
+            };
+        }
+    }
+
+
+    /**
+     * Implements MemoryMonitor using procfs files.
+     *
+     * The files are kept open and read into reused direct buffers,
+     * numeric fields are parsed directly into long arrays.
+     *
+     * The kernel generates smaps_rollup by walking every mapping of the
+     * process, so it is read once per rollup period rather than at every
+     * sample, intervening samples repeat the last reading.
+     */
+    public class ProcFileMonitor implements MemoryMonitor
+    {
+        /** The default number of samples per smaps_rollup reading. */
+        public static final int DEFAULT_ROLLUP_PERIOD = 10;
+
+        private static final int KB = 1024;
+
+        // the fields of the stat file used in calculations
+        private static final int STAT_FIELDS = 12;
+        private static final int MINFLT_FIELD = 9;
+        private static final int MAJFLT_FIELD = 11;
+
+        private static final byte[] VM_RSS = "VmRSS:".getBytes();
+        private static final byte[] RSS_ANON = "RssAnon:".getBytes();
+        private static final byte[] RSS_FILE = "RssFile:".getBytes();
+        private static final byte[] RSS_SHMEM = "RssShmem:".getBytes();
+        private static final byte[] VM_SWAP = "VmSwap:".getBytes();
+        private static final byte[] PSS = "Pss:".getBytes();
+        private static final byte[] RCHAR = "rchar:".getBytes();
+        private static final byte[] WCHAR = "wchar:".getBytes();
+        private static final byte[] READ_BYTES = "read_bytes:".getBytes();
+        private static final byte[] WRITE_BYTES = "write_bytes:".getBytes();
+
+        // the indexes of counters
+        private static final int MINFLT = 0;
+        private static final int MAJFLT = 1;
+        private static final int RCHAR_COUNT = 2;
+        private static final int WCHAR_COUNT = 3;
+        private static final int READ_COUNT = 4;
+        private static final int WRITE_COUNT = 5;
+        private static final int COUNTERS = 6;
+
+        private final ProcFileReader stat;
+        private final ProcFileReader status;
+        private ProcFileReader io;
+        private ProcFileReader smapsRollup;
+
+        private final int rollupPeriod;
+        private int iteration;
+        private long pss = -1;
+
+        private long[] last = new long[COUNTERS];
+        private long[] current = new long[COUNTERS];
+        private long lastNanos;
+
+        // scratch space for parsing
+        private final long[] statFields = new long[STAT_FIELDS];
+        private final long[] value = new long[1];
+
+
+        public ProcFileMonitor(final int pid) throws IOException
+        {
+            this(pid, DEFAULT_ROLLUP_PERIOD);
+        }
+
+        /**
+         * @param pid The process id.
+         * @param rollupPeriod The number of samples per smaps_rollup
+         *                     reading, zero to not read smaps_rollup.
+         * @throws IOException Error opening the stat or status files.
+         */
+        public ProcFileMonitor(final int pid, final int rollupPeriod)
+                throws IOException
+        {
+            Path dir = Paths.get("/proc", Integer.toString(pid));
+            if(!Files.exists(dir))
+            {
+                throw new IllegalArgumentException("Proc file " +
+                        dir +  " not found");
+            }
+
+            this.rollupPeriod = rollupPeriod;
+            stat = new ProcFileReader(dir.resolve("stat"));
+            status = new ProcFileReader(dir.resolve("status"), 2048);
+            io = openOptional(dir.resolve("io"));
+            smapsRollup = (rollupPeriod > 0) ?
+                    openOptional(dir.resolve("smaps_rollup")) : null;
+
+            sample(new Usage());
+        }
+
+        @Override
+        public void sample(final Usage usage)
+        {
+            try
+            {
+                final long now = System.nanoTime();
+                long[] tmp = last;
+                last = current;
+                current = tmp;
+
+                sampleStat();
+                sampleStatus(usage);
+                final boolean hasIO = sampleIO();
+                if(smapsRollup != null && iteration++ % rollupPeriod == 0)
+                {
+                    sampleRollup();
+                }
+                usage.pss = pss;
+
+                final float interval = (now - lastNanos) / 1000000000f;
+                lastNanos = now;
+                usage.minorFaults = rate(MINFLT, interval);
+                usage.majorFaults = rate(MAJFLT, interval);
+                usage.readChars = hasIO ? rate(RCHAR_COUNT, interval) :
+                        Float.NaN;
+                usage.writeChars = hasIO ? rate(WCHAR_COUNT, interval) :
+                        Float.NaN;
+                usage.readBytes = hasIO ? rate(READ_COUNT, interval) :
+                        Float.NaN;
+                usage.writeBytes = hasIO ? rate(WRITE_COUNT, interval) :
+                        Float.NaN;
+            }
+            catch (IOException e)
+            {
+                logger.warn("Could not take memory sample", e);
+            }
+        }
+
+        private float rate(final int counter, final float interval)
+        {
+            return (current[counter] - last[counter]) / interval;
+        }
+
+        private void sampleStat() throws IOException
+        {
+            ProcFileReader.parseStat(stat.read(), statFields);
+            current[MINFLT] = statFields[MINFLT_FIELD];
+            current[MAJFLT] = statFields[MAJFLT_FIELD];
+        }
+
+        // Example:
+        // ...
+        // VmRSS:	  412520 kB
+        // RssAnon:	  389724 kB
+        // RssFile:	   22796 kB
+        // RssShmem:	       0 kB
+        // ...
+        // VmSwap:	       0 kB
+        private void sampleStatus(final Usage usage) throws IOException
+        {
+            ByteBuffer buf = status.read();
+            usage.rss = parseKB(buf, VM_RSS);
+            usage.rssAnon = parseKB(buf, RSS_ANON);
+            usage.rssFile = parseKB(buf, RSS_FILE);
+            usage.rssShmem = parseKB(buf, RSS_SHMEM);
+            usage.swap = parseKB(buf, VM_SWAP);
+        }
+
+        // Example:
+        // rchar: 3980
+        // wchar: 0
+        // syscr: 9
+        // syscw: 0
+        // read_bytes: 0
+        // write_bytes: 0
+        // cancelled_write_bytes: 0
+        private boolean sampleIO()
+        {
+            if(io == null)
+            {
+                return false;
+            }
+            try
+            {
+                ByteBuffer buf = io.read();
+                current[RCHAR_COUNT] = parseValue(buf, RCHAR);
+                current[WCHAR_COUNT] = parseValue(buf, WCHAR);
+                current[READ_COUNT] = parseValue(buf, READ_BYTES);
+                current[WRITE_COUNT] = parseValue(buf, WRITE_BYTES);
+                return true;
+            }
+            catch (IOException e)
+            {
+                // e.g. io accounting is not permitted
+                logger.warn("Could not read " + io.getPath() +
+                        ", I/O rates disabled", e);
+                closeQuietly(io);
+                io = null;
+                return false;
+            }
+        }
+
+        private void sampleRollup()
+        {
+            try
+            {
+                pss = parseKB(smapsRollup.read(), PSS);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Could not read " + smapsRollup.getPath() +
+                        ", pss disabled", e);
+                closeQuietly(smapsRollup);
+                smapsRollup = null;
+                pss = -1;
+            }
+        }
+
+        private long parseKB(final ByteBuffer buf, final byte[] token)
+        {
+            int pos = ProcFileReader.findLine(buf, token);
+            if(pos >= 0 && ProcFileReader.parseLine(buf, pos, value) == 1)
+            {
+                return value[0] * KB;
+            }
+            return -1;
+        }
+
+        private long parseValue(final ByteBuffer buf, final byte[] token)
+                throws IOException
+        {
+            int pos = ProcFileReader.findLine(buf, token);
+            if(pos >= 0 && ProcFileReader.parseLine(buf, pos, value) == 1)
+            {
+                return value[0];
+            }
+            throw new IOException("Can't parse " + new String(token));
+        }
+
+        private static ProcFileReader openOptional(final Path path)
+        {
+            try
+            {
+                return new ProcFileReader(path);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Could not open " + path, e);
+                return null;
+            }
+        }
+
+        private static void closeQuietly(final ProcFileReader reader)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                // ignored, the channel is released regardless
+            }
+        }
+
+    }
+
+}
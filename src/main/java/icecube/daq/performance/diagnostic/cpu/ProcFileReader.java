@@ -0,0 +1,295 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a procfs file repeatedly through an open channel into a reused
+ * direct buffer.
+ *
+ * procfs files are generated when read, so each read returns the
+ * current content from the start of the file. The static parsers
+ * extract numeric fields from the content into long arrays without
+ * creating Strings.
+ *
+ * Note: Not thread safe.
+ */
+public class ProcFileReader implements Closeable
+{
+
+    /** The default buffer capacity, sufficient for stat files. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+
+    public ProcFileReader(final Path path) throws IOException
+    {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param path The file.
+     * @param capacity The initial buffer capacity, the buffer grows
+     *                 to fit the content.
+     * @throws IOException Error opening the file.
+     */
+    public ProcFileReader(final Path path, final int capacity)
+            throws IOException
+    {
+        this.path = path;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        open();
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Read the current content of the file, reopening the file if it
+     * was closed.
+     *
+     * @return The content, from position zero to the limit. Valid until
+     *         the next read.
+     * @throws IOException Error reading the file, e.g. the task exited.
+     */
+    public ByteBuffer read() throws IOException
+    {
+        open();
+        while(true)
+        {
+            buffer.clear();
+            int n = 0;
+            while(buffer.hasRemaining() && n >= 0)
+            {
+                n = channel.read(buffer, buffer.position());
+            }
+            if(buffer.hasRemaining())
+            {
+                buffer.flip();
+                return buffer;
+            }
+
+            // content may be truncated, grow and re-read
+            buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        }
+    }
+
+    /**
+     * Close the file, a subsequent read reopens it.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            finally
+            {
+                channel = null;
+            }
+        }
+    }
+
+    private void open() throws IOException
+    {
+        if(channel == null)
+        {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Parse a /proc/[pid]/stat or /proc/[pid]/task/[tid]/stat file.
+     *
+     * Fields are indexed from zero in the order of proc(5), e.g. utime
+     * is dest[13]. The comm and state fields are not numeric and are
+     * parsed as zero. Fields beyond dest.length are ignored.
+     *
+     * @return The number of fields parsed.
+     * @throws IOException The content is not a stat line.
+     */
+    public static int parseStat(final ByteBuffer buf, final long[] dest)
+            throws IOException
+    {
+        // the comm field is enclosed in parens and may itself contain
+        // spaces and parens
+        int open = -1;
+        int close = -1;
+        for (int i = 0; i < buf.limit(); i++)
+        {
+            final byte b = buf.get(i);
+            if(b == '(' && open < 0)
+            {
+                open = i;
+            }
+            else if(b == ')')
+            {
+                close = i;
+            }
+        }
+        if(open < 1 || close < open)
+        {
+            throw new IOException("Can't parse stat [" + text(buf) + "]");
+        }
+
+        int count = parseFields(buf, 0, open, dest, 0);
+        if(count < dest.length)
+        {
+            dest[count++] = 0;
+        }
+        return parseFields(buf, close + 1, buf.limit(), dest, count);
+    }
+
+    /**
+     * Find a line by its first token, e.g. "cpu" for the aggregate line
+     * of /proc/stat.
+     *
+     * @return The position following the token, or -1 if not found.
+     */
+    public static int findLine(final ByteBuffer buf, final byte[] token)
+    {
+        int start = 0;
+        while(start < buf.limit())
+        {
+            if(matches(buf, start, token))
+            {
+                return start + token.length;
+            }
+            start = nextLine(buf, start);
+        }
+        return -1;
+    }
+
+    /**
+     * @return The start of the line following a position, or the limit.
+     */
+    public static int nextLine(final ByteBuffer buf, final int from)
+    {
+        int pos = from;
+        final int limit = buf.limit();
+        while(pos < limit && buf.get(pos) != '\n')
+        {
+            pos++;
+        }
+        return Math.min(pos + 1, limit);
+    }
+
+    /**
+     * @return True if the content at a position starts with a prefix.
+     */
+    public static boolean startsWith(final ByteBuffer buf, final int pos,
+                                     final byte[] prefix)
+    {
+        if(pos + prefix.length > buf.limit())
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if(buf.get(pos + i) != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the whitespace separated numeric fields from a position to
+     * the end of its line.
+     *
+     * @return The number of fields parsed, limited to dest.length.
+     */
+    public static int parseLine(final ByteBuffer buf, final int from,
+                                final long[] dest)
+    {
+        int end = from;
+        while(end < buf.limit() && buf.get(end) != '\n')
+        {
+            end++;
+        }
+        return parseFields(buf, from, end, dest, 0);
+    }
+
+    /**
+     * Parse whitespace separated fields, non-numeric fields are parsed
+     * as zero and trailing non-digits of a field are ignored.
+     *
+     * @return The index following the last field parsed.
+     */
+    static int parseFields(final ByteBuffer buf, final int from,
+                           final int to, final long[] dest, int index)
+    {
+        int pos = from;
+        while(index < dest.length)
+        {
+            while(pos < to && isSpace(buf.get(pos)))
+            {
+                pos++;
+            }
+            if(pos >= to)
+            {
+                break;
+            }
+
+            boolean negative = false;
+            if(buf.get(pos) == '-')
+            {
+                negative = true;
+                pos++;
+            }
+
+            // values beyond a signed long (e.g. unsigned -1) wrap
+            long value = 0;
+            byte b;
+            while(pos < to && (b = buf.get(pos)) >= '0' && b <= '9')
+            {
+                value = value * 10 + (b - '0');
+                pos++;
+            }
+            while(pos < to && !isSpace(buf.get(pos)))
+            {
+                pos++;
+            }
+            dest[index++] = negative ? -value : value;
+        }
+        return index;
+    }
+
+    private static boolean matches(final ByteBuffer buf, final int pos,
+                                   final byte[] token)
+    {
+        // the token must be a whole word, "cpu" does not match "cpu0"
+        return startsWith(buf, pos, token) &&
+                pos + token.length < buf.limit() &&
+                isSpace(buf.get(pos + token.length));
+    }
+
+    private static boolean isSpace(final byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n';
+    }
+
+    private static String text(final ByteBuffer buf)
+    {
+        byte[] bytes = new byte[buf.limit()];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = buf.get(i);
+        }
+        return new String(bytes).trim();
+    }
+
+}
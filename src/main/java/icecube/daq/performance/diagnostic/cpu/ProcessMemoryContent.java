@@ -0,0 +1,254 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import icecube.daq.performance.diagnostic.ColumnSink;
+import icecube.daq.performance.diagnostic.Content;
+import icecube.daq.performance.diagnostic.FieldAppender;
+
+/**
+ * Provides process memory and I/O trace content from a MemoryMonitor.
+ *
+ * Sizes are in megabytes and I/O in megabytes per second, unavailable
+ * values display as -1 and NaN respectively.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   trace.addContent(new ProcessMemoryContent());
+ *
+ * Example
+ *
+ *    rssmb     anonmb    filemb    minflt/s  majflt/s  rdmbps    wrmbps
+ *    4210      1188      3019      12.0      0.0       0.0       38.1
+ *    4262      1190      3069      10.0      0.0       0.0       52.4
+ * </PRE>
+ */
+public class ProcessMemoryContent implements Content
+{
+
+    /** The default fields. */
+    public static final MemoryField[] DEFAULT_FIELDS =
+            {
+                    MemoryField.RSS,
+                    MemoryField.ANON,
+                    MemoryField.FILE,
+                    MemoryField.MINOR_FAULTS,
+                    MemoryField.MAJOR_FAULTS,
+                    MemoryField.READ,
+                    MemoryField.WRITE
+            };
+
+
+    final MemoryMonitor monitor;
+    final MemoryField[] fields;
+    final String header;
+
+    final MemoryMonitor.Usage usage = new MemoryMonitor.Usage();
+
+
+    public ProcessMemoryContent()
+    {
+        this(DEFAULT_FIELDS);
+    }
+
+    public ProcessMemoryContent(final MemoryField... fields)
+    {
+        this(MemoryMonitor.createFailsafe(ThreadUtil.myPID()), fields);
+    }
+
+    public ProcessMemoryContent(final MemoryMonitor monitor,
+                                final MemoryField... fields)
+    {
+        this.monitor = monitor;
+        this.fields = fields;
+
+        StringBuilder hb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++)
+        {
+            hb.append(fields[i].header());
+        }
+        this.header = hb.toString();
+    }
+
+    @Override
+    public void header(final StringBuilder sb)
+    {
+        sb.append(header);
+    }
+
+    @Override
+    public void content(final StringBuilder sb)
+    {
+        monitor.sample(usage);
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sb, usage);
+        }
+    }
+
+    @Override
+    public void content(final ColumnSink sink)
+    {
+        monitor.sample(usage);
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i].content(sink, usage);
+        }
+    }
+
+
+    public static enum MemoryField
+    {
+        RSS("rssmb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.rss;
+                    }
+                },
+        ANON("anonmb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.rssAnon;
+                    }
+                },
+        FILE("filemb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.rssFile;
+                    }
+                },
+        SHMEM("shmemmb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.rssShmem;
+                    }
+                },
+        SWAP("swapmb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.swap;
+                    }
+                },
+        PSS("pssmb", true)
+                {
+                    @Override
+                    long size(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.pss;
+                    }
+                },
+        MINOR_FAULTS("minflt/s", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.minorFaults;
+                    }
+                },
+        MAJOR_FAULTS("majflt/s", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.majorFaults;
+                    }
+                },
+        READ("rdmbps", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.readBytes / BYTES_PER_MB;
+                    }
+                },
+        WRITE("wrmbps", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.writeBytes / BYTES_PER_MB;
+                    }
+                },
+        READ_CHARS("rcmbps", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.readChars / BYTES_PER_MB;
+                    }
+                },
+        WRITE_CHARS("wcmbps", false)
+                {
+                    @Override
+                    float rate(final MemoryMonitor.Usage usage)
+                    {
+                        return usage.writeChars / BYTES_PER_MB;
+                    }
+                };
+
+        static final int BYTES_PER_MB = 1024*1024;
+        static final int WIDTH = 10;
+
+        final String header;
+        final boolean isSize;
+
+        MemoryField(final String header, final boolean isSize)
+        {
+            this.header = String.format("%-" + WIDTH + "s", header);
+            this.isSize = isSize;
+        }
+
+        public String header() { return header; }
+
+        void content(final StringBuilder sb,
+                     final MemoryMonitor.Usage usage)
+        {
+            if(isSize)
+            {
+                FieldAppender.appendLong(sb, megabytes(usage), WIDTH);
+            }
+            else
+            {
+                FieldAppender.appendDouble(sb, rate(usage), WIDTH, 1);
+            }
+        }
+
+        void content(final ColumnSink sink, final MemoryMonitor.Usage usage)
+        {
+            if(isSize)
+            {
+                sink.longValue("%-10d", megabytes(usage));
+            }
+            else
+            {
+                sink.doubleValue("%-10.1f", rate(usage));
+            }
+        }
+
+        private long megabytes(final MemoryMonitor.Usage usage)
+        {
+            long size = size(usage);
+            return (size < 0) ? -1 : size / BYTES_PER_MB;
+        }
+
+        long size(final MemoryMonitor.Usage usage)
+        {
+            throw new IllegalStateException(name() + " is not a size");
+        }
+
+        float rate(final MemoryMonitor.Usage usage)
+        {
+            throw new IllegalStateException(name() + " is not a rate");
+        }
+    }
+
+}
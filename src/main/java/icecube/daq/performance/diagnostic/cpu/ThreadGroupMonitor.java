@@ -0,0 +1,185 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the cpu utilization of a group of Java threads in-process
+ * from ThreadMXBean thread cpu times, without native thread ids.
+ *
+ * Threads are selected by a name pattern. A thread is matched against
+ * the pattern once, when first seen, so threads started after creation
+ * join the group and a sample costs one cpu time read per member.
+ * A thread that starts during an interval contributes its cpu time
+ * since start, a thread that exits during an interval is omitted.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   ThreadGroupMonitor collectors = new ThreadGroupMonitor("collector-.*");
+ *   ...
+ *   float percent = collectors.sample();
+ * </PRE>
+ *
+ * Note: Not thread safe.
+ */
+public class ThreadGroupMonitor
+{
+
+    private static final Member NON_MEMBER = new Member();
+
+    private final ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+    private final Pattern pattern;
+
+    // Java thread id -> member, or NON_MEMBER
+    private final Map<Long, Member> threads = new HashMap<>();
+    private int generation;
+    private long lastNanos;
+
+
+    /**
+     * Holds the cpu time of a member thread at its last sample.
+     */
+    private static class Member
+    {
+        long cpuNanos;
+        int generation;
+    }
+
+
+    /**
+     * @param pattern A regex matching the names of threads in the group.
+     * @throws UnsupportedOperationException The JVM does not support
+     *         thread cpu time.
+     */
+    public ThreadGroupMonitor(final String pattern)
+    {
+        if(!isSupported())
+        {
+            throw new UnsupportedOperationException(
+                    "Thread cpu time is not supported");
+        }
+        if(!mxBean.isThreadCpuTimeEnabled())
+        {
+            mxBean.setThreadCpuTimeEnabled(true);
+        }
+        this.pattern = Pattern.compile(pattern);
+        sample();
+    }
+
+    /**
+     * @return True if the JVM supports thread cpu time.
+     */
+    public static boolean isSupported()
+    {
+        return ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported();
+    }
+
+    /**
+     * @return The number of member threads at the last sample.
+     */
+    public int size()
+    {
+        int size = 0;
+        for(Member member : threads.values())
+        {
+            if(member != NON_MEMBER)
+            {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Sample the cpu time of the group.
+     *
+     * @return The utilization of the group since the previous sample, in
+     *         percent of a cpu.
+     */
+    public float sample()
+    {
+        final long now = System.nanoTime();
+        final long[] ids = mxBean.getAllThreadIds();
+        final boolean first = (generation == 0);
+        generation++;
+
+        long cpuNanos = 0;
+        for (int i = 0; i < ids.length; i++)
+        {
+            Member member = threads.get(ids[i]);
+            if(member == null)
+            {
+                member = classify(ids[i]);
+                threads.put(ids[i], member);
+            }
+            if(member == NON_MEMBER)
+            {
+                continue;
+            }
+
+            final long time = mxBean.getThreadCpuTime(ids[i]);
+            if(time < 0)
+            {
+                // exited
+                continue;
+            }
+            if(member.generation == generation - 1)
+            {
+                cpuNanos += time - member.cpuNanos;
+            }
+            else if(member.generation == 0 && !first)
+            {
+                cpuNanos += time;
+            }
+            member.cpuNanos = time;
+            member.generation = generation;
+        }
+
+        // forget exited threads, thread ids are not reused
+        if(threads.size() > ids.length)
+        {
+            prune(ids);
+        }
+
+        final long interval = now - lastNanos;
+        lastNanos = now;
+        return first ? 0 : (float) cpuNanos / interval * 100f;
+    }
+
+    private Member classify(final long id)
+    {
+        ThreadInfo info = mxBean.getThreadInfo(id);
+        if(info != null && pattern.matcher(info.getThreadName()).matches())
+        {
+            return new Member();
+        }
+        else
+        {
+            return NON_MEMBER;
+        }
+    }
+
+    private void prune(final long[] live)
+    {
+        Map<Long, Boolean> alive = new HashMap<>(live.length * 2);
+        for (int i = 0; i < live.length; i++)
+        {
+            alive.put(live[i], Boolean.TRUE);
+        }
+        Iterator<Long> ids = threads.keySet().iterator();
+        while(ids.hasNext())
+        {
+            if(!alive.containsKey(ids.next()))
+            {
+                ids.remove();
+            }
+        }
+    }
+
+}
@@ -1,63 +1,40 @@
 package icecube.daq.performance.diagnostic.cpu;
 
-import com.sun.tools.attach.VirtualMachine;
 import org.apache.log4j.Logger;
-import sun.tools.attach.HotSpotVirtualMachine;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Provides thread utilities not available from JVM.
  *
- * Note: Some functionality requires tools.jar in the runtime classpath which is not
- *       a standard dependency.
+ * Note: OS Dependent. Native thread ids are learned from the linux
+ *       procfs task files of the process.
  */
 public class ThreadUtil
 {
     static Logger logger = Logger.getLogger(ThreadUtil.class.getName());
 
+    /** The length limit of a linux task name. */
+    static final int COMM_LENGTH = 15;
 
-    /**
-     * Attempt to put tools.jar (or classes.jar on some Mac systems) on the classpath
-     */
-    static {
-        try {
-            String javaHome = System.getProperty("java.home");
-            String toolsJarURL = "file:" + javaHome + "/../lib/tools.jar";
-
-            // Make addURL public
-            Method method = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
-            method.setAccessible(true);
-
-            URLClassLoader sysloader = (URLClassLoader)ClassLoader.getSystemClassLoader();
-            if (sysloader.getResourceAsStream("/com/sun/tools/attach/VirtualMachine.class") == null) {
-                method.invoke(sysloader, (Object) new URL(toolsJarURL));
-                Thread.currentThread().getContextClassLoader().loadClass("com.sun.tools.attach.VirtualMachine");
-                Thread.currentThread().getContextClassLoader().loadClass("com.sun.tools.attach.AttachNotSupportedException");
-            }
-
-        } catch (Exception e) {
-            logger.error("Java home points to " + System.getProperty("java.home") + " make sure it is not a JRE path");
-            logger.error("Failed to add tools.jar to classpath", e);
-        }
-    }
 
     /**
-     * Thread data derived from a low-level thread dump or jstack
-     * format. The nid value is not otherwise available and is required
-     * in order to map a particular thread to other system diagnostics
-     * such as top or ps or renice.
+     * Thread data relating a Java thread to its native thread. The nid
+     * value is not otherwise available and is required in order to map
+     * a particular thread to other system diagnostics such as top or ps
+     * or renice.
      */
     public static class ThreadInfo {
         public final String name;
@@ -99,81 +76,139 @@ public class ThreadUtil
         }
     }
 
+    /**
+     * Non-portable mechanism to learn the native id of the calling
+     * thread.
+     *
+     * @return The native thread id, or -1 on failure.
+     */
+    public static int myTID()
+    {
+        try
+        {
+            // links to [pid]/task/[tid]
+            Path link = Files.readSymbolicLink(Paths.get("/proc/thread-self"));
+            return Integer.parseInt(link.getFileName().toString());
+        }
+        catch (Throwable th)
+        {
+            return -1;
+        }
+    }
+
     /**
      * Non-portable mechanism to learn the native id for each thread in
-     * a VM.
+     * this VM.
      *
      * @return The Thread details for each thread in the VM.
-     @throws Exception An error occurred, likely from the non-standard
-      *         mechanism for obtaining native thread ids.
+     * @throws IOException Error reading the procfs task files.
      */
-    public static List<ThreadInfo> getThreadInfo() throws Exception
+    public static List<ThreadInfo> getThreadInfo() throws IOException
     {
         return getThreadInfo(myPID());
     }
 
     /**
      * Non-portable mechanism to learn the native id for each thread in
-     * a VM.
+     * a VM, limited to this VM.
+     *
+     * Java threads are matched to tasks by name, as set on the native
+     * thread by the JVM and truncated to 15 characters. A thread without
+     * a uniquely named task, e.g. on JVMs prior to 9 which do not name
+     * native threads, has a nid of -1 unless it is the calling thread.
      *
      * @param pid The process id of the VM.
-     * @return The Thread details for exch thread in the VM.
-     * @throws Exception An error occurred, likely from the non-standard
-     *         mechanism for obtaining native thread ids.
+     * @return The Thread details for each thread in the VM.
+     * @throws IOException Error reading the procfs task files.
      */
-    public static List<ThreadInfo> getThreadInfo(int pid) throws Exception
+    public static List<ThreadInfo> getThreadInfo(int pid) throws IOException
     {
-        List<ThreadInfo> ret = new ArrayList<>();
-
-        VirtualMachine vm = null;
-        BufferedReader reader = null;
-        try
+        if(pid != myPID())
         {
-            vm = VirtualMachine.attach(Integer.toString(pid));
-
-            // NOTE: Non-Portable cast
-            InputStream in = ((HotSpotVirtualMachine)vm).remoteDataDump();
-            reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-
-            // consume dump, parsing thread info from thread lines:
-            //"main" #1 prio=5 os_prio=0 tid=0x00007fea2800c800 nid=0x62bf runnable [0x00007fea2e978000]
-            Pattern pat = Pattern.compile("\"(.*)\".*tid=0x([0-9a-fA-F]+).*nid=0x([0-9a-fA-F]+).*");
+            throw new IllegalArgumentException("Threads of pid " + pid +
+                    " are not accessible in-process");
+        }
 
-            String line;
-            while((line = reader.readLine()) != null)
+        // task name -> native ids
+        Map<String, List<Integer>> tasks = new HashMap<>();
+        Path taskDir = Paths.get("/proc", Integer.toString(pid), "task");
+        try(Stream<Path> dirs = Files.list(taskDir))
+        {
+            for(Object dir : dirs.toArray())
             {
-                Matcher matcher = pat.matcher(line);
-                if (matcher.find()) {
-                    String name =  matcher.group(1);
-                    long tid = Long.parseLong(matcher.group(2), 16);
-                    int nid =Integer.parseInt(matcher.group(3), 16);
-                    ret.add(new ThreadInfo(name, tid, nid));
+                Path task = (Path) dir;
+                try
+                {
+                    String comm = new String(
+                            Files.readAllBytes(task.resolve("comm")),
+                            StandardCharsets.UTF_8).trim();
+                    int nid = Integer.parseInt(task.getFileName().toString());
+                    tasks.computeIfAbsent(comm, k -> new ArrayList<>())
+                            .add(nid);
+                }
+                catch (IOException e)
+                {
+                    // the task exited
                 }
             }
+        }
 
-            return ret;
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        java.lang.management.ThreadInfo[] threads =
+                mxBean.getThreadInfo(mxBean.getAllThreadIds());
+
+        Map<String, Integer> javaNames = new HashMap<>();
+        for(java.lang.management.ThreadInfo thread : threads)
+        {
+            if(thread != null)
+            {
+                javaNames.merge(comm(thread.getThreadName()), 1, Integer::sum);
+            }
         }
-        finally
+
+        final long self = Thread.currentThread().getId();
+        final int selfNid = myTID();
+        List<ThreadInfo> ret = new ArrayList<>(threads.length);
+        for(java.lang.management.ThreadInfo thread : threads)
         {
-            if(reader != null)
+            if(thread == null)
+            {
+                continue;
+            }
+            String comm = comm(thread.getThreadName());
+            List<Integer> nids = tasks.get(comm);
+
+            int nid = -1;
+            if(thread.getThreadId() == self)
             {
-                reader.close();
+                nid = selfNid;
             }
-            if(vm != null)
+            else if(nids != null && nids.size() == 1 &&
+                    javaNames.get(comm) == 1)
             {
-                vm.detach();
+                nid = nids.get(0);
             }
+            ret.add(new ThreadInfo(thread.getThreadName(),
+                    thread.getThreadId(), nid));
         }
+        return ret;
+    }
 
+    /**
+     * @return The task name of a thread name.
+     */
+    static String comm(final String name)
+    {
+        return (name.length() > COMM_LENGTH) ?
+                name.substring(0, COMM_LENGTH) : name;
     }
 
     /**
      *
      * @param pid The pid of the jvm process
-     * @throws Exception An error occurred, likely from the non-standard
-     *         mechanism for obtaining native thread ids.
+     * @throws IOException Error reading the procfs task files.
      */
-    static void printThreadInfo(int pid) throws Exception
+    static void printThreadInfo(int pid) throws IOException
     {
         List<ThreadInfo> threadInfo = getThreadInfo(pid);
         for(ThreadInfo ti : threadInfo)
@@ -195,7 +230,7 @@ public class ThreadUtil
         System.out.println();
         System.out.println();
 
-        System.out.println("Hotspot Thread listing...");
+        System.out.println("Native Thread listing...");
         printThreadInfo(myPID());
 
 
@@ -0,0 +1,21 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import java.util.Map;
+
+/**
+ * Management interface of a CPUMonitor.
+ *
+ * Utilization is in percent and calculated over the interval between
+ * refreshes of the view, which occur at most once per refresh period
+ * regardless of the number of management clients.
+ */
+public interface CPUMonitorMXBean
+{
+    public float getCpuUtilization();
+    public float getCpuUser();
+    public float getCpuSystem();
+    public float getCpuIdle();
+
+    public float getProcessUtilization();
+    public Map<Integer, Float> getThreadUtilization();
+}
@@ -0,0 +1,95 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import icecube.daq.performance.diagnostic.cpu.CPUMonitor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes a CPUMonitor as an MXBean.
+ *
+ * Sampling a CPUMonitor ends its measurement interval, so the view
+ * should be given a monitor that is not sampled by other consumers.
+ */
+public class CPUMonitorView implements CPUMonitorMXBean
+{
+
+    private final CPUMonitor monitor;
+    private final long refreshNanos;
+
+    private long lastRefresh;
+    private CPUMonitor.Utilization utilization =
+            new CPUMonitor.Utilization(new HashMap<>(), new HashMap<>(),
+                    new HashMap<>());
+
+
+    /**
+     * @param monitor The monitor, owned by the view.
+     * @param refreshMillis The minimum period between samples.
+     */
+    public CPUMonitorView(final CPUMonitor monitor, final long refreshMillis)
+    {
+        this.monitor = monitor;
+        this.refreshNanos = refreshMillis * 1000000;
+        this.lastRefresh = System.nanoTime();
+    }
+
+    @Override
+    public synchronized float getCpuUtilization()
+    {
+        return cpu(CPUMonitor.Keys.CPU_UTILIZATION);
+    }
+
+    @Override
+    public synchronized float getCpuUser()
+    {
+        return cpu(CPUMonitor.Keys.CPU_USER);
+    }
+
+    @Override
+    public synchronized float getCpuSystem()
+    {
+        return cpu(CPUMonitor.Keys.CPU_SYSTEM);
+    }
+
+    @Override
+    public synchronized float getCpuIdle()
+    {
+        return cpu(CPUMonitor.Keys.CPU_IDLE);
+    }
+
+    @Override
+    public synchronized float getProcessUtilization()
+    {
+        float sum = 0;
+        for (Float value : refresh().byPID.values())
+        {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Override
+    public synchronized Map<Integer, Float> getThreadUtilization()
+    {
+        return new HashMap<>(refresh().byThread);
+    }
+
+    private float cpu(final CPUMonitor.Keys key)
+    {
+        Float value = refresh().cpuUtilization.get(key);
+        return (value != null) ? value : 0f;
+    }
+
+    private CPUMonitor.Utilization refresh()
+    {
+        final long now = System.nanoTime();
+        if(now - lastRefresh >= refreshNanos)
+        {
+            utilization = monitor.sample();
+            lastRefresh = now;
+        }
+        return utilization;
+    }
+
+}
@@ -0,0 +1,14 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import java.util.Map;
+
+/**
+ * Management interface of a CodeTimer.
+ */
+public interface CodeTimerMXBean
+{
+    public long getTotalTime();
+    public Map<String, Long> getTimes();
+    public Map<String, Long> getCounts();
+    public String getStats();
+}
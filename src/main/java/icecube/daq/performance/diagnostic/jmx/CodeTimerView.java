@@ -0,0 +1,51 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import icecube.daq.util.CodeTimer;
+
+import java.util.Map;
+
+/**
+ * Exposes a CodeTimer as an MXBean.
+ */
+public class CodeTimerView implements CodeTimerMXBean
+{
+
+    private final CodeTimer timer;
+    private final String prefix;
+
+
+    /**
+     * @param timer The timer.
+     * @param prefix The prefix of the section names.
+     */
+    public CodeTimerView(final CodeTimer timer, final String prefix)
+    {
+        this.timer = timer;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public long getTotalTime()
+    {
+        return timer.getTotalTime();
+    }
+
+    @Override
+    public Map<String, Long> getTimes()
+    {
+        return timer.getTimes(prefix);
+    }
+
+    @Override
+    public Map<String, Long> getCounts()
+    {
+        return timer.getCounts(prefix);
+    }
+
+    @Override
+    public String getStats()
+    {
+        return timer.getStats(prefix);
+    }
+
+}
@@ -0,0 +1,135 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import icecube.daq.performance.diagnostic.MeterRegistry;
+import icecube.daq.performance.diagnostic.Metered;
+import icecube.daq.performance.diagnostic.cpu.CPUMonitor;
+import icecube.daq.util.CodeTimer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers diagnostic sources as platform MXBeans, exposing them to
+ * jconsole and JMX collectors.
+ *
+ * Attributes read the same counters as the DiagnosticTrace, so exposure
+ * adds no cost to the metered components.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   DiagnosticMBeans.registerMeters(MeterRegistry.global(), "stringhub");
+ *   DiagnosticMBeans.registerCPUMonitor("stringhub",
+ *                                       CPUMonitor.createFailsafe(pid));
+ *
+ * Object names:
+ *
+ *   icecube.daq.performance:type=Meter,name="stringhub.21.sender"
+ *   icecube.daq.performance:type=CPUMonitor,name="stringhub"
+ *   icecube.daq.performance:type=CodeTimer,name="splicer"
+ * </PRE>
+ */
+public final class DiagnosticMBeans
+{
+
+    public static final String DOMAIN = "icecube.daq.performance";
+
+    /** Default minimum period between rate and utilization samples. */
+    public static final long DEFAULT_REFRESH_MILLIS = 1000;
+
+
+    private DiagnosticMBeans()
+    {
+    }
+
+    public static ObjectName registerMeter(final String name,
+                                           final Metered meter)
+            throws JMException
+    {
+        return register("Meter", name,
+                new MeterView(meter, DEFAULT_REFRESH_MILLIS));
+    }
+
+    /**
+     * Register the meters of a registry under a name prefix.
+     *
+     * Meters registered later are not picked up, the method may be
+     * called again after unregistering.
+     *
+     * @return The names of the registered MXBeans.
+     */
+    public static List<ObjectName> registerMeters(final MeterRegistry registry,
+                                                  final String prefix)
+            throws JMException
+    {
+        List<ObjectName> acc = new ArrayList<>();
+        for (String name : registry.names(prefix))
+        {
+            Metered meter = registry.get(name);
+            if(meter != null)
+            {
+                acc.add(registerMeter(name, meter));
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * @param monitor The monitor, owned by the MXBean.
+     */
+    public static ObjectName registerCPUMonitor(final String name,
+                                                final CPUMonitor monitor)
+            throws JMException
+    {
+        return register("CPUMonitor", name,
+                new CPUMonitorView(monitor, DEFAULT_REFRESH_MILLIS));
+    }
+
+    public static ObjectName registerCodeTimer(final String name,
+                                               final CodeTimer timer)
+            throws JMException
+    {
+        return register("CodeTimer", name, new CodeTimerView(timer, name));
+    }
+
+    public static ObjectName objectName(final String type, final String name)
+            throws JMException
+    {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" +
+                ObjectName.quote(name));
+    }
+
+    public static void unregister(final ObjectName objectName)
+            throws JMException
+    {
+        server().unregisterMBean(objectName);
+    }
+
+    public static void unregister(final List<ObjectName> objectNames)
+            throws JMException
+    {
+        for (ObjectName objectName : objectNames)
+        {
+            unregister(objectName);
+        }
+    }
+
+    private static ObjectName register(final String type, final String name,
+                                       final Object mbean)
+            throws JMException
+    {
+        ObjectName objectName = objectName(type, name);
+        server().registerMBean(mbean, objectName);
+        return objectName;
+    }
+
+    private static MBeanServer server()
+    {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+}
@@ -0,0 +1,27 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+/**
+ * Management interface of a Metered instance.
+ *
+ * Counters are cumulative and read directly from the meter. Rates are
+ * calculated over the interval between refreshes of the view, which
+ * occur at most once per refresh period regardless of the number of
+ * management clients.
+ */
+public interface MeterMXBean
+{
+    public long getMsgIn();
+    public long getBytesIn();
+    public long getMsgOut();
+    public long getBytesOut();
+    public long getUtcIn();
+    public long getUtcOut();
+
+    public long getMsgHeld();
+    public long getBytesHeld();
+
+    public double getMsgInRate();
+    public double getMsgOutRate();
+    public double getBytesInRate();
+    public double getBytesOutRate();
+}
@@ -0,0 +1,127 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import icecube.daq.performance.diagnostic.IntervalSampler;
+import icecube.daq.performance.diagnostic.Metered;
+
+/**
+ * Exposes a Metered instance as an MXBean.
+ */
+public class MeterView implements MeterMXBean
+{
+
+    private final Metered meter;
+
+    private final Metered.MutableSample sample = new Metered.MutableSample();
+
+    private final IntervalSampler sampler;
+    private final IntervalSampler.Interval interval =
+            new IntervalSampler.Interval();
+    private final long refreshNanos;
+    private long lastRefresh;
+
+
+    /**
+     * @param meter The meter.
+     * @param refreshMillis The minimum period between rate calculations.
+     */
+    public MeterView(final Metered meter, final long refreshMillis)
+    {
+        this.meter = meter;
+        this.refreshNanos = refreshMillis * 1000000;
+        this.sampler = new IntervalSampler(meter);
+        this.lastRefresh = System.nanoTime();
+    }
+
+    @Override
+    public synchronized long getMsgIn()
+    {
+        return read().msgIn;
+    }
+
+    @Override
+    public synchronized long getBytesIn()
+    {
+        return read().bytesIn;
+    }
+
+    @Override
+    public synchronized long getMsgOut()
+    {
+        return read().msgOut;
+    }
+
+    @Override
+    public synchronized long getBytesOut()
+    {
+        return read().bytesOut;
+    }
+
+    @Override
+    public synchronized long getUtcIn()
+    {
+        return read().utcIn;
+    }
+
+    @Override
+    public synchronized long getUtcOut()
+    {
+        return read().utcOut;
+    }
+
+    @Override
+    public synchronized long getMsgHeld()
+    {
+        Metered.MutableSample current = read();
+        return current.msgIn - current.msgOut;
+    }
+
+    @Override
+    public synchronized long getBytesHeld()
+    {
+        Metered.MutableSample current = read();
+        return current.bytesIn - current.bytesOut;
+    }
+
+    @Override
+    public synchronized double getMsgInRate()
+    {
+        return refresh().msgInRate();
+    }
+
+    @Override
+    public synchronized double getMsgOutRate()
+    {
+        return refresh().msgOutRate();
+    }
+
+    @Override
+    public synchronized double getBytesInRate()
+    {
+        return refresh().bytesInRate();
+    }
+
+    @Override
+    public synchronized double getBytesOutRate()
+    {
+        return refresh().bytesOutRate();
+    }
+
+    // the sample is shared, callers must hold the lock while reading it
+    private Metered.MutableSample read()
+    {
+        meter.getSample(sample);
+        return sample;
+    }
+
+    private IntervalSampler.Interval refresh()
+    {
+        final long now = System.nanoTime();
+        if(now - lastRefresh >= refreshNanos)
+        {
+            sampler.sample(interval);
+            lastRefresh = now;
+        }
+        return interval;
+    }
+
+}
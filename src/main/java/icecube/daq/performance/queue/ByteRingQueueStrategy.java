@@ -0,0 +1,580 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.queue.QueueStrategy.IdleStrategy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ring buffer of variable length records held in a single ByteBuffer,
+ * typically a direct or memory-mapped buffer.
+ *
+ * Producers claim a length-prefixed slot, write the payload in place
+ * and commit the slot. Consumers read records as zero-copy views of
+ * the ring. Records are moved without allocation:
+ *
+ * <PRE>
+ *    // producer
+ *    long claim = ring.claim(length);
+ *    int offset = ring.offset(claim);
+ *    ring.buffer().putLong(offset, utc);
+ *    ...
+ *    ring.commit(claim);
+ *
+ *    // consumer
+ *    ring.read(record -> process(record), 256);
+ * </PRE>
+ *
+ * The ring also implements QueueStrategy&lt;ByteBuffer&gt; by copying
+ * the remaining bytes of each element in and out of the ring. This
+ * supports dropping the ring into existing code, but dequeue() allocates
+ * a heap buffer per element.
+ *
+ * Record layout, aligned to 8 bytes:
+ * <PRE>
+ *    [int length][int unused][payload][pad]
+ * </PRE>
+ * A record that would straddle the end of the ring is preceded by a
+ * padding record with a negated length spanning to the end of the ring.
+ *
+ * The capacity of the ring must be a power of two, the largest record
+ * (including the header) is half of the capacity. Queue full/empty
+ * waits are realized by the QueueStrategy idle strategies.
+ *
+ * Two variants are provided:
+ * <PRE>
+ *    Spsc: A single producer, single consumer ring.
+ *    Mpsc: A multiple producer, single consumer ring. Producers claim
+ *          concurrently and commit in claim order.
+ * </PRE>
+ */
+public abstract class ByteRingQueueStrategy implements QueueStrategy<ByteBuffer>
+{
+
+    /** The size of the record header. */
+    public static final int HEADER_LENGTH = 8;
+
+    /** Records are aligned to this boundary. */
+    public static final int ALIGNMENT = 8;
+
+    /**
+     * Receives records from the ring.
+     */
+    public interface RecordHandler
+    {
+        /**
+         * @param record A view of the record, positioned at the payload
+         *               and limited to the payload length. The view
+         *               is only valid for the duration of the call.
+         */
+        void onRecord(ByteBuffer record);
+    }
+
+
+    protected final ByteBuffer buffer;
+    protected final int capacity;
+    protected final int mask;
+
+    protected final IdleStrategy enqueueIdle;
+    protected final IdleStrategy dequeueIdle;
+
+    /** The end of the committed records, written by producers. */
+    protected final AtomicLong published = new AtomicLong();
+
+    /** The end of the consumed records, written by the consumer. */
+    protected final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dequeued = new AtomicLong();
+
+    // consumer owned
+    private final ByteBuffer readView;
+    private long publishedCache;
+    private ByteBuffer copy;
+    private final RecordHandler copier = record ->
+    {
+        copy = ByteBuffer.allocate(record.remaining());
+        copy.put(record);
+        copy.flip();
+    };
+
+
+    protected ByteRingQueueStrategy(final ByteBuffer buffer,
+                                    final IdleStrategy enqueueIdle,
+                                    final IdleStrategy dequeueIdle)
+    {
+        final int capacity = buffer.capacity();
+        if(capacity < 2 * HEADER_LENGTH || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("Capacity must be a power" +
+                    " of two: " + capacity);
+        }
+        this.buffer = buffer.duplicate().order(buffer.order());
+        this.buffer.clear();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.enqueueIdle = enqueueIdle;
+        this.dequeueIdle = dequeueIdle;
+        this.readView = this.buffer.duplicate().order(buffer.order());
+    }
+
+    /**
+     * Create a single producer ring.
+     */
+    public static ByteRingQueueStrategy spsc(final ByteBuffer buffer,
+                                             final IdleStrategy idleStrategy)
+    {
+        return new Spsc(buffer, idleStrategy, idleStrategy);
+    }
+
+    /**
+     * Create a multiple producer ring.
+     */
+    public static ByteRingQueueStrategy mpsc(final ByteBuffer buffer,
+                                             final IdleStrategy idleStrategy)
+    {
+        return new Mpsc(buffer, idleStrategy, idleStrategy);
+    }
+
+    /**
+     * @return The ring buffer. Producers must write with absolute
+     *         puts within their claimed slot.
+     */
+    public ByteBuffer buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * @return The largest payload that fits in a record.
+     */
+    public int maxLength()
+    {
+        return capacity / 2 - HEADER_LENGTH;
+    }
+
+    /**
+     * Claim a slot for a record, waiting for space to become
+     * available if necessary.
+     *
+     * @param length The payload length.
+     * @return The claim, to be passed to offset() and commit().
+     * @throws InterruptedException
+     */
+    public long claim(final int length) throws InterruptedException
+    {
+        checkLength(length);
+        long claim;
+        int count = 0;
+        while( (claim = tryClaim(length)) < 0)
+        {
+            enqueueIdle.idle(count++);
+        }
+        return claim;
+    }
+
+    /**
+     * Claim a slot for a record if space is available.
+     *
+     * @param length The payload length.
+     * @return The claim, or -1 if the ring is full.
+     */
+    public abstract long tryClaim(int length);
+
+    /**
+     * @param claim A claim from claim() or tryClaim().
+     * @return The buffer index of the payload of the claimed slot.
+     */
+    public int offset(final long claim)
+    {
+        final int index = (int) claim & mask;
+        if(buffer.getInt(index) < 0)
+        {
+            return HEADER_LENGTH;
+        }
+        else
+        {
+            return index + HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Publish a claimed slot to the consumer. Every claim must be
+     * committed, an abandoned claim stalls the ring.
+     *
+     * @param claim A claim from claim() or tryClaim().
+     */
+    public abstract void commit(long claim);
+
+    /**
+     * Read up to limit records, waiting for a record to become
+     * available if necessary.
+     *
+     * @param handler Receives the records.
+     * @param limit The maximum number of records to read.
+     * @return The number of records read, at least one unless limit is
+     *         less than one.
+     * @throws InterruptedException
+     */
+    public int read(final RecordHandler handler, final int limit)
+            throws InterruptedException
+    {
+        if(limit < 1)
+        {
+            return 0;
+        }
+        int count = 0;
+        int read;
+        while( (read = tryRead(handler, limit)) == 0)
+        {
+            dequeueIdle.idle(count++);
+        }
+        return read;
+    }
+
+    /**
+     * Read up to limit available records.
+     *
+     * @param handler Receives the records.
+     * @param limit The maximum number of records to read.
+     * @return The number of records read.
+     */
+    public int tryRead(final RecordHandler handler, final int limit)
+    {
+        long h = head.get();
+        if(h >= publishedCache)
+        {
+            publishedCache = published.get();
+        }
+
+        int count = 0;
+        while(count < limit && h < publishedCache)
+        {
+            final int index = (int) h & mask;
+            final int length = buffer.getInt(index);
+            if(length < 0)
+            {
+                h += -length;
+            }
+            else
+            {
+                readView.limit(capacity);
+                readView.position(index + HEADER_LENGTH);
+                readView.limit(index + HEADER_LENGTH + length);
+                handler.onRecord(readView);
+
+                h += align(HEADER_LENGTH + length);
+                count++;
+            }
+
+            // release each record so that a slow handler does not hold
+            // back the producers
+            head.lazySet(h);
+        }
+
+        if(count > 0)
+        {
+            dequeued.lazySet(dequeued.get() + count);
+            enqueueIdle.signal();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of bytes occupied by records, including headers
+     *         and padding.
+     */
+    public int usedBytes()
+    {
+        final long h = head.get();
+        return (int) Math.max(0, published.get() - h);
+    }
+
+    @Override
+    public void enqueue(final ByteBuffer element) throws InterruptedException
+    {
+        final long claim = claim(element.remaining());
+        write(claim, element);
+        commit(claim);
+    }
+
+    @Override
+    public ByteBuffer dequeue() throws InterruptedException
+    {
+        read(copier, 1);
+        return takeCopy();
+    }
+
+    @Override
+    public boolean offer(final ByteBuffer element, final long timeout,
+                         final TimeUnit unit) throws InterruptedException
+    {
+        checkLength(element.remaining());
+        long claim = tryClaim(element.remaining());
+        if(claim < 0)
+        {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return false;
+                }
+                enqueueIdle.idle(count++, deadline);
+            }
+            while( (claim = tryClaim(element.remaining())) < 0);
+        }
+
+        write(claim, element);
+        commit(claim);
+        return true;
+    }
+
+    @Override
+    public ByteBuffer poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        if(tryRead(copier, 1) == 0)
+        {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return null;
+                }
+                dequeueIdle.idle(count++, deadline);
+            }
+            while(tryRead(copier, 1) == 0);
+        }
+        return takeCopy();
+    }
+
+    @Override
+    public int size()
+    {
+        final long out = dequeued.get();
+        return (int) Math.max(0, enqueued.get() - out);
+    }
+
+    /**
+     * @return A view of the ring for copying into a claimed slot by the
+     *         calling producer.
+     */
+    protected abstract ByteBuffer writeView();
+
+    /**
+     * Claim the region [start, start + required) for a record. Writes
+     * the padding and record headers.
+     *
+     * @return The claim.
+     */
+    protected final long initialize(final long start, final int length)
+    {
+        final int index = (int) start & mask;
+        final int padding = padding(index, length);
+        if(padding > 0)
+        {
+            buffer.putInt(index, -padding);
+            buffer.putInt(0, length);
+        }
+        else
+        {
+            buffer.putInt(index, length);
+        }
+        return start;
+    }
+
+    /**
+     * @return The number of bytes required for a record, including
+     *         padding, at a ring index.
+     */
+    protected final int required(final int index, final int length)
+    {
+        return padding(index, length) + align(HEADER_LENGTH + length);
+    }
+
+    /**
+     * @return The end of the region of a claim.
+     */
+    protected final long end(final long claim)
+    {
+        final int index = (int) claim & mask;
+        final int length = buffer.getInt(index);
+        if(length < 0)
+        {
+            return claim - length + align(HEADER_LENGTH + buffer.getInt(0));
+        }
+        else
+        {
+            return claim + align(HEADER_LENGTH + length);
+        }
+    }
+
+    /**
+     * Account for and publish a committed record, commits must be
+     * serialized by the caller.
+     */
+    protected final void publish(final long end)
+    {
+        enqueued.lazySet(enqueued.get() + 1);
+        published.lazySet(end);
+        dequeueIdle.signal();
+    }
+
+    private int padding(final int index, final int length)
+    {
+        final int remaining = capacity - index;
+        return (align(HEADER_LENGTH + length) > remaining) ? remaining : 0;
+    }
+
+    private void write(final long claim, final ByteBuffer element)
+    {
+        final ByteBuffer view = writeView();
+        final int offset = offset(claim);
+        final int position = element.position();
+        view.limit(offset + element.remaining());
+        view.position(offset);
+        view.put(element);
+        element.position(position);
+    }
+
+    private ByteBuffer takeCopy()
+    {
+        final ByteBuffer element = copy;
+        copy = null;
+        return element;
+    }
+
+    private void checkLength(final int length)
+    {
+        if(length < 0 || length > maxLength())
+        {
+            throw new IllegalArgumentException("Bad record length: " +
+                    length + ", max " + maxLength());
+        }
+    }
+
+    private static int align(final int length)
+    {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+
+    /**
+     * A single producer, single consumer ring.
+     */
+    public static class Spsc extends ByteRingQueueStrategy
+    {
+        // producer owned
+        private final ByteBuffer writeView;
+        private long claimed;
+        private long headCache;
+
+        public Spsc(final ByteBuffer buffer,
+                    final IdleStrategy enqueueIdle,
+                    final IdleStrategy dequeueIdle)
+        {
+            super(buffer, enqueueIdle, dequeueIdle);
+            this.writeView = this.buffer.duplicate();
+        }
+
+        @Override
+        public long tryClaim(final int length)
+        {
+            final long start = claimed;
+            final long end = start + required((int) start & mask, length);
+            if(end - headCache > capacity)
+            {
+                headCache = head.get();
+                if(end - headCache > capacity)
+                {
+                    return -1;
+                }
+            }
+            claimed = end;
+            return initialize(start, length);
+        }
+
+        @Override
+        public void commit(final long claim)
+        {
+            publish(end(claim));
+        }
+
+        @Override
+        protected ByteBuffer writeView()
+        {
+            return writeView;
+        }
+    }
+
+
+    /**
+     * A multiple producer, single consumer ring.
+     *
+     * Producers claim slots concurrently with a CAS on the claimed
+     * position. Commits are published in claim order, a producer
+     * committing ahead of an earlier claim yields until the earlier
+     * claim is committed.
+     */
+    public static class Mpsc extends ByteRingQueueStrategy
+    {
+        private final AtomicLong claimed = new AtomicLong();
+        private volatile long headCache;
+
+        private final ThreadLocal<ByteBuffer> writeView;
+
+        public Mpsc(final ByteBuffer buffer,
+                    final IdleStrategy enqueueIdle,
+                    final IdleStrategy dequeueIdle)
+        {
+            super(buffer, enqueueIdle, dequeueIdle);
+            this.writeView = ThreadLocal.withInitial(this.buffer::duplicate);
+        }
+
+        @Override
+        public long tryClaim(final int length)
+        {
+            while(true)
+            {
+                final long start = claimed.get();
+                final long end = start + required((int) start & mask, length);
+                if(end - headCache > capacity)
+                {
+                    headCache = head.get();
+                    if(end - headCache > capacity)
+                    {
+                        return -1;
+                    }
+                }
+                if(claimed.compareAndSet(start, end))
+                {
+                    return initialize(start, length);
+                }
+            }
+        }
+
+        @Override
+        public void commit(final long claim)
+        {
+            // wait for earlier claims, these are committing concurrently
+            // so the wait is short and not interruptible
+            while(published.get() != claim)
+            {
+                Thread.yield();
+            }
+            publish(end(claim));
+        }
+
+        @Override
+        protected ByteBuffer writeView()
+        {
+            return writeView.get();
+        }
+    }
+
+}
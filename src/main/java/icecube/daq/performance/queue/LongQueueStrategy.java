@@ -0,0 +1,556 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.queue.QueueStrategy.Backoff;
+import icecube.daq.performance.queue.QueueStrategy.IdleStrategy;
+import icecube.daq.performance.queue.QueueStrategy.Poll;
+import icecube.daq.performance.queue.QueueStrategy.Spin;
+import icecube.daq.performance.queue.QueueStrategy.Yield;
+
+import sun.misc.Contended;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongConsumer;
+
+/**
+ * A QueueStrategy specialized for primitive long elements such as UTC
+ * times and sequence numbers.
+ *
+ * Elements are held in an array backed ring of primitive longs so
+ * that passing a value does not box it. The rings support a single
+ * consumer and either a single producer (SpscLongQueue) or multiple
+ * producers (MpscLongQueue).
+ *
+ * Queue full/empty waits are realized by the idle strategies of
+ * QueueStrategy.
+ */
+public interface LongQueueStrategy
+{
+    /**
+     * Insert a value into the queue, waiting for space to become
+     * available if necessary.
+     *
+     * @param value The value to insert.
+     * @throws InterruptedException
+     */
+    public void enqueue(long value) throws InterruptedException;
+
+    /**
+     * Remove a value from the queue, waiting for a value to become
+     * available if necessary.
+     *
+     * @return The next value from the queue.
+     * @throws InterruptedException
+     */
+    public long dequeue() throws InterruptedException;
+
+    /**
+     * Insert a run of values into the queue, waiting for space to
+     * become available if necessary.
+     *
+     * @param values Holds the values to insert.
+     * @param offset The index of the first value to insert.
+     * @param length The number of values to insert.
+     * @throws InterruptedException
+     */
+    public void enqueue(long[] values, int offset, int length)
+            throws InterruptedException;
+
+    /**
+     * Remove up to limit values from the queue into a buffer, waiting
+     * for a value to become available if necessary.
+     *
+     * @param buffer The destination of the removed values.
+     * @param offset The buffer index of the first removed value.
+     * @param limit The maximum number of values to remove.
+     * @return The number of values removed, at least one unless
+     *         limit is less than one.
+     * @throws InterruptedException
+     */
+    public int dequeue(long[] buffer, int offset, int limit)
+            throws InterruptedException;
+
+    /**
+     * Remove up to limit values from the queue, passing each to a
+     * consumer, waiting for a value to become available if necessary.
+     *
+     * @param consumer The destination of the removed values.
+     * @param limit The maximum number of values to remove.
+     * @return The number of values removed, at least one unless
+     *         limit is less than one.
+     * @throws InterruptedException
+     */
+    public int dequeue(LongConsumer consumer, int limit)
+            throws InterruptedException;
+
+    /**
+     * The number of values in the queue.
+     *
+     * @return The number of values in the queue.
+     */
+    public int size();
+
+
+    /**
+     * Defines the non-blocking operations of a primitive long queue.
+     *
+     * The consumer operations, isEmpty(), poll() and drain() must be
+     * called from a single thread. A poll() must be preceded by an
+     * isEmpty() call that returned false.
+     */
+    interface LongQueue
+    {
+        boolean offer(long value);
+
+        boolean isEmpty();
+
+        long poll();
+
+        int drain(long[] buffer, int offset, int limit);
+
+        int drain(LongConsumer consumer, int limit);
+
+        int size();
+
+        int capacity();
+    }
+
+
+    /**
+     * A single producer, single consumer ring.
+     *
+     * The producer and consumer each cache the last observed position
+     * of the other side to avoid reading a contended counter on every
+     * operation. The fields written by each side are grouped apart so
+     * that the producer and consumer do not false-share a cache line.
+     */
+    public class SpscLongQueue implements LongQueue
+    {
+        private static final AtomicLongFieldUpdater<SpscLongQueue> HEAD =
+                AtomicLongFieldUpdater.newUpdater(SpscLongQueue.class,
+                        "head");
+        private static final AtomicLongFieldUpdater<SpscLongQueue> TAIL =
+                AtomicLongFieldUpdater.newUpdater(SpscLongQueue.class,
+                        "tail");
+
+        private final long[] buffer;
+        private final int mask;
+
+        @Contended("consumer")
+        private volatile long head;
+        @Contended("producer")
+        private volatile long tail;
+
+        // producer owned
+        @Contended("producer")
+        private long headCache;
+
+        // consumer owned
+        @Contended("consumer")
+        private long tailCache;
+
+        /**
+         * @param capacity The requested capacity, rounded up to a power
+         *                 of two.
+         */
+        public SpscLongQueue(final int capacity)
+        {
+            this.buffer = new long[roundToPowerOfTwo(capacity)];
+            this.mask = buffer.length - 1;
+        }
+
+        @Override
+        public boolean offer(final long value)
+        {
+            final long t = tail;
+            if(t - headCache >= buffer.length)
+            {
+                headCache = head;
+                if(t - headCache >= buffer.length)
+                {
+                    return false;
+                }
+            }
+            buffer[(int) t & mask] = value;
+            TAIL.lazySet(this, t + 1);
+            return true;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            final long h = head;
+            if(h >= tailCache)
+            {
+                tailCache = tail;
+                return h >= tailCache;
+            }
+            return false;
+        }
+
+        @Override
+        public long poll()
+        {
+            final long h = head;
+            final long value = buffer[(int) h & mask];
+            HEAD.lazySet(this, h + 1);
+            return value;
+        }
+
+        @Override
+        public int drain(final long[] dest, final int offset, final int limit)
+        {
+            final long h = head;
+            final int available = available(h, limit);
+            for (int i = 0; i < available; i++)
+            {
+                dest[offset + i] = buffer[(int) (h + i) & mask];
+            }
+            HEAD.lazySet(this, h + available);
+            return available;
+        }
+
+        @Override
+        public int drain(final LongConsumer consumer, final int limit)
+        {
+            final long h = head;
+            final int available = available(h, limit);
+            for (int i = 0; i < available; i++)
+            {
+                // release each slot before the callback so that a slow
+                // consumer does not hold back the producer
+                final long value = buffer[(int) (h + i) & mask];
+                HEAD.lazySet(this, h + i + 1);
+                consumer.accept(value);
+            }
+            return available;
+        }
+
+        @Override
+        public int size()
+        {
+            // read head first so that a concurrent dequeue can not
+            // produce a negative size
+            final long h = head;
+            final long t = tail;
+            return (int) Math.max(0, Math.min(buffer.length, t - h));
+        }
+
+        @Override
+        public int capacity()
+        {
+            return buffer.length;
+        }
+
+        private int available(final long h, final int limit)
+        {
+            if(h + limit > tailCache)
+            {
+                tailCache = tail;
+            }
+            return (int) Math.min(limit, tailCache - h);
+        }
+    }
+
+
+    /**
+     * A multiple producer, single consumer ring.
+     *
+     * Producers claim a slot by advancing the tail and publish the
+     * value with a per-slot sequence, the consumer reads a slot once
+     * its sequence shows that it was published for the current lap.
+     * The consumer head and the contended producer tail are grouped
+     * apart so that they do not false-share a cache line.
+     */
+    public class MpscLongQueue implements LongQueue
+    {
+        private static final AtomicLongFieldUpdater<MpscLongQueue> HEAD =
+                AtomicLongFieldUpdater.newUpdater(MpscLongQueue.class,
+                        "head");
+        private static final AtomicLongFieldUpdater<MpscLongQueue> TAIL =
+                AtomicLongFieldUpdater.newUpdater(MpscLongQueue.class,
+                        "tail");
+
+        private final long[] buffer;
+        private final AtomicLongArray sequence;
+        private final int mask;
+
+        @Contended("consumer")
+        private volatile long head;
+        @Contended("producer")
+        private volatile long tail;
+
+        /**
+         * @param capacity The requested capacity, rounded up to a power
+         *                 of two.
+         */
+        public MpscLongQueue(final int capacity)
+        {
+            this.buffer = new long[roundToPowerOfTwo(capacity)];
+            this.mask = buffer.length - 1;
+            this.sequence = new AtomicLongArray(buffer.length);
+            for (int i = 0; i < buffer.length; i++)
+            {
+                sequence.lazySet(i, i);
+            }
+        }
+
+        @Override
+        public boolean offer(final long value)
+        {
+            while(true)
+            {
+                final long t = tail;
+                final int index = (int) t & mask;
+                final long seq = sequence.get(index);
+                if(seq == t)
+                {
+                    if(TAIL.compareAndSet(this, t, t + 1))
+                    {
+                        buffer[index] = value;
+                        sequence.lazySet(index, t + 1);
+                        return true;
+                    }
+                }
+                else if(seq < t)
+                {
+                    // slot not yet released by the consumer
+                    return false;
+                }
+                // else another producer claimed the slot, retry
+            }
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            final long h = head;
+            return sequence.get((int) h & mask) != h + 1;
+        }
+
+        @Override
+        public long poll()
+        {
+            final long h = head;
+            final int index = (int) h & mask;
+            final long value = buffer[index];
+            sequence.lazySet(index, h + buffer.length);
+            HEAD.lazySet(this, h + 1);
+            return value;
+        }
+
+        @Override
+        public int drain(final long[] dest, final int offset, final int limit)
+        {
+            int count = 0;
+            while(count < limit && !isEmpty())
+            {
+                dest[offset + count++] = poll();
+            }
+            return count;
+        }
+
+        @Override
+        public int drain(final LongConsumer consumer, final int limit)
+        {
+            int count = 0;
+            while(count < limit && !isEmpty())
+            {
+                consumer.accept(poll());
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public int size()
+        {
+            // read head first so that a concurrent dequeue can not
+            // produce a negative size
+            final long h = head;
+            final long t = tail;
+            return (int) Math.max(0, Math.min(buffer.length, t - h));
+        }
+
+        @Override
+        public int capacity()
+        {
+            return buffer.length;
+        }
+    }
+
+
+    /**
+     * A LongQueueStrategy calling into the non-blocking operations of
+     * a LongQueue.
+     */
+    public class NonBlocking implements LongQueueStrategy
+    {
+        private final LongQueue queue;
+        private final IdleStrategy enqueueIdle;
+        private final IdleStrategy dequeueIdle;
+
+        public NonBlocking(final LongQueue queue,
+                           final IdleStrategy idleStrategy)
+        {
+            this(queue, idleStrategy, idleStrategy);
+        }
+
+        /**
+         * Supports distinct idle strategies for the queue full and
+         * queue empty conditions.
+         */
+        public NonBlocking(final LongQueue queue,
+                           final IdleStrategy enqueueIdle,
+                           final IdleStrategy dequeueIdle)
+        {
+            this.queue = queue;
+            this.enqueueIdle = enqueueIdle;
+            this.dequeueIdle = dequeueIdle;
+        }
+
+        @Override
+        public void enqueue(final long value) throws InterruptedException
+        {
+            int count = 0;
+            while(!queue.offer(value))
+            {
+                enqueueIdle.idle(count++);
+            }
+        }
+
+        @Override
+        public long dequeue() throws InterruptedException
+        {
+            awaitElement();
+            return queue.poll();
+        }
+
+        @Override
+        public void enqueue(final long[] values, final int offset,
+                            final int length) throws InterruptedException
+        {
+            for (int i = offset; i < offset + length; i++)
+            {
+                int count = 0;
+                while(!queue.offer(values[i]))
+                {
+                    enqueueIdle.idle(count++);
+                }
+            }
+        }
+
+        @Override
+        public int dequeue(final long[] buffer, final int offset,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            awaitElement();
+            return queue.drain(buffer, offset, limit);
+        }
+
+        @Override
+        public int dequeue(final LongConsumer consumer, final int limit)
+                throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            awaitElement();
+            return queue.drain(consumer, limit);
+        }
+
+        @Override
+        public int size()
+        {
+            return queue.size();
+        }
+
+        private void awaitElement() throws InterruptedException
+        {
+            int count = 0;
+            while(queue.isEmpty())
+            {
+                dequeueIdle.idle(count++);
+            }
+        }
+    }
+
+
+    /**
+     * A LongQueueStrategy utilizing a spin loop for queue full and
+     * empty conditions
+     */
+    public class NonBlockingSpin extends NonBlocking
+    {
+
+        public NonBlockingSpin(final LongQueue queue)
+        {
+            super(queue, new Spin());
+        }
+
+    }
+
+
+    /**
+     * A LongQueueStrategy utilizing a spin-yield loop for queue full
+     * and empty conditions
+     */
+    public class NonBlockingYield extends NonBlocking
+    {
+
+        public NonBlockingYield(final LongQueue queue)
+        {
+            super(queue, new Yield());
+        }
+
+    }
+
+
+    /**
+     * A LongQueueStrategy utilizing a spin-poll loop for queue full
+     * and empty conditions
+     */
+    public class NonBlockingPoll extends NonBlocking
+    {
+
+        public NonBlockingPoll(final LongQueue queue, final int pollInterval)
+        {
+            super(queue, new Poll(pollInterval));
+        }
+
+    }
+
+
+    /**
+     * A LongQueueStrategy utilizing a spin-poll loop for queue full
+     * and empty conditions. polling interval will increase during spin
+     * loop.
+     */
+    public class NonBlockingPollBackoff extends NonBlocking
+    {
+
+        public NonBlockingPollBackoff(final LongQueue queue,
+                                      final int pollInterval,
+                                      final long maxSleep)
+        {
+            super(queue, new Backoff(pollInterval, maxSleep));
+        }
+
+    }
+
+
+    static int roundToPowerOfTwo(final int capacity)
+    {
+        if(capacity < 1 || capacity > (1 << 30))
+        {
+            throw new IllegalArgumentException("Bad capacity: " + capacity);
+        }
+        return 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+    }
+
+}
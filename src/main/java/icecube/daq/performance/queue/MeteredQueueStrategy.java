@@ -0,0 +1,619 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.diagnostic.Content;
+import icecube.daq.performance.diagnostic.Metered;
+import org.jctools.queues.MessagePassingQueue;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A QueueStrategy decorator that reports the flow of elements to a
+ * buffered meter and accounts for the time each side of the queue
+ * spends waiting on queue full/empty conditions.
+ *
+ * Elements are reported to the input side of the meter on enqueue and
+ * to the output side on dequeue, so the held data of the meter tracks
+ * the depth of the queue.
+ *
+ * Waits are accounted by IdleMeter wrappers around the idle strategies
+ * of the underlying NonBlocking or Relaxed strategy. The wrappers are
+ * installed by the nonBlocking() and relaxed() factory methods. A
+ * strategy decorated with wrap() does not expose its idle loop and
+ * reports no waits.
+ *
+ * When the meter is a NullMeter, metering is bypassed and the factory
+ * methods install the idle strategy without wrappers, so that the
+ * decoration costs a single branch per operation and idling is not
+ * timed. Such a strategy reports no waits.
+ *
+ * Like the meters, accounting is not synchronized. Counters are exact
+ * for a single thread on each side and approximate otherwise.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   Metered.Buffered meter = Metered.Factory.bufferMeter();
+ *   MeteredQueueStrategy&lt;ByteBuffer&gt; queue =
+ *        MeteredQueueStrategy.relaxed(new SpscArrayQueue&lt;&gt;(1024),
+ *                                     new QueueStrategy.Yield(),
+ *                                     meter, ByteBuffer::remaining);
+ *
+ *   trace.addMeter("sendq", meter, MeterContent.Style.HELD_DATA);
+ *   trace.addContent(new Content.GroupedContent("sendq-wait",
+ *                                               queue.createWaitContent()));
+ * </PRE>
+ */
+public class MeteredQueueStrategy<T> implements QueueStrategy<T>
+{
+
+    private final QueueStrategy<T> delegate;
+
+    private final boolean metered;
+    private final Metered.Buffered meter;
+    private final Metered.UTCBuffered utcMeter;
+    private final ToIntFunction<? super T> sizer;
+    private final ToLongFunction<? super T> utc;
+
+    // wakes threads parked by a Phased idle strategy, null if the
+    // idle loop is not exposed
+    private final IdleStrategy idleStrategy;
+
+    private final IdleMeter enqueueIdle;
+    private final IdleMeter dequeueIdle;
+
+    // the tally of consumer dequeues, claimed by a dequeue call so that
+    // a single consumer reuses it and concurrent consumers do not share
+    private final AtomicReference<Tally> spareTally =
+            new AtomicReference<>(new Tally());
+
+
+    private MeteredQueueStrategy(final QueueStrategy<T> delegate,
+                                 final Metered meter,
+                                 final ToIntFunction<? super T> sizer,
+                                 final ToLongFunction<? super T> utc,
+                                 final IdleStrategy idleStrategy,
+                                 final IdleMeter enqueueIdle,
+                                 final IdleMeter dequeueIdle)
+    {
+        this.delegate = delegate;
+        this.metered = !(meter instanceof Metered.NullMeter);
+        this.meter = (utc == null) ? (Metered.Buffered) meter : null;
+        this.utcMeter = (utc != null) ? (Metered.UTCBuffered) meter : null;
+        this.sizer = sizer;
+        this.utc = utc;
+        this.idleStrategy = idleStrategy;
+        this.enqueueIdle = enqueueIdle;
+        this.dequeueIdle = dequeueIdle;
+    }
+
+    /**
+     * Decorate an arbitrary strategy. Waits are not accounted.
+     */
+    public static <T> MeteredQueueStrategy<T> wrap(
+            final QueueStrategy<T> delegate,
+            final Metered.Buffered meter,
+            final ToIntFunction<? super T> sizer)
+    {
+        return new MeteredQueueStrategy<>(delegate, meter, sizer, null,
+                null, null, null);
+    }
+
+    /**
+     * Decorate an arbitrary strategy, reporting element UTC. Waits are
+     * not accounted.
+     */
+    public static <T> MeteredQueueStrategy<T> wrap(
+            final QueueStrategy<T> delegate,
+            final Metered.UTCBuffered meter,
+            final ToIntFunction<? super T> sizer,
+            final ToLongFunction<? super T> utc)
+    {
+        return new MeteredQueueStrategy<>(delegate, meter, sizer, utc,
+                null, null, null);
+    }
+
+    /**
+     * Create a metered NonBlocking strategy.
+     */
+    public static <T> MeteredQueueStrategy<T> nonBlocking(
+            final Queue<T> queue,
+            final IdleStrategy idleStrategy,
+            final Metered.Buffered meter,
+            final ToIntFunction<? super T> sizer)
+    {
+        if(meter instanceof Metered.NullMeter)
+        {
+            return new MeteredQueueStrategy<>(
+                    new NonBlocking<>(queue, idleStrategy),
+                    meter, sizer, null, idleStrategy, null, null);
+        }
+        IdleMeter enqueueIdle = new IdleMeter(idleStrategy);
+        IdleMeter dequeueIdle = new IdleMeter(idleStrategy);
+        return new MeteredQueueStrategy<>(
+                new NonBlocking<>(queue, enqueueIdle, dequeueIdle),
+                meter, sizer, null, idleStrategy, enqueueIdle, dequeueIdle);
+    }
+
+    /**
+     * Create a metered NonBlocking strategy, reporting element UTC.
+     */
+    public static <T> MeteredQueueStrategy<T> nonBlocking(
+            final Queue<T> queue,
+            final IdleStrategy idleStrategy,
+            final Metered.UTCBuffered meter,
+            final ToIntFunction<? super T> sizer,
+            final ToLongFunction<? super T> utc)
+    {
+        if(meter instanceof Metered.NullMeter)
+        {
+            return new MeteredQueueStrategy<>(
+                    new NonBlocking<>(queue, idleStrategy),
+                    meter, sizer, utc, idleStrategy, null, null);
+        }
+        IdleMeter enqueueIdle = new IdleMeter(idleStrategy);
+        IdleMeter dequeueIdle = new IdleMeter(idleStrategy);
+        return new MeteredQueueStrategy<>(
+                new NonBlocking<>(queue, enqueueIdle, dequeueIdle),
+                meter, sizer, utc, idleStrategy, enqueueIdle, dequeueIdle);
+    }
+
+    /**
+     * Create a metered Relaxed strategy.
+     */
+    public static <T> MeteredQueueStrategy<T> relaxed(
+            final MessagePassingQueue<T> queue,
+            final IdleStrategy idleStrategy,
+            final Metered.Buffered meter,
+            final ToIntFunction<? super T> sizer)
+    {
+        if(meter instanceof Metered.NullMeter)
+        {
+            return new MeteredQueueStrategy<>(
+                    new Relaxed<>(queue, idleStrategy),
+                    meter, sizer, null, idleStrategy, null, null);
+        }
+        IdleMeter enqueueIdle = new IdleMeter(idleStrategy);
+        IdleMeter dequeueIdle = new IdleMeter(idleStrategy);
+        return new MeteredQueueStrategy<>(
+                new Relaxed<>(queue, enqueueIdle, dequeueIdle),
+                meter, sizer, null, idleStrategy, enqueueIdle, dequeueIdle);
+    }
+
+    /**
+     * Create a metered Relaxed strategy, reporting element UTC.
+     */
+    public static <T> MeteredQueueStrategy<T> relaxed(
+            final MessagePassingQueue<T> queue,
+            final IdleStrategy idleStrategy,
+            final Metered.UTCBuffered meter,
+            final ToIntFunction<? super T> sizer,
+            final ToLongFunction<? super T> utc)
+    {
+        if(meter instanceof Metered.NullMeter)
+        {
+            return new MeteredQueueStrategy<>(
+                    new Relaxed<>(queue, idleStrategy),
+                    meter, sizer, utc, idleStrategy, null, null);
+        }
+        IdleMeter enqueueIdle = new IdleMeter(idleStrategy);
+        IdleMeter dequeueIdle = new IdleMeter(idleStrategy);
+        return new MeteredQueueStrategy<>(
+                new Relaxed<>(queue, enqueueIdle, dequeueIdle),
+                meter, sizer, utc, idleStrategy, enqueueIdle, dequeueIdle);
+    }
+
+
+    @Override
+    public void enqueue(final T element) throws InterruptedException
+    {
+        delegate.enqueue(element);
+        if(metered)
+        {
+            reportIn(element);
+        }
+        signal();
+    }
+
+    @Override
+    public T dequeue() throws InterruptedException
+    {
+        T element = delegate.dequeue();
+        if(metered)
+        {
+            reportOut(element);
+        }
+        signal();
+        return element;
+    }
+
+    @Override
+    public boolean offer(final T element, final long timeout,
+                         final TimeUnit unit) throws InterruptedException
+    {
+        boolean inserted = delegate.offer(element, timeout, unit);
+        if(inserted)
+        {
+            if(metered)
+            {
+                reportIn(element);
+            }
+            signal();
+        }
+        return inserted;
+    }
+
+    @Override
+    public T poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        T element = delegate.poll(timeout, unit);
+        if(element != null)
+        {
+            if(metered)
+            {
+                reportOut(element);
+            }
+            signal();
+        }
+        return element;
+    }
+
+    @Override
+    public void enqueue(final T[] elements, final int offset,
+                        final int length) throws InterruptedException
+    {
+        delegate.enqueue(elements, offset, length);
+        if(metered && length > 0)
+        {
+            int size = 0;
+            for (int i = offset; i < offset + length; i++)
+            {
+                size += sizer.applyAsInt(elements[i]);
+            }
+            if(utcMeter != null)
+            {
+                utcMeter.reportIn(length, size,
+                        utc.applyAsLong(elements[offset + length - 1]));
+            }
+            else
+            {
+                meter.reportIn(length, size);
+            }
+        }
+        signal();
+    }
+
+    @Override
+    public int dequeue(final T[] buffer, final int offset, final int limit)
+            throws InterruptedException
+    {
+        int removed = delegate.dequeue(buffer, offset, limit);
+        if(metered && removed > 0)
+        {
+            int size = 0;
+            for (int i = offset; i < offset + removed; i++)
+            {
+                size += sizer.applyAsInt(buffer[i]);
+            }
+            if(utcMeter != null)
+            {
+                utcMeter.reportOut(removed, size,
+                        utc.applyAsLong(buffer[offset + removed - 1]));
+            }
+            else
+            {
+                meter.reportOut(removed, size);
+            }
+        }
+        signal();
+        return removed;
+    }
+
+    @Override
+    public int dequeue(final Consumer<? super T> consumer, final int limit)
+            throws InterruptedException
+    {
+        final int removed;
+        if(metered)
+        {
+            Tally tally = spareTally.getAndSet(null);
+            if(tally == null)
+            {
+                tally = new Tally();
+            }
+            tally.reset(consumer);
+            try
+            {
+                removed = delegate.dequeue(tally, limit);
+                if(removed > 0)
+                {
+                    if(utcMeter != null)
+                    {
+                        utcMeter.reportOut(removed, tally.size, tally.utc);
+                    }
+                    else
+                    {
+                        meter.reportOut(removed, tally.size);
+                    }
+                }
+            }
+            finally
+            {
+                tally.reset(null);
+                spareTally.lazySet(tally);
+            }
+        }
+        else
+        {
+            removed = delegate.dequeue(consumer, limit);
+        }
+        signal();
+        return removed;
+    }
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+    /**
+     * @return The number of enqueue calls that waited on a full queue.
+     */
+    public long getEnqueueWaits()
+    {
+        return (enqueueIdle != null) ? enqueueIdle.getWaits() : 0;
+    }
+
+    /**
+     * @return The number of idle iterations on a full queue.
+     */
+    public long getEnqueueIdleCount()
+    {
+        return (enqueueIdle != null) ? enqueueIdle.getIterations() : 0;
+    }
+
+    /**
+     * @return The time spent idling on a full queue.
+     */
+    public long getEnqueueIdleNanos()
+    {
+        return (enqueueIdle != null) ? enqueueIdle.getNanos() : 0;
+    }
+
+    /**
+     * @return The number of dequeue calls that waited on an empty queue.
+     */
+    public long getDequeueWaits()
+    {
+        return (dequeueIdle != null) ? dequeueIdle.getWaits() : 0;
+    }
+
+    /**
+     * @return The number of idle iterations on an empty queue.
+     */
+    public long getDequeueIdleCount()
+    {
+        return (dequeueIdle != null) ? dequeueIdle.getIterations() : 0;
+    }
+
+    /**
+     * @return The time spent idling on an empty queue.
+     */
+    public long getDequeueIdleNanos()
+    {
+        return (dequeueIdle != null) ? dequeueIdle.getNanos() : 0;
+    }
+
+    /**
+     * @return Trace content displaying the waits of each side per trace
+     *         period.
+     */
+    public Content createWaitContent()
+    {
+        return new WaitContent();
+    }
+
+    private void reportIn(final T element)
+    {
+        if(utcMeter != null)
+        {
+            utcMeter.reportIn(sizer.applyAsInt(element),
+                    utc.applyAsLong(element));
+        }
+        else
+        {
+            meter.reportIn(sizer.applyAsInt(element));
+        }
+    }
+
+    private void reportOut(final T element)
+    {
+        if(utcMeter != null)
+        {
+            utcMeter.reportOut(sizer.applyAsInt(element),
+                    utc.applyAsLong(element));
+        }
+        else
+        {
+            meter.reportOut(sizer.applyAsInt(element));
+        }
+    }
+
+    // Wake the opposite side when parked by a Phased idle strategy
+    private void signal()
+    {
+        if(idleStrategy != null)
+        {
+            idleStrategy.signal();
+        }
+    }
+
+
+    /**
+     * An idle strategy wrapper that accounts for waits, idle iterations
+     * and the time spent idling.
+     */
+    public static class IdleMeter implements IdleStrategy
+    {
+        private final IdleStrategy delegate;
+
+        private volatile long waits;
+        private volatile long iterations;
+        private volatile long nanos;
+
+        public IdleMeter(final IdleStrategy delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void idle(final int count) throws InterruptedException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                delegate.idle(count);
+            }
+            finally
+            {
+                account(count, start);
+            }
+        }
+
+        @Override
+        public void idle(final int count, final long deadline)
+                throws InterruptedException
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                delegate.idle(count, deadline);
+            }
+            finally
+            {
+                account(count, start);
+            }
+        }
+
+        @Override
+        public void signal()
+        {
+            delegate.signal();
+        }
+
+        public long getWaits()
+        {
+            return waits;
+        }
+
+        public long getIterations()
+        {
+            return iterations;
+        }
+
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        private void account(final int count, final long start)
+        {
+            if(count == 0)
+            {
+                waits++;
+            }
+            iterations++;
+            nanos += (System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * Forwards removed elements to a client consumer while tallying the
+     * metered quantities.
+     */
+    private class Tally implements Consumer<T>
+    {
+        private Consumer<? super T> consumer;
+        private int size;
+        private long utc;
+
+        private void reset(final Consumer<? super T> consumer)
+        {
+            this.consumer = consumer;
+            size = 0;
+            utc = 0;
+        }
+
+        @Override
+        public void accept(final T element)
+        {
+            size += sizer.applyAsInt(element);
+            if(utcMeter != null)
+            {
+                utc = MeteredQueueStrategy.this.utc.applyAsLong(element);
+            }
+            consumer.accept(element);
+        }
+    }
+
+
+    /**
+     * Provides per-period wait statistics.
+     *
+     * Example
+     * <PRE>
+     *       eqwaits   eqidlems  dqwaits   dqidlems
+     *       0         0         1320      912
+     *       12        48        402       311
+     * </PRE>
+     */
+    private class WaitContent implements Content
+    {
+        private final String header;
+
+        private long lastEnqueueWaits;
+        private long lastEnqueueNanos;
+        private long lastDequeueWaits;
+        private long lastDequeueNanos;
+
+        private WaitContent()
+        {
+            header = String.format("%-10s%-10s%-10s%-10s",
+                    "eqwaits", "eqidlems", "dqwaits", "dqidlems");
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append(header);
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            long enqueueWaits = getEnqueueWaits();
+            long enqueueNanos = getEnqueueIdleNanos();
+            long dequeueWaits = getDequeueWaits();
+            long dequeueNanos = getDequeueIdleNanos();
+
+            sb.append(String.format("%-10d%-10d%-10d%-10d",
+                    (enqueueWaits - lastEnqueueWaits),
+                    (enqueueNanos - lastEnqueueNanos) / 1000000,
+                    (dequeueWaits - lastDequeueWaits),
+                    (dequeueNanos - lastDequeueNanos) / 1000000));
+
+            lastEnqueueWaits = enqueueWaits;
+            lastEnqueueNanos = enqueueNanos;
+            lastDequeueWaits = dequeueWaits;
+            lastDequeueNanos = dequeueNanos;
+        }
+    }
+
+}
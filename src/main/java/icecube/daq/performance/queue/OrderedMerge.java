@@ -0,0 +1,255 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.queue.QueueStrategy.IdleStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Merges a set of individually ordered input streams into a single
+ * stream ordered by a long key, typically a UTC time.
+ *
+ * The merge is realized by a loser tree (tournament tree) holding the
+ * head element of each input. Removing an element costs log2(N) key
+ * comparisons against the elements of the other inputs, independent
+ * of the arrival pattern of the inputs. Elements with equal keys are
+ * emitted in input order.
+ *
+ * An element can only be emitted once every input has provided a head
+ * element, an empty input is waited on with the idle strategy. An input
+ * is finished by an element with the key Long.MAX_VALUE and is not
+ * polled again. Once all inputs are finished the merge emits one of the
+ * end-of-stream elements, and continues to return it on further calls.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   OrderedMerge&lt;Payload&gt; merge =
+ *        new OrderedMerge&lt;&gt;(hubQueues, Payload::getUTCTime,
+ *                           new QueueStrategy.Yield());
+ *   while(!merge.isFinished())
+ *   {
+ *       splice(merge.dequeue());
+ *   }
+ * </PRE>
+ *
+ * Note: The merge is the single consumer of its inputs and must be
+ *       used by a single thread.
+ */
+public class OrderedMerge<T>
+{
+
+    /** The key of an end-of-stream element. */
+    public static final long END_OF_STREAM = Long.MAX_VALUE;
+
+    // used during construction of the tree, beats any input
+    private static final int SENTINEL = -1;
+
+    private final QueueStrategy<T>[] inputs;
+    private final ToLongFunction<? super T> key;
+    private final IdleStrategy idleStrategy;
+
+    // the head element and key of each input
+    private final Object[] heads;
+    private final long[] keys;
+
+    // tree[0] holds the winner, tree[1..N-1] the losers of each match
+    private final int[] tree;
+
+    // the input whose head was emitted and must be replaced
+    private int pending;
+    private boolean started;
+    private boolean finished;
+
+
+    /**
+     * @param inputs The ordered input streams.
+     * @param key Extracts the ordering key from an element.
+     * @param idleStrategy Realizes waits for empty inputs.
+     */
+    public OrderedMerge(final QueueStrategy<T>[] inputs,
+                        final ToLongFunction<? super T> key,
+                        final IdleStrategy idleStrategy)
+    {
+        if(inputs.length < 1)
+        {
+            throw new IllegalArgumentException("No inputs");
+        }
+        this.inputs = inputs.clone();
+        this.key = key;
+        this.idleStrategy = idleStrategy;
+        this.heads = new Object[inputs.length];
+        this.keys = new long[inputs.length];
+        this.tree = new int[inputs.length];
+        this.pending = SENTINEL;
+    }
+
+    /**
+     * Remove the next element in key order, waiting for inputs to
+     * provide elements if necessary.
+     *
+     * @return The next element.
+     * @throws InterruptedException
+     */
+    public T dequeue() throws InterruptedException
+    {
+        return poll(false, 0);
+    }
+
+    /**
+     * Remove the next element in key order, waiting up to the specified
+     * time for inputs to provide elements if necessary.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return The next element, or null if the timeout elapsed first.
+     * @throws InterruptedException
+     */
+    public T poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        return poll(true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return true once every input is finished and the end-of-stream
+     *         element has been emitted.
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * @return The number of inputs.
+     */
+    public int inputCount()
+    {
+        return inputs.length;
+    }
+
+    /**
+     * @return The number of elements held by the merge and its inputs.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (int i = 0; i < inputs.length; i++)
+        {
+            size += inputs[i].size();
+            if(heads[i] != null && i != pending)
+            {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T poll(final boolean timed, final long deadline)
+            throws InterruptedException
+    {
+        if(!started)
+        {
+            for (int i = 0; i < inputs.length; i++)
+            {
+                if(heads[i] == null && !refill(i, timed, deadline))
+                {
+                    return null;
+                }
+            }
+            build();
+            started = true;
+        }
+        else if(pending != SENTINEL)
+        {
+            if(!refill(pending, timed, deadline))
+            {
+                return null;
+            }
+            replay(pending);
+            pending = SENTINEL;
+        }
+
+        final int winner = tree[0];
+        if(keys[winner] == END_OF_STREAM)
+        {
+            finished = true;
+            return (T) heads[winner];
+        }
+
+        pending = winner;
+        return (T) heads[winner];
+    }
+
+    /**
+     * Replace the head of an input, waiting for an element if necessary.
+     *
+     * @return false if the wait was timed and the deadline elapsed first.
+     */
+    private boolean refill(final int input, final boolean timed,
+                           final long deadline) throws InterruptedException
+    {
+        T element = inputs[input].poll(0, TimeUnit.NANOSECONDS);
+        int count = 0;
+        while(element == null)
+        {
+            if(timed)
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return false;
+                }
+                idleStrategy.idle(count++, deadline);
+            }
+            else
+            {
+                idleStrategy.idle(count++);
+            }
+            element = inputs[input].poll(0, TimeUnit.NANOSECONDS);
+        }
+        heads[input] = element;
+        keys[input] = key.applyAsLong(element);
+        return true;
+    }
+
+    private void build()
+    {
+        for (int i = 0; i < tree.length; i++)
+        {
+            tree[i] = SENTINEL;
+        }
+        for (int i = inputs.length - 1; i >= 0; i--)
+        {
+            replay(i);
+        }
+    }
+
+    /**
+     * Replay the matches from the leaf of an input to the root.
+     */
+    private void replay(final int input)
+    {
+        int winner = input;
+        for (int node = (input + inputs.length) >> 1; node > 0; node >>= 1)
+        {
+            final int challenger = tree[node];
+            if(challenger == SENTINEL || beats(challenger, winner))
+            {
+                tree[node] = winner;
+                winner = challenger;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(final int a, final int b)
+    {
+        if(b == SENTINEL)
+        {
+            return false;
+        }
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+}
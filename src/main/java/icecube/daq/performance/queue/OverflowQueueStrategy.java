@@ -0,0 +1,499 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.diagnostic.Metered;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A QueueStrategy decorator that applies an overflow policy when the
+ * underlying queue is full, so that a stalled consumer degrades the
+ * stream rather than stalling the producer.
+ *
+ * <PRE>
+ *    BLOCK:       Wait for space, the behavior of the underlying strategy.
+ *    DROP_NEWEST: Discard the element being enqueued.
+ *    DROP_OLDEST: Discard the oldest queued elements to make room. The
+ *                 producer removes elements, so the underlying queue
+ *                 must support multiple consumers.
+ *    SPILL:       Write elements to a spill file on disk. Once spilling,
+ *                 every element is spilled until the consumer has read
+ *                 the spill file back, preserving order.
+ * </PRE>
+ *
+ * Dropped and spilled elements are counted and reported to optional
+ * throughput meters for display with DiagnosticTrace.
+ *
+ * Under the non-blocking policies, enqueue() does not wait and the
+ * timed offer() applies the policy after the timeout elapses.
+ *
+ * Note: Under the SPILL policy the consumer polls the underlying queue
+ *       with a short timeout to notice the spill file, a consumer
+ *       blocked on an empty queue observes a spill within
+ *       SPILL_CHECK_MILLIS.
+ */
+public class OverflowQueueStrategy<T> implements QueueStrategy<T>
+{
+
+    private static final Logger LOG =
+            Logger.getLogger(OverflowQueueStrategy.class);
+
+    /** The period at which a waiting consumer checks for a spill. */
+    public static final long SPILL_CHECK_MILLIS = 10;
+
+    /**
+     * The action taken on a full queue.
+     */
+    public static enum Policy
+    {
+        BLOCK,
+        DROP_NEWEST,
+        DROP_OLDEST,
+        SPILL
+    }
+
+    /**
+     * Serializes elements to and from a spill file.
+     */
+    public interface Codec<T>
+    {
+        void encode(T element, DataOutput out) throws IOException;
+
+        T decode(DataInput in) throws IOException;
+    }
+
+
+    private final QueueStrategy<T> delegate;
+    private final Policy policy;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final Metered.Throughput droppedMeter;
+    private final Metered.Throughput spilledMeter;
+
+    private final Spill<T> spill;
+    private volatile boolean spilling;
+
+
+    private OverflowQueueStrategy(final QueueStrategy<T> delegate,
+                                  final Policy policy,
+                                  final Metered.Throughput droppedMeter,
+                                  final Metered.Throughput spilledMeter,
+                                  final Spill<T> spill)
+    {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.droppedMeter = droppedMeter;
+        this.spilledMeter = spilledMeter;
+        this.spill = spill;
+    }
+
+    /**
+     * Wait for space on a full queue.
+     */
+    public static <T> OverflowQueueStrategy<T> block(
+            final QueueStrategy<T> delegate)
+    {
+        return new OverflowQueueStrategy<>(delegate, Policy.BLOCK,
+                new Metered.NullMeter(), new Metered.NullMeter(), null);
+    }
+
+    /**
+     * Discard the element being enqueued on a full queue.
+     */
+    public static <T> OverflowQueueStrategy<T> dropNewest(
+            final QueueStrategy<T> delegate,
+            final Metered.Throughput droppedMeter)
+    {
+        return new OverflowQueueStrategy<>(delegate, Policy.DROP_NEWEST,
+                droppedMeter, new Metered.NullMeter(), null);
+    }
+
+    /**
+     * Discard the oldest elements on a full queue. The delegate must
+     * support multiple consumers.
+     */
+    public static <T> OverflowQueueStrategy<T> dropOldest(
+            final QueueStrategy<T> delegate,
+            final Metered.Throughput droppedMeter)
+    {
+        return new OverflowQueueStrategy<>(delegate, Policy.DROP_OLDEST,
+                droppedMeter, new Metered.NullMeter(), null);
+    }
+
+    /**
+     * Spill elements to a file on a full queue. Elements that can not
+     * be spilled are dropped.
+     *
+     * @param delegate The underlying strategy.
+     * @param directory The directory of the spill file.
+     * @param codec Serializes the elements.
+     * @param droppedMeter Reports elements lost to spill file errors.
+     * @param spilledMeter Reports spilled elements.
+     * @throws IOException The spill file could not be created.
+     */
+    public static <T> OverflowQueueStrategy<T> spill(
+            final QueueStrategy<T> delegate,
+            final File directory,
+            final Codec<T> codec,
+            final Metered.Throughput droppedMeter,
+            final Metered.Throughput spilledMeter) throws IOException
+    {
+        return new OverflowQueueStrategy<>(delegate, Policy.SPILL,
+                droppedMeter, spilledMeter, new Spill<>(directory, codec));
+    }
+
+    @Override
+    public void enqueue(final T element) throws InterruptedException
+    {
+        if(policy == Policy.BLOCK)
+        {
+            delegate.enqueue(element);
+        }
+        else
+        {
+            offer(element, 0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean offer(final T element, final long timeout,
+                         final TimeUnit unit) throws InterruptedException
+    {
+        if(spilling)
+        {
+            return spill(element);
+        }
+        if(delegate.offer(element, timeout, unit))
+        {
+            return true;
+        }
+
+        switch (policy)
+        {
+            case BLOCK:
+                return false;
+            case DROP_NEWEST:
+                drop(1);
+                return false;
+            case DROP_OLDEST:
+                do
+                {
+                    if(delegate.poll(0, TimeUnit.NANOSECONDS) != null)
+                    {
+                        drop(1);
+                    }
+                }
+                while(!delegate.offer(element, 0, TimeUnit.NANOSECONDS));
+                return true;
+            case SPILL:
+                return spill(element);
+            default:
+                throw new Error("Unknown policy: " + policy);
+        }
+    }
+
+    @Override
+    public T dequeue() throws InterruptedException
+    {
+        if(spill == null)
+        {
+            return delegate.dequeue();
+        }
+
+        T element;
+        while( (element = poll(SPILL_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+                == null)
+        {
+            // wait for an element or a spill
+        }
+        return element;
+    }
+
+    @Override
+    public T poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        if(spill == null)
+        {
+            return delegate.poll(timeout, unit);
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final long checkNanos =
+                TimeUnit.MILLISECONDS.toNanos(SPILL_CHECK_MILLIS);
+        while(true)
+        {
+            T element = delegate.poll(0, TimeUnit.NANOSECONDS);
+            if(element != null)
+            {
+                return element;
+            }
+
+            // the queue has drained, spilled elements are next
+            if(spilling)
+            {
+                element = unspill();
+                if(element != null)
+                {
+                    return element;
+                }
+                continue;
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+            {
+                return null;
+            }
+            element = delegate.poll(Math.min(remaining, checkNanos),
+                    TimeUnit.NANOSECONDS);
+            if(element != null)
+            {
+                return element;
+            }
+        }
+    }
+
+    @Override
+    public int dequeue(final T[] buffer, final int offset, final int limit)
+            throws InterruptedException
+    {
+        if(spill == null)
+        {
+            return delegate.dequeue(buffer, offset, limit);
+        }
+        else
+        {
+            return QueueStrategy.super.dequeue(buffer, offset, limit);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return delegate.size() + (int) getSpillPending();
+    }
+
+    /**
+     * @return The overflow policy.
+     */
+    public Policy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * @return The number of dropped elements.
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of spilled elements.
+     */
+    public long getSpilled()
+    {
+        return spilled.get();
+    }
+
+    /**
+     * @return The number of elements held in the spill file.
+     */
+    public long getSpillPending()
+    {
+        if(spill == null)
+        {
+            return 0;
+        }
+        synchronized (spill)
+        {
+            return spill.pending;
+        }
+    }
+
+    /**
+     * Release the spill file, elements held in the spill file are
+     * discarded.
+     */
+    public void close()
+    {
+        if(spill != null)
+        {
+            synchronized (spill)
+            {
+                spill.discard();
+                spilling = false;
+                if(!spill.file.delete())
+                {
+                    LOG.warn("Could not delete spill file " + spill.file);
+                }
+            }
+        }
+    }
+
+    private void drop(final int count)
+    {
+        dropped.addAndGet(count);
+        droppedMeter.report(count, 0);
+    }
+
+    private boolean spill(final T element)
+    {
+        synchronized (spill)
+        {
+            try
+            {
+                spill.write(element);
+                spilling = true;
+            }
+            catch (IOException ioe)
+            {
+                LOG.error("Spill failed, dropping element", ioe);
+                drop(1);
+                return false;
+            }
+        }
+        spilled.incrementAndGet();
+        spilledMeter.report(1, 0);
+        return true;
+    }
+
+    private T unspill()
+    {
+        synchronized (spill)
+        {
+            if(spill.pending == 0)
+            {
+                spilling = false;
+                return null;
+            }
+
+            try
+            {
+                T element = spill.read();
+                if(spill.pending == 0)
+                {
+                    spilling = false;
+                }
+                return element;
+            }
+            catch (IOException ioe)
+            {
+                LOG.error("Unspill failed, dropping " + spill.pending +
+                        " spilled elements", ioe);
+                drop((int) spill.pending);
+                spill.discard();
+                spilling = false;
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * A spill file written by producers and read by the consumer.
+     *
+     * The file is truncated whenever it is fully read. Access is
+     * synchronized by the caller.
+     */
+    private static class Spill<T>
+    {
+        private final File file;
+        private final Codec<T> codec;
+
+        private DataOutputStream out;
+        private DataInputStream in;
+        private boolean unflushed;
+        private long pending;
+
+        private Spill(final File directory, final Codec<T> codec)
+                throws IOException
+        {
+            this.file = File.createTempFile("spill", ".dat", directory);
+            this.file.deleteOnExit();
+            this.codec = codec;
+            open();
+        }
+
+        private void write(final T element) throws IOException
+        {
+            if(out == null)
+            {
+                open();
+            }
+            codec.encode(element, out);
+            unflushed = true;
+            pending++;
+        }
+
+        private T read() throws IOException
+        {
+            if(unflushed)
+            {
+                out.flush();
+                unflushed = false;
+            }
+            T element = codec.decode(in);
+            pending--;
+
+            if(pending == 0)
+            {
+                // reclaim the disk space
+                close();
+                open();
+            }
+            return element;
+        }
+
+        private void discard()
+        {
+            pending = 0;
+            close();
+        }
+
+        private void open() throws IOException
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+        }
+
+        private void close()
+        {
+            try
+            {
+                if(out != null)
+                {
+                    out.close();
+                }
+                if(in != null)
+                {
+                    in.close();
+                }
+            }
+            catch (IOException ioe)
+            {
+                LOG.warn("Error closing spill file " + file, ioe);
+            }
+            out = null;
+            in = null;
+            unflushed = false;
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.queue.QueueStrategy.IdleStrategy;
+import org.jctools.queues.SpscArrayQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Distributes the elements of a single producer over a fixed set of
+ * consumers, keeping all elements with the same key on the same
+ * consumer.
+ *
+ * Each consumer owns a partition backed by its own SPSC queue and idle
+ * strategy. Elements are routed to a partition by a key function, so
+ * the order of elements is preserved per key while distinct keys are
+ * processed in parallel.
+ *
+ * <PRE>
+ * Usage:
+ *
+ *   PartitionedQueueStrategy&lt;DOMHit&gt; hits =
+ *        new PartitionedQueueStrategy&lt;&gt;(4, 8192,
+ *                                   hit -&gt; hit.getChannelId(),
+ *                                   QueueStrategy.Phased::new);
+ *
+ *   // producer
+ *   hits.enqueue(hit);
+ *
+ *   // worker i
+ *   QueueStrategy&lt;DOMHit&gt; mine = hits.partition(i);
+ *   DOMHit hit = mine.dequeue();
+ * </PRE>
+ *
+ * Note: The producer side must be used by a single thread, each
+ *       partition must be consumed by a single thread.
+ */
+public class PartitionedQueueStrategy<T>
+{
+
+    private final QueueStrategy<T>[] partitions;
+    private final ToIntFunction<? super T> key;
+
+
+    /**
+     * Create partitions backed by SPSC array queues.
+     *
+     * @param partitionCount The number of partitions.
+     * @param capacity The capacity of each partition.
+     * @param key Maps an element to its key.
+     * @param idleStrategy Provides the idle strategy of each partition.
+     */
+    public PartitionedQueueStrategy(final int partitionCount,
+                                    final int capacity,
+                                    final ToIntFunction<? super T> key,
+                                    final Supplier<? extends IdleStrategy> idleStrategy)
+    {
+        this(createPartitions(partitionCount, capacity, idleStrategy), key);
+    }
+
+    /**
+     * Create from existing partitions. Each partition must support a
+     * single producer and a single consumer.
+     *
+     * @param partitions The partitions.
+     * @param key Maps an element to its key.
+     */
+    public PartitionedQueueStrategy(final QueueStrategy<T>[] partitions,
+                                    final ToIntFunction<? super T> key)
+    {
+        if(partitions.length < 1)
+        {
+            throw new IllegalArgumentException("No partitions");
+        }
+        this.partitions = partitions.clone();
+        this.key = key;
+    }
+
+    /**
+     * Insert an element into its partition, waiting for space to become
+     * available if necessary.
+     *
+     * @param element The element to insert.
+     * @throws InterruptedException
+     */
+    public void enqueue(final T element) throws InterruptedException
+    {
+        partitions[partitionOf(element)].enqueue(element);
+    }
+
+    /**
+     * Insert an element into its partition, waiting up to the specified
+     * time for space to become available if necessary.
+     *
+     * @param element The element to insert.
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return true if the element was inserted, false if the timeout
+     *         elapsed first.
+     * @throws InterruptedException
+     */
+    public boolean offer(final T element, final long timeout,
+                         final TimeUnit unit) throws InterruptedException
+    {
+        return partitions[partitionOf(element)].offer(element, timeout, unit);
+    }
+
+    /**
+     * Insert a run of elements into their partitions, waiting for space
+     * to become available if necessary.
+     *
+     * @param elements Holds the elements to insert.
+     * @param offset The index of the first element to insert.
+     * @param length The number of elements to insert.
+     * @throws InterruptedException
+     */
+    public void enqueue(final T[] elements, final int offset,
+                        final int length) throws InterruptedException
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            enqueue(elements[i]);
+        }
+    }
+
+    /**
+     * @param element An element.
+     * @return The index of the partition of the element.
+     */
+    public int partitionOf(final T element)
+    {
+        return Math.floorMod(key.applyAsInt(element), partitions.length);
+    }
+
+    /**
+     * @param index The partition index.
+     * @return The consumer view of a partition.
+     */
+    public QueueStrategy<T> partition(final int index)
+    {
+        return partitions[index];
+    }
+
+    /**
+     * @return The number of partitions.
+     */
+    public int partitionCount()
+    {
+        return partitions.length;
+    }
+
+    /**
+     * @return The number of elements in all partitions.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (QueueStrategy<T> partition : partitions)
+        {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> QueueStrategy<T>[] createPartitions(
+            final int partitionCount, final int capacity,
+            final Supplier<? extends IdleStrategy> idleStrategy)
+    {
+        QueueStrategy<T>[] partitions = new QueueStrategy[partitionCount];
+        for (int i = 0; i < partitionCount; i++)
+        {
+            IdleStrategy idle = idleStrategy.get();
+            if(idle instanceof QueueStrategy.Phased)
+            {
+                // signaling wakes a parked worker on enqueue
+                partitions[i] = new QueueStrategy.RelaxedPhased<T>(
+                        new SpscArrayQueue<T>(capacity),
+                        (QueueStrategy.Phased) idle);
+            }
+            else
+            {
+                partitions[i] = new QueueStrategy.Relaxed<T>(
+                        new SpscArrayQueue<T>(capacity), idle);
+            }
+        }
+        return partitions;
+    }
+
+}
@@ -2,8 +2,13 @@ package icecube.daq.performance.queue;
 
 import org.jctools.queues.MessagePassingQueue;
 
+import java.util.AbstractCollection;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * A queue interface that narrows the scope of interfaces provided
@@ -17,6 +22,15 @@ import java.util.concurrent.BlockingQueue;
  * QueueStrategy also provides standard idle strategies that implement
  * queue full/empty waits against a non-blocking queue.
  *
+ * Batch variants of enqueue and dequeue allow a client to amortize the
+ * wait and the queue access over many elements. The default
+ * implementations move one element at a time.
+ *
+ * Timed variants, offer and poll, bound the wait by a deadline so that
+ * a client can attend to periodic duties without being interrupted.
+ * The interface offers no non-blocking attempt to build a timed wait
+ * from, so the default timed variants are unsupported and the standard
+ * strategies override them.
  */
 public interface QueueStrategy<T>
 {
@@ -37,6 +51,109 @@ public interface QueueStrategy<T>
      */
     public T dequeue() throws InterruptedException;
 
+    /**
+     * Insert an element into the queue, waiting up to the specified
+     * time for space to become available if necessary.
+     *
+     * @param element The element to insert.
+     * @param timeout How long to wait, a non-positive value makes a
+     *                single attempt.
+     * @param unit The unit of the timeout.
+     * @return true if the element was inserted, false if the timeout
+     *         elapsed first.
+     * @throws InterruptedException
+     * @throws UnsupportedOperationException The strategy does not
+     *                                       support timed waits.
+     */
+    public default boolean offer(final T element, final long timeout,
+                                 final TimeUnit unit)
+            throws InterruptedException
+    {
+        throw new UnsupportedOperationException("Timed offer not" +
+                " supported by " + getClass().getName());
+    }
+
+    /**
+     * Remove an element from the queue, waiting up to the specified
+     * time for an element to become available if necessary.
+     *
+     * @param timeout How long to wait, a non-positive value makes a
+     *                single attempt.
+     * @param unit The unit of the timeout.
+     * @return The next element from the queue, or null if the timeout
+     *         elapsed first.
+     * @throws InterruptedException
+     * @throws UnsupportedOperationException The strategy does not
+     *                                       support timed waits.
+     */
+    public default T poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        throw new UnsupportedOperationException("Timed poll not" +
+                " supported by " + getClass().getName());
+    }
+
+    /**
+     * Insert a run of elements into the queue, waiting for space to
+     * become available if necessary.
+     *
+     * @param elements Holds the elements to insert.
+     * @param offset The index of the first element to insert.
+     * @param length The number of elements to insert.
+     * @throws InterruptedException
+     */
+    public default void enqueue(final T[] elements, final int offset,
+                                final int length) throws InterruptedException
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            enqueue(elements[i]);
+        }
+    }
+
+    /**
+     * Remove up to limit elements from the queue into a buffer, waiting
+     * for an element to become available if necessary.
+     *
+     * @param buffer The destination of the removed elements.
+     * @param offset The buffer index of the first removed element.
+     * @param limit The maximum number of elements to remove.
+     * @return The number of elements removed, at least one unless
+     *         limit is less than one.
+     * @throws InterruptedException
+     */
+    public default int dequeue(final T[] buffer, final int offset,
+                               final int limit) throws InterruptedException
+    {
+        if(limit < 1)
+        {
+            return 0;
+        }
+        buffer[offset] = dequeue();
+        return 1;
+    }
+
+    /**
+     * Remove up to limit elements from the queue, passing each to a
+     * consumer, waiting for an element to become available if necessary.
+     *
+     * @param consumer The destination of the removed elements.
+     * @param limit The maximum number of elements to remove.
+     * @return The number of elements removed, at least one unless
+     *         limit is less than one.
+     * @throws InterruptedException
+     */
+    public default int dequeue(final Consumer<? super T> consumer,
+                               final int limit) throws InterruptedException
+    {
+        if(limit < 1)
+        {
+            return 0;
+        }
+        consumer.accept(dequeue());
+        return 1;
+    }
+
     /**
      * The number of elements in the queue.
      *
@@ -54,6 +171,27 @@ public interface QueueStrategy<T>
     interface IdleStrategy
     {
         void idle(int count) throws InterruptedException;
+
+        /**
+         * Idle without overrunning a deadline. Strategies that sleep
+         * must bound the sleep by the deadline.
+         *
+         * @param count The iteration count of the idle loop.
+         * @param deadline The deadline in System.nanoTime() units.
+         */
+        default void idle(int count, long deadline)
+                throws InterruptedException
+        {
+            idle(count);
+        }
+
+        /**
+         * Wake a thread idling in this strategy. A no-op for strategies
+         * that do not park.
+         */
+        default void signal()
+        {
+        }
     }
 
 
@@ -123,6 +261,16 @@ public interface QueueStrategy<T>
             Thread.sleep(pollMillis);
         }
 
+        @Override
+        public final void idle(final int count, final long deadline)
+                throws InterruptedException
+        {
+            long remaining = deadline - System.nanoTime();
+            TimeUnit.NANOSECONDS.sleep(
+                    Math.min(TimeUnit.MILLISECONDS.toNanos(pollMillis),
+                            remaining));
+        }
+
     }
 
 
@@ -146,6 +294,150 @@ public interface QueueStrategy<T>
             Thread.sleep( Math.min((pollMillis * count), maxSleep) );
         }
 
+        @Override
+        public final void idle(final int count, final long deadline)
+                throws InterruptedException
+        {
+            long remaining = deadline - System.nanoTime();
+            long sleep = Math.min((pollMillis * count), maxSleep);
+            TimeUnit.NANOSECONDS.sleep(
+                    Math.min(TimeUnit.MILLISECONDS.toNanos(sleep),
+                            remaining));
+        }
+
+    }
+
+
+    /**
+     * A phased idle strategy that spins, then yields, then parks for
+     * a period that doubles up to a maximum.
+     *
+     * A thread parked by this strategy may be woken early by signal().
+     * Signaling is best effort, a signal that races with a thread that
+     * is preparing to park is lost and the thread wakes at the end of
+     * its park period, so the maximum park period bounds the latency
+     * of a missed signal.
+     */
+    class Phased implements IdleStrategy
+    {
+        // support interruptibility on spin
+        private final static int INTERRUPT_CHECK_PERIOD = 10000;
+
+        private final static int DEFAULT_SPINS = 100;
+        private final static int DEFAULT_YIELDS = 100;
+        private final static long DEFAULT_MIN_PARK_NANOS = 1000;
+        private final static long DEFAULT_MAX_PARK_NANOS = 1000000;
+
+        final int spins;
+        final int yields;
+        final long minParkNanos;
+        final long maxParkNanos;
+
+        // the most recently parked thread, the target of signal()
+        private volatile Thread parked;
+
+        public Phased()
+        {
+            this(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_MIN_PARK_NANOS,
+                    DEFAULT_MAX_PARK_NANOS);
+        }
+
+        /**
+         * @param spins The number of idle iterations spent spinning.
+         * @param yields The number of idle iterations spent yielding
+         *               after spinning.
+         * @param minParkNanos The first park period.
+         * @param maxParkNanos The maximum park period.
+         */
+        public Phased(final int spins, final int yields,
+                      final long minParkNanos, final long maxParkNanos)
+        {
+            this.spins = spins;
+            this.yields = yields;
+            this.minParkNanos = Math.max(1, minParkNanos);
+            this.maxParkNanos = Math.max(this.minParkNanos, maxParkNanos);
+        }
+
+        @Override
+        public final void idle(final int count) throws InterruptedException
+        {
+            if(count < spins + yields)
+            {
+                spinOrYield(count);
+            }
+            else
+            {
+                park(parkNanos(count));
+            }
+        }
+
+        @Override
+        public final void idle(final int count, final long deadline)
+                throws InterruptedException
+        {
+            if(count < spins + yields)
+            {
+                spinOrYield(count);
+            }
+            else
+            {
+                long remaining = deadline - System.nanoTime();
+                if(remaining > 0)
+                {
+                    park(Math.min(parkNanos(count), remaining));
+                }
+            }
+        }
+
+        @Override
+        public final void signal()
+        {
+            final Thread waiter = parked;
+            if(waiter != null)
+            {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        private void spinOrYield(final int count) throws InterruptedException
+        {
+            if(count % INTERRUPT_CHECK_PERIOD == 0)
+            {
+                if(Thread.currentThread().isInterrupted())
+                {
+                    throw new InterruptedException();
+                }
+            }
+
+            if(count >= spins)
+            {
+                Thread.yield();
+            }
+        }
+
+        private long parkNanos(final int count)
+        {
+            int doublings = Math.min(count - spins - yields, 32);
+            long nanos = minParkNanos << doublings;
+            return (nanos > 0 && nanos < maxParkNanos) ? nanos : maxParkNanos;
+        }
+
+        private void park(final long nanos) throws InterruptedException
+        {
+            final Thread current = Thread.currentThread();
+            parked = current;
+            LockSupport.parkNanos(this, nanos);
+            if(parked == current)
+            {
+                parked = null;
+            }
+
+            if(Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+
     }
 
 
@@ -175,12 +467,119 @@ public interface QueueStrategy<T>
             return queue.take();
         }
 
+        @Override
+        public boolean offer(final T element, final long timeout,
+                             final TimeUnit unit) throws InterruptedException
+        {
+            return queue.offer(element, timeout, unit);
+        }
+
+        @Override
+        public T poll(final long timeout, final TimeUnit unit)
+                throws InterruptedException
+        {
+            return queue.poll(timeout, unit);
+        }
+
+        @Override
+        public int dequeue(final T[] buffer, final int offset,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            buffer[offset] = queue.take();
+            return 1 + queue.drainTo(new ArraySink<T>(buffer, offset + 1),
+                    limit - 1);
+        }
+
+        @Override
+        public int dequeue(final Consumer<? super T> consumer,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            consumer.accept(queue.take());
+            return 1 + queue.drainTo(new ConsumerSink<T>(consumer),
+                    limit - 1);
+        }
+
         @Override
         public int size()
         {
             return queue.size();
         }
 
+
+        /**
+         * Adapts drainTo() to an array destination.
+         */
+        private static class ArraySink<T> extends AbstractCollection<T>
+        {
+            private final T[] buffer;
+            private int idx;
+
+            private ArraySink(final T[] buffer, final int offset)
+            {
+                this.buffer = buffer;
+                this.idx = offset;
+            }
+
+            @Override
+            public boolean add(final T element)
+            {
+                buffer[idx++] = element;
+                return true;
+            }
+
+            @Override
+            public Iterator<T> iterator()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int size()
+            {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        /**
+         * Adapts drainTo() to a consumer destination.
+         */
+        private static class ConsumerSink<T> extends AbstractCollection<T>
+        {
+            private final Consumer<? super T> consumer;
+
+            private ConsumerSink(final Consumer<? super T> consumer)
+            {
+                this.consumer = consumer;
+            }
+
+            @Override
+            public boolean add(final T element)
+            {
+                consumer.accept(element);
+                return true;
+            }
+
+            @Override
+            public Iterator<T> iterator()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int size()
+            {
+                throw new UnsupportedOperationException();
+            }
+        }
+
     }
 
 
@@ -191,13 +590,26 @@ public interface QueueStrategy<T>
     public class NonBlocking<T> implements QueueStrategy<T>
     {
         private final  Queue<T> queue;
-        private final IdleStrategy idleStrategy;
+        private final IdleStrategy enqueueIdle;
+        private final IdleStrategy dequeueIdle;
 
         public NonBlocking(final Queue<T> queue,
                            final IdleStrategy idleStrategy)
+        {
+            this(queue, idleStrategy, idleStrategy);
+        }
+
+        /**
+         * Supports distinct idle strategies for the queue full and
+         * queue empty conditions.
+         */
+        public NonBlocking(final Queue<T> queue,
+                           final IdleStrategy enqueueIdle,
+                           final IdleStrategy dequeueIdle)
         {
             this.queue = queue;
-            this.idleStrategy = idleStrategy;
+            this.enqueueIdle = enqueueIdle;
+            this.dequeueIdle = dequeueIdle;
         }
 
         @Override
@@ -206,7 +618,7 @@ public interface QueueStrategy<T>
             int count=0;
             while(!queue.offer(element))
             {
-                idleStrategy.idle(count++);
+                enqueueIdle.idle(count++);
             }
         }
 
@@ -217,11 +629,113 @@ public interface QueueStrategy<T>
             int count = 0;
             while( (element = queue.poll()) == null)
             {
-                idleStrategy.idle(count++);
+                dequeueIdle.idle(count++);
+            }
+            return element;
+        }
+
+        @Override
+        public boolean offer(final T element, final long timeout,
+                             final TimeUnit unit) throws InterruptedException
+        {
+            if(queue.offer(element))
+            {
+                return true;
+            }
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return false;
+                }
+                enqueueIdle.idle(count++, deadline);
+            }
+            while(!queue.offer(element));
+
+            return true;
+        }
+
+        @Override
+        public T poll(final long timeout, final TimeUnit unit)
+                throws InterruptedException
+        {
+            T element = queue.poll();
+            if(element != null)
+            {
+                return element;
+            }
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return null;
+                }
+                dequeueIdle.idle(count++, deadline);
             }
+            while( (element = queue.poll()) == null);
+
             return element;
         }
 
+        @Override
+        public void enqueue(final T[] elements, final int offset,
+                            final int length) throws InterruptedException
+        {
+            for (int i = offset; i < offset + length; i++)
+            {
+                int count=0;
+                while(!queue.offer(elements[i]))
+                {
+                    enqueueIdle.idle(count++);
+                }
+            }
+        }
+
+        @Override
+        public int dequeue(final T[] buffer, final int offset,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            buffer[offset] = dequeue();
+
+            int removed = 1;
+            T element;
+            while(removed < limit && (element = queue.poll()) != null)
+            {
+                buffer[offset + removed++] = element;
+            }
+            return removed;
+        }
+
+        @Override
+        public int dequeue(final Consumer<? super T> consumer,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            consumer.accept(dequeue());
+
+            int removed = 1;
+            T element;
+            while(removed < limit && (element = queue.poll()) != null)
+            {
+                consumer.accept(element);
+                removed++;
+            }
+            return removed;
+        }
+
         @Override
         public int size()
         {
@@ -240,13 +754,26 @@ public interface QueueStrategy<T>
     public class Relaxed<T> implements QueueStrategy<T>
     {
         private final MessagePassingQueue<T> queue;
-        final IdleStrategy idleStrategy;
+        final IdleStrategy enqueueIdle;
+        final IdleStrategy dequeueIdle;
 
 
         public Relaxed(final MessagePassingQueue<T> queue, final IdleStrategy idleStrategy)
+        {
+            this(queue, idleStrategy, idleStrategy);
+        }
+
+        /**
+         * Supports distinct idle strategies for the queue full and
+         * queue empty conditions.
+         */
+        public Relaxed(final MessagePassingQueue<T> queue,
+                       final IdleStrategy enqueueIdle,
+                       final IdleStrategy dequeueIdle)
         {
             this.queue = queue;
-            this.idleStrategy = idleStrategy;
+            this.enqueueIdle = enqueueIdle;
+            this.dequeueIdle = dequeueIdle;
         }
 
         @Override
@@ -255,7 +782,7 @@ public interface QueueStrategy<T>
             int count=0;
             while(!queue.relaxedOffer(element))
             {
-                idleStrategy.idle(count++);
+                enqueueIdle.idle(count++);
             }
         }
 
@@ -266,17 +793,180 @@ public interface QueueStrategy<T>
             int count=0;
             while( (element = queue.relaxedPoll()) == null)
             {
-                idleStrategy.idle(count++);
+                dequeueIdle.idle(count++);
+            }
+            return element;
+        }
+
+        @Override
+        public boolean offer(final T element, final long timeout,
+                             final TimeUnit unit) throws InterruptedException
+        {
+            if(queue.relaxedOffer(element))
+            {
+                return true;
+            }
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return false;
+                }
+                enqueueIdle.idle(count++, deadline);
+            }
+            while(!queue.relaxedOffer(element));
+
+            return true;
+        }
+
+        @Override
+        public T poll(final long timeout, final TimeUnit unit)
+                throws InterruptedException
+        {
+            T element = queue.relaxedPoll();
+            if(element != null)
+            {
+                return element;
             }
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int count = 0;
+            do
+            {
+                if(deadline - System.nanoTime() <= 0)
+                {
+                    return null;
+                }
+                dequeueIdle.idle(count++, deadline);
+            }
+            while( (element = queue.relaxedPoll()) == null);
+
             return element;
         }
 
+        @Override
+        public void enqueue(final T[] elements, final int offset,
+                            final int length) throws InterruptedException
+        {
+            final ArraySupplier<T> supplier =
+                    new ArraySupplier<>(elements, offset);
+            int remaining = length;
+            int count=0;
+            while(remaining > 0)
+            {
+                int filled = queue.fill(supplier, remaining);
+                if(filled == 0)
+                {
+                    enqueueIdle.idle(count++);
+                }
+                else
+                {
+                    remaining -= filled;
+                    count = 0;
+                    filled();
+                }
+            }
+        }
+
+        @Override
+        public int dequeue(final T[] buffer, final int offset,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            final ArrayConsumer<T> consumer =
+                    new ArrayConsumer<>(buffer, offset);
+            int removed;
+            int count=0;
+            while( (removed = queue.drain(consumer, limit)) == 0)
+            {
+                dequeueIdle.idle(count++);
+            }
+            return removed;
+        }
+
+        @Override
+        public int dequeue(final Consumer<? super T> consumer,
+                           final int limit) throws InterruptedException
+        {
+            if(limit < 1)
+            {
+                return 0;
+            }
+            final MessagePassingQueue.Consumer<T> adapter = consumer::accept;
+            int removed;
+            int count=0;
+            while( (removed = queue.drain(adapter, limit)) == 0)
+            {
+                dequeueIdle.idle(count++);
+            }
+            return removed;
+        }
+
         @Override
         public int size()
         {
             return queue.size();
         }
 
+        /**
+         * Called after each fill of a batch insert, before the insert
+         * continues or idles.
+         */
+        void filled()
+        {
+        }
+
+
+        /**
+         * Adapts fill() to an array source.
+         */
+        private static class ArraySupplier<T>
+                implements MessagePassingQueue.Supplier<T>
+        {
+            private final T[] elements;
+            private int idx;
+
+            private ArraySupplier(final T[] elements, final int offset)
+            {
+                this.elements = elements;
+                this.idx = offset;
+            }
+
+            @Override
+            public T get()
+            {
+                return elements[idx++];
+            }
+        }
+
+        /**
+         * Adapts drain() to an array destination.
+         */
+        private static class ArrayConsumer<T>
+                implements MessagePassingQueue.Consumer<T>
+        {
+            private final T[] buffer;
+            private int idx;
+
+            private ArrayConsumer(final T[] buffer, final int offset)
+            {
+                this.buffer = buffer;
+                this.idx = offset;
+            }
+
+            @Override
+            public void accept(final T element)
+            {
+                buffer[idx++] = element;
+            }
+        }
+
     }
 
 
@@ -343,6 +1033,81 @@ public interface QueueStrategy<T>
     }
 
 
+    /**
+     * A QueueStrategy based on a non-blocking queue utilizing a phased
+     * spin, yield, park loop for queue full and empty conditions. Each
+     * insert or removal signals a thread parked on the opposite
+     * condition, batch removals signal through dequeue() which removes
+     * the first element of the batch.
+     */
+    public class NonBlockingPhased<T> extends NonBlocking<T>
+    {
+        private final Phased phased;
+
+        public NonBlockingPhased(final Queue<T> queue)
+        {
+            this(queue, new Phased());
+        }
+
+        public NonBlockingPhased(final Queue<T> queue, final Phased phased)
+        {
+            super(queue, phased);
+            this.phased = phased;
+        }
+
+        @Override
+        public void enqueue(final T element) throws InterruptedException
+        {
+            super.enqueue(element);
+            phased.signal();
+        }
+
+        @Override
+        public T dequeue() throws InterruptedException
+        {
+            T element = super.dequeue();
+            phased.signal();
+            return element;
+        }
+
+        @Override
+        public boolean offer(final T element, final long timeout,
+                             final TimeUnit unit) throws InterruptedException
+        {
+            boolean inserted = super.offer(element, timeout, unit);
+            if(inserted)
+            {
+                phased.signal();
+            }
+            return inserted;
+        }
+
+        @Override
+        public T poll(final long timeout, final TimeUnit unit)
+                throws InterruptedException
+        {
+            T element = super.poll(timeout, unit);
+            if(element != null)
+            {
+                phased.signal();
+            }
+            return element;
+        }
+
+        @Override
+        public void enqueue(final T[] elements, final int offset,
+                            final int length) throws InterruptedException
+        {
+            // signal each insert, a batch that fills the queue must
+            // wake the consumer before idling
+            for (int i = offset; i < offset + length; i++)
+            {
+                enqueue(elements[i]);
+            }
+        }
+    }
+
+
     /**
      * A QueueStrategy with a spin wait calling into a relaxed non-blocking
      * queue api.
@@ -404,5 +1169,92 @@ public interface QueueStrategy<T>
 
     }
 
+    /**
+     * A QueueStrategy with a phased spin, yield, park wait calling into a
+     * relaxed non-blocking queue api. Each insert or removal signals a
+     * thread parked on the opposite condition.
+     */
+    public class RelaxedPhased<T> extends Relaxed<T>
+    {
+        private final Phased phased;
+
+        public RelaxedPhased(final MessagePassingQueue<T> queue)
+        {
+            this(queue, new Phased());
+        }
+
+        public RelaxedPhased(final MessagePassingQueue<T> queue,
+                             final Phased phased)
+        {
+            super(queue, phased);
+            this.phased = phased;
+        }
+
+        @Override
+        public void enqueue(final T element) throws InterruptedException
+        {
+            super.enqueue(element);
+            phased.signal();
+        }
+
+        @Override
+        public T dequeue() throws InterruptedException
+        {
+            T element = super.dequeue();
+            phased.signal();
+            return element;
+        }
+
+        @Override
+        public boolean offer(final T element, final long timeout,
+                             final TimeUnit unit) throws InterruptedException
+        {
+            boolean inserted = super.offer(element, timeout, unit);
+            if(inserted)
+            {
+                phased.signal();
+            }
+            return inserted;
+        }
+
+        @Override
+        public T poll(final long timeout, final TimeUnit unit)
+                throws InterruptedException
+        {
+            T element = super.poll(timeout, unit);
+            if(element != null)
+            {
+                phased.signal();
+            }
+            return element;
+        }
+
+        @Override
+        void filled()
+        {
+            // a batch that fills the queue must wake the consumer
+            // before idling
+            phased.signal();
+        }
+
+        @Override
+        public int dequeue(final T[] buffer, final int offset,
+                           final int limit) throws InterruptedException
+        {
+            int removed = super.dequeue(buffer, offset, limit);
+            phased.signal();
+            return removed;
+        }
+
+        @Override
+        public int dequeue(final Consumer<? super T> consumer,
+                           final int limit) throws InterruptedException
+        {
+            int removed = super.dequeue(consumer, limit);
+            phased.signal();
+            return removed;
+        }
+    }
+
 
 }
@@ -294,6 +294,35 @@ public class CodeTimer
         }
     }
 
+    /**
+     * Get the number of timed slices for each section.
+     *
+     * @return map of names to counts
+     */
+    public Map<String, Long> getCounts(String prefix)
+    {
+        synchronized (syncPoint) {
+            HashMap<String, Long> map = new HashMap<String, Long>();
+
+            // find last non-zero field
+            int lastIdx = numAccum.length - 1;
+            while (lastIdx >= 0) {
+                if (numAccum[lastIdx] > 0) {
+                    break;
+                }
+
+                lastIdx--;
+            }
+
+            // build list of fields
+            for (int i = 0; i <= lastIdx; i++) {
+                map.put(String.format("%s#%d", prefix, i), numAccum[i]);
+            }
+
+            return map;
+        }
+    }
+
     /**
      * Get the total of all times
      *
@@ -0,0 +1,329 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests ColumnarTraceWriter.java and ColumnarTraceReader.java
+ */
+public class ColumnarTraceTest
+{
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Metered.Buffered meter = Metered.Factory.bufferMeter();
+        ValueContent values = new ValueContent();
+        Content content = new Content.JoinedContent(
+                new Content.CommentContent("#"),
+                new Content.GroupedContent("hub", new MeterContent(meter,
+                        MeterContent.MeterField.MSGIN,
+                        MeterContent.MeterField.MSGQ,
+                        MeterContent.MeterField.MBQ)),
+                new Content.DividerContent(),
+                values);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarTraceWriter subject = new ColumnarTraceWriter(bytes);
+        List<String> expected = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder();
+        content.header(sb);
+        subject.header(sb);
+        expected.add(sb.toString());
+
+        for(int i=0; i<100; i++)
+        {
+            meter.reportIn(i, i * 100000);
+            meter.reportOut(i / 2, i * 50000);
+            values.set(1000 - i * 37, i / 3.0, 1476129018000L + i * 1000,
+                    "t" + i);
+
+            sb.setLength(0);
+            content.content(sb);
+            expected.add(sb.toString());
+            subject.row(content);
+
+            if(i == 50)
+            {
+                sb.setLength(0);
+                content.header(sb);
+                subject.header(sb);
+                expected.add(sb.toString());
+            }
+        }
+        subject.close();
+
+        assertEquals(expected, read(bytes.toByteArray()));
+
+        // slow moving values encode to a byte or two
+        assertTrue(bytes.size() < 100 * 30);
+    }
+
+    @Test
+    public void testLayoutChange() throws IOException
+    {
+        ValueContent values = new ValueContent();
+        ColumnarTraceWriter subject =
+                new ColumnarTraceWriter(new ByteArrayOutputStream());
+        subject.row(values);
+
+        Content changed = new Content.JoinedContent(values,
+                new Content.DividerContent());
+        try
+        {
+            subject.row(changed);
+            fail("Layout change accepted");
+        }
+        catch (IllegalStateException e)
+        {
+            // desired
+        }
+
+        try
+        {
+            subject.row(new Content.HeapMemoryContent());
+            fail("Layout change accepted");
+        }
+        catch (IllegalStateException e)
+        {
+            // desired
+        }
+    }
+
+    @Test
+    public void testFailedRows() throws IOException
+    {
+        ValueContent values = new ValueContent();
+        Content failing = new Content()
+        {
+            @Override
+            public void header(final StringBuilder sb)
+            {
+            }
+
+            @Override
+            public void content(final StringBuilder sb)
+            {
+            }
+
+            @Override
+            public void content(final ColumnSink sink)
+            {
+                // fails part way through the row
+                sink.longValue("%-8d", values.longValue + 1000);
+                throw new IllegalArgumentException("failed");
+            }
+        };
+        Content changed = new Content.JoinedContent(values,
+                new Content.DividerContent());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarTraceWriter subject = new ColumnarTraceWriter(bytes);
+        List<String> expected = new ArrayList<>();
+
+        // a failed first row does not define the schema
+        failRow(subject, failing);
+
+        for(int i=0; i<10; i++)
+        {
+            values.set(i * 17, i, 1476129018000L + i * 1000, "t" + i);
+            StringBuilder sb = new StringBuilder();
+            values.content(sb);
+            expected.add(sb.toString());
+            subject.row(values);
+
+            // failed rows do not advance the delta encoding
+            failRow(subject, failing);
+            failRow(subject, changed);
+        }
+        subject.close();
+
+        assertEquals(expected, read(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testWideRow() throws IOException
+    {
+        // more value columns than the initial delta state, with longs
+        // following doubles
+        WideContent content = new WideContent(40, 20);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarTraceWriter subject = new ColumnarTraceWriter(bytes);
+        List<String> expected = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<3; i++)
+        {
+            content.base = i * 1000;
+
+            sb.setLength(0);
+            content.content(sb);
+            expected.add(sb.toString());
+            subject.row(content);
+        }
+        subject.close();
+
+        assertEquals(expected, read(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testTruncated() throws IOException
+    {
+        ValueContent values = new ValueContent();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarTraceWriter subject = new ColumnarTraceWriter(bytes);
+        subject.header("header");
+        subject.row(values);
+        subject.row(values);
+        subject.close();
+
+        byte[] all = bytes.toByteArray();
+        assertEquals(3, read(all).size());
+        assertEquals(2, read(Arrays.copyOf(all, all.length - 2)).size());
+
+        try
+        {
+            read(new byte[]{1, 2, 3, 4, 5, 6});
+            fail("Bad magic accepted");
+        }
+        catch (IOException e)
+        {
+            // desired
+        }
+    }
+
+    private static void failRow(final ColumnarTraceWriter subject,
+                                final Content content) throws IOException
+    {
+        try
+        {
+            subject.row(content);
+            fail("Failed row accepted");
+        }
+        catch (RuntimeException e)
+        {
+            // desired
+        }
+    }
+
+    private static List<String> read(byte[] bytes) throws IOException
+    {
+        ColumnarTraceReader reader =
+                new ColumnarTraceReader(new ByteArrayInputStream(bytes));
+        List<String> acc = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        while(reader.readLine(sb))
+        {
+            acc.add(sb.toString());
+        }
+        return acc;
+    }
+
+
+    /**
+     * Content of many double columns followed by many long columns.
+     */
+    private static class WideContent implements Content
+    {
+        final int doubles;
+        final int longs;
+        long base;
+
+        WideContent(final int doubles, final int longs)
+        {
+            this.doubles = doubles;
+            this.longs = longs;
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append("wide");
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            for(int i=0; i<doubles; i++)
+            {
+                sb.append(String.format("%-8.1f", (base + i) / 2.0));
+            }
+            for(int i=0; i<longs; i++)
+            {
+                sb.append(String.format("%-8d", base - i));
+            }
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            for(int i=0; i<doubles; i++)
+            {
+                sink.doubleValue("%-8.1f", (base + i) / 2.0);
+            }
+            for(int i=0; i<longs; i++)
+            {
+                sink.longValue("%-8d", base - i);
+            }
+        }
+    }
+
+    /**
+     * Content of each column type with settable values.
+     */
+    private static class ValueContent implements Content
+    {
+        static final String PATTERN = "yyyy-MM-dd HH:mm:ss.S";
+        long longValue;
+        double doubleValue;
+        long time;
+        String text = "";
+
+        void set(final long longValue, final double doubleValue,
+                 final long time, final String text)
+        {
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+            this.time = time;
+            this.text = text;
+        }
+
+        @Override
+        public void header(final StringBuilder sb)
+        {
+            sb.append("values");
+        }
+
+        @Override
+        public void content(final StringBuilder sb)
+        {
+            sb.append(String.format("%-8d", longValue));
+            sb.append(String.format("%-8.1f", doubleValue));
+            sb.append(String.format("%-25s",
+                    new SimpleDateFormat(PATTERN).format(new Date(time))));
+            sb.append(text);
+        }
+
+        @Override
+        public void content(final ColumnSink sink)
+        {
+            sink.longValue("%-8d", longValue);
+            sink.doubleValue("%-8.1f", doubleValue);
+            sink.timeValue(PATTERN, "%-25s", time);
+            sink.text(text);
+        }
+    }
+
+}
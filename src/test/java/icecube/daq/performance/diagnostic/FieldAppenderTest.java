@@ -0,0 +1,135 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests FieldAppender.java and CachedTimestamp.java
+ */
+public class FieldAppenderTest
+{
+
+    @Test
+    public void testLongs()
+    {
+        long[] edges = {0, 1, -1, 9, 10, -10, 99999, Long.MAX_VALUE,
+                Long.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for(long value : edges)
+        {
+            checkLong(value);
+        }
+
+        Random random = new Random(0);
+        for(int i=0; i<10000; i++)
+        {
+            checkLong(random.nextLong() >> random.nextInt(64));
+        }
+    }
+
+    @Test
+    public void testDoubles()
+    {
+        double[] edges = {0, -0.0, 0.05, 0.25, -0.25, 0.75, 0.95, -0.04,
+                99.95, 1e9, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, 1e300, -1e300};
+        for(double value : edges)
+        {
+            for(int precision=0; precision<4; precision++)
+            {
+                checkDouble(value, precision);
+            }
+        }
+
+        // utilization values are floats
+        Random random = new Random(0);
+        for(int i=0; i<20000; i++)
+        {
+            float value = (random.nextFloat() - 0.1f) * 1000;
+            checkDouble(value, 1);
+        }
+        for(int i=0; i<10000; i++)
+        {
+            float value = random.nextInt(100000) / 1000f;
+            checkDouble(value, 1);
+        }
+    }
+
+    @Test
+    public void testStrings()
+    {
+        StringBuilder sb = new StringBuilder("x");
+        FieldAppender.appendString(sb, "abc", 6);
+        FieldAppender.appendString(sb, "abcdefgh", 6);
+        assertEquals("x" + String.format("%-6s%-6s", "abc", "abcdefgh"),
+                sb.toString());
+    }
+
+    @Test
+    public void testTimestamps()
+    {
+        SimpleDateFormat reference =
+                new SimpleDateFormat(CachedTimestamp.PATTERN);
+        CachedTimestamp subject = new CachedTimestamp();
+        StringBuilder sb = new StringBuilder();
+
+        long[] times = {0, 999, 1000, 1001, -1, -999, -1000, -1001,
+                1476129018000L, 1476129018072L, 1483228799999L,
+                1483228800000L};
+        for(long time : times)
+        {
+            sb.setLength(0);
+            subject.append(sb, time);
+            assertEquals(reference.format(new Date(time)), sb.toString());
+        }
+
+        long time = System.currentTimeMillis();
+        for(int i=0; i<5000; i++)
+        {
+            time += 7;
+            sb.setLength(0);
+            subject.append(sb, time);
+            assertEquals(reference.format(new Date(time)), sb.toString());
+        }
+    }
+
+    private static void checkLong(final long value)
+    {
+        for(int width : new int[]{1, 6, 12, 24})
+        {
+            StringBuilder sb = new StringBuilder(">");
+            FieldAppender.appendLong(sb, value, width);
+            assertEquals(">" + String.format("%-" + width + "d", value),
+                    sb.toString());
+
+            sb.setLength(1);
+            FieldAppender.appendLongRight(sb, value, width);
+            assertEquals(">" + String.format("%" + width + "d", value),
+                    sb.toString());
+        }
+        assertEquals(Long.toString(value).length(),
+                FieldAppender.length(value));
+    }
+
+    private static void checkDouble(final double value, final int precision)
+    {
+        for(int width : new int[]{1, 8, 12})
+        {
+            StringBuilder sb = new StringBuilder(">");
+            FieldAppender.appendDouble(sb, value, width, precision);
+            assertEquals(">" + String.format("%-" + width + "." + precision +
+                    "f", value), sb.toString());
+
+            sb.setLength(1);
+            FieldAppender.appendDoubleRight(sb, value, width, precision);
+            assertEquals(">" + String.format("%" + width + "." + precision +
+                    "f", value), sb.toString());
+        }
+    }
+
+}
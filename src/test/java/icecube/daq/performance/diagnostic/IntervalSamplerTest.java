@@ -0,0 +1,100 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests IntervalSampler.java
+ */
+public class IntervalSamplerTest
+{
+
+    @Test
+    public void testMutableSample()
+    {
+        Metered.UTCBuffered[] meters = new Metered.UTCBuffered[]
+                {
+                        Metered.Factory.utcBufferMeter(
+                                Metered.Factory.ConcurrencyModel.SPSC),
+                        Metered.Factory.utcBufferMeter(
+                                Metered.Factory.ConcurrencyModel.MPMC),
+                        Metered.Factory.utcBufferMeter(
+                                Metered.Factory.ConcurrencyModel.STRIPED)
+                };
+        for(Metered.UTCBuffered meter : meters)
+        {
+            meter.reportIn(3, 300, 1234);
+            meter.reportOut(2, 200, 1000);
+
+            Metered.MutableSample dest = new Metered.MutableSample();
+            meter.getSample(dest);
+            Metered.Sample expected = meter.getSample();
+            assertEquals(expected.msgIn, dest.msgIn);
+            assertEquals(expected.bytesIn, dest.bytesIn);
+            assertEquals(expected.msgOut, dest.msgOut);
+            assertEquals(expected.bytesOut, dest.bytesOut);
+            assertEquals(expected.utcIn, dest.utcIn);
+            assertEquals(expected.utcOut, dest.utcOut);
+        }
+
+        // default implementation
+        Metered.MutableSample dest = new Metered.MutableSample();
+        new Metered.DisabledMeter().getSample(dest);
+        assertEquals(-1, dest.msgIn);
+        assertEquals(-1, dest.utcOut);
+    }
+
+    @Test
+    public void testIntervals() throws InterruptedException
+    {
+        Metered.Buffered meter = Metered.Factory.bufferMeter();
+        meter.reportIn(10, 1000);
+
+        IntervalSampler subject = new IntervalSampler(meter);
+        IntervalSampler.Interval interval = new IntervalSampler.Interval();
+
+        meter.reportIn(5, 500);
+        meter.reportOut(4, 400);
+        Thread.sleep(10);
+        subject.sample(interval);
+        assertEquals(15, interval.current.msgIn);
+        assertEquals(5, interval.delta.msgIn);
+        assertEquals(500, interval.delta.bytesIn);
+        assertEquals(4, interval.delta.msgOut);
+        assertEquals(400, interval.delta.bytesOut);
+        assertTrue(interval.seconds() >= 0.01);
+        assertEquals(5 / interval.seconds(), interval.msgInRate(), 0.001);
+
+        subject.sample(interval);
+        assertEquals(15, interval.current.msgIn);
+        assertEquals(0, interval.delta.msgIn);
+        assertEquals(0, interval.msgInRate(), 0);
+    }
+
+    @Test
+    public void testIndependentReaders()
+    {
+        Metered.Throughput meter = Metered.Factory.throughputMeter();
+        IntervalSampler a = new IntervalSampler(meter);
+        IntervalSampler.Interval aInterval = new IntervalSampler.Interval();
+
+        meter.report(7, 70);
+        IntervalSampler b = new IntervalSampler(meter);
+        IntervalSampler.Interval bInterval = new IntervalSampler.Interval();
+
+        meter.report(3, 30);
+        a.sample(aInterval);
+        assertEquals(10, aInterval.delta.msgIn);
+
+        meter.report(1, 10);
+        b.sample(bInterval);
+        assertEquals(4, bInterval.delta.msgIn);
+        assertEquals(40, bInterval.delta.bytesIn);
+
+        a.sample(aInterval);
+        assertEquals(1, aInterval.delta.msgIn);
+    }
+
+}
@@ -0,0 +1,127 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests LatencyHistogram.java
+ */
+public class LatencyHistogramTest
+{
+
+    @Test
+    public void testBuckets()
+    {
+        // exact below the sub-bucket count
+        for(long v=0; v<128; v++)
+        {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertEquals(v, LatencyHistogram.lowestValue(index));
+            assertEquals(v, LatencyHistogram.highestValue(index));
+        }
+
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+                LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+
+        // buckets are contiguous
+        for(int i=1; i<LatencyHistogram.BUCKET_COUNT; i++)
+        {
+            assertEquals(LatencyHistogram.highestValue(i - 1) + 1,
+                    LatencyHistogram.lowestValue(i));
+        }
+
+        Random random = new Random(0);
+        for(int i=0; i<100000; i++)
+        {
+            long v = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.bucketIndex(v);
+            long low = LatencyHistogram.lowestValue(index);
+            long high = LatencyHistogram.highestValue(index);
+            assertTrue(low <= v && v <= high);
+            assertTrue((high - low) <= (v / 64));
+        }
+    }
+
+    @Test
+    public void testPercentile()
+    {
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        assertEquals(0, LatencyHistogram.percentile(counts, 0, 50));
+        assertEquals(0, LatencyHistogram.max(counts));
+
+        for(long v=1; v<=100; v++)
+        {
+            counts[LatencyHistogram.bucketIndex(v)]++;
+        }
+        assertEquals(1, LatencyHistogram.percentile(counts, 100, 0));
+        assertEquals(50, LatencyHistogram.percentile(counts, 100, 50));
+        assertEquals(99, LatencyHistogram.percentile(counts, 100, 99));
+        assertEquals(100, LatencyHistogram.percentile(counts, 100, 100));
+        assertEquals(100, LatencyHistogram.max(counts));
+    }
+
+    @Test
+    public void testMeters()
+    {
+        for(Metered.Factory.ConcurrencyModel model :
+                Metered.Factory.ConcurrencyModel.values())
+        {
+            Metered.Latency meter = Metered.Factory.latencyMeter(model);
+            for(long v=1; v<=1000; v++)
+            {
+                meter.reportLatency(v);
+            }
+            Metered.Sample sample = meter.getSample();
+            assertEquals(1000, sample.msgIn);
+            assertEquals(500500, sample.bytesIn);
+
+            long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+            meter.getCounts(counts);
+            long total = 0;
+            for(long c : counts)
+            {
+                total += c;
+            }
+            assertEquals(1000, total);
+
+            long p50 = LatencyHistogram.percentile(counts, total, 50);
+            assertTrue(p50 >= 500 && p50 <= 508);
+        }
+    }
+
+    @Test
+    public void testContent()
+    {
+        Metered.Latency meter = Metered.Factory.latencyMeter();
+        meter.reportLatency(999999);
+
+        // content covers the latencies since the previous period
+        LatencyContent subject = new LatencyContent(meter,
+                LatencyContent.Unit.UTC,
+                LatencyContent.LatencyField.COUNT,
+                LatencyContent.LatencyField.MEAN,
+                LatencyContent.LatencyField.MAX);
+        for(int i=0; i<10; i++)
+        {
+            meter.reportLatency(1000);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        subject.header(sb);
+        assertEquals("latn        meanns      maxns       ", sb.toString());
+
+        sb.setLength(0);
+        subject.content(sb);
+        assertEquals("10          100         100         ", sb.toString());
+
+        sb.setLength(0);
+        subject.content(sb);
+        assertEquals("0           0           0           ", sb.toString());
+    }
+
+}
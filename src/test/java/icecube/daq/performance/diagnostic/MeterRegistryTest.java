@@ -0,0 +1,129 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests MeterRegistry.java
+ */
+public class MeterRegistryTest
+{
+
+    @Test
+    public void testRegistration()
+    {
+        MeterRegistry subject = new MeterRegistry();
+        Metered.Throughput meter = Metered.Factory.throughputMeter();
+        subject.register("stringhub.21.sender", meter);
+        assertSame(meter, subject.get("stringhub.21.sender"));
+
+        try
+        {
+            subject.register("stringhub.21.sender",
+                    Metered.Factory.throughputMeter());
+            fail("duplicate accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // desired
+        }
+
+        for(String bad : new String[]{"", ".a", "a.", "a..b", "a b", "a/b"})
+        {
+            try
+            {
+                subject.register(bad, meter);
+                fail("malformed name accepted: " + bad);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // desired
+            }
+        }
+
+        assertTrue(subject.unregister("stringhub.21.sender"));
+        assertFalse(subject.unregister("stringhub.21.sender"));
+        assertNull(subject.get("stringhub.21.sender"));
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testHierarchy()
+    {
+        MeterRegistry subject = new MeterRegistry();
+        for(String name : new String[]{"stringhub.21.sorter",
+                "stringhub.21", "stringhub.21.sender", "stringhub.2.sender",
+                "stringhub.210.sender", "stringhub.21-b", "trigger"})
+        {
+            subject.register(name, Metered.Factory.throughputMeter());
+        }
+
+        assertEquals(Arrays.asList("stringhub.21", "stringhub.21.sender",
+                "stringhub.21.sorter"), subject.names("stringhub.21"));
+        assertEquals(Arrays.asList("stringhub.2.sender"),
+                subject.names("stringhub.2"));
+        assertEquals(6, subject.names("stringhub").size());
+        assertEquals(0, subject.names("string").size());
+
+        MeterRegistry.Snapshot snapshot = new MeterRegistry.Snapshot();
+        subject.snapshot("stringhub.21", snapshot);
+        assertEquals(3, snapshot.size());
+        assertEquals("stringhub.21", snapshot.name(0));
+        assertEquals("stringhub.21.sorter", snapshot.name(2));
+        subject.snapshot("string", snapshot);
+        assertEquals(0, snapshot.size());
+
+        assertEquals(3, subject.unregisterAll("stringhub.21"));
+        assertEquals(4, subject.size());
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        MeterRegistry subject = new MeterRegistry();
+        MeterRegistry.Snapshot snapshot = new MeterRegistry.Snapshot();
+        Metered.Buffered[] meters = new Metered.Buffered[40];
+        for(int i=0; i<meters.length; i++)
+        {
+            meters[i] = Metered.Factory.bufferMeter();
+            meters[i].reportIn(i, i * 10);
+            subject.register(String.format("hub.%02d", i), meters[i]);
+        }
+        subject.register("other", Metered.Factory.bufferMeter());
+
+        subject.snapshot("hub", snapshot);
+        assertEquals(meters.length, snapshot.size());
+        for(int i=0; i<meters.length; i++)
+        {
+            assertEquals(String.format("hub.%02d", i), snapshot.name(i));
+            assertEquals(i, snapshot.sample(i).msgIn);
+            assertEquals(i * 10, snapshot.sample(i).bytesIn);
+        }
+        assertEquals(7, snapshot.sample("hub.07").msgIn);
+        assertNull(snapshot.sample("other"));
+
+        // samples are reused by later snapshots
+        Metered.MutableSample first = snapshot.sample(0);
+        meters[0].reportIn(5, 50);
+        subject.snapshot(snapshot);
+        assertEquals(meters.length + 1, snapshot.size());
+        assertSame(first, snapshot.sample(0));
+        assertEquals(5, first.msgIn);
+        assertNotNull(snapshot.sample("other"));
+
+        try
+        {
+            snapshot.sample(meters.length + 1);
+            fail("out of bounds");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // desired
+        }
+    }
+
+}
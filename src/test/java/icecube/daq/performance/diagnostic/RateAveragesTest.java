@@ -0,0 +1,219 @@
+package icecube.daq.performance.diagnostic;
+
+import icecube.daq.performance.diagnostic.MeterContent.Rate;
+import icecube.daq.performance.diagnostic.MeterContent.RateAverages;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests MeterContent.RateAverages
+ */
+public class RateAveragesTest
+{
+
+    @Test
+    public void testSeed()
+    {
+        RateAverages subject = new RateAverages();
+        subject.update(sample(100), sample(600), 0.5f);
+
+        // the first interval seeds every window
+        assertEquals(1000, subject.get(Rate.MSG_IN, RateAverages.WINDOW_1S),
+                0.001);
+        assertEquals(1000, subject.get(Rate.MSG_IN, RateAverages.WINDOW_60S),
+                0.001);
+        assertEquals(2000, subject.get(Rate.BYTES_IN,
+                RateAverages.WINDOW_10S), 0.001);
+        assertEquals(3000, subject.get(Rate.UTC_OUT,
+                RateAverages.WINDOW_10S), 0.001);
+    }
+
+    @Test
+    public void testStep()
+    {
+        RateAverages subject = new RateAverages();
+        long count = 0;
+        subject.update(sample(count), sample(count), 1);
+
+        // a step from 0 to 100/s reaches 1 - 1/e of the step after
+        // one window
+        for(int i=0; i<10; i++)
+        {
+            subject.update(sample(count), sample(count + 10), 0.1f);
+            count += 10;
+        }
+        assertEquals(100 * (1 - Math.exp(-1)),
+                subject.get(Rate.MSG_IN, RateAverages.WINDOW_1S), 0.01);
+        assertEquals(100 * (1 - Math.exp(-0.1)),
+                subject.get(Rate.MSG_IN, RateAverages.WINDOW_10S), 0.01);
+        assertEquals(100 * (1 - Math.exp(-1/60.0)),
+                subject.get(Rate.MSG_IN, RateAverages.WINDOW_60S), 0.01);
+    }
+
+    @Test
+    public void testIrregularIntervals()
+    {
+        RateAverages regular = new RateAverages();
+        RateAverages irregular = new RateAverages();
+        regular.update(sample(0), sample(0), 1);
+        irregular.update(sample(0), sample(0), 1);
+
+        // decay depends on elapsed time, not on the number of samples
+        regular.update(sample(0), sample(300), 3);
+        irregular.update(sample(0), sample(50), 0.5f);
+        irregular.update(sample(50), sample(100), 0.5f);
+        irregular.update(sample(100), sample(300), 2);
+
+        for(int window : new int[]{RateAverages.WINDOW_1S,
+                RateAverages.WINDOW_10S, RateAverages.WINDOW_60S})
+        {
+            assertEquals(regular.get(Rate.MSG_IN, window),
+                    irregular.get(Rate.MSG_IN, window), 0.0001);
+        }
+    }
+
+    @Test
+    public void testEmptyInterval()
+    {
+        RateAverages subject = new RateAverages();
+        subject.update(sample(0), sample(100), 1);
+        subject.update(sample(100), sample(100), 0);
+        assertEquals(100, subject.get(Rate.MSG_IN, RateAverages.WINDOW_1S),
+                0.001);
+    }
+
+    @Test
+    public void testFields()
+    {
+        Metered.UTCBuffered meter = Metered.Factory.utcBufferMeter();
+        MeterContent content = new MeterContent(meter,
+                MeterContent.Style.MSG_RATE_AVERAGES,
+                MeterContent.Style.DATA_RATE_AVERAGES,
+                MeterContent.Style.UTC_RATE_AVERAGES);
+
+        StringBuilder sb = new StringBuilder();
+        content.header(sb);
+        assertTrue(sb.toString().contains("mpsin10s"));
+        assertTrue(sb.toString().contains("dmpsout60s"));
+
+        meter.reportIn(1024 * 1024, 0);
+        meter.reportOut(1024 * 1024, 0);
+
+        sb.setLength(0);
+        content.content(sb);
+        String[] values = sb.toString().trim().split("\\s+");
+        assertEquals(18, values.length);
+        for(String value : values)
+        {
+            assertTrue(Long.parseLong(value) >= 0);
+        }
+    }
+
+    @Test
+    public void testInstantaneousAgreement()
+    {
+        // the first interval seeds the averages with the interval rates,
+        // so smoothed and instantaneous fields agree in unit and side
+        Metered.MutableSample last = new Metered.MutableSample();
+        Metered.MutableSample current = new Metered.MutableSample();
+        last.set(0, 0, 0, 0, 10000000000L, 10000000000L);
+        current.set(10, 8 * 1024 * 1024, 5, 2 * 1024 * 1024,
+                40000000000L, 30000000000L);
+        RateAverages averages = new RateAverages();
+        averages.update(last, current, 2);
+
+        MeterContent.MeterField[][] pairs =
+                {
+                        {MeterContent.MeterField.MSPS_IN,
+                                MeterContent.MeterField.MSPS_IN_1S},
+                        {MeterContent.MeterField.MBPS_IN,
+                                MeterContent.MeterField.MBPS_IN_1S},
+                        {MeterContent.MeterField.MBPS_OUT,
+                                MeterContent.MeterField.MBPS_OUT_1S},
+                        {MeterContent.MeterField.DATA_MILLIS_PER_SEC_IN,
+                                MeterContent.MeterField
+                                        .DATA_MILLIS_PER_SEC_IN_1S},
+                        {MeterContent.MeterField.DATA_MILLIS_PER_SEC_OUT,
+                                MeterContent.MeterField
+                                        .DATA_MILLIS_PER_SEC_OUT_1S}
+                };
+        for(MeterContent.MeterField[] pair : pairs)
+        {
+            assertEquals(pair[0].name(),
+                    pair[0].value(last, current, 2, averages),
+                    pair[1].value(last, current, 2, averages));
+        }
+        assertEquals(4, MeterContent.MeterField.MBPS_IN.value(last,
+                current, 2, averages));
+        assertEquals(1500, MeterContent.MeterField.DATA_MILLIS_PER_SEC_IN
+                .value(last, current, 2, averages));
+    }
+
+    @Test
+    public void testFirstUTC()
+    {
+        // a UTC meter without reports has zero times, the first report
+        // is an absolute time
+        final long utc = 123456789012345678L;
+        RateAverages subject = new RateAverages();
+        subject.update(new Metered.Sample(0, 0, 0, 0, 0, 0),
+                new Metered.Sample(10, 0, 10, 0, utc, utc), 1);
+
+        // counts are seeded, times are not
+        assertEquals(10, subject.get(Rate.MSG_IN, RateAverages.WINDOW_60S),
+                0.001);
+        assertEquals(0, subject.get(Rate.UTC_IN, RateAverages.WINDOW_60S),
+                0.001);
+        assertEquals(0, subject.get(Rate.UTC_OUT, RateAverages.WINDOW_60S),
+                0.001);
+
+        // the next interval seeds the times with a real rate
+        subject.update(new Metered.Sample(10, 0, 10, 0, utc, utc),
+                new Metered.Sample(20, 0, 20, 0, utc + 10000000000L,
+                        utc + 5000000000L), 1);
+        assertEquals(10000000000L, subject.get(Rate.UTC_IN,
+                RateAverages.WINDOW_60S), 0.001);
+        assertEquals(5000000000L, subject.get(Rate.UTC_OUT,
+                RateAverages.WINDOW_60S), 0.001);
+        assertEquals(10, subject.get(Rate.MSG_IN, RateAverages.WINDOW_60S),
+                0.001);
+    }
+
+    @Test
+    public void testWithoutAverages()
+    {
+        Metered.Sample last = sample(0);
+        Metered.Sample current = sample(100);
+
+        StringBuilder sb = new StringBuilder();
+        MeterContent.MeterField.MSPS_IN.content(sb, last, current, 1);
+        assertEquals("100", sb.toString().trim());
+
+        try
+        {
+            MeterContent.MeterField.MSPS_IN_1S.content(sb, last, current, 1);
+            fail("Rendered an average without averages");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            MeterContent.MeterField.MSPS_IN_1S.content(sb, last, current, 1,
+                    null);
+            fail("Rendered an average without averages");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+    }
+
+    private static Metered.Sample sample(final long msgs)
+    {
+        return new Metered.Sample(msgs, 2 * msgs, msgs, 2 * msgs,
+                3 * msgs, 3 * msgs);
+    }
+
+}
@@ -0,0 +1,121 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the STRIPED meter implementations of Metered.java
+ */
+public class StripedMeterTest
+{
+
+    private static final Metered.Factory.ConcurrencyModel STRIPED =
+            Metered.Factory.ConcurrencyModel.STRIPED;
+
+    private static final int THREADS = 4;
+    private static final int REPORTS = 100000;
+
+
+    @Test
+    public void testThroughput() throws InterruptedException
+    {
+        final Metered.UTCThroughput subject =
+                Metered.Factory.utcThroughputMeter(STRIPED);
+        runAll(() ->
+        {
+            for(int i=0; i<REPORTS; i++)
+            {
+                subject.report(2, 10, i);
+            }
+        });
+
+        Metered.Sample sample = subject.getSample();
+        assertEquals(THREADS * REPORTS * 2, sample.msgIn);
+        assertEquals(THREADS * REPORTS * 10, sample.bytesIn);
+        assertEquals(sample.msgIn, sample.msgOut);
+        assertEquals(REPORTS - 1, sample.utcOut);
+    }
+
+    @Test
+    public void testBuffered() throws InterruptedException
+    {
+        final Metered.UTCBuffered subject =
+                Metered.Factory.utcBufferMeter(STRIPED);
+        runAll(() ->
+        {
+            for(int i=0; i<REPORTS; i++)
+            {
+                subject.reportIn(100, i);
+                if(i % 2 == 0)
+                {
+                    subject.reportOut(3, 50, i);
+                }
+            }
+        });
+
+        Metered.MutableSample sample = new Metered.MutableSample();
+        subject.getSample(sample);
+        assertEquals(THREADS * REPORTS, sample.msgIn);
+        assertEquals(THREADS * REPORTS * 100, sample.bytesIn);
+        assertEquals(THREADS * REPORTS / 2 * 3, sample.msgOut);
+        assertEquals(THREADS * REPORTS / 2 * 50, sample.bytesOut);
+        assertEquals(REPORTS - 1, sample.utcIn);
+        assertEquals(REPORTS - 2, sample.utcOut);
+    }
+
+    @Test
+    public void testLatency() throws InterruptedException
+    {
+        final Metered.Latency subject = Metered.Factory.latencyMeter(STRIPED);
+        runAll(() ->
+        {
+            for(int i=0; i<REPORTS; i++)
+            {
+                subject.reportLatency(i % 1000);
+            }
+        });
+
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        subject.getCounts(counts);
+        long total = 0;
+        for(long count : counts)
+        {
+            total += count;
+        }
+        assertEquals(THREADS * REPORTS, total);
+        assertEquals(total, subject.getSample().msgIn);
+        assertEquals(999, LatencyHistogram.max(counts));
+    }
+
+    @Test
+    public void testThreadExit() throws InterruptedException
+    {
+        // counts of threads that have exited are retained
+        final Metered.Throughput subject =
+                Metered.Factory.throughputMeter(STRIPED);
+        for(int i=0; i<3; i++)
+        {
+            runAll(() -> subject.report(1));
+        }
+        subject.report(1);
+        assertEquals(3 * THREADS + 1, subject.getSample().msgIn);
+    }
+
+    private static void runAll(final Runnable task)
+            throws InterruptedException
+    {
+        Thread[] threads = new Thread[THREADS];
+        for(int i=0; i<threads.length; i++)
+        {
+            threads[i] = new Thread(task);
+            threads[i].start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests TraceScheduler.java
+ */
+public class TraceSchedulerTest
+{
+
+    private final TraceScheduler subject = new TraceScheduler("test-trace");
+
+    @After
+    public void tearDown()
+    {
+        subject.shutdown();
+    }
+
+    @Test
+    public void testFixedRate() throws InterruptedException
+    {
+        final List<Long> ticks =
+                Collections.synchronizedList(new ArrayList<>());
+        TraceScheduler.Task task = subject.schedule(
+                () -> ticks.add(System.nanoTime()), 20);
+        Thread.sleep(210);
+        task.cancel();
+        int count = ticks.size();
+
+        // ticks are aligned to the start, not to the previous tick
+        assertTrue("ticks: " + count, count >= 9 && count <= 12);
+        long span = ticks.get(count - 1) - ticks.get(0);
+        assertEquals((count - 1) * 20, span / 1000000, 10);
+
+        assertEquals(count, jitterCount(task));
+        assertEquals(0, task.getSkippedTicks());
+
+        Thread.sleep(60);
+        assertEquals(count, ticks.size());
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void testOverrun() throws InterruptedException
+    {
+        final AtomicInteger count = new AtomicInteger();
+        TraceScheduler.Task task = subject.schedule(() ->
+        {
+            // every third tick overruns by more than two periods
+            if(count.incrementAndGet() % 3 == 0)
+            {
+                sleep(55);
+            }
+        }, 20);
+        Thread.sleep(300);
+        task.cancel();
+
+        // missed ticks are skipped rather than run in a burst
+        assertTrue(task.getSkippedTicks() >= 4);
+        long expected = 300 / 20 - task.getSkippedTicks();
+        assertEquals(expected, count.get(), 3);
+    }
+
+    @Test
+    public void testSharedThread() throws InterruptedException
+    {
+        final List<String> threads =
+                Collections.synchronizedList(new ArrayList<>());
+        Runnable tick = () -> threads.add(Thread.currentThread().getName());
+        TraceScheduler.Task a = subject.schedule(tick, 10);
+        TraceScheduler.Task b = subject.schedule(tick, 15);
+        Thread.sleep(60);
+        a.cancel();
+        b.cancel();
+
+        assertTrue(threads.size() >= 4);
+        for(String name : threads)
+        {
+            assertEquals("test-trace", name);
+        }
+    }
+
+    @Test
+    public void testError() throws InterruptedException
+    {
+        final AtomicInteger count = new AtomicInteger();
+        TraceScheduler.Task task = subject.schedule(() ->
+        {
+            count.incrementAndGet();
+            throw new RuntimeException("test");
+        }, 10);
+        Thread.sleep(50);
+        assertEquals(1, count.get());
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void testTraceJitter() throws InterruptedException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticTrace trace = new DiagnosticTrace(20, Integer.MAX_VALUE,
+                new PrintStream(bytes));
+        trace.addJitterContent();
+        trace.start(subject);
+        Thread.sleep(110);
+        trace.stop();
+
+        assertTrue(trace.getJitter().getSample().msgIn >= 4);
+        assertTrue(bytes.toString().contains("p99ns"));
+    }
+
+    @Test
+    public void testTraceRestart() throws InterruptedException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticTrace trace = new DiagnosticTrace(10, Integer.MAX_VALUE,
+                new PrintStream(bytes));
+        trace.addJitterContent();
+
+        // stopping a trace that is not running is harmless
+        trace.stop();
+
+        trace.start(subject);
+        Thread.sleep(50);
+        trace.stop();
+        trace.stop();
+        int length = bytes.size();
+        assertTrue(length > 0);
+
+        trace.start(subject);
+        Thread.sleep(50);
+        trace.stop();
+        assertTrue(bytes.size() > length);
+    }
+
+    @Test
+    public void testSharedShutdown() throws InterruptedException
+    {
+        TraceScheduler shared = TraceScheduler.shared();
+        try
+        {
+            shared.shutdown();
+            fail("Shut down the shared scheduler");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        TraceScheduler.Task task = TraceScheduler.shared().schedule(
+                count::incrementAndGet, 10);
+        Thread.sleep(50);
+        task.cancel();
+        assertTrue(count.get() > 0);
+    }
+
+    private static long jitterCount(final TraceScheduler.Task task)
+    {
+        return task.getJitter().getSample().msgIn;
+    }
+
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
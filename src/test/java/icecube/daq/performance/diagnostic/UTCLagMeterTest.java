@@ -0,0 +1,146 @@
+package icecube.daq.performance.diagnostic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests UTCLagMeter.java and UTCLagContent.java
+ */
+public class UTCLagMeterTest
+{
+
+    private static final long MILLI = MeterContent.UTC_PER_MILLIS;
+
+    private final SettableClock clock = new SettableClock();
+
+
+    @Test
+    public void testBufferedLag()
+    {
+        UTCLagMeter.BufferedMeter subject =
+                UTCLagMeter.wrap(Metered.Factory.utcBufferMeter(), clock);
+
+        clock.now = 1000 * MILLI;
+        subject.reportIn(10, 900 * MILLI);
+        subject.reportIn(10, 950 * MILLI);
+        subject.reportOut(10, 500 * MILLI);
+
+        UTCLagMeter.LagSample lag = new UTCLagMeter.LagSample();
+        subject.sampleLag(UTCLagMeter.Side.IN, lag);
+        assertEquals(2, lag.count);
+        assertEquals(50 * MILLI, lag.min);
+        assertEquals(100 * MILLI, lag.max);
+        assertEquals(75 * MILLI, lag.mean());
+
+        subject.sampleLag(UTCLagMeter.Side.OUT, lag);
+        assertEquals(1, lag.count);
+        assertEquals(500 * MILLI, lag.min);
+        assertEquals(500 * MILLI, lag.max);
+
+        // sampling starts a new period
+        subject.sampleLag(UTCLagMeter.Side.IN, lag);
+        assertEquals(0, lag.count);
+        assertEquals(0, lag.mean());
+
+        // counters are delegated
+        Metered.Sample sample = subject.getSample();
+        assertEquals(2, sample.msgIn);
+        assertEquals(1, sample.msgOut);
+        assertEquals(950 * MILLI, sample.utcIn);
+        assertEquals(500 * MILLI, sample.utcOut);
+    }
+
+    @Test
+    public void testThroughputLag()
+    {
+        UTCLagMeter.ThroughputMeter subject =
+                UTCLagMeter.wrap(Metered.Factory.utcThroughputMeter(), clock);
+
+        clock.now = 1000 * MILLI;
+        subject.report(10, 1200 * MILLI);
+
+        // both sides share the lag, ahead of the clock is negative
+        UTCLagMeter.LagSample lag = new UTCLagMeter.LagSample();
+        subject.sampleLag(UTCLagMeter.Side.IN, lag);
+        assertEquals(1, lag.count);
+        assertEquals(-200 * MILLI, lag.min);
+        assertEquals(10, subject.getSample().bytesOut);
+    }
+
+    @Test
+    public void testContent()
+    {
+        UTCLagMeter.BufferedMeter meter =
+                UTCLagMeter.wrap(Metered.Factory.utcBufferMeter(), clock);
+        UTCLagContent subject =
+                new UTCLagContent(meter, UTCLagMeter.Side.OUT);
+
+        StringBuilder sb = new StringBuilder();
+        subject.header(sb);
+        assertEquals(String.format("%-12s%-12s%-12s%-12s", "lagms",
+                "minlagms", "meanlagms", "maxlagms"), sb.toString());
+
+        clock.now = 1000 * MILLI;
+        meter.reportOut(10, 990 * MILLI);
+        clock.now = 1020 * MILLI;
+        meter.reportOut(10, 990 * MILLI);
+        clock.now = 1050 * MILLI;
+        assertEquals(line(60, 10, 20, 30), content(subject));
+
+        // a stalled stage lags further behind each period
+        clock.now = 1250 * MILLI;
+        assertEquals(line(260, 260, 260, 260), content(subject));
+    }
+
+    @Test
+    public void testTrace() throws InterruptedException
+    {
+        UTCLagMeter.ThroughputMeter meter =
+                UTCLagMeter.wrap(Metered.Factory.utcThroughputMeter());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DiagnosticTrace trace = new DiagnosticTrace(10, Integer.MAX_VALUE,
+                new PrintStream(bytes));
+        trace.addLagMeter("stage", meter);
+        meter.report(10, meter.getClock().now() - 100 * MILLI);
+
+        TraceScheduler scheduler = new TraceScheduler("test-trace");
+        trace.start(scheduler);
+        Thread.sleep(50);
+        trace.stop();
+        scheduler.shutdown();
+
+        String[] lines = bytes.toString().split("\n");
+        assertTrue(lines[0].contains("lagms"));
+        assertTrue(lines.length >= 2);
+    }
+
+    private static String content(final UTCLagContent content)
+    {
+        StringBuilder sb = new StringBuilder();
+        content.content(sb);
+        return sb.toString();
+    }
+
+    private static String line(final long lag, final long min,
+                               final long mean, final long max)
+    {
+        return String.format("%-12d%-12d%-12d%-12d", lag, min, mean, max);
+    }
+
+    private static class SettableClock extends ICLClock
+    {
+        volatile long now;
+
+        @Override
+        public long now()
+        {
+            return now;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests MemoryMonitor.java and ProcessMemoryContent.java
+ */
+public class MemoryMonitorTest
+{
+
+    @Before
+    public void setUp()
+    {
+        Assume.assumeTrue(Files.exists(Paths.get("/proc/self/status")));
+    }
+
+    @Test
+    public void testSample() throws IOException
+    {
+        MemoryMonitor subject = new MemoryMonitor.ProcFileMonitor(
+                ThreadUtil.myPID(), 1);
+        MemoryMonitor.Usage usage = new MemoryMonitor.Usage();
+
+        Path temp = Files.createTempFile("memory", "io");
+        ByteBuffer direct;
+        long start = System.nanoTime();
+        final float seconds;
+        try
+        {
+            // restart the interval, the rates are bounded below by the
+            // counts over the time around the interval
+            subject.sample(usage);
+
+            // new direct memory is zeroed, faulting in resident
+            // anonymous pages
+            direct = ByteBuffer.allocateDirect(16 * 1024 * 1024);
+            Files.write(temp, new byte[64 * 1024]);
+            subject.sample(usage);
+            seconds = (System.nanoTime() - start) / 1000000000f;
+        }
+        finally
+        {
+            Files.delete(temp);
+        }
+
+        assertTrue("rss: " + usage.rss, usage.rss > direct.capacity());
+        assertTrue("anon: " + usage.rssAnon,
+                usage.rssAnon > direct.capacity());
+        assertTrue(usage.rssFile >= 0);
+        assertTrue(usage.rssAnon + usage.rssFile <= usage.rss);
+        assertTrue("minflt: " + usage.minorFaults, usage.minorFaults > 0);
+        assertTrue(usage.majorFaults >= 0);
+
+        // optional files
+        if(Files.isReadable(Paths.get("/proc/self/io")))
+        {
+            assertTrue("wchar: " + usage.writeChars,
+                    usage.writeChars >= 64 * 1024 / seconds);
+            assertTrue(usage.readBytes >= 0);
+        }
+        if(Files.isReadable(Paths.get("/proc/self/smaps_rollup")))
+        {
+            assertTrue("pss: " + usage.pss, usage.pss > 0);
+        }
+    }
+
+    @Test
+    public void testRollupPeriod() throws IOException
+    {
+        MemoryMonitor subject = new MemoryMonitor.ProcFileMonitor(
+                ThreadUtil.myPID(), 0);
+        MemoryMonitor.Usage usage = new MemoryMonitor.Usage();
+        subject.sample(usage);
+        assertEquals(-1, usage.pss);
+        assertTrue(usage.rss > 0);
+    }
+
+    @Test
+    public void testContent()
+    {
+        ProcessMemoryContent subject = new ProcessMemoryContent(
+                ProcessMemoryContent.MemoryField.RSS,
+                ProcessMemoryContent.MemoryField.MINOR_FAULTS);
+
+        StringBuilder sb = new StringBuilder();
+        subject.header(sb);
+        assertEquals("rssmb     minflt/s  ", sb.toString());
+
+        sb.setLength(0);
+        subject.content(sb);
+        String[] fields = sb.toString().trim().split("\\s+");
+        assertEquals(2, fields.length);
+        assertTrue(Long.parseLong(fields[0]) > 0);
+        Double.parseDouble(fields[1]);
+
+        // unavailable values
+        MemoryMonitor.Usage usage = new MemoryMonitor.Usage();
+        sb.setLength(0);
+        ProcessMemoryContent.MemoryField.PSS.content(sb, usage);
+        ProcessMemoryContent.MemoryField.READ.content(sb, usage);
+        assertEquals("-1        NaN       ", sb.toString());
+    }
+
+}
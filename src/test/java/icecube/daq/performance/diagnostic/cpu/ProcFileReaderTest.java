@@ -0,0 +1,321 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests ProcFileReader.java and CPUMonitor.ProcFileMonitor
+ */
+public class ProcFileReaderTest
+{
+
+    private static final String TASK_STAT =
+            "58562 (thread (with) spaces) S 1 58528 58528 0 -1 4202496" +
+            " 61852 430 0 0 12028 5406 0 0 20 0 142 0 45073230" +
+            " 12515192832 439627 18446744073709551615 4194304 4196779\n";
+
+    private static final String SYSTEM_STAT =
+            "cpu  227323 1521 154255 30470737 148963 0 2178 0 0 0\n" +
+            "cpu0 119813 792 80872 15283115 9729 0 1531 0 0 0\n" +
+            "cpu1 107510 729 73382 15187622 139233 0 647 0 0 0\n" +
+            "intr 39004661 242 2 0 0 0\n" +
+            "ctxt 51673797\n";
+
+    private Path temp;
+
+
+    @Before
+    public void setUp() throws IOException
+    {
+        temp = Files.createTempFile("proc", "stat");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(temp);
+    }
+
+    @Test
+    public void testParseStat() throws IOException
+    {
+        long[] fields = new long[STAT_FIELDS];
+        int count = ProcFileReader.parseStat(buffer(TASK_STAT), fields);
+        assertEquals(27, count);
+        assertEquals(58562, fields[0]);
+        assertEquals(0, fields[1]);           // comm
+        assertEquals(0, fields[2]);           // state
+        assertEquals(1, fields[3]);
+        assertEquals(-1, fields[7]);
+        assertEquals(12028, fields[13]);      // utime
+        assertEquals(5406, fields[14]);       // stime
+        assertEquals(12515192832L, fields[22]);
+        assertEquals(-1, fields[24]);         // unsigned, wrapped
+
+        // fields beyond the destination are ignored
+        long[] few = new long[15];
+        assertEquals(15, ProcFileReader.parseStat(buffer(TASK_STAT), few));
+        assertEquals(5406, few[14]);
+
+        try
+        {
+            ProcFileReader.parseStat(buffer("58562 thread S 1"), few);
+            fail("Parsed a stat without a comm field");
+        }
+        catch (IOException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testParseLines()
+    {
+        ByteBuffer buf = buffer(SYSTEM_STAT);
+        long[] fields = new long[8];
+
+        int cpu = ProcFileReader.findLine(buf, "cpu".getBytes());
+        assertEquals(8, ProcFileReader.parseLine(buf, cpu, fields));
+        assertEquals(227323, fields[0]);
+        assertEquals(2178, fields[6]);
+
+        int cpu1 = ProcFileReader.findLine(buf, "cpu1".getBytes());
+        assertEquals(8, ProcFileReader.parseLine(buf, cpu1, fields));
+        assertEquals(107510, fields[0]);
+
+        int ctxt = ProcFileReader.findLine(buf, "ctxt".getBytes());
+        assertEquals(1, ProcFileReader.parseLine(buf, ctxt, fields));
+        assertEquals(51673797, fields[0]);
+
+        assertEquals(-1, ProcFileReader.findLine(buf, "cpu2".getBytes()));
+        assertEquals(-1, ProcFileReader.findLine(buf, "cp".getBytes()));
+    }
+
+    @Test
+    public void testRead() throws IOException
+    {
+        Files.write(temp, SYSTEM_STAT.getBytes());
+        ProcFileReader subject = new ProcFileReader(temp, 16);
+        try
+        {
+            // the buffer grows to fit the content
+            assertEquals(SYSTEM_STAT, text(subject.read()));
+
+            // each read returns the current content
+            Files.write(temp, TASK_STAT.getBytes());
+            assertEquals(TASK_STAT, text(subject.read()));
+
+            subject.close();
+            assertEquals(TASK_STAT, text(subject.read()));
+        }
+        finally
+        {
+            subject.close();
+        }
+    }
+
+    @Test
+    public void testMonitor() throws IOException
+    {
+        Path self = Paths.get("/proc/self/task");
+        Assume.assumeTrue(Files.isDirectory(self));
+
+        CPUMonitor subject = CPUMonitor.create(ThreadUtil.myPID());
+        int tracked = 0;
+        try(Stream<Path> tasks = Files.list(self))
+        {
+            for(Object task : tasks.toArray())
+            {
+                subject.addTid(Integer.parseInt(
+                        ((Path) task).getFileName().toString()));
+                tracked++;
+            }
+        }
+        subject.addTid(Integer.MAX_VALUE);
+
+        // threads are reported from the second reading after addition
+        assertEquals(0, subject.sample().byThread.size());
+        burn();
+        CPUMonitor.Utilization utilization = subject.sample();
+        assertEquals(8, utilization.cpuUtilization.size());
+        float cpu = utilization.cpuUtilization.get(
+                CPUMonitor.Keys.CPU_UTILIZATION);
+        assertTrue("cpu: " + cpu, cpu >= 0 && cpu <= 100);
+
+        // every online core is reported, each within a node
+        assertFalse(utilization.byCore.isEmpty());
+        assertFalse(utilization.byNode.isEmpty());
+        for(Map<CPUMonitor.Keys, Float> core :
+                utilization.byCore.values())
+        {
+            assertEquals(8, core.size());
+        }
+        assertEquals(1, utilization.byPID.size());
+
+        // the missing task is not reported
+        assertEquals(tracked, utilization.byThread.size());
+    }
+
+    @Test
+    public void testMonitorScheduling() throws Exception
+    {
+        Path self = Paths.get("/proc/thread-self/status");
+        Assume.assumeTrue(Files.exists(self));
+
+        CPUMonitor subject = CPUMonitor.create(ThreadUtil.myPID());
+        int tid = ThreadUtil.myTID();
+        subject.addTid(tid);
+        subject.addSchedulingTid(tid);
+        subject.addSchedulingTid(Integer.MAX_VALUE);
+
+        // scheduling is reported from the second reading after addition
+        assertEquals(0, subject.sample().byThreadScheduling.size());
+        for (int i = 0; i < 5; i++)
+        {
+            burn();
+            Thread.sleep(1);
+        }
+        CPUMonitor.Utilization utilization = subject.sample();
+        assertEquals(1, utilization.byThreadScheduling.size());
+        assertTrue(utilization.byThread.containsKey(tid));
+
+        CPUMonitor.Scheduling sched = utilization.byThreadScheduling.get(tid);
+        assertTrue("vcsw: " + sched.voluntarySwitches,
+                sched.voluntarySwitches > 0);
+        assertTrue("ivcsw: " + sched.nonvoluntarySwitches,
+                sched.nonvoluntarySwitches >= 0);
+        assertTrue("wait: " + sched.runQueueWait,
+                Float.isNaN(sched.runQueueWait) || sched.runQueueWait >= 0);
+        assertTrue("cpu: " + sched.lastCPU, sched.lastCPU >= 0);
+    }
+
+    @Test
+    public void testOpenFileLimit() throws Exception
+    {
+        Path fds = Paths.get("/proc/self/fd");
+        Assume.assumeTrue(Files.isDirectory(fds));
+
+        int[] tids;
+        try(Stream<Path> tasks = Files.list(Paths.get("/proc/self/task")))
+        {
+            tids = tasks.mapToInt(task ->
+                    Integer.parseInt(task.getFileName().toString()))
+                    .toArray();
+        }
+        Assume.assumeTrue(tids.length >= 4);
+
+        CPUMonitor subject = new CPUMonitor.ProcFileMonitor(
+                ThreadUtil.myPID(), 4);
+        int base = count(fds);
+
+        // a scheduling task holds three files
+        subject.addSchedulingTid(tids[0]);
+        assertEquals(base + 3, count(fds));
+        subject.addTid(tids[1]);
+        assertEquals(base + 4, count(fds));
+
+        // tasks beyond the limit are opened for each sample
+        subject.addTid(tids[2]);
+        subject.addSchedulingTid(tids[3]);
+        subject.addSchedulingTid(tids[1]);
+        assertEquals(base + 4, count(fds));
+
+        subject.sample();
+        subject.sample();
+        assertEquals(base + 4, count(fds));
+        CPUMonitor.Utilization utilization = subject.sample();
+        assertEquals(3, utilization.byThreadScheduling.size());
+        assertTrue(utilization.byThread.containsKey(tids[2]));
+    }
+
+    @Test
+    public void testParseCPUList()
+    {
+        assertArrayEquals(new int[]{0},
+                CPUMonitor.ProcFileMonitor.parseCPUList("0"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 8, 9, 10, 11},
+                CPUMonitor.ProcFileMonitor.parseCPUList("0-3,8-11"));
+        assertArrayEquals(new int[]{1, 4, 5},
+                CPUMonitor.ProcFileMonitor.parseCPUList("1,4-5"));
+        assertArrayEquals(new int[0],
+                CPUMonitor.ProcFileMonitor.parseCPUList(""));
+    }
+
+    @Test
+    public void testReadNodes() throws IOException
+    {
+        Path dir = Files.createTempDirectory("node");
+        try
+        {
+            assertArrayEquals(new int[0], CPUMonitor.ProcFileMonitor
+                    .readNodes(dir.resolve("missing")));
+
+            Files.createDirectory(dir.resolve("node0"));
+            Files.write(dir.resolve("node0/cpulist"), "0-1,4\n".getBytes());
+            Files.createDirectory(dir.resolve("node1"));
+            Files.write(dir.resolve("node1/cpulist"), "2,5\n".getBytes());
+            Files.createDirectory(dir.resolve("power"));
+
+            assertArrayEquals(new int[]{0, 0, 1, -1, 0, 1},
+                    CPUMonitor.ProcFileMonitor.readNodes(dir));
+        }
+        finally
+        {
+            try(Stream<Path> files = Files.walk(dir))
+            {
+                for(Object file : files.sorted(
+                        Comparator.reverseOrder()).toArray())
+                {
+                    Files.delete((Path) file);
+                }
+            }
+        }
+    }
+
+    private static final int STAT_FIELDS = 52;
+
+    private static int count(final Path dir) throws IOException
+    {
+        try(Stream<Path> files = Files.list(dir))
+        {
+            return (int) files.count();
+        }
+    }
+
+    private static ByteBuffer buffer(final String content)
+    {
+        ByteBuffer buf = ByteBuffer.allocateDirect(content.length());
+        buf.put(content.getBytes());
+        buf.flip();
+        return buf;
+    }
+
+    private static String text(final ByteBuffer buf)
+    {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return new String(bytes);
+    }
+
+    private static void burn()
+    {
+        long end = System.nanoTime() + 20000000;
+        while(System.nanoTime() < end)
+        {
+        }
+    }
+
+}
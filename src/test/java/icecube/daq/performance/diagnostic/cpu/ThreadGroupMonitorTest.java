@@ -0,0 +1,122 @@
+package icecube.daq.performance.diagnostic.cpu;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests ThreadGroupMonitor.java and the native thread mapping of
+ * ThreadUtil.java
+ */
+public class ThreadGroupMonitorTest
+{
+
+    private final CountDownLatch stop = new CountDownLatch(1);
+    private final List<Thread> threads = new ArrayList<>();
+
+
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        stop.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testGroup() throws InterruptedException
+    {
+        Assume.assumeTrue(ThreadGroupMonitor.isSupported());
+
+        start("burner-0", true);
+        start("idler-0", false);
+        ThreadGroupMonitor burners = new ThreadGroupMonitor("burner-.*");
+        ThreadGroupMonitor idlers = new ThreadGroupMonitor("idler-.*");
+        ThreadGroupMonitor none = new ThreadGroupMonitor("no such thread");
+        assertEquals(1, burners.size());
+
+        // threads started later join the group
+        start("burner-1", true);
+        Thread.sleep(200);
+
+        float burning = burners.sample();
+        assertEquals(2, burners.size());
+        assertTrue("burners: " + burning, burning > 20);
+        assertTrue(idlers.sample() < 5);
+        assertEquals(0, none.sample(), 0);
+        assertEquals(0, none.size());
+    }
+
+    @Test
+    public void testNativeIds() throws IOException, InterruptedException
+    {
+        int self = ThreadUtil.myTID();
+        Assume.assumeTrue(self > 0);
+
+        Thread named = start("uniquely-named-thread", false);
+        Thread.sleep(20);
+
+        boolean foundSelf = false;
+        for(ThreadUtil.ThreadInfo info : ThreadUtil.getThreadInfo())
+        {
+            if(info.tid == Thread.currentThread().getId())
+            {
+                assertEquals(self, info.nid);
+                foundSelf = true;
+            }
+
+            // native thread names are set by JVMs 9 and later
+            if(info.tid == named.getId() &&
+                    !System.getProperty("java.version").startsWith("1."))
+            {
+                assertTrue(info.nid > 0);
+                assertNotEquals(self, info.nid);
+            }
+        }
+        assertTrue(foundSelf);
+
+        try
+        {
+            ThreadUtil.getThreadInfo(ThreadUtil.myPID() + 1);
+            fail("Read threads of another process");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    private Thread start(final String name, final boolean burn)
+    {
+        Thread thread = new Thread(() ->
+        {
+            while(stop.getCount() > 0)
+            {
+                if(!burn)
+                {
+                    try
+                    {
+                        stop.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+        }, name);
+        thread.start();
+        threads.add(thread);
+        return thread;
+    }
+
+}
@@ -0,0 +1,152 @@
+package icecube.daq.performance.diagnostic.jmx;
+
+import icecube.daq.performance.diagnostic.MeterRegistry;
+import icecube.daq.performance.diagnostic.Metered;
+import icecube.daq.performance.diagnostic.cpu.CPUMonitor;
+import icecube.daq.util.CodeTimer;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests DiagnosticMBeans.java
+ */
+public class DiagnosticMBeansTest
+{
+
+    private final MBeanServer server =
+            ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    public void testMeters() throws JMException
+    {
+        MeterRegistry registry = new MeterRegistry();
+        Metered.Buffered sender = Metered.Factory.bufferMeter();
+        Metered.Throughput sorter = Metered.Factory.throughputMeter();
+        registry.register("test.21.sender", sender);
+        registry.register("test.21.sorter", sorter);
+        registry.register("other", Metered.Factory.throughputMeter());
+
+        List<ObjectName> names =
+                DiagnosticMBeans.registerMeters(registry, "test");
+        try
+        {
+            assertEquals(2, names.size());
+            ObjectName senderName =
+                    DiagnosticMBeans.objectName("Meter", "test.21.sender");
+            assertTrue(server.isRegistered(senderName));
+
+            sender.reportIn(10, 1000);
+            sender.reportOut(4, 400);
+            assertEquals(10L, server.getAttribute(senderName, "MsgIn"));
+            assertEquals(600L, server.getAttribute(senderName, "BytesHeld"));
+            assertEquals(6L, server.getAttribute(senderName, "MsgHeld"));
+            assertEquals(0d, server.getAttribute(senderName, "MsgInRate"));
+        }
+        finally
+        {
+            DiagnosticMBeans.unregister(names);
+        }
+        for(ObjectName name : names)
+        {
+            assertFalse(server.isRegistered(name));
+        }
+    }
+
+    @Test
+    public void testRates() throws InterruptedException
+    {
+        Metered.Throughput meter = Metered.Factory.throughputMeter();
+        MeterView subject = new MeterView(meter, 10);
+
+        meter.report(100, 1000);
+        Thread.sleep(20);
+        double rate = subject.getMsgInRate();
+        assertTrue(rate > 0);
+
+        // rates are held until the next refresh
+        meter.report(100, 1000);
+        assertEquals(rate, subject.getMsgInRate(), 0);
+        assertEquals(200, subject.getMsgIn());
+    }
+
+    @Test
+    public void testCPUMonitor() throws JMException
+    {
+        final Map<CPUMonitor.Keys, Float> cpu = new HashMap<>();
+        cpu.put(CPUMonitor.Keys.CPU_UTILIZATION, 42f);
+        final Map<Integer, Float> byPID = new HashMap<>();
+        byPID.put(1234, 150f);
+        final Map<Integer, Float> byThread = new HashMap<>();
+        byThread.put(1235, 99f);
+
+        CPUMonitor monitor = new CPUMonitor()
+        {
+            @Override
+            public Utilization sample()
+            {
+                return new Utilization(cpu, byPID, byThread);
+            }
+
+            @Override
+            public void addTid(final int tid)
+            {
+            }
+        };
+
+        ObjectName name = DiagnosticMBeans.registerCPUMonitor("test", monitor);
+        try
+        {
+            // values appear after the first refresh period
+            assertEquals(0f, server.getAttribute(name, "CpuUtilization"));
+
+            CPUMonitorView view = new CPUMonitorView(monitor, 0);
+            assertEquals(42f, view.getCpuUtilization(), 0);
+            assertEquals(0f, view.getCpuIdle(), 0);
+            assertEquals(150f, view.getProcessUtilization(), 0);
+            assertEquals(99f, view.getThreadUtilization().get(1235), 0);
+
+            assertTrue(server.getAttribute(name, "ThreadUtilization")
+                    instanceof TabularData);
+        }
+        finally
+        {
+            DiagnosticMBeans.unregister(name);
+        }
+    }
+
+    @Test
+    public void testCodeTimer() throws JMException
+    {
+        CodeTimer timer = new CodeTimer(3);
+        timer.addTime(0, 100);
+        timer.addTime(0, 50);
+        timer.addTime(1, 10);
+
+        ObjectName name = DiagnosticMBeans.registerCodeTimer("timer", timer);
+        try
+        {
+            assertEquals(160L, server.getAttribute(name, "TotalTime"));
+
+            CodeTimerView view = new CodeTimerView(timer, "timer");
+            assertEquals(150L, view.getTimes().get("timer#0").longValue());
+            assertEquals(2L, view.getCounts().get("timer#0").longValue());
+            assertEquals(1L, view.getCounts().get("timer#1").longValue());
+        }
+        finally
+        {
+            DiagnosticMBeans.unregister(name);
+        }
+    }
+
+}
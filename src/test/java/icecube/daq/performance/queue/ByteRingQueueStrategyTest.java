@@ -0,0 +1,187 @@
+package icecube.daq.performance.queue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static icecube.daq.performance.queue.TestThreads.interruptMe;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests ByteRingQueueStrategy.java
+ */
+@RunWith(Parameterized.class)
+public class ByteRingQueueStrategyTest
+{
+
+    private static int CAPACITY = 1024;
+
+    @Parameterized.Parameter(0)
+    public ByteRingQueueStrategy subject;
+
+    @Parameterized.Parameter(1)
+    public boolean multiProducer;
+
+    @Parameterized.Parameters(name = "ByteRingQueueStrategy[{0}]")
+    public static List<Object[]> sizes()
+    {
+        List<Object[]> cases = new ArrayList<Object[]>(4);
+        cases.add(new Object[]{ByteRingQueueStrategy.spsc(ByteBuffer.allocateDirect(CAPACITY), new QueueStrategy.Yield()), false});
+        cases.add(new Object[]{ByteRingQueueStrategy.spsc(ByteBuffer.allocate(CAPACITY), new QueueStrategy.Poll(1)), false});
+        cases.add(new Object[]{ByteRingQueueStrategy.mpsc(ByteBuffer.allocateDirect(CAPACITY), new QueueStrategy.Yield()), true});
+        cases.add(new Object[]{ByteRingQueueStrategy.mpsc(ByteBuffer.allocate(CAPACITY), new QueueStrategy.Poll(1)), true});
+        return cases;
+    }
+
+
+    @Test
+    public void testClaimCommit() throws InterruptedException
+    {
+        // variable lengths that wrap the ring many times
+        final List<Integer> lengths = new ArrayList<>();
+        for(int i=0; i<500; i++)
+        {
+            final int length = (i * 37) % 200;
+            long claim = subject.claim(length);
+            int offset = subject.offset(claim);
+            for(int j=0; j<length; j++)
+            {
+                subject.buffer().put(offset + j, (byte) (i + j));
+            }
+            subject.commit(claim);
+            lengths.add(length);
+
+            final int[] next = new int[]{i};
+            int read = subject.read(record ->
+            {
+                assertEquals(lengths.get(next[0]).intValue(), record.remaining());
+                for(int j=0; record.hasRemaining(); j++)
+                {
+                    assertEquals((byte) (next[0] + j), record.get());
+                }
+            }, 10);
+            assertEquals(1, read);
+        }
+
+        assertEquals(0, subject.size());
+        assertEquals(0, subject.usedBytes());
+    }
+
+    @Test
+    public void testQueueStrategy() throws InterruptedException
+    {
+        ByteBuffer element = ByteBuffer.allocate(100);
+        int count = 0;
+        while(subject.offer(element, 0, TimeUnit.MILLISECONDS))
+        {
+            count++;
+        }
+        assertEquals(CAPACITY / 112, count);
+        assertEquals(count, subject.size());
+        assertEquals(100, element.remaining());
+
+        long start = System.nanoTime();
+        assertFalse(subject.offer(element, 20, TimeUnit.MILLISECONDS));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue(elapsedMillis >= 20);
+
+        interruptMe(100);
+        try
+        {
+            subject.enqueue(element);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        for(int i=0; i<count; i++)
+        {
+            assertEquals(100, subject.dequeue().remaining());
+        }
+        assertNull(subject.poll(0, TimeUnit.MILLISECONDS));
+
+        interruptMe(00);
+        try
+        {
+            subject.dequeue();
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        try
+        {
+            subject.claim(subject.maxLength() + 1);
+            fail("oversize record");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // desired
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException
+    {
+        final int producers = multiProducer ? 3 : 1;
+        final int perProducer = 5000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            threads[p] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < perProducer; i++)
+                        {
+                            // [producer][sequence][filler]
+                            long claim = subject.claim(8 + (i % 40));
+                            int offset = subject.offset(claim);
+                            subject.buffer().putInt(offset, producer);
+                            subject.buffer().putInt(offset + 4, i);
+                            subject.commit(claim);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        fail("interrupted");
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        final int[] next = new int[producers];
+        int received = 0;
+        while(received < producers * perProducer)
+        {
+            received += subject.read(record ->
+            {
+                int producer = record.getInt();
+                int sequence = record.getInt();
+                assertEquals(next[producer]++, sequence);
+                assertEquals(sequence % 40, record.remaining());
+            }, 64);
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(0, subject.size());
+    }
+}
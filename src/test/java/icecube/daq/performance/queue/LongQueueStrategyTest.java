@@ -0,0 +1,184 @@
+package icecube.daq.performance.queue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static icecube.daq.performance.queue.TestThreads.interruptMe;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests LongQueueStrategy.java
+ */
+@RunWith(Parameterized.class)
+public class LongQueueStrategyTest
+{
+
+    private static int BOUND = 128;
+
+    @Parameterized.Parameter(0)
+    public LongQueueStrategy subject;
+
+    @Parameterized.Parameter(1)
+    public boolean multiProducer;
+
+    @Parameterized.Parameters(name = "LongQueueStrategy[{0}]")
+    public static List<Object[]> sizes()
+    {
+        List<Object[]> cases = new ArrayList<Object[]>(8);
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingSpin(new LongQueueStrategy.SpscLongQueue(BOUND)), false});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingYield(new LongQueueStrategy.SpscLongQueue(BOUND)), false});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingPoll(new LongQueueStrategy.SpscLongQueue(BOUND), 100), false});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingPollBackoff(new LongQueueStrategy.SpscLongQueue(BOUND), 100, 500), false});
+
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingSpin(new LongQueueStrategy.MpscLongQueue(BOUND)), true});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingYield(new LongQueueStrategy.MpscLongQueue(BOUND)), true});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingPoll(new LongQueueStrategy.MpscLongQueue(BOUND), 100), true});
+        cases.add(new Object[]{new LongQueueStrategy.NonBlockingPollBackoff(new LongQueueStrategy.MpscLongQueue(BOUND), 100, 500), true});
+
+        return cases;
+    }
+
+
+    @Test
+    public void testEnqueue() throws InterruptedException
+    {
+        // wrap the ring a few times
+        for(int lap=0; lap<3; lap++)
+        {
+            for(int i=0; i< BOUND; i++)
+            {
+                subject.enqueue(lap * BOUND + i);
+            }
+
+            assertEquals(BOUND, subject.size());
+
+            interruptMe(200);
+            try
+            {
+                subject.enqueue(-1);
+                fail("blocking failed");
+            }
+            catch (InterruptedException e)
+            {
+                Thread.interrupted();
+            }
+
+            for(int i=0; i< BOUND; i++)
+            {
+                assertEquals(lap * BOUND + i, subject.dequeue());
+            }
+        }
+
+        interruptMe(00);
+        try
+        {
+            subject.dequeue();
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testBatch() throws InterruptedException
+    {
+        long[] values = new long[BOUND];
+        for(int i=0; i< BOUND; i++)
+        {
+            values[i] = i;
+        }
+        subject.enqueue(values, 0, BOUND);
+
+        assertEquals(BOUND, subject.size());
+
+        // drain half into an array
+        long[] buffer = new long[BOUND];
+        int removed = 0;
+        while(removed < BOUND/2)
+        {
+            int count = subject.dequeue(buffer, removed, BOUND/2 - removed);
+            assertTrue(count > 0);
+            removed += count;
+        }
+        for(int i=0; i< BOUND/2; i++)
+        {
+            assertEquals(i, buffer[i]);
+        }
+
+        // drain the remainder to a consumer
+        List<Long> remainder = new ArrayList<>(BOUND);
+        while(remainder.size() < BOUND/2)
+        {
+            int count = subject.dequeue(remainder::add, BOUND);
+            assertTrue(count > 0);
+        }
+        assertEquals(BOUND/2, remainder.size());
+        for(int i=0; i< BOUND/2; i++)
+        {
+            assertEquals(BOUND/2 + i, remainder.get(i).longValue());
+        }
+
+        assertEquals(0, subject.dequeue(buffer, 0, 0));
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException
+    {
+        final int producers = 2;
+        final int perProducer = 8 * BOUND;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++)
+        {
+            final long base = (long) p << 32;
+            threads[p] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < perProducer; i++)
+                        {
+                            subject.enqueue(base + i);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        fail("interrupted");
+                    }
+                }
+            };
+        }
+
+        // the SPSC rings are exercised with a single producer
+        final int active = multiProducer ? producers : 1;
+        for (int p = 0; p < active; p++)
+        {
+            threads[p].start();
+        }
+
+        long[] next = new long[producers];
+        for (int i = 0; i < active * perProducer; i++)
+        {
+            long value = subject.dequeue();
+            int producer = (int) (value >>> 32);
+            assertEquals(next[producer]++, value & 0xFFFFFFFFL);
+        }
+
+        for (int p = 0; p < active; p++)
+        {
+            threads[p].join();
+        }
+        assertEquals(0, subject.size());
+    }
+}
@@ -0,0 +1,125 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.diagnostic.Metered;
+import org.jctools.queues.SpscArrayQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests MeteredQueueStrategy.java
+ */
+public class MeteredQueueStrategyTest
+{
+
+    private static int BOUND = 16;
+
+
+    @Test
+    public void testMetering() throws InterruptedException
+    {
+        Metered.UTCBuffered meter = Metered.Factory.utcBufferMeter();
+        MeteredQueueStrategy<Long> subject =
+                MeteredQueueStrategy.relaxed(new SpscArrayQueue<Long>(BOUND),
+                        new QueueStrategy.Yield(), meter, e -> 8, e -> e);
+
+        subject.enqueue(100L);
+        subject.enqueue(new Long[]{101L, 102L, 103L}, 0, 3);
+        assertTrue(subject.offer(104L, 0, TimeUnit.MILLISECONDS));
+
+        Metered.Sample sample = meter.getSample();
+        assertEquals(5, sample.msgIn);
+        assertEquals(40, sample.bytesIn);
+        assertEquals(104, sample.utcIn);
+        assertEquals(0, sample.msgOut);
+
+        assertEquals(100L, subject.dequeue().longValue());
+        Long[] buffer = new Long[2];
+        assertEquals(2, subject.dequeue(buffer, 0, 2));
+        List<Long> remainder = new ArrayList<>();
+        assertEquals(2, subject.dequeue(remainder::add, BOUND));
+        assertNull(subject.poll(0, TimeUnit.MILLISECONDS));
+
+        sample = meter.getSample();
+        assertEquals(5, sample.msgOut);
+        assertEquals(40, sample.bytesOut);
+        assertEquals(104, sample.utcOut);
+
+        // the consumer tally is reused between calls
+        subject.enqueue(new Long[]{105L, 106L}, 0, 2);
+        assertEquals(2, subject.dequeue(remainder::add, BOUND));
+        assertEquals(4, remainder.size());
+
+        sample = meter.getSample();
+        assertEquals(7, sample.msgOut);
+        assertEquals(56, sample.bytesOut);
+        assertEquals(106, sample.utcOut);
+    }
+
+    @Test
+    public void testWaits() throws InterruptedException
+    {
+        MeteredQueueStrategy<Integer> subject =
+                MeteredQueueStrategy.nonBlocking(
+                        new LinkedBlockingQueue<Integer>(1),
+                        new QueueStrategy.Poll(1),
+                        Metered.Factory.bufferMeter(), e -> 4);
+
+        assertNull(subject.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, subject.getDequeueWaits());
+        assertTrue(subject.getDequeueIdleCount() > 1);
+        assertTrue(subject.getDequeueIdleNanos() > 0);
+
+        subject.enqueue(1);
+        assertFalse(subject.offer(2, 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, subject.getEnqueueWaits());
+        assertTrue(subject.getEnqueueIdleNanos() > 0);
+
+        StringBuilder sb = new StringBuilder();
+        subject.createWaitContent().content(sb);
+        assertTrue(sb.toString().startsWith("1 "));
+    }
+
+    @Test
+    public void testNullMeter() throws InterruptedException
+    {
+        MeteredQueueStrategy<Integer> subject =
+                MeteredQueueStrategy.wrap(
+                        new QueueStrategy.Blocking<Integer>(
+                                new LinkedBlockingQueue<Integer>(BOUND)),
+                        new Metered.NullMeter(),
+                        e -> { throw new AssertionError("metered"); });
+
+        subject.enqueue(1);
+        assertEquals(1, subject.dequeue().intValue());
+        assertEquals(0, subject.getEnqueueWaits());
+        assertEquals(0, subject.getDequeueWaits());
+    }
+
+    @Test
+    public void testNullMeterIdle() throws InterruptedException
+    {
+        // idling is not wrapped or timed
+        MeteredQueueStrategy<Integer> subject =
+                MeteredQueueStrategy.nonBlocking(
+                        new LinkedBlockingQueue<Integer>(1),
+                        new QueueStrategy.Poll(1),
+                        new Metered.NullMeter(),
+                        e -> { throw new AssertionError("metered"); });
+
+        assertNull(subject.poll(10, TimeUnit.MILLISECONDS));
+        subject.enqueue(1);
+        assertFalse(subject.offer(2, 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, subject.dequeue().intValue());
+        assertEquals(0, subject.getDequeueWaits());
+        assertEquals(0, subject.getDequeueIdleCount());
+        assertEquals(0, subject.getEnqueueIdleNanos());
+    }
+
+}
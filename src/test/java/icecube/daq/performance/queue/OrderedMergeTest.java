@@ -0,0 +1,174 @@
+package icecube.daq.performance.queue;
+
+import org.jctools.queues.SpscArrayQueue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static icecube.daq.performance.queue.TestThreads.interruptMe;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests OrderedMerge.java
+ */
+public class OrderedMergeTest
+{
+
+    @Test
+    public void testMerge() throws InterruptedException
+    {
+        // exercise complete and incomplete trees
+        for(int inputCount : new int[]{1, 2, 3, 7, 8, 100})
+        {
+            merge(inputCount, 200);
+        }
+    }
+
+    @Test
+    public void testTimedWait() throws InterruptedException
+    {
+        QueueStrategy<Long>[] inputs = createInputs(2, 16);
+        OrderedMerge<Long> subject = new OrderedMerge<>(inputs, v -> v,
+                new QueueStrategy.Poll(1));
+
+        inputs[0].enqueue(10L);
+        assertNull(subject.poll(20, TimeUnit.MILLISECONDS));
+
+        inputs[1].enqueue(5L);
+        assertEquals(5L, subject.poll(20, TimeUnit.MILLISECONDS).longValue());
+
+        // input 1 must provide its next head before 10 can be emitted
+        long start = System.nanoTime();
+        assertNull(subject.poll(20, TimeUnit.MILLISECONDS));
+        assertTrue((System.nanoTime() - start) / 1000000 >= 20);
+
+        inputs[1].enqueue(OrderedMerge.END_OF_STREAM);
+        assertEquals(10L, subject.dequeue().longValue());
+        assertEquals(1, subject.size());
+
+        interruptMe(100);
+        try
+        {
+            subject.dequeue();
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        inputs[0].enqueue(OrderedMerge.END_OF_STREAM);
+        assertFalse(subject.isFinished());
+        assertEquals(OrderedMerge.END_OF_STREAM, subject.dequeue().longValue());
+        assertTrue(subject.isFinished());
+        assertEquals(OrderedMerge.END_OF_STREAM, subject.dequeue().longValue());
+    }
+
+    @Test
+    public void testConcurrentInputs() throws InterruptedException
+    {
+        final int inputCount = 4;
+        final int perInput = 5000;
+        final QueueStrategy<Long>[] inputs = createInputs(inputCount, 64);
+        for(int i=0; i<inputCount; i++)
+        {
+            final QueueStrategy<Long> input = inputs[i];
+            final long seed = i;
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Random random = new Random(seed);
+                        long utc = 0;
+                        for(int n=0; n<perInput; n++)
+                        {
+                            utc += random.nextInt(100);
+                            input.enqueue(utc);
+                        }
+                        input.enqueue(OrderedMerge.END_OF_STREAM);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        fail("interrupted");
+                    }
+                }
+            }.start();
+        }
+
+        OrderedMerge<Long> subject = new OrderedMerge<>(inputs, v -> v,
+                new QueueStrategy.Yield());
+        long last = Long.MIN_VALUE;
+        int count = 0;
+        while(true)
+        {
+            long utc = subject.dequeue();
+            if(subject.isFinished())
+            {
+                break;
+            }
+            assertTrue(utc >= last);
+            last = utc;
+            count++;
+        }
+        assertEquals(inputCount * perInput, count);
+    }
+
+    private static void merge(final int inputCount, final int perInput)
+            throws InterruptedException
+    {
+        QueueStrategy<Long>[] inputs = createInputs(inputCount, perInput + 1);
+        Random random = new Random(inputCount);
+        long[] expected = new long[inputCount * perInput];
+        int n = 0;
+        for(int i=0; i<inputCount; i++)
+        {
+            long utc = 0;
+            for(int j=0; j<perInput; j++)
+            {
+                utc += random.nextInt(10);
+                inputs[i].enqueue(utc);
+                expected[n++] = utc;
+            }
+            inputs[i].enqueue(OrderedMerge.END_OF_STREAM);
+        }
+        Arrays.sort(expected);
+
+        OrderedMerge<Long> subject = new OrderedMerge<>(inputs, v -> v,
+                new QueueStrategy.Yield());
+        assertEquals(inputCount, subject.inputCount());
+        for(int i=0; i<expected.length; i++)
+        {
+            assertEquals(expected[i], subject.dequeue().longValue());
+        }
+        assertEquals(OrderedMerge.END_OF_STREAM, subject.dequeue().longValue());
+        assertTrue(subject.isFinished());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static QueueStrategy<Long>[] createInputs(final int count,
+                                                      final int capacity)
+    {
+        QueueStrategy<Long>[] inputs = new QueueStrategy[count];
+        for(int i=0; i<count; i++)
+        {
+            if(i % 2 == 0)
+            {
+                inputs[i] = new QueueStrategy.RelaxedYield<>(
+                        new SpscArrayQueue<Long>(capacity));
+            }
+            else
+            {
+                inputs[i] = new QueueStrategy.Blocking<>(
+                        new LinkedBlockingQueue<Long>(capacity));
+            }
+        }
+        return inputs;
+    }
+}
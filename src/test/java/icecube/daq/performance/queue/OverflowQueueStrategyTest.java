@@ -0,0 +1,177 @@
+package icecube.daq.performance.queue;
+
+import icecube.daq.performance.diagnostic.Metered;
+import org.jctools.queues.SpscArrayQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static icecube.daq.performance.queue.TestThreads.interruptMe;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests OverflowQueueStrategy.java
+ */
+public class OverflowQueueStrategyTest
+{
+
+    private static int BOUND = 8;
+
+    private static final OverflowQueueStrategy.Codec<Integer> CODEC =
+            new OverflowQueueStrategy.Codec<Integer>()
+            {
+                @Override
+                public void encode(final Integer element,
+                                   final DataOutput out) throws IOException
+                {
+                    out.writeInt(element);
+                }
+
+                @Override
+                public Integer decode(final DataInput in) throws IOException
+                {
+                    return in.readInt();
+                }
+            };
+
+    private File spillDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        spillDir = Files.createTempDirectory("spill").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : spillDir.listFiles())
+        {
+            file.delete();
+        }
+        spillDir.delete();
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException
+    {
+        OverflowQueueStrategy<Integer> subject =
+                OverflowQueueStrategy.block(new QueueStrategy.Blocking<>(
+                        new LinkedBlockingQueue<Integer>(BOUND)));
+        for(int i=0; i< BOUND; i++)
+        {
+            subject.enqueue(i);
+        }
+        assertFalse(subject.offer(BOUND, 0, TimeUnit.MILLISECONDS));
+
+        interruptMe(100);
+        try
+        {
+            subject.enqueue(BOUND);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+        assertEquals(0, subject.getDropped());
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException
+    {
+        Metered.Throughput meter = Metered.Factory.throughputMeter();
+        OverflowQueueStrategy<Integer> subject =
+                OverflowQueueStrategy.dropNewest(
+                        new QueueStrategy.RelaxedYield<>(
+                                new SpscArrayQueue<Integer>(BOUND)), meter);
+        for(int i=0; i< 3 * BOUND; i++)
+        {
+            subject.enqueue(i);
+        }
+        assertEquals(2 * BOUND, subject.getDropped());
+        assertEquals(2 * BOUND, meter.getSample().msgIn);
+
+        for(int i=0; i< BOUND; i++)
+        {
+            assertEquals(i, subject.dequeue().intValue());
+        }
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException
+    {
+        Metered.Throughput meter = Metered.Factory.throughputMeter();
+        OverflowQueueStrategy<Integer> subject =
+                OverflowQueueStrategy.dropOldest(
+                        new QueueStrategy.NonBlockingYield<>(
+                                new LinkedBlockingQueue<Integer>(BOUND)),
+                        meter);
+        for(int i=0; i< 3 * BOUND; i++)
+        {
+            subject.enqueue(i);
+        }
+        assertEquals(2 * BOUND, subject.getDropped());
+        assertEquals(2 * BOUND, meter.getSample().msgIn);
+
+        for(int i=0; i< BOUND; i++)
+        {
+            assertEquals(2 * BOUND + i, subject.dequeue().intValue());
+        }
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testSpill() throws InterruptedException, IOException
+    {
+        Metered.Throughput spilled = Metered.Factory.throughputMeter();
+        OverflowQueueStrategy<Integer> subject =
+                OverflowQueueStrategy.spill(
+                        new QueueStrategy.RelaxedYield<>(
+                                new SpscArrayQueue<Integer>(BOUND)),
+                        spillDir, CODEC, new Metered.NullMeter(), spilled);
+
+        for(int i=0; i< 10 * BOUND; i++)
+        {
+            subject.enqueue(i);
+        }
+        assertEquals(9 * BOUND, subject.getSpilled());
+        assertEquals(9 * BOUND, subject.getSpillPending());
+        assertEquals(9 * BOUND, spilled.getSample().msgIn);
+        assertEquals(10 * BOUND, subject.size());
+
+        // interleave consumption with production, order is preserved
+        int next = 10 * BOUND;
+        for(int i=0; i< 20 * BOUND; i++)
+        {
+            assertEquals(i, subject.dequeue().intValue());
+            if(i % 2 == 0)
+            {
+                subject.enqueue(next++);
+            }
+        }
+        assertEquals(20 * BOUND, next);
+
+        assertEquals(0, subject.size());
+        assertEquals(0, subject.getSpillPending());
+        assertNull(subject.poll(20, TimeUnit.MILLISECONDS));
+
+        // spilling stops once the spill is drained
+        subject.enqueue(-1);
+        assertEquals(0, subject.getSpillPending());
+        assertEquals(-1, subject.dequeue().intValue());
+
+        subject.close();
+        assertEquals(0, spillDir.listFiles().length);
+    }
+}
@@ -0,0 +1,117 @@
+package icecube.daq.performance.queue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests PartitionedQueueStrategy.java
+ */
+public class PartitionedQueueStrategyTest
+{
+
+    @Test
+    public void testRouting() throws InterruptedException
+    {
+        PartitionedQueueStrategy<Integer> subject =
+                new PartitionedQueueStrategy<>(4, 16, i -> i,
+                        QueueStrategy.Yield::new);
+
+        assertEquals(4, subject.partitionCount());
+        assertEquals(3, subject.partitionOf(-1));
+
+        for(int i=0; i<16; i++)
+        {
+            subject.enqueue(i);
+        }
+        assertEquals(16, subject.size());
+
+        for(int p=0; p<4; p++)
+        {
+            QueueStrategy<Integer> partition = subject.partition(p);
+            assertEquals(4, partition.size());
+            for(int i=0; i<4; i++)
+            {
+                assertEquals(p + 4 * i, partition.dequeue().intValue());
+            }
+        }
+
+        // a full partition does not accept elements of its keys
+        for(int i=0; i<16; i++)
+        {
+            subject.enqueue(0);
+        }
+        assertFalse(subject.offer(4, 0, TimeUnit.MILLISECONDS));
+        assertTrue(subject.offer(5, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPerKeyOrder() throws InterruptedException
+    {
+        final int keys = 32;
+        final int perKey = 2000;
+        final PartitionedQueueStrategy<long[]> subject =
+                new PartitionedQueueStrategy<>(3, 64, e -> (int) e[0],
+                        QueueStrategy.Phased::new);
+
+        final AtomicIntegerArray next = new AtomicIntegerArray(keys);
+        final Thread[] workers = new Thread[subject.partitionCount()];
+        for (int w = 0; w < workers.length; w++)
+        {
+            final QueueStrategy<long[]> partition = subject.partition(w);
+            final int index = w;
+            workers[w] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(true)
+                        {
+                            long[] element = partition.dequeue();
+                            int key = (int) element[0];
+                            assertEquals(index, subject.partitionOf(element));
+                            assertEquals(next.get(key), element[1]);
+                            next.incrementAndGet(key);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // done
+                    }
+                }
+            };
+            workers[w].start();
+        }
+
+        for(int i=0; i<perKey; i++)
+        {
+            for(int k=0; k<keys; k++)
+            {
+                subject.enqueue(new long[]{k, i});
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while(subject.size() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        for (Thread worker : workers)
+        {
+            worker.interrupt();
+            worker.join();
+        }
+
+        for(int k=0; k<keys; k++)
+        {
+            assertEquals(perKey, next.get(k));
+        }
+    }
+
+}
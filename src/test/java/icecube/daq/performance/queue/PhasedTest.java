@@ -0,0 +1,150 @@
+package icecube.daq.performance.queue;
+
+import org.jctools.queues.SpscArrayQueue;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the signaling of QueueStrategy.Phased
+ */
+public class PhasedTest
+{
+
+    // long enough that a test relying on the park period would time out
+    private static final long PARK_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void testNonBlockingSignal() throws Exception
+    {
+        QueueStrategy.Phased phased =
+                new QueueStrategy.Phased(0, 0, PARK_NANOS, PARK_NANOS);
+        testSignal(new QueueStrategy.NonBlockingPhased<Integer>(
+                new LinkedBlockingQueue<>(16), phased));
+    }
+
+    @Test
+    public void testRelaxedSignal() throws Exception
+    {
+        QueueStrategy.Phased phased =
+                new QueueStrategy.Phased(0, 0, PARK_NANOS, PARK_NANOS);
+        testSignal(new QueueStrategy.RelaxedPhased<Integer>(
+                new SpscArrayQueue<>(16), phased));
+    }
+
+    @Test
+    public void testNonBlockingBatchSignal() throws Exception
+    {
+        QueueStrategy.Phased phased =
+                new QueueStrategy.Phased(0, 0, PARK_NANOS, PARK_NANOS);
+        testBatchSignal(new QueueStrategy.NonBlockingPhased<Integer>(
+                new LinkedBlockingQueue<>(16), phased));
+    }
+
+    @Test
+    public void testRelaxedBatchSignal() throws Exception
+    {
+        QueueStrategy.Phased phased =
+                new QueueStrategy.Phased(0, 0, PARK_NANOS, PARK_NANOS);
+        testBatchSignal(new QueueStrategy.RelaxedPhased<Integer>(
+                new SpscArrayQueue<>(16), phased));
+    }
+
+    private static void testSignal(final QueueStrategy<Integer> subject)
+            throws Exception
+    {
+        final Integer[] result = new Integer[1];
+        Thread consumer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    result[0] = subject.dequeue();
+                }
+                catch (InterruptedException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        consumer.start();
+
+        // wait for the consumer to park
+        awaitPark(consumer);
+
+        subject.enqueue(42);
+
+        consumer.join(5000);
+        assertFalse("consumer was not signaled", consumer.isAlive());
+        assertEquals(42, result[0].intValue());
+    }
+
+    /**
+     * Enqueue a batch larger than the queue capacity to a parked consumer.
+     */
+    private static void testBatchSignal(final QueueStrategy<Integer> subject)
+            throws Exception
+    {
+        final Integer[] batch = new Integer[100];
+        for (int i = 0; i < batch.length; i++)
+        {
+            batch[i] = i;
+        }
+
+        final int[] received = new int[1];
+        Thread consumer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                Integer[] buffer = new Integer[8];
+                try
+                {
+                    while(received[0] < batch.length)
+                    {
+                        int count = subject.dequeue(buffer, 0, buffer.length);
+                        for (int i = 0; i < count; i++)
+                        {
+                            assertEquals(received[0]++, buffer[i].intValue());
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        consumer.start();
+
+        awaitPark(consumer);
+        long start = System.nanoTime();
+        subject.enqueue(batch, 0, batch.length);
+
+        consumer.join(5000);
+        assertFalse("consumer was not signaled", consumer.isAlive());
+        assertEquals(batch.length, received[0]);
+
+        // far less than a park period
+        long elapsed = System.nanoTime() - start;
+        assertTrue("elapsed: " + elapsed, elapsed < PARK_NANOS / 6);
+    }
+
+    private static void awaitPark(final Thread thread) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(thread.getState() != Thread.State.TIMED_WAITING)
+        {
+            assertTrue("thread did not park",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package icecube.daq.performance.queue;
 
+import icecube.daq.performance.diagnostic.Metered;
 import org.jctools.queues.SpmcArrayQueue;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,6 +10,7 @@ import org.junit.runners.Parameterized;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -28,18 +30,23 @@ public class QueueStrategyTest
     @Parameterized.Parameters(name = "QueueStrategy[{0}]")
     public static List<Object[]> sizes()
     {
-        List<Object[]> cases = new ArrayList<Object[]>(13);
+        List<Object[]> cases = new ArrayList<Object[]>(17);
         cases.add(new Object[]{new QueueStrategy.Blocking<Integer>(new LinkedBlockingQueue<>(BOUND))});
 
         cases.add(new Object[]{new QueueStrategy.NonBlockingSpin<Integer>(new LinkedBlockingQueue<>(BOUND))});
         cases.add(new Object[]{new QueueStrategy.NonBlockingYield<Integer>(new LinkedBlockingQueue<>(BOUND))});
         cases.add(new Object[]{new QueueStrategy.NonBlockingPoll<Integer>(new LinkedBlockingQueue<>(BOUND), 100)});
         cases.add(new Object[]{new QueueStrategy.NonBlockingPollBackoff<Integer>(new LinkedBlockingQueue<>(BOUND), 100, 500)});
+        cases.add(new Object[]{new QueueStrategy.NonBlockingPhased<Integer>(new LinkedBlockingQueue<>(BOUND))});
 
         cases.add(new Object[]{new QueueStrategy.RelaxedSpin<Integer>(new SpmcArrayQueue<>(BOUND))});
         cases.add(new Object[]{new QueueStrategy.RelaxedYield<Integer>(new SpmcArrayQueue<>(BOUND))});
         cases.add(new Object[]{new QueueStrategy.RelaxedPoll<Integer>(new SpmcArrayQueue<>(BOUND), 100)});
         cases.add(new Object[]{new QueueStrategy.RelaxedPollBackoff<Integer>(new SpmcArrayQueue<>(BOUND), 100, 500)});
+        cases.add(new Object[]{new QueueStrategy.RelaxedPhased<Integer>(new SpmcArrayQueue<>(BOUND))});
+
+        cases.add(new Object[]{MeteredQueueStrategy.nonBlocking(new LinkedBlockingQueue<Integer>(BOUND), new QueueStrategy.Phased(), Metered.Factory.bufferMeter(), i -> 4)});
+        cases.add(new Object[]{MeteredQueueStrategy.relaxed(new SpmcArrayQueue<Integer>(BOUND), new QueueStrategy.Poll(100), Metered.Factory.bufferMeter(), i -> 4)});
 
         return cases;
     }
@@ -88,6 +95,137 @@ public class QueueStrategyTest
 
     }
 
+    @Test
+    public void testBatch() throws InterruptedException
+    {
+        Integer[] elements = new Integer[BOUND];
+        for(int i=0; i< BOUND; i++)
+        {
+            elements[i] = i;
+        }
+        subject.enqueue(elements, 0, BOUND);
+
+        assertEquals(BOUND, subject.size());
+
+
+        interruptMe(200);
+        try
+        {
+            subject.enqueue(elements, 0, 1);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        // drain half into an array
+        Integer[] buffer = new Integer[BOUND];
+        int removed = 0;
+        while(removed < BOUND/2)
+        {
+            int count = subject.dequeue(buffer, removed, BOUND/2 - removed);
+            assertTrue(count > 0);
+            removed += count;
+        }
+        assertEquals(BOUND/2, removed);
+        for(int i=0; i< BOUND/2; i++)
+        {
+            assertEquals(i, buffer[i].intValue());
+        }
+
+        // drain the remainder to a consumer
+        List<Integer> remainder = new ArrayList<>(BOUND);
+        while(remainder.size() < BOUND/2)
+        {
+            int count = subject.dequeue(remainder::add, BOUND);
+            assertTrue(count > 0);
+        }
+        assertEquals(BOUND/2, remainder.size());
+        for(int i=0; i< BOUND/2; i++)
+        {
+            assertEquals(BOUND/2 + i, remainder.get(i).intValue());
+        }
+
+        assertEquals(0, subject.dequeue(buffer, 0, 0));
+
+        interruptMe(00);
+        try
+        {
+            subject.dequeue(buffer, 0, BOUND);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testTimed() throws InterruptedException
+    {
+        // NOTE: the poll strategies under test sleep for 100 ms, a
+        //       timed wait must not overrun the deadline by a full sleep
+        final long timeoutMillis = 20;
+        final long pollSleepMillis = 100;
+
+        long start = System.nanoTime();
+        assertNull(subject.poll(timeoutMillis, TimeUnit.MILLISECONDS));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue(elapsedMillis >= timeoutMillis);
+        assertTrue("elapsed: " + elapsedMillis,
+                elapsedMillis < timeoutMillis + pollSleepMillis);
+
+        for(int i=0; i< BOUND; i++)
+        {
+            assertTrue(subject.offer(i, 0, TimeUnit.MILLISECONDS));
+        }
+
+        assertEquals(BOUND, subject.size());
+
+        start = System.nanoTime();
+        assertFalse(subject.offer(BOUND, timeoutMillis,
+                TimeUnit.MILLISECONDS));
+        elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue(elapsedMillis >= timeoutMillis);
+        assertTrue("elapsed: " + elapsedMillis,
+                elapsedMillis < timeoutMillis + pollSleepMillis);
+
+        interruptMe(00);
+        try
+        {
+            subject.offer(BOUND, 10, TimeUnit.SECONDS);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        for(int i=0; i< BOUND; i++)
+        {
+            Integer polled = subject.poll(0, TimeUnit.MILLISECONDS);
+            assertEquals(i, polled.intValue());
+        }
+
+        assertNull(subject.poll(0, TimeUnit.MILLISECONDS));
+
+        interruptMe(00);
+        try
+        {
+            subject.poll(10, TimeUnit.SECONDS);
+            fail("blocking failed");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, subject.size());
+    }
+
     private static void interruptMe(long when)
     {
         final Thread target = Thread.currentThread();
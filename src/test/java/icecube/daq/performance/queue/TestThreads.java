@@ -0,0 +1,38 @@
+package icecube.daq.performance.queue;
+
+/**
+ * Thread utilities shared by the queue tests.
+ */
+final class TestThreads
+{
+
+    private TestThreads()
+    {
+    }
+
+    /**
+     * Interrupt the calling thread after a delay, used to release
+     * a blocking call under test.
+     *
+     * @param when The delay in milliseconds.
+     */
+    static void interruptMe(final long when)
+    {
+        final Thread target = Thread.currentThread();
+        Thread interrupter = new Thread(() ->
+        {
+            try
+            {
+                Thread.sleep(when);
+                target.interrupt();
+            }
+            catch (InterruptedException e)
+            {
+                // abandon the interrupt
+            }
+        }, "test-interrupter");
+        interrupter.setDaemon(true);
+        interrupter.start();
+    }
+
+}